@@ -1,18 +1,30 @@
 package com.healapp.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableAsync
 public class AsyncConfig {
 
+    // Bật bằng spring.threads.virtual.enabled: Tomcat và @Scheduled do Spring Boot chuyển sang virtual thread,
+    // các executor dưới đây cũng chuyển theo nhưng vẫn giữ giới hạn đồng thời như pool cũ
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
     @Bean(name = "asyncExecutor")
     public Executor asyncExecutor() {
+        if (virtualThreadsEnabled) {
+            return virtualThreadExecutor("AsyncThread-", 5);
+        }
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(3);
         executor.setMaxPoolSize(5);
@@ -21,4 +33,88 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
-}
\ No newline at end of file
+
+    // Executor riêng cho gửi mail: hàng đợi có giới hạn, khi đầy thì luồng gọi tự gửi (backpressure)
+    @Bean(name = "mailExecutor")
+    public AsyncTaskExecutor mailExecutor(
+            @Value("${mail.dispatch.core-pool-size:4}") int corePoolSize,
+            @Value("${mail.dispatch.max-pool-size:8}") int maxPoolSize,
+            @Value("${mail.dispatch.queue-capacity:500}") int queueCapacity,
+            @Value("${mail.dispatch.virtual-threads:${spring.threads.virtual.enabled:false}}") boolean virtualThreads) {
+        if (virtualThreads) {
+            // Mỗi mail một virtual thread, giới hạn số kết nối SMTP đồng thời bằng max-pool-size
+            return virtualThreadExecutor("MailThread-", maxPoolSize);
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("MailThread-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    // Executor cho các truy vấn thống kê dashboard chạy song song, giới hạn số kết nối DB dùng cùng lúc
+    @Bean(name = "dashboardExecutor")
+    public AsyncTaskExecutor dashboardExecutor(
+            @Value("${admin.dashboard.parallelism:4}") int parallelism) {
+        if (virtualThreadsEnabled) {
+            // Giới hạn vẫn là parallelism để không chiếm hết connection pool
+            return virtualThreadExecutor("DashboardThread-", parallelism);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setQueueCapacity(50);
+        executor.setThreadNamePrefix("DashboardThread-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    // Worker áp dụng webhook Stripe; khi hàng đợi đầy thì từ chối, sự kiện vẫn nằm trong inbox chờ lượt quét.
+    // Giữ pool platform kể cả khi bật virtual thread: cần TaskRejectedException thay vì chặn luồng nhận webhook
+    @Bean(name = "stripeWebhookExecutor")
+    public AsyncTaskExecutor stripeWebhookExecutor(
+            @Value("${stripe.webhook.workers:4}") int workers,
+            @Value("${stripe.webhook.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("StripeWebhook-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    // Pool CPU cho BCrypt khi login: số worker mặc định bằng số core để đợt login cao điểm không chiếm hết CPU của
+    // các request khác. Hàng đợi đầy thì từ chối (login trả lỗi bận) thay vì dồn thêm độ trễ; luôn là pool platform
+    @Bean(name = "passwordHashExecutor")
+    public AsyncTaskExecutor passwordHashExecutor(
+            @Value("${security.password-hash.workers:0}") int workers,
+            @Value("${security.password-hash.queue-capacity:256}") int queueCapacity) {
+        int poolSize = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("PasswordHash-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Mỗi task một virtual thread; vượt concurrencyLimit thì luồng gọi chờ (tương tự CallerRunsPolicy)
+    private SimpleAsyncTaskExecutor virtualThreadExecutor(String threadNamePrefix, int concurrencyLimit) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(concurrencyLimit);
+        executor.setTaskTerminationTimeout(30000);
+        return executor;
+    }
+}
@@ -0,0 +1,18 @@
+package com.healapp.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Inject user đang đăng nhập vào tham số controller: {@code @CurrentUser Long userId}
+ * hoặc {@code @CurrentUser UserPrincipal principal}. Lấy từ principal do JwtAuthenticationFilter dựng,
+ * không truy vấn DB. Request chưa đăng nhập nhận null.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CurrentUser {
+}
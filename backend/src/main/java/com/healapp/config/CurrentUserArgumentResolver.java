@@ -0,0 +1,30 @@
+package com.healapp.config;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Resolver cho {@link CurrentUser}: hỗ trợ tham số kiểu Long (userId) và UserPrincipal.
+ */
+public class CurrentUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.hasParameterAnnotation(CurrentUser.class)
+                && (Long.class.equals(parameter.getParameterType())
+                        || UserPrincipal.class.equals(parameter.getParameterType()));
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+            NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        UserPrincipal principal = UserPrincipal.current().orElse(null);
+        if (UserPrincipal.class.equals(parameter.getParameterType())) {
+            return principal;
+        }
+        return principal != null ? principal.getId() : null;
+    }
+}
@@ -4,16 +4,15 @@ import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 import javax.crypto.SecretKey;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import com.healapp.model.UserDtls;
+
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
@@ -31,18 +30,25 @@ public class JwtTokenProvider {
         return Keys.hmacShaKeyFor(jwtConfig.getSecret().getBytes(StandardCharsets.UTF_8));
     }
 
-    public String generateAccessToken(Authentication authentication) {
-        UserDetails userPrincipal = (UserDetails) authentication.getPrincipal();
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_ROLE = "role";
+    public static final String CLAIM_TOKEN_VERSION = "ver";
+    public static final String CLAIM_TOKEN_TYPE = "typ";
+    public static final String REFRESH_TOKEN_TYPE = "refresh";
 
-        List<String> roles = userPrincipal.getAuthorities().stream()
-                .map(GrantedAuthority::getAuthority)
-                .collect(Collectors.toList());  
+    /**
+     * Access token mang userId, role và tokenVersion để filter dựng principal mà không cần truy vấn user.
+     */
+    public String generateAccessToken(UserDtls user) {
         Instant now = Instant.now();
         Instant expiryDate = now.plusMillis(jwtConfig.getAccessTokenExpiration());
 
         return Jwts.builder()
-                .subject(userPrincipal.getUsername())
-                .claim("roles", roles)
+                .subject(user.getUsername())
+                .claim(CLAIM_USER_ID, user.getId())
+                .claim(CLAIM_ROLE, user.getRoleName())
+                .claim("roles", List.of("ROLE_" + user.getRoleName()))
+                .claim(CLAIM_TOKEN_VERSION, tokenVersion(user))
                 .issuer(jwtConfig.getIssuer())
                 .issuedAt(Date.from(now))
                 .expiration(Date.from(expiryDate))
@@ -50,12 +56,15 @@ public class JwtTokenProvider {
                 .compact();
     }
 
-    public String generateRefreshToken(String username) {
+    public String generateRefreshToken(UserDtls user) {
         Instant now = Instant.now();
         Instant expiryDate = now.plusMillis(jwtConfig.getRefreshTokenExpiration());
 
         return Jwts.builder()
-                .subject(username)
+                .subject(user.getUsername())
+                .claim(CLAIM_USER_ID, user.getId())
+                .claim(CLAIM_TOKEN_VERSION, tokenVersion(user))
+                .claim(CLAIM_TOKEN_TYPE, REFRESH_TOKEN_TYPE)
                 .issuer(jwtConfig.getIssuer())
                 .issuedAt(Date.from(now))
                 .expiration(Date.from(expiryDate))
@@ -63,6 +72,40 @@ public class JwtTokenProvider {
                 .compact();
     }
 
+    public boolean isRefreshToken(Claims claims) {
+        return REFRESH_TOKEN_TYPE.equals(claims.get(CLAIM_TOKEN_TYPE, String.class));
+    }
+
+    /**
+     * Verify chữ ký và hạn một lần; empty nếu token không hợp lệ.
+     */
+    public Optional<Claims> parseClaims(String token) {
+        try {
+            return Optional.of(getClaimsFromToken(token));
+        } catch (JwtException | IllegalArgumentException e) {
+            log.debug("Invalid JWT token: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Dựng principal từ claims của access token; empty với token cũ chưa có userId/role.
+     */
+    public Optional<UserPrincipal> toPrincipal(Claims claims) {
+        Number userId = claims.get(CLAIM_USER_ID, Number.class);
+        String role = claims.get(CLAIM_ROLE, String.class);
+        if (userId == null || role == null) {
+            return Optional.empty();
+        }
+        Number version = claims.get(CLAIM_TOKEN_VERSION, Number.class);
+        return Optional.of(new UserPrincipal(userId.longValue(), claims.getSubject(), role,
+                version != null ? version.intValue() : 0, null, true));
+    }
+
+    private int tokenVersion(UserDtls user) {
+        return user.getTokenVersion() != null ? user.getTokenVersion() : 0;
+    }
+
     public String getUsernameFromToken(String token) {
         Claims claims = Jwts.parser()
                 .verifyWith(getSigningKey())
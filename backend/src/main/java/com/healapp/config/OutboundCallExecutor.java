@@ -0,0 +1,133 @@
+package com.healapp.config;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import com.healapp.exception.ExternalServiceException;
+import com.healapp.utils.CircuitBreaker;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bọc mọi lời gọi ra hệ thống ngoài (MB Bank, Google, Twilio): circuit breaker theo client,
+ * retry có backoff cho lỗi tạm thời và histogram độ trễ theo endpoint (outbound.http.latency).
+ */
+@Slf4j
+@Component
+public class OutboundCallExecutor {
+
+    @FunctionalInterface
+    public interface OutboundCall<T> {
+        T call() throws Exception;
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${banking.api.retry.attempts:3}")
+    private int maxAttempts = 3;
+
+    @Value("${outbound.http.retry.backoff-ms:200}")
+    private long backoffMs = 200;
+
+    @Value("${outbound.http.circuit.failure-threshold:5}")
+    private int failureThreshold = 5;
+
+    @Value("${outbound.http.circuit.open-seconds:30}")
+    private long openSeconds = 30;
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * Thực thi lời gọi. retryable = false cho thao tác không idempotent (ví dụ gửi SMS),
+     * khi đó chỉ thử một lần nhưng vẫn tính vào circuit breaker và metrics.
+     */
+    public <T> T execute(String client, String endpoint, boolean retryable, OutboundCall<T> call) {
+        CircuitBreaker breaker = breakers.computeIfAbsent(client,
+                name -> new CircuitBreaker(name, failureThreshold, Duration.ofSeconds(openSeconds)));
+        int attempts = retryable ? Math.max(1, maxAttempts) : 1;
+
+        for (int attempt = 1;; attempt++) {
+            if (!breaker.tryAcquire()) {
+                meterRegistry.counter("outbound.http.rejected", "client", client, "endpoint", endpoint).increment();
+                throw new ExternalServiceException("Circuit open for " + client + ", call to " + endpoint + " rejected");
+            }
+
+            long startedAt = System.nanoTime();
+            String outcome = "success";
+            try {
+                T result = call.call();
+                breaker.onSuccess();
+                return result;
+            } catch (Exception e) {
+                boolean transientFailure = isTransient(e);
+                outcome = transientFailure ? "error" : "rejected";
+                if (transientFailure) {
+                    breaker.onFailure();
+                } else {
+                    // Phía bên kia vẫn trả lời (4xx, token sai...) nên không coi là sự cố
+                    breaker.onSuccess();
+                }
+                if (!transientFailure || attempt >= attempts) {
+                    throw e instanceof RuntimeException runtime ? runtime
+                            : new ExternalServiceException(client + " call to " + endpoint + " failed: " + e.getMessage(), e);
+                }
+                log.warn("Outbound call {} {} failed (attempt {}/{}): {}", client, endpoint, attempt, attempts,
+                        e.getMessage());
+                sleepBeforeRetry(attempt);
+            } finally {
+                Timer.builder("outbound.http.latency")
+                        .tag("client", client)
+                        .tag("endpoint", endpoint)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    public CircuitBreaker.State getCircuitState(String client) {
+        CircuitBreaker breaker = breakers.get(client);
+        return breaker != null ? breaker.getState() : CircuitBreaker.State.CLOSED;
+    }
+
+    // Lỗi mạng, timeout, 5xx và 429 là tạm thời; còn lại trả thẳng cho nơi gọi
+    private boolean isTransient(Throwable e) {
+        if (e instanceof HttpServerErrorException || e instanceof HttpClientErrorException.TooManyRequests
+                || e instanceof ResourceAccessException) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Exponential backoff có jitter để các lần thử lại không dồn cùng lúc
+    private void sleepBeforeRetry(int attempt) {
+        long delay = backoffMs * (1L << Math.min(attempt - 1, 10));
+        delay += ThreadLocalRandom.current().nextLong(backoffMs / 2 + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExternalServiceException("Interrupted while waiting to retry outbound call", e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.healapp.config;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+@Configuration
+public class OutboundHttpConfig {
+
+    // Một HttpClient dùng chung: giữ kết nối keep-alive theo host, có connect/read timeout
+    @Bean(name = "outboundRestTemplate")
+    public RestTemplate outboundRestTemplate(
+            @Value("${outbound.http.connect-timeout-ms:5000}") long connectTimeoutMs,
+            @Value("${banking.api.timeout.seconds:30}") long readTimeoutSeconds) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofSeconds(readTimeoutSeconds));
+        return new RestTemplate(requestFactory);
+    }
+}
@@ -0,0 +1,99 @@
+package com.healapp.config;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.lang.NonNull;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.healapp.service.RateLimiterService;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Giới hạn tần suất theo route trong security filter chain, trả 429 trước khi request tới controller
+ * (BCrypt, SQL, gửi SMS/email). Scope IP đặt trước JwtAuthenticationFilter, scope USER đặt sau để dùng user
+ * đã xác thực; request chưa đăng nhập bỏ qua scope USER.
+ */
+@Slf4j
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    public enum Scope {
+        IP, USER
+    }
+
+    private record Rule(RequestMatcher matcher, String policy) {
+    }
+
+    private final RateLimiterService rateLimiterService;
+    private final Scope scope;
+    private final List<Rule> rules = new ArrayList<>();
+
+    public RateLimitFilter(RateLimiterService rateLimiterService, Scope scope) {
+        this.rateLimiterService = rateLimiterService;
+        this.scope = scope;
+    }
+
+    public RateLimitFilter limit(HttpMethod method, String pattern, String policy) {
+        rateLimiterService.getPolicy(policy); // báo lỗi sớm nếu sai tên chính sách
+        rules.add(new Rule(AntPathRequestMatcher.antMatcher(method, pattern), policy));
+        return this;
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain) throws ServletException, IOException {
+        String key = resolveKey(request);
+        if (key != null) {
+            for (Rule rule : rules) {
+                if (!rule.matcher().matches(request)) {
+                    continue;
+                }
+                Optional<Duration> wait = rateLimiterService.tryAcquire(rule.policy(), key);
+                if (wait.isPresent()) {
+                    reject(request, response, rule.policy(), key, wait.get());
+                    return;
+                }
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private String resolveKey(HttpServletRequest request) {
+        if (scope == Scope.IP) {
+            // Sau proxy: server.forward-headers-strategy để getRemoteAddr trả về IP client
+            return request.getRemoteAddr();
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, String policy, String key,
+            Duration wait) throws IOException {
+        long retryAfter = RateLimiterService.retryAfterSeconds(wait);
+        log.debug("Rate limit {} exceeded by {} on {} {}", policy, key, request.getMethod(), request.getRequestURI());
+        response.setStatus(429);
+        response.setHeader("Retry-After", String.valueOf(retryAfter));
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write("{\"success\":false,\"message\":\"Too many requests, please retry after "
+                + retryAfter + " seconds\"}");
+    }
+}
@@ -1,11 +1,10 @@
 package com.healapp.config;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -17,7 +16,6 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -31,7 +29,10 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
 import com.healapp.model.UserDtls;
 import com.healapp.repository.UserRepository;
+import com.healapp.service.RateLimiterService;
+import com.healapp.service.TokenVersionService;
 
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -47,9 +48,15 @@ public class SecurityConfig {
     @Autowired
     private JwtTokenProvider jwtTokenProvider;
 
+    @Autowired
+    private RateLimiterService rateLimiterService;
+
+    @Autowired
+    private TokenVersionService tokenVersionService;
+
     @Bean
     public JwtAuthenticationFilter jwtAuthenticationFilter() {
-        return new JwtAuthenticationFilter(jwtTokenProvider, userDetailsService());
+        return new JwtAuthenticationFilter(jwtTokenProvider, userDetailsService(), tokenVersionService);
     }
 
     @Bean
@@ -57,10 +64,17 @@ public class SecurityConfig {
             throws Exception {
         http.csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(auth -> auth
+                        // Async dispatch của SSE (SseEmitter): request gốc đã được xác thực
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                         // ========= PUBLIC ENDPOINTS =========
                         // Static resources
                         .requestMatchers("/img/**", "/static/**").permitAll()
 
+                        // Actuator: chỉ health công khai (load balancer), metrics và endpoint khác dành cho ADMIN
+                        .requestMatchers(HttpMethod.GET, "/actuator/health", "/actuator/health/**").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
+
                         // API Authentication & User Management
                         .requestMatchers("/users/register", "/users/login", "/users/logout",
                                 "/users/forgot-password", "/users/reset-password", "/users/send-verification",
@@ -107,6 +121,9 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.GET, "/ratings/summary/sti-package/{packageId}").permitAll()
                         .requestMatchers(HttpMethod.GET, "/ratings/testimonials").permitAll()
 
+                        // ========= WEBHOOKS (xác thực bằng chữ ký, không dùng JWT) =========
+                        .requestMatchers(HttpMethod.POST, "/webhooks/stripe").permitAll()
+
                         // ========= QUESTION PUBLIC ENDPOINTS =========
                         .requestMatchers(HttpMethod.GET, "/questions/answered").permitAll()
                         .requestMatchers(HttpMethod.GET, "/questions/search").permitAll()
@@ -135,6 +152,9 @@ public class SecurityConfig {
                                                                                                            // endpoints)
                         .requestMatchers(HttpMethod.POST, "/sti-services/book-test").authenticated()
                         .requestMatchers(HttpMethod.GET, "/sti-services/my-tests").authenticated()
+                        .requestMatchers(HttpMethod.GET, "/sti-services/my-payments").authenticated()
+                        .requestMatchers(HttpMethod.GET, "/payments/qr/{qrReference}/status").authenticated()
+                        .requestMatchers(HttpMethod.GET, "/payments/qr/{qrReference}/events").authenticated()
                         .requestMatchers(HttpMethod.GET, "/sti-services/tests/{testId}").authenticated()
                         .requestMatchers(HttpMethod.PUT, "/sti-services/tests/{testId}/cancel").authenticated()
                         .requestMatchers(HttpMethod.GET, "/sti-services/tests/{testId}/results").authenticated()
@@ -285,6 +305,8 @@ public class SecurityConfig {
 
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+                .addFilterBefore(ipRateLimitFilter(), JwtAuthenticationFilter.class)
+                .addFilterAfter(userRateLimitFilter(), JwtAuthenticationFilter.class)
                 .httpBasic(Customizer.withDefaults())
                 .cors(Customizer.withDefaults()).logout(logout -> logout
                         .logoutUrl("/users/logout")
@@ -296,6 +318,38 @@ public class SecurityConfig {
         return http.build();
     }
 
+    // Không khai báo @Bean: tránh Spring Boot đăng ký thêm lần nữa như servlet filter
+    private RateLimitFilter ipRateLimitFilter() {
+        return new RateLimitFilter(rateLimiterService, RateLimitFilter.Scope.IP)
+                // Đăng nhập: chặn trước BCrypt
+                .limit(HttpMethod.POST, "/users/login", RateLimiterService.LOGIN_IP)
+                .limit(HttpMethod.POST, "/auth/login", RateLimiterService.LOGIN_IP)
+                .limit(HttpMethod.POST, "/auth/oauth/google/login", RateLimiterService.LOGIN_IP)
+                // Gửi/kiểm tra mã OTP qua email, SMS
+                .limit(HttpMethod.POST, "/users/register", RateLimiterService.OTP_IP)
+                .limit(HttpMethod.POST, "/users/send-verification", RateLimiterService.OTP_IP)
+                .limit(HttpMethod.POST, "/users/forgot-password", RateLimiterService.OTP_IP)
+                .limit(HttpMethod.POST, "/users/reset-password", RateLimiterService.OTP_IP)
+                .limit(HttpMethod.POST, "/users/send-phone-verification-code", RateLimiterService.OTP_IP)
+                .limit(HttpMethod.POST, "/users/profile/email/send-verification", RateLimiterService.OTP_IP)
+                .limit(HttpMethod.POST, "/users/profile/delete-account/send-verification",
+                        RateLimiterService.OTP_IP)
+                // Tạo thanh toán
+                .limit(HttpMethod.POST, "/sti-services/book-test", RateLimiterService.PAYMENT_IP)
+                .limit(HttpMethod.POST, "/sti-services/tests/{testId}/retry-payment", RateLimiterService.PAYMENT_IP);
+    }
+
+    private RateLimitFilter userRateLimitFilter() {
+        return new RateLimitFilter(rateLimiterService, RateLimitFilter.Scope.USER)
+                .limit(HttpMethod.POST, "/users/send-phone-verification-code", RateLimiterService.OTP_USER)
+                .limit(HttpMethod.POST, "/users/profile/email/send-verification", RateLimiterService.OTP_USER)
+                .limit(HttpMethod.POST, "/users/profile/delete-account/send-verification",
+                        RateLimiterService.OTP_USER)
+                .limit(HttpMethod.POST, "/sti-services/book-test", RateLimiterService.PAYMENT_USER)
+                .limit(HttpMethod.POST, "/sti-services/tests/{testId}/retry-payment",
+                        RateLimiterService.PAYMENT_USER);
+    }
+
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
         CorsConfiguration configuration = new CorsConfiguration();
@@ -311,8 +365,9 @@ public class SecurityConfig {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${security.password-hash.bcrypt-strength:10}") int strength) {
+        // Hash lưu với cost thấp hơn strength được PasswordHashService rehash ở lần login thành công kế tiếp
+        return new BCryptPasswordEncoder(strength);
     }
 
     @Bean
@@ -330,18 +385,7 @@ public class SecurityConfig {
                 throw new UsernameNotFoundException("Không tìm thấy người dùng: " + username);
             }
 
-            Collection<SimpleGrantedAuthority> authorities = new ArrayList<>();
-            String roleName = user.getRoleName();
-            authorities.add(new SimpleGrantedAuthority("ROLE_" + roleName));
-
-            return new org.springframework.security.core.userdetails.User(
-                    user.getUsername(),
-                    user.getPassword(),
-                    user.getIsActive(),
-                    true,
-                    true,
-                    true,
-                    authorities);
+            return UserPrincipal.fromUser(user);
         };
     }
 
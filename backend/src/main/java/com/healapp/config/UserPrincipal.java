@@ -0,0 +1,71 @@
+package com.healapp.config;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import com.healapp.model.UserDtls;
+
+import lombok.Getter;
+
+/**
+ * Principal của request đã xác thực. Dựng từ claims của access token (không truy vấn DB)
+ * hoặc từ UserDtls khi đăng nhập bằng username/password.
+ */
+@Getter
+public class UserPrincipal implements UserDetails {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long id;
+    private final String username;
+    private final String role;
+    private final int tokenVersion;
+    private final String password;
+    private final boolean enabled;
+    private final List<GrantedAuthority> authorities;
+
+    public UserPrincipal(Long id, String username, String role, int tokenVersion, String password,
+            boolean enabled) {
+        this.id = id;
+        this.username = username;
+        this.role = role;
+        this.tokenVersion = tokenVersion;
+        this.password = password;
+        this.enabled = enabled;
+        this.authorities = role != null ? List.of(new SimpleGrantedAuthority("ROLE_" + role)) : List.of();
+    }
+
+    public static UserPrincipal fromUser(UserDtls user) {
+        return new UserPrincipal(user.getId(), user.getUsername(), user.getRoleName(),
+                user.getTokenVersion() != null ? user.getTokenVersion() : 0, user.getPassword(),
+                Boolean.TRUE.equals(user.getIsActive()) && !Boolean.TRUE.equals(user.getIsDeleted()));
+    }
+
+    /**
+     * Principal của request hiện tại; empty nếu chưa đăng nhập (hoặc chạy ngoài request, ví dụ job @Scheduled).
+     */
+    public static Optional<UserPrincipal> current() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserPrincipal principal) {
+            return Optional.of(principal);
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String toString() {
+        return "UserPrincipal[id=" + id + ", username=" + username + ", role=" + role + "]";
+    }
+}
@@ -0,0 +1,109 @@
+package com.healapp.config;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Theo dõi virtual thread bị ghim vào carrier thread (sự kiện JFR jdk.VirtualThreadPinned) khi chạy chế độ
+ * virtual thread. Từ JDK 24 synchronized không còn ghim, nhưng native frame, class init hay thư viện giữ lock
+ * lâu vẫn có thể làm cạn carrier pool. Mỗi vị trí ghim được log một lần kèm stack trace, tổng số và thời gian
+ * đi vào metric virtual.threads.pinned.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = { "spring.threads.virtual.enabled",
+        "virtual-threads.pinning-monitor.enabled" }, havingValue = "true")
+public class VirtualThreadPinningMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int MAX_LOGGED_SITES = 200;
+    private static final int STACK_DEPTH = 12;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${virtual-threads.pinning-monitor.threshold-ms:20}")
+    private long thresholdMs = 20;
+
+    private final Map<String, Boolean> loggedSites = new ConcurrentHashMap<>();
+
+    private RecordingStream recordingStream;
+
+    @PostConstruct
+    public void start() {
+        try {
+            recordingStream = new RecordingStream();
+            recordingStream.enable(PINNED_EVENT)
+                    .withThreshold(Duration.ofMillis(thresholdMs))
+                    .withStackTrace();
+            recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+            recordingStream.startAsync();
+            log.info("Virtual thread pinning monitor started (threshold {} ms)", thresholdMs);
+        } catch (Exception e) {
+            // JFR có thể bị tắt trên một số JVM; chỉ mất phần giám sát
+            log.warn("Cannot start virtual thread pinning monitor: {}", e.getMessage());
+            recordingStream = null;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        meterRegistry.timer("virtual.threads.pinned").record(event.getDuration());
+
+        String site = topApplicationFrame(event);
+        if (loggedSites.size() < MAX_LOGGED_SITES && loggedSites.putIfAbsent(site, Boolean.TRUE) == null) {
+            log.warn("Virtual thread pinned for {} ms at {}\n{}", event.getDuration().toMillis(), site,
+                    formatStack(event));
+        }
+    }
+
+    // Frame đầu tiên thuộc com.healapp, nếu không có thì frame trên cùng
+    private String topApplicationFrame(RecordedEvent event) {
+        if (event.getStackTrace() == null || event.getStackTrace().getFrames().isEmpty()) {
+            return "unknown";
+        }
+        List<RecordedFrame> frames = event.getStackTrace().getFrames();
+        RecordedFrame top = frames.stream()
+                .filter(frame -> frame.getMethod().getType().getName().startsWith("com.healapp."))
+                .findFirst()
+                .orElse(frames.get(0));
+        return top.getMethod().getType().getName() + "." + top.getMethod().getName();
+    }
+
+    private String formatStack(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "";
+        }
+        return event.getStackTrace().getFrames().stream()
+                .limit(STACK_DEPTH)
+                .map(this::formatFrame)
+                .collect(Collectors.joining("\n"));
+    }
+
+    private String formatFrame(RecordedFrame frame) {
+        return "\tat " + frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                + "(line " + frame.getLineNumber() + ")";
+    }
+}
@@ -1,14 +1,15 @@
 package com.healapp.controller;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashSet;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -20,23 +21,26 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.healapp.dto.ApiResponse;
 import com.healapp.dto.ConsultantProfileResponse;
 import com.healapp.dto.CreateAccountRequest;
+import com.healapp.dto.PaymentPageResponse;
+import com.healapp.dto.PaymentTransactionResponse;
 import com.healapp.dto.UserResponse;
 import com.healapp.dto.UserUpdateRequest;
-import com.healapp.model.Payment;
 import com.healapp.model.PaymentStatus;
 import com.healapp.model.UserDtls;
 import com.healapp.service.ConsultantService;
-import com.healapp.service.ConsultationService;
+import com.healapp.service.DashboardStatsService;
 import com.healapp.service.PaymentService;
-import com.healapp.service.QuestionService;
-import com.healapp.service.RatingService;
-import com.healapp.service.STIPackageService;
+import com.healapp.service.RevenueRollupService;
 import com.healapp.service.STIServiceService;
 import com.healapp.service.UserService;
+import com.healapp.utils.PaymentCursor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import jakarta.validation.Valid;
 
@@ -54,16 +58,22 @@ public class AdminController {
     @Autowired
     private PaymentService paymentService;
 
-    @Autowired
-    private ConsultationService consultationService;
     @Autowired
     private STIServiceService stiServiceService;
     @Autowired
-    private STIPackageService stiPackageService;
+    private DashboardStatsService dashboardStatsService;
     @Autowired
-    private QuestionService questionService;
+    private ObjectMapper objectMapper;
+
     @Autowired
-    private RatingService ratingService;
+    private RevenueRollupService revenueRollupService;
+
+    @Value("${admin.revenue.stream-page-size:500}")
+    private int revenueStreamPageSize;
+
+    // Trần số giao dịch mỗi response khi không truyền limit, để export lớn xong trong spring.mvc.async.request-timeout
+    @Value("${admin.revenue.stream-max-items:100000}")
+    private int revenueStreamMaxItems;
 
     // @Autowired
     // private AppConfigService appConfigService;
@@ -476,87 +486,102 @@ public class AdminController {
             @RequestParam(value = "toDate", required = false) String toDateStr) {
         LocalDateTime fromDate = parseDateTime(fromDateStr, true);
         LocalDateTime toDate = parseDateTime(toDateStr, false);
-        // Lấy tất cả payment COMPLETED trong khoảng thời gian
-        List<Payment> payments = paymentService.getPaymentsByStatusAndDate(PaymentStatus.COMPLETED, fromDate, toDate);
-        BigDecimal totalRevenue = payments.stream().map(Payment::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
-        int totalTransactions = payments.size();
-        BigDecimal avgRevenue = totalTransactions > 0
-                ? totalRevenue.divide(BigDecimal.valueOf(totalTransactions), 0, BigDecimal.ROUND_HALF_UP)
-                : BigDecimal.ZERO;
-        HashSet<Long> customerIds = new HashSet<>();
-        for (Payment p : payments)
-            customerIds.add(p.getUser().getId()); // Sửa: lấy id từ đối tượng user
-        int totalCustomers = customerIds.size();
-        Map<String, Object> result = Map.of(
-                "totalRevenue", totalRevenue,
-                "totalTransactions", totalTransactions,
-                "averageRevenue", avgRevenue,
-                "totalCustomers", totalCustomers);
+        // Đọc bảng tổng hợp theo ngày, chỉ phần lẻ đầu/cuối khoảng mới truy vấn payments
+        Map<String, Object> result = revenueRollupService.getRevenueSummary(fromDate, toDate);
         return getResponseEntity(ApiResponse.success("Revenue summary", result));
     }
 
     /**
-     * Danh sách giao dịch đã thanh toán
+     * Dựng lại bảng tổng hợp doanh thu từ payments (backfill hoặc sửa sai lệch)
+     * POST /admin/revenue/rollup/rebuild
+     * Query: fromDate, toDate (yyyy-MM-dd)
+     */
+    @PostMapping("/revenue/rollup/rebuild")
+    public ResponseEntity<ApiResponse<Integer>> rebuildRevenueRollup(
+            @RequestParam("fromDate") String fromDateStr,
+            @RequestParam("toDate") String toDateStr) {
+        try {
+            int days = revenueRollupService.rebuild(LocalDate.parse(fromDateStr), LocalDate.parse(toDateStr));
+            return getResponseEntity(ApiResponse.success("Rebuilt revenue rollup for " + days + " days", days));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return getResponseEntity(ApiResponse.error("Invalid date range: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Danh sách payment (mọi trạng thái), mới nhất trước, phân trang keyset
+     * GET /admin/payments
+     * Query: cursor (optional), limit (optional)
+     */
+    @GetMapping("/payments")
+    public ResponseEntity<ApiResponse<PaymentPageResponse>> getAllPayments(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        return getResponseEntity(paymentService.getAllPayments(cursor, limit));
+    }
+
+    /**
+     * Danh sách giao dịch đã thanh toán, stream từng trang keyset ra response
      * GET /admin/revenue/transactions
-     * Query: fromDate, toDate (ISO-8601, optional)
+     * Query: fromDate, toDate (ISO-8601, optional), cursor (optional), limit (optional)
+     * Không có limit thì stream tối đa admin.revenue.stream-max-items giao dịch; còn nữa thì trả nextCursor
+     * cho lần gọi sau. Response chạy trên MVC async nên bị cắt sau spring.mvc.async.request-timeout.
      */
     @GetMapping("/revenue/transactions")
-    public ResponseEntity<ApiResponse<List<Map<String, Object>>>> getRevenueTransactions(
+    public ResponseEntity<?> getRevenueTransactions(
             @RequestParam(value = "fromDate", required = false) String fromDateStr,
-            @RequestParam(value = "toDate", required = false) String toDateStr) {
+            @RequestParam(value = "toDate", required = false) String toDateStr,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit) {
         LocalDateTime fromDate = parseDateTime(fromDateStr, true);
         LocalDateTime toDate = parseDateTime(toDateStr, false);
-        List<Payment> payments = paymentService.getPaymentsByStatusAndDate(PaymentStatus.COMPLETED, fromDate, toDate);
-        // Map sang DTO có thêm customerName
-        List<Map<String, Object>> result = payments.stream().map(payment -> {
-            Map<String, Object> map = new java.util.HashMap<>();
-            map.put("paymentId", payment.getPaymentId());
-            map.put("userId", payment.getUser().getId()); // Sửa: lấy id từ đối tượng user
-            // Lấy tên khách hàng
-            String customerName = null;
-            try {
-                UserDtls user = payment.getUser(); // Sửa: lấy trực tiếp từ payment
-                customerName = user != null ? user.getFullName() : null;
-            } catch (Exception e) {
-                customerName = null;
+        PaymentCursor start;
+        try {
+            start = cursor != null ? PaymentCursor.decode(cursor) : PaymentCursor.startingAt(toDate);
+        } catch (IllegalArgumentException e) {
+            return getResponseEntity(ApiResponse.error("Invalid cursor"));
+        }
+        int maxItems = limit != null ? Math.min(Math.max(1, limit), revenueStreamMaxItems) : revenueStreamMaxItems;
+
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = objectMapper.createGenerator(out)) {
+                json.writeStartObject();
+                json.writeBooleanField("success", true);
+                json.writeStringField("message", "Completed transactions");
+                json.writeArrayFieldStart("data");
+
+                PaymentCursor position = start;
+                int written = 0;
+                while (position != null && written < maxItems) {
+                    int pageSize = Math.min(revenueStreamPageSize, maxItems - written);
+                    List<PaymentTransactionResponse> page = paymentService.getTransactionPage(
+                            PaymentStatus.COMPLETED, fromDate, position, pageSize);
+                    for (PaymentTransactionResponse transaction : page) {
+                        json.writeObject(transaction);
+                    }
+                    written += page.size();
+                    if (page.size() < pageSize) {
+                        position = null;
+                    } else {
+                        PaymentTransactionResponse last = page.get(page.size() - 1);
+                        position = new PaymentCursor(last.getCreatedAt(), last.getPaymentId());
+                    }
+                    json.flush();
+                }
+
+                json.writeEndArray();
+                json.writeStringField("nextCursor", position != null ? position.encode() : null);
+                json.writeObjectField("timestamp", LocalDateTime.now());
+                json.writeEndObject();
             }
-            map.put("customerName", customerName);
-            map.put("serviceType", payment.getServiceType());
-            map.put("serviceId", payment.getServiceId());
-            map.put("paymentMethod", payment.getPaymentMethod());
-            map.put("paymentStatus", payment.getPaymentStatus());
-            map.put("amount", payment.getAmount());
-            map.put("currency", payment.getCurrency());
-            map.put("stripePaymentIntentId", payment.getStripePaymentIntentId());
-            map.put("qrPaymentReference", payment.getQrPaymentReference());
-            map.put("qrCodeUrl", payment.getQrCodeUrl());
-            map.put("transactionId", payment.getTransactionId());
-            map.put("createdAt", payment.getCreatedAt());
-            map.put("paidAt", payment.getPaidAt());
-            map.put("expiresAt", payment.getExpiresAt());
-            map.put("updatedAt", payment.getUpdatedAt());
-            map.put("refundId", payment.getRefundId());
-            map.put("refundedAt", payment.getRefundedAt());
-            map.put("refundAmount", payment.getRefundAmount());
-            map.put("description", payment.getDescription());
-            map.put("notes", payment.getNotes());
-            map.put("expired", payment.isExpired());
-            map.put("paymentDisplayInfo", payment.getPaymentDisplayInfo());
-            map.put("completed", payment.isCompleted());
-            return map;
-        }).toList();
-        return getResponseEntity(ApiResponse.success("Completed transactions", result));
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 
+    // Đọc snapshot thống kê được làm mới nền, không truy vấn DB trong request
     @GetMapping("/dashboard/overview")
     public ResponseEntity<ApiResponse<Map<String, Object>>> getAdminDashboardOverview() {
-        Map<String, Object> overview = new java.util.HashMap<>();
-        overview.putAll(userService.getAdminDashboardUserStats());
-        overview.putAll(consultationService.getAdminDashboardConsultationStats());
-        overview.putAll(stiServiceService.getAdminDashboardServiceStats());
-        overview.putAll(stiPackageService.getAdminDashboardPackageStats());
-        overview.putAll(questionService.getAdminDashboardQuestionStats());
-        overview.putAll(ratingService.getAdminDashboardRatingStats());
+        Map<String, Object> overview = new java.util.HashMap<>(dashboardStatsService.getOverview().stats());
         return getResponseEntity(ApiResponse.success("Admin dashboard overview", overview));
     }
 
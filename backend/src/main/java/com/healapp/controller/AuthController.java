@@ -1,10 +1,10 @@
 package com.healapp.controller;
 
+import java.util.Optional;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -19,6 +19,7 @@ import com.healapp.dto.RefreshTokenRequest;
 import com.healapp.model.UserDtls;
 import com.healapp.service.UserService;
 
+import io.jsonwebtoken.Claims;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 
@@ -51,19 +52,9 @@ public class AuthController {
             // Lấy thông tin user từ response
             UserDtls user = userService.getUserByUsername(loginResponse.getData().getUsername());
 
-            // Tạo authentication object cho JWT token
-            UserDetails userDetails = org.springframework.security.core.userdetails.User.builder()
-                    .username(user.getUsername())
-                    .password("") // Không cần password cho token generation
-                    .authorities("ROLE_" + user.getRoleName())
-                    .build();
-
-            UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                    userDetails, null, userDetails.getAuthorities());
-
-            // Tạo JWT tokens
-            String accessToken = tokenProvider.generateAccessToken(authentication);
-            String refreshToken = tokenProvider.generateRefreshToken(user.getUsername());
+            // Tạo JWT tokens (mang userId, role, tokenVersion)
+            String accessToken = tokenProvider.generateAccessToken(user);
+            String refreshToken = tokenProvider.generateRefreshToken(user);
 
             JwtResponse jwtResponse = new JwtResponse(
                     accessToken,
@@ -86,31 +77,33 @@ public class AuthController {
     @PostMapping("/refresh-token")
     public ResponseEntity<?> refreshToken(@Valid @RequestBody RefreshTokenRequest request) {
         try {
-            String refreshToken = request.getRefreshToken();
-            if (!tokenProvider.validateToken(refreshToken)) {
+            // Không nhận access token ở đây (token cũ chưa có uid/typ vẫn được chấp nhận tới khi hết hạn)
+            Optional<Claims> claims = tokenProvider.parseClaims(request.getRefreshToken());
+            if (claims.isEmpty() || (!tokenProvider.isRefreshToken(claims.get())
+                    && claims.get().get(JwtTokenProvider.CLAIM_USER_ID) != null)) {
                 return ResponseEntity.badRequest()
                         .body(new ApiResponse<String>(false, "Invalid refresh token"));
             }
 
-            String username = tokenProvider.getUsernameFromToken(refreshToken);
+            String username = claims.get().getSubject();
             UserDtls user = userService.getUserByUsername(username);
 
             if (user == null) {
                 return ResponseEntity.badRequest()
                         .body(new ApiResponse<String>(false, "User not found"));
-            } // Create a proper UserDetails object for authentication
-            UserDetails userDetails = org.springframework.security.core.userdetails.User.builder()
-                    .username(user.getUsername())
-                    .password("") // Not needed for token generation
-                    .authorities("ROLE_" + user.getRoleName())
-                    .build();
-
-            // Create authentication object for new access token
-            UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                    userDetails, null, userDetails.getAuthorities());
-
-            String newAccessToken = tokenProvider.generateAccessToken(authentication);
-            String newRefreshToken = tokenProvider.generateRefreshToken(username);
+            }
+
+            // Tài khoản bị khoá/xoá hoặc đã đổi mật khẩu, role sau khi phát hành refresh token
+            Number tokenVersion = claims.get().get(JwtTokenProvider.CLAIM_TOKEN_VERSION, Number.class);
+            int currentVersion = user.getTokenVersion() != null ? user.getTokenVersion() : 0;
+            if (!Boolean.TRUE.equals(user.getIsActive()) || Boolean.TRUE.equals(user.getIsDeleted())
+                    || (tokenVersion != null && tokenVersion.intValue() != currentVersion)) {
+                return ResponseEntity.badRequest()
+                        .body(new ApiResponse<String>(false, "Invalid refresh token"));
+            }
+
+            String newAccessToken = tokenProvider.generateAccessToken(user);
+            String newRefreshToken = tokenProvider.generateRefreshToken(user);
             JwtResponse jwtResponse = new JwtResponse(
                     newAccessToken,
                     newRefreshToken,
@@ -1,17 +1,16 @@
 package com.healapp.controller;
 
+import com.healapp.config.CurrentUser;
 import com.healapp.dto.ApiResponse;
 import com.healapp.dto.CategoryQuestionRequest;
 import com.healapp.dto.CategoryQuestionResponse;
 
 import com.healapp.service.CategoryQuestionService;
-import com.healapp.service.UserService;
 
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -23,17 +22,11 @@ public class CategoryQuestionController {
     @Autowired
     private CategoryQuestionService categoryQuestionService;
 
-    @Autowired
-    private UserService userService;
-
     @PostMapping
     @PreAuthorize("hasRole('ADMIN') or hasRole('STAFF')")
     public ResponseEntity<ApiResponse<CategoryQuestionResponse>> createCategory(
             @Valid @RequestBody CategoryQuestionRequest request,
-            Authentication authentication) {
-
-        String username = authentication.getName();
-        Long staffId = userService.getUserIdFromUsername(username);
+            @CurrentUser Long staffId) {
 
         ApiResponse<CategoryQuestionResponse> response = categoryQuestionService.createCategory(request, staffId);
         return ResponseEntity.ok(response);
@@ -44,10 +37,7 @@ public class CategoryQuestionController {
     public ResponseEntity<ApiResponse<CategoryQuestionResponse>> updateCategory(
             @PathVariable Long categoryId,
             @Valid @RequestBody CategoryQuestionRequest request,
-            Authentication authentication) {
-
-        String username = authentication.getName();
-        Long staffId = userService.getUserIdFromUsername(username);
+            @CurrentUser Long staffId) {
 
         ApiResponse<CategoryQuestionResponse> response = categoryQuestionService.updateCategory(categoryId, request,
                 staffId);
@@ -58,10 +48,7 @@ public class CategoryQuestionController {
     @PreAuthorize("hasRole('ADMIN') or hasRole('STAFF')")
     public ResponseEntity<ApiResponse<Void>> deleteCategory(
             @PathVariable Long categoryId,
-            Authentication authentication) {
-
-        String username = authentication.getName();
-        Long staffId = userService.getUserIdFromUsername(username);
+            @CurrentUser Long staffId) {
 
         ApiResponse<Void> response = categoryQuestionService.deleteCategory(categoryId, staffId);
         return ResponseEntity.ok(response);
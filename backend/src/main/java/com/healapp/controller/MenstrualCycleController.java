@@ -7,11 +7,10 @@ import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.healapp.config.CurrentUser;
 import com.healapp.dto.ApiResponse;
 import com.healapp.dto.MenstrualCycleRequest;
 import com.healapp.dto.MenstrualCycleResponse;
@@ -19,7 +18,6 @@ import com.healapp.dto.PregnancyProbabilityResponse;
 import com.healapp.model.MenstrualCycle;
 import com.healapp.service.MenstrualCycleService;
 import com.healapp.service.NotificationService;
-import com.healapp.service.UserService;
 
 import jakarta.validation.Valid;
 
@@ -38,8 +36,6 @@ public class MenstrualCycleController {
     @Autowired
     private MenstrualCycleService menstrualCycleService;
 
-    @Autowired
-    private UserService userService;
 
     @Autowired
     private NotificationService notificationService;
@@ -63,8 +59,7 @@ public class MenstrualCycleController {
      */
     @GetMapping
     @PreAuthorize("hasRole('ROLE_CUSTOMER') or hasRole('ROLE_STAFF') or hasRole('ROLE_CONSULTANT')")
-    public ResponseEntity<ApiResponse<List<MenstrualCycle>>> getAllMenstrualCycle(){
-        Long userId = getCurrentUserId();
+    public ResponseEntity<ApiResponse<List<MenstrualCycle>>> getAllMenstrualCycle(@CurrentUser Long userId) {
         ApiResponse<List<MenstrualCycle>> response = menstrualCycleService.getAllMenstrualCycle(userId);
         return ResponseEntity.ok(response);
     }
@@ -76,8 +71,8 @@ public class MenstrualCycleController {
      */
     @GetMapping("/pregnancy-prob")
     @PreAuthorize("hasRole('ROLE_CUSTOMER') or hasRole('ROLE_STAFF') or hasRole('ROLE_CONSULTANT')")
-    public ResponseEntity<ApiResponse<List<MenstrualCycleResponse>>> getAllMenstrualCycleWithPregnancyProb() {
-        Long userId = getCurrentUserId();
+    public ResponseEntity<ApiResponse<List<MenstrualCycleResponse>>> getAllMenstrualCycleWithPregnancyProb(
+            @CurrentUser Long userId) {
         ApiResponse<List<MenstrualCycleResponse>> response = menstrualCycleService.getMenstrualCycleWithPregnancyProb(userId);
         return ResponseEntity.ok(response);
     }
@@ -144,8 +139,7 @@ public class MenstrualCycleController {
      */
     @GetMapping("/average")
     @PreAuthorize("hasRole('ROLE_CUSTOMER') or hasRole('ROLE_STAFF') or hasRole('ROLE_CONSULTANT')")
-    public ResponseEntity<ApiResponse<Double>> getAverageMenstrualCycle() {
-        Long userId = getCurrentUserId();
+    public ResponseEntity<ApiResponse<Double>> getAverageMenstrualCycle(@CurrentUser Long userId) {
         ApiResponse<Double> response = menstrualCycleService.calculateAverageCycleLength(userId);
         return ResponseEntity.ok(response);
     }
@@ -183,9 +177,8 @@ public class MenstrualCycleController {
      */
     // @GetMapping("/predict")
     // @PreAuthorize("hasRole('ROLE_CUSTOMER') or hasRole('ROLE_STAFF') or hasRole('ROLE_CONSULTANT')")
-    // public ResponseEntity<ApiResponse<LocalDate>> predictNextCycle() {
+    // public ResponseEntity<ApiResponse<LocalDate>> predictNextCycle(@CurrentUser Long userId) {
     //     try {
-    //         Long userId = getCurrentUserId();
 
     //         ApiResponse<LocalDate> response = menstrualCycleService.predictNextCycle(userId);
     //         return ResponseEntity.ok(response);
@@ -194,11 +187,5 @@ public class MenstrualCycleController {
     //     }
     // }
 
-
-    private Long getCurrentUserId() {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String username = authentication.getName();
-        return userService.getUserIdFromUsername(username);
-    }
     
 }
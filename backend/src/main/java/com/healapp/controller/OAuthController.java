@@ -4,15 +4,12 @@ import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -53,9 +50,6 @@ public class OAuthController {
     @Autowired
     private JwtTokenProvider tokenProvider;
 
-    @Autowired
-    private UserDetailsService userDetailsService;
-
     @Autowired
     private PasswordEncoder passwordEncoder;
 
@@ -98,9 +92,8 @@ public class OAuthController {
                         user.setFullName(userInfo.getName());
                         user.setUsername(userInfo.getEmail()); // Set username as email for OAuth users
                         
-                        // Encode a default password for OAuth users
-                        String defaultPassword = "OAUTH_USER_" + System.currentTimeMillis(); // More secure default
-                        user.setPassword(passwordEncoder.encode(defaultPassword));
+                        // Mật khẩu ngẫu nhiên không ai biết: muốn đăng nhập bằng mật khẩu thì dùng quên mật khẩu
+                        user.setPassword(passwordEncoder.encode(UUID.randomUUID().toString()));
                         
                         user.setProvider(AuthProvider.GOOGLE);
                         user.setProviderId(userInfo.getProviderId());
@@ -151,8 +144,7 @@ public class OAuthController {
                         try {
                             emailService.sendOAuthAccountCreatedNotificationAsync(
                                 user.getEmail(), 
-                                user.getFullName(), 
-                                defaultPassword
+                                user.getFullName()
                             );
                             logger.info("OAuth account creation notification sent to: {}", user.getEmail());
                         } catch (Exception emailException) {
@@ -176,10 +168,8 @@ public class OAuthController {
 
             // Generate JWT token
             try {
-                UserDetails userDetails = userDetailsService.loadUserByUsername(user.getUsername());
-                Authentication authentication = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-                String jwtToken = tokenProvider.generateAccessToken(authentication);
-                String refreshToken = tokenProvider.generateRefreshToken(user.getUsername());
+                String jwtToken = tokenProvider.generateAccessToken(user);
+                String refreshToken = tokenProvider.generateRefreshToken(user);
 
                 Map<String, Object> response = new HashMap<>();
                 response.put("accessToken", jwtToken);
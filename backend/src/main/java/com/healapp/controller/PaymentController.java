@@ -0,0 +1,54 @@
+package com.healapp.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.healapp.dto.ApiResponse;
+import com.healapp.dto.QRPaymentStatusResponse;
+import com.healapp.service.PaymentService;
+
+@RestController
+@RequestMapping("/payments")
+public class PaymentController {
+
+    @Autowired
+    private PaymentService paymentService;
+
+    /*
+     * description: Trạng thái hiện tại của QR payment (đọc từ bộ nhớ, không truy vấn DB mỗi lần poll)
+     * path: /payments/qr/{qrReference}/status
+     * method: GET
+     */
+    @GetMapping("/qr/{qrReference}/status")
+    public ResponseEntity<ApiResponse<QRPaymentStatusResponse>> getQRPaymentStatus(
+            @PathVariable String qrReference) {
+        ApiResponse<QRPaymentStatusResponse> response = paymentService.getQRPaymentStatus(qrReference,
+                getCurrentUsername());
+        return ResponseEntity.ok(response);
+    }
+
+    /*
+     * description: Server-Sent Events cho QR payment; gửi trạng thái hiện tại ngay khi kết nối,
+     * sau đó một event "status" khi payment hoàn tất hoặc hết hạn rồi đóng kết nối
+     * path: /payments/qr/{qrReference}/events
+     * method: GET (Accept: text/event-stream)
+     */
+    @GetMapping(value = "/qr/{qrReference}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamQRPaymentStatus(@PathVariable String qrReference) {
+        return paymentService.subscribeQRPaymentStatus(qrReference, getCurrentUsername())
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+
+    private String getCurrentUsername() {
+        return SecurityContextHolder.getContext().getAuthentication().getName();
+    }
+}
@@ -4,8 +4,6 @@ import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -16,11 +14,11 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.healapp.config.CurrentUser;
 import com.healapp.dto.ApiResponse;
 import com.healapp.dto.PaymentInfoRequest;
 import com.healapp.dto.PaymentInfoResponse;
 import com.healapp.service.PaymentInfoService;
-import com.healapp.service.UserService;
 
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;   
@@ -34,14 +32,11 @@ public class PaymentInfoController {
     @Autowired
     private PaymentInfoService paymentInfoService;
 
-    @Autowired
-    private UserService userService;
 
     // Lấy tất cả thẻ của user hiện tại
     @GetMapping
-    public ResponseEntity<ApiResponse<List<PaymentInfoResponse>>> getUserPaymentInfos() {
+    public ResponseEntity<ApiResponse<List<PaymentInfoResponse>>> getUserPaymentInfos(@CurrentUser Long userId) {
         try {
-            Long userId = getCurrentUserId();
             ApiResponse<List<PaymentInfoResponse>> response = paymentInfoService.getUserPaymentInfos(userId);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -52,9 +47,8 @@ public class PaymentInfoController {
 
     // Lấy thẻ mặc định của user hiện tại
     @GetMapping("/default")
-    public ResponseEntity<ApiResponse<PaymentInfoResponse>> getDefaultPaymentInfo() {
+    public ResponseEntity<ApiResponse<PaymentInfoResponse>> getDefaultPaymentInfo(@CurrentUser Long userId) {
         try {
-            Long userId = getCurrentUserId();
             ApiResponse<PaymentInfoResponse> response = paymentInfoService.getDefaultPaymentInfo(userId);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -65,9 +59,9 @@ public class PaymentInfoController {
 
     // Lấy thẻ theo ID (với CVV để thanh toán)
     @GetMapping("/{paymentInfoId}/for-payment")
-    public ResponseEntity<ApiResponse<PaymentInfoResponse>> getPaymentInfoForPayment(@PathVariable Long paymentInfoId) {
+    public ResponseEntity<ApiResponse<PaymentInfoResponse>> getPaymentInfoForPayment(@PathVariable Long paymentInfoId,
+            @CurrentUser Long userId) {
         try {
-            Long userId = getCurrentUserId();
             ApiResponse<PaymentInfoResponse> response = paymentInfoService.getPaymentInfoForPayment(paymentInfoId, userId);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -78,9 +72,9 @@ public class PaymentInfoController {
 
     // Tạo thẻ mới
     @PostMapping
-    public ResponseEntity<ApiResponse<PaymentInfoResponse>> createPaymentInfo(@Valid @RequestBody PaymentInfoRequest request) {
+    public ResponseEntity<ApiResponse<PaymentInfoResponse>> createPaymentInfo(@Valid @RequestBody PaymentInfoRequest request,
+            @CurrentUser Long userId) {
         try {
-            Long userId = getCurrentUserId();
             ApiResponse<PaymentInfoResponse> response = paymentInfoService.createPaymentInfo(request, userId);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -93,9 +87,8 @@ public class PaymentInfoController {
     @PutMapping("/{paymentInfoId}")
     public ResponseEntity<ApiResponse<PaymentInfoResponse>> updatePaymentInfo(
             @PathVariable Long paymentInfoId,
-            @Valid @RequestBody PaymentInfoRequest request) {
+            @Valid @RequestBody PaymentInfoRequest request, @CurrentUser Long userId) {
         try {
-            Long userId = getCurrentUserId();
             ApiResponse<PaymentInfoResponse> response = paymentInfoService.updatePaymentInfo(paymentInfoId, request, userId);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -106,9 +99,9 @@ public class PaymentInfoController {
 
     // Xóa thẻ
     @DeleteMapping("/{paymentInfoId}")
-    public ResponseEntity<ApiResponse<String>> deletePaymentInfo(@PathVariable Long paymentInfoId) {
+    public ResponseEntity<ApiResponse<String>> deletePaymentInfo(@PathVariable Long paymentInfoId,
+            @CurrentUser Long userId) {
         try {
-            Long userId = getCurrentUserId();
             ApiResponse<String> response = paymentInfoService.deletePaymentInfo(paymentInfoId, userId);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -119,9 +112,9 @@ public class PaymentInfoController {
 
     // Đặt thẻ làm mặc định
     @PutMapping("/{paymentInfoId}/set-default")
-    public ResponseEntity<ApiResponse<PaymentInfoResponse>> setDefaultPaymentInfo(@PathVariable Long paymentInfoId) {
+    public ResponseEntity<ApiResponse<PaymentInfoResponse>> setDefaultPaymentInfo(@PathVariable Long paymentInfoId,
+            @CurrentUser Long userId) {
         try {
-            Long userId = getCurrentUserId();
             ApiResponse<PaymentInfoResponse> response = paymentInfoService.setDefaultPaymentInfo(paymentInfoId, userId);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -130,10 +123,4 @@ public class PaymentInfoController {
         }
     }
 
-    // Helper method để lấy user ID hiện tại
-    private Long getCurrentUserId() {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String username = authentication.getName();
-        return userService.getUserIdFromUsername(username);
-    }
 } 
\ No newline at end of file
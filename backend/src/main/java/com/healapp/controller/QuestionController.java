@@ -1,9 +1,9 @@
 package com.healapp.controller;
 
+import com.healapp.config.CurrentUser;
 import com.healapp.dto.*;
 import com.healapp.model.Question.QuestionStatus;
 import com.healapp.service.QuestionService;
-import com.healapp.service.UserService;
 
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,7 +13,6 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -23,18 +22,12 @@ public class QuestionController {
     @Autowired
     private QuestionService questionService;
 
-    @Autowired
-    private UserService userService;
-
     // create question
     @PostMapping
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<ApiResponse<QuestionResponse>> createQuestion(
             @Valid @RequestBody QuestionRequest request,
-            Authentication authentication) {
-
-        String username = authentication.getName();
-        Long userId = userService.getUserIdFromUsername(username);
+            @CurrentUser Long userId) {
 
         ApiResponse<QuestionResponse> response = questionService.createQuestion(request, userId);
         return ResponseEntity.ok(response);
@@ -45,10 +38,7 @@ public class QuestionController {
     public ResponseEntity<ApiResponse<QuestionResponse>> updateQuestionStatus(
             @PathVariable Long questionId,
             @Valid @RequestBody QuestionStatusRequest request,
-            Authentication authentication) {
-
-        String username = authentication.getName();
-        Long staffId = userService.getUserIdFromUsername(username);
+            @CurrentUser Long staffId) {
 
         ApiResponse<QuestionResponse> response = questionService.updateQuestionStatus(questionId, request, staffId);
         return ResponseEntity.ok(response);
@@ -59,10 +49,7 @@ public class QuestionController {
     public ResponseEntity<ApiResponse<QuestionResponse>> answerQuestion(
             @PathVariable Long questionId,
             @Valid @RequestBody QuestionAnswerRequest request,
-            Authentication authentication) {
-
-        String username = authentication.getName();
-        Long userId = userService.getUserIdFromUsername(username);
+            @CurrentUser Long userId) {
 
         ApiResponse<QuestionResponse> response = questionService.answerQuestion(questionId, request, userId);
         return ResponseEntity.ok(response);
@@ -105,10 +92,7 @@ public class QuestionController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "createdAt") String sort,
             @RequestParam(defaultValue = "DESC") String direction,
-            Authentication authentication) {
-
-        String username = authentication.getName();
-        Long userId = userService.getUserIdFromUsername(username);
+            @CurrentUser Long userId) {
 
         Sort.Direction sortDirection = Sort.Direction.fromString(direction.toUpperCase());
         Pageable pageable = PageRequest.of(page, size, Sort.by(sortDirection, sort));
@@ -120,10 +104,7 @@ public class QuestionController {
     @PreAuthorize("hasRole('ROLE_STAFF')")
     public ResponseEntity<ApiResponse<Void>> deleteQuestion(
             @PathVariable Long questionId,
-            Authentication authentication) {
-
-        String username = authentication.getName();
-        Long staffId = userService.getUserIdFromUsername(username);
+            @CurrentUser Long staffId) {
 
         ApiResponse<Void> response = questionService.deleteQuestion(questionId, staffId);
         return ResponseEntity.ok(response);
@@ -150,9 +131,8 @@ public class QuestionController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "createdAt") String sort,
             @RequestParam(defaultValue = "DESC") String direction,
-            Authentication authentication) {
-        String username = authentication.getName();
-        Long userId = userService.getUserIdFromUsername(username);
+            @CurrentUser Long userId) {
+
         Sort.Direction sortDirection = Sort.Direction.fromString(direction.toUpperCase());
         Pageable pageable = PageRequest.of(page, size, Sort.by(sortDirection, sort));
         ApiResponse<Page<QuestionResponse>> response = questionService.getQuestionsAssignedToReplier(userId, pageable);
@@ -163,10 +143,7 @@ public class QuestionController {
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<ApiResponse<QuestionResponse>> getQuestionById(
             @PathVariable Long questionId,
-            Authentication authentication) {
-
-        String username = authentication.getName();
-        Long userId = userService.getUserIdFromUsername(username);
+            @CurrentUser Long userId) {
 
         ApiResponse<QuestionResponse> response = questionService.getQuestionById(questionId, userId);
         return ResponseEntity.ok(response);
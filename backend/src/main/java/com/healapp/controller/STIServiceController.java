@@ -7,19 +7,21 @@ import java.util.stream.Stream;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.healapp.config.CurrentUser;
 import com.healapp.dto.ApiResponse;
 import com.healapp.dto.CODPaymentConfirmationRequest;
+import com.healapp.dto.PaymentPageResponse;
 import com.healapp.dto.STIServiceRequest;
 import com.healapp.dto.STIServiceResponse;
 import com.healapp.dto.STITestRequest;
@@ -28,10 +30,10 @@ import com.healapp.dto.STITestStatusUpdateRequest;
 import com.healapp.dto.TestResultRequest;
 import com.healapp.model.Payment;
 import com.healapp.model.TestConclusion;
+import com.healapp.service.IdempotencyService;
 import com.healapp.service.PaymentService;
 import com.healapp.service.STIServiceService;
 import com.healapp.service.STITestService;
-import com.healapp.service.UserService;
 
 import jakarta.validation.Valid;
 
@@ -41,8 +43,6 @@ public class STIServiceController {
     @Autowired
     private STIServiceService stiServiceService;
 
-    @Autowired
-    private UserService userService;
 
     @Autowired
     private STITestService stiTestService;
@@ -50,6 +50,9 @@ public class STIServiceController {
     @Autowired
     private PaymentService paymentService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
     /*
      * description: Tạo mới một dịch vụ xét nghiệm STI
      * path: /sti-services
@@ -149,28 +152,45 @@ public class STIServiceController {
 
     @PostMapping("/book-test")
     @PreAuthorize("hasRole('ROLE_CUSTOMER') or hasRole('ROLE_CONSULTANT') or hasRole('ROLE_STAFF') or hasRole('ROLE_ADMIN')")
-    public ResponseEntity<ApiResponse<STITestResponse>> bookSTITest(
-            @Valid @RequestBody STITestRequest request) {
-
-        Long customerId = getCurrentUserId();
-        ApiResponse<STITestResponse> response = stiTestService.bookTest(request, customerId);
-        return getResponseEntity(response);
+    public ResponseEntity<?> bookSTITest(
+            @Valid @RequestBody STITestRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            @CurrentUser Long customerId) {
+
+        // Client gửi lại cùng Idempotency-Key sẽ nhận lại kết quả cũ, không đặt lịch/thanh toán lần hai
+        return idempotencyService.execute("sti.book-test", customerId, idempotencyKey, request,
+                () -> getResponseEntity(stiTestService.bookTest(request, customerId)));
     }
 
     @GetMapping("/my-tests")
     @PreAuthorize("hasRole('ROLE_CUSTOMER') or hasRole('ROLE_CONSULTANT') or hasRole('ROLE_STAFF') or hasRole('ROLE_ADMIN')")
-    public ResponseEntity<ApiResponse<List<STITestResponse>>> getMySTITests() {
+    public ResponseEntity<ApiResponse<List<STITestResponse>>> getMySTITests(@CurrentUser Long customerId) {
 
-        Long customerId = getCurrentUserId();
         ApiResponse<List<STITestResponse>> response = stiTestService.getMyTests(customerId);
         return getResponseEntity(response);
     }
 
+    /*
+     * description: Lịch sử thanh toán của người dùng hiện tại, phân trang keyset
+     * path: /sti-services/my-payments?cursor=&limit=
+     * method: GET
+     * nextCursor trong response dùng cho trang tiếp theo (null khi hết)
+     */
+    @GetMapping("/my-payments")
+    @PreAuthorize("hasRole('ROLE_CUSTOMER') or hasRole('ROLE_CONSULTANT') or hasRole('ROLE_STAFF') or hasRole('ROLE_ADMIN')")
+    public ResponseEntity<ApiResponse<PaymentPageResponse>> getMyPayments(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @CurrentUser Long userId) {
+        ApiResponse<PaymentPageResponse> response = paymentService.getPaymentsByUser(userId, cursor, limit);
+        return getResponseEntity(response);
+    }
+
     @GetMapping("/tests/{testId}")
     @PreAuthorize("hasRole('ROLE_CUSTOMER') or hasRole('ROLE_CONSULTANT') or hasRole('ROLE_STAFF') or hasRole('ROLE_ADMIN')")
-    public ResponseEntity<ApiResponse<STITestResponse>> getSTITestDetails(@PathVariable Long testId) {
+    public ResponseEntity<ApiResponse<STITestResponse>> getSTITestDetails(@PathVariable Long testId,
+            @CurrentUser Long userId) {
 
-        Long userId = getCurrentUserId();
         ApiResponse<STITestResponse> response = stiTestService.getTestDetails(testId, userId);
         return getResponseEntity(response);
     }
@@ -178,8 +198,7 @@ public class STIServiceController {
     @PutMapping("/tests/{testId}/cancel")
     @PreAuthorize("hasRole('ROLE_CUSTOMER') or hasRole('ROLE_CONSULTANT') or hasRole('ROLE_STAFF') or hasRole('ROLE_ADMIN')")
     public ResponseEntity<ApiResponse<STITestResponse>> cancelSTITest(@PathVariable Long testId,
-            @RequestBody java.util.Map<String, String> body) {
-        Long userId = getCurrentUserId();
+            @RequestBody java.util.Map<String, String> body, @CurrentUser Long userId) {
         String reason = body != null ? body.get("reason") : null;
         ApiResponse<STITestResponse> response = stiTestService.cancelTest(testId, userId, reason);
         return getResponseEntity(response);
@@ -194,8 +213,8 @@ public class STIServiceController {
 
     @PutMapping("/staff/tests/{testId}/confirm")
     @PreAuthorize("hasRole('ROLE_STAFF') or hasRole('ROLE_ADMIN')")
-    public ResponseEntity<ApiResponse<STITestResponse>> confirmTest(@PathVariable Long testId) {
-        Long staffId = getCurrentUserId();
+    public ResponseEntity<ApiResponse<STITestResponse>> confirmTest(@PathVariable Long testId,
+            @CurrentUser Long staffId) {
 
         STITestStatusUpdateRequest request = new STITestStatusUpdateRequest();
         request.setStatus(com.healapp.model.STITestStatus.CONFIRMED);
@@ -213,8 +232,8 @@ public class STIServiceController {
 
     @PutMapping("/staff/tests/{testId}/sample")
     @PreAuthorize("hasRole('ROLE_STAFF')")
-    public ResponseEntity<ApiResponse<STITestResponse>> sampleTest(@PathVariable Long testId) {
-        Long staffId = getCurrentUserId();
+    public ResponseEntity<ApiResponse<STITestResponse>> sampleTest(@PathVariable Long testId,
+            @CurrentUser Long staffId) {
 
         STITestStatusUpdateRequest request = new STITestStatusUpdateRequest();
         request.setStatus(com.healapp.model.STITestStatus.SAMPLED);
@@ -225,8 +244,7 @@ public class STIServiceController {
 
     @GetMapping("/staff/my-tests")
     @PreAuthorize("hasRole('ROLE_STAFF')")
-    public ResponseEntity<ApiResponse<List<STITestResponse>>> getStaffTests() {
-        Long staffId = getCurrentUserId();
+    public ResponseEntity<ApiResponse<List<STITestResponse>>> getStaffTests(@CurrentUser Long staffId) {
         ApiResponse<List<STITestResponse>> response = stiTestService.getStaffTests(staffId);
         return getResponseEntity(response);
     }
@@ -235,9 +253,7 @@ public class STIServiceController {
     @PreAuthorize("hasRole('ROLE_STAFF')")
     public ResponseEntity<ApiResponse<STITestResponse>> addTestResults(
             @PathVariable Long testId,
-            @Valid @RequestBody STITestStatusUpdateRequest request) {
-
-        Long staffId = getCurrentUserId();
+            @Valid @RequestBody STITestStatusUpdateRequest request, @CurrentUser Long staffId) {
 
         // Đảm bảo status là RESULTED
         request.setStatus(com.healapp.model.STITestStatus.RESULTED);
@@ -249,9 +265,7 @@ public class STIServiceController {
     @PutMapping("/staff/tests/{testId}/complete")
     @PreAuthorize("hasRole('ROLE_STAFF')")
     public ResponseEntity<ApiResponse<STITestResponse>> completeTest(
-            @PathVariable Long testId) {
-
-        Long staffId = getCurrentUserId();
+            @PathVariable Long testId, @CurrentUser Long staffId) {
 
         STITestStatusUpdateRequest request = new STITestStatusUpdateRequest();
         request.setStatus(com.healapp.model.STITestStatus.COMPLETED);
@@ -276,9 +290,8 @@ public class STIServiceController {
     @PreAuthorize("hasRole('ROLE_STAFF') or hasRole('ROLE_ADMIN')")
     public ResponseEntity<ApiResponse<STITestResponse>> updateTestResults(
             @PathVariable Long testId,
-            @Valid @RequestBody List<TestResultRequest> resultRequests) {
+            @Valid @RequestBody List<TestResultRequest> resultRequests, @CurrentUser Long staffId) {
 
-        Long staffId = getCurrentUserId();
         ApiResponse<STITestResponse> response = stiTestService.updateTestResults(testId, resultRequests, staffId);
         return getResponseEntity(response);
     }
@@ -291,18 +304,18 @@ public class STIServiceController {
      */
     @PostMapping("/tests/{testId}/retry-payment")
     @PreAuthorize("hasRole('ROLE_CUSTOMER') or hasRole('ROLE_CONSULTANT') or hasRole('ROLE_STAFF') or hasRole('ROLE_ADMIN')")
-    public ResponseEntity<ApiResponse<STITestResponse>> retryPayment(
+    public ResponseEntity<?> retryPayment(
             @PathVariable Long testId,
-            @Valid @RequestBody STITestRequest request) {
+            @Valid @RequestBody STITestRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            @CurrentUser Long userId) {
 
-        Long userId = getCurrentUserId();
-        ApiResponse<STITestResponse> response = stiTestService.retryPayment(testId, request, userId);
-        return getResponseEntity(response);
+        return idempotencyService.execute("sti.retry-payment", userId, idempotencyKey, List.of(testId, request),
+                () -> getResponseEntity(stiTestService.retryPayment(testId, request, userId)));
     }
     @GetMapping("/tests/{testId}/results")
     @PreAuthorize("hasRole('ROLE_CUSTOMER') or hasRole('ROLE_CONSULTANT') or hasRole('ROLE_STAFF') or hasRole('ROLE_ADMIN')")
-    public ResponseEntity<?> getTestResults(@PathVariable Long testId) {
-        Long userId = getCurrentUserId();
+    public ResponseEntity<?> getTestResults(@PathVariable Long testId, @CurrentUser Long userId) {
         ApiResponse<?> response = stiTestService.getTestResults(testId, userId);
         return getResponseEntity(response);
     }
@@ -322,9 +335,8 @@ public class STIServiceController {
     @PreAuthorize("hasRole('ROLE_CONSULTANT')")
     public ResponseEntity<ApiResponse<STITestResponse>> updateConsultantNotes(
             @PathVariable Long testId,
-            @RequestBody java.util.Map<String, String> body) {
+            @RequestBody java.util.Map<String, String> body, @CurrentUser Long consultantId) {
         String consultantNotes = body.get("consultantNotes");
-        Long consultantId = getCurrentUserId();
         ApiResponse<STITestResponse> response = stiTestService.updateConsultantNotes(testId, consultantNotes,
                 consultantId);
         return getResponseEntity(response);
@@ -342,8 +354,7 @@ public class STIServiceController {
 
     @GetMapping("/consultant/my-tests")
     @PreAuthorize("hasRole('ROLE_CONSULTANT')")
-    public ResponseEntity<ApiResponse<List<STITestResponse>>> getConsultantTests() {
-        Long consultantId = getCurrentUserId();
+    public ResponseEntity<ApiResponse<List<STITestResponse>>> getConsultantTests(@CurrentUser Long consultantId) {
         ApiResponse<List<STITestResponse>> response = stiTestService.getTestsForConsultant(consultantId);
         return getResponseEntity(response);
     }
@@ -372,8 +383,7 @@ public class STIServiceController {
     @PreAuthorize("hasRole('ROLE_STAFF') or hasRole('ROLE_ADMIN')")
     public ResponseEntity<ApiResponse<Payment>> confirmCODPayment(
             @PathVariable Long paymentId,
-            @Valid @RequestBody CODPaymentConfirmationRequest request) {
-        Long staffId = getCurrentUserId();
+            @Valid @RequestBody CODPaymentConfirmationRequest request, @CurrentUser Long staffId) {
         ApiResponse<Payment> response = paymentService.manualConfirmCODPayment(paymentId, request.getNotes());
         return getResponseEntity(response);
     }
@@ -412,12 +422,6 @@ public class STIServiceController {
         }
     }
 
-    private Long getCurrentUserId() {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String username = authentication.getName();
-        return userService.getUserIdFromUsername(username);
-    }
-
     private <T> ResponseEntity<ApiResponse<T>> getResponseEntity(ApiResponse<T> response) {
         // Luôn trả về 200 OK, ngay cả khi có lỗi thanh toán
         // Frontend sẽ xử lý hiển thị thông báo phù hợp dựa trên response.success
@@ -0,0 +1,35 @@
+package com.healapp.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.healapp.dto.ApiResponse;
+import com.healapp.service.StripeWebhookService;
+
+@RestController
+@RequestMapping("/webhooks")
+public class StripeWebhookController {
+
+    @Autowired
+    private StripeWebhookService stripeWebhookService;
+
+    /*
+     * description: Nhận webhook từ Stripe (payment_intent.*, charge.succeeded)
+     * path: /webhooks/stripe
+     * method: POST
+     * Body phải giữ nguyên dạng raw để xác thực chữ ký Stripe-Signature
+     */
+    @PostMapping("/stripe")
+    public ResponseEntity<ApiResponse<String>> handleStripeWebhook(@RequestBody String payload,
+            @RequestHeader(value = "Stripe-Signature", required = false) String signature) {
+        if (signature == null || !stripeWebhookService.receive(payload, signature)) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("Invalid Stripe signature"));
+        }
+        return ResponseEntity.ok(ApiResponse.success("Event received"));
+    }
+}
@@ -28,6 +28,11 @@ public class BankTransactionResponse {
         return transactionFound && "SUCCESS".equals(status) && amount != null && amount.compareTo(BigDecimal.ZERO) > 0;
     }
 
+    // Dòng lịch sử giao dịch không có cờ transactionFound: chỉ xét trạng thái và số tiền
+    public boolean isSuccessfulCredit() {
+        return "SUCCESS".equals(status) && amount != null && amount.compareTo(BigDecimal.ZERO) > 0;
+    }
+
     // Helper method để check amount match
     public boolean amountMatches(BigDecimal expectedAmount) {
         return amount != null && amount.compareTo(expectedAmount) == 0;
@@ -0,0 +1,19 @@
+package com.healapp.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Một trang payment theo keyset; nextCursor null khi đã hết dữ liệu.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentPageResponse {
+
+    private List<PaymentTransactionResponse> items;
+    private String nextCursor;
+}
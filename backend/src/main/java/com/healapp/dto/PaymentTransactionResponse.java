@@ -0,0 +1,65 @@
+package com.healapp.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.healapp.model.PaymentMethod;
+import com.healapp.model.PaymentStatus;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Projection của Payment cho danh sách giao dịch, được dựng trực tiếp bằng JPQL constructor
+ * expression (không tải entity Payment/UserDtls).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentTransactionResponse {
+
+    private Long paymentId;
+    private Long userId;
+    private String customerName;
+    private String serviceType;
+    private Long serviceId;
+    private PaymentMethod paymentMethod;
+    private PaymentStatus paymentStatus;
+    private BigDecimal amount;
+    private String currency;
+    private String stripePaymentIntentId;
+    private String qrPaymentReference;
+    private String qrCodeUrl;
+    private String transactionId;
+    private LocalDateTime createdAt;
+    private LocalDateTime paidAt;
+    private LocalDateTime expiresAt;
+    private LocalDateTime updatedAt;
+    private String refundId;
+    private LocalDateTime refundedAt;
+    private BigDecimal refundAmount;
+    private String description;
+    private String notes;
+
+    // Các field tính toán, giữ giống Payment
+    public boolean isExpired() {
+        return expiresAt != null && expiresAt.isBefore(LocalDateTime.now()) && paymentStatus == PaymentStatus.PENDING;
+    }
+
+    public boolean isCompleted() {
+        return paymentStatus == PaymentStatus.COMPLETED;
+    }
+
+    public String getPaymentDisplayInfo() {
+        if (paymentMethod == null) {
+            return null;
+        }
+        return switch (paymentMethod) {
+            case COD -> "Cash on Delivery";
+            case VISA -> "Credit Card" + (stripePaymentIntentId != null ? " (" + stripePaymentIntentId + ")" : "");
+            case QR_CODE -> "QR Code" + (qrPaymentReference != null ? " (" + qrPaymentReference + ")" : "");
+            default -> paymentMethod.name();
+        };
+    }
+}
@@ -0,0 +1,27 @@
+package com.healapp.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.healapp.model.PaymentStatus;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Trạng thái một QR payment trả cho client đang chờ thanh toán (poll hoặc SSE).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QRPaymentStatusResponse {
+
+    private String qrReference;
+    private Long paymentId;
+    private PaymentStatus paymentStatus;
+    private BigDecimal amount;
+    private LocalDateTime expiresAt;
+    private LocalDateTime paidAt;
+    private String transactionId;
+}
@@ -0,0 +1,8 @@
+package com.healapp.model;
+
+public enum EmailOutboxStatus {
+    PENDING, // Chờ gửi (kể cả chờ retry)
+    SENDING, // Worker đã nhận và đang gửi
+    SENT, // Đã gửi thành công
+    DEAD // Lỗi vĩnh viễn hoặc hết số lần retry
+}
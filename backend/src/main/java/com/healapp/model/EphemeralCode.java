@@ -0,0 +1,34 @@
+package com.healapp.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Mã OTP/xác thực dùng chung giữa các node khi ephemeral-code.store=database
+@Entity
+@Table(name = "ephemeral_codes", indexes = {
+        @Index(name = "idx_ephemeral_codes_expires", columnList = "expires_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EphemeralCode {
+
+    // "<namespace>:<key>", ví dụ email-verification:a@b.com_verification
+    @Id
+    @Column(name = "code_key", length = 255)
+    private String codeKey;
+
+    @Column(name = "code", nullable = false, length = 20)
+    private String code;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,58 @@
+package com.healapp.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Sổ ghi nhận thông báo đã gửi theo (user, loại, giờ) để chống gửi trùng
+@Entity
+@Table(name = "notification_ledger", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_notification_ledger_slot", columnNames = { "type", "slot_hour", "user_id" })
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationLedger {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "ledger_id")
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 30)
+    private NotificationType type;
+
+    // Thời điểm đầu giờ (đã cắt phút/giây) của lần gửi
+    @Column(name = "slot_hour", nullable = false)
+    private LocalDateTime slotHour;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public NotificationLedger(Long userId, NotificationType type, LocalDateTime slotHour) {
+        this.userId = userId;
+        this.type = type;
+        this.slotHour = slotHour;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+    }
+}
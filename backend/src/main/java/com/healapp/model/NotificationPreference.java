@@ -2,6 +2,8 @@ package com.healapp.model;
 
 import java.time.LocalTime;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
@@ -9,15 +11,20 @@ import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "notification_preference")
+@Table(name = "notification_preference", indexes = {
+        @Index(name = "idx_noti_pref_dispatch", columnList = "type, enabled, remind_minute")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -41,4 +48,19 @@ public class NotificationPreference {
 
     @Column(name = "enabled", nullable = false)
     private Boolean enabled;
+
+    // Phút trong ngày (0-1439) của remindTime - khóa bucket để scheduler chỉ đọc user đến hạn
+    @JsonIgnore
+    @Column(name = "remind_minute")
+    private Integer remindMinute;
+
+    @PrePersist
+    @PreUpdate
+    protected void syncRemindMinute() {
+        this.remindMinute = toRemindMinute(this.remindTime);
+    }
+
+    public static Integer toRemindMinute(LocalTime time) {
+        return time != null ? time.getHour() * 60 + time.getMinute() : null;
+    }
 }
@@ -4,12 +4,23 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.healapp.service.PaymentRollupListener;
+
 @Entity
-@Table(name = "payments")
+@EntityListeners(PaymentRollupListener.class)
+@Table(name = "payments", indexes = {
+        @Index(name = "idx_payments_status_created", columnList = "payment_status, created_at, payment_id"),
+        @Index(name = "idx_payments_method_status_expires", columnList = "payment_method, payment_status, expires_at"),
+        @Index(name = "idx_payments_user_created", columnList = "user_id, created_at, payment_id"),
+        @Index(name = "idx_payments_created", columnList = "created_at, payment_id")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -91,6 +102,13 @@ public class Payment {
     @Column(name = "notes", columnDefinition = "NVARCHAR(MAX)")
     private String notes;
 
+    // Trạng thái đã lưu trong DB, để PaymentRollupListener nhận ra lần chuyển sang COMPLETED/REFUNDED
+    @Transient
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private PaymentStatus persistedStatus;
+
     @PrePersist
     protected void onCreate() {
         this.createdAt = LocalDateTime.now();
@@ -12,6 +12,8 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import jakarta.persistence.Version;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -20,7 +22,9 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "rating_summary")
+@Table(name = "rating_summary", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_rating_summary_target", columnNames = { "target_type", "target_id" })
+})
 public class RatingSummary {
 
     @Id
@@ -60,6 +64,11 @@ public class RatingSummary {
     @Column(name = "last_updated", nullable = false)
     private LocalDateTime lastUpdated = LocalDateTime.now();
 
+    // Tăng theo mỗi delta để job đối soát không ghi đè thay đổi đồng thời
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "BIGINT DEFAULT 0 NOT NULL")
+    private Long version = 0L;
+
     @PreUpdate
     protected void onUpdate() {
         this.lastUpdated = LocalDateTime.now();
@@ -0,0 +1,80 @@
+package com.healapp.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Tổng hợp doanh thu theo ngày tạo payment × service_type × payment_method; được cộng dồn khi payment
+// chuyển sang COMPLETED/REFUNDED và dựng lại định kỳ từ bảng payments
+@Entity
+@Table(name = "revenue_daily_rollups", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_revenue_daily_rollup", columnNames = { "rollup_date", "service_type",
+                "payment_method" })
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevenueDailyRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "rollup_date", nullable = false)
+    private LocalDate rollupDate;
+
+    @Column(name = "service_type", nullable = false, length = 20)
+    private String serviceType;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "payment_method", nullable = false, length = 20)
+    private PaymentMethod paymentMethod;
+
+    // Payment đang ở trạng thái COMPLETED
+    @Column(name = "completed_count", nullable = false)
+    private long completedCount;
+
+    @Column(name = "completed_amount", nullable = false, precision = 18, scale = 2)
+    private BigDecimal completedAmount = BigDecimal.ZERO;
+
+    @Column(name = "refund_count", nullable = false)
+    private long refundCount;
+
+    @Column(name = "refund_amount", nullable = false, precision = 18, scale = 2)
+    private BigDecimal refundAmount = BigDecimal.ZERO;
+
+    // HyperLogLog các user_id có payment COMPLETED (xem utils.HyperLogLog)
+    @Column(name = "customer_sketch", columnDefinition = "VARBINARY(MAX)")
+    private byte[] customerSketch;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public RevenueDailyRollup(LocalDate rollupDate, String serviceType, PaymentMethod paymentMethod) {
+        this.rollupDate = rollupDate;
+        this.serviceType = serviceType;
+        this.paymentMethod = paymentMethod;
+    }
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        this.updatedAt = LocalDateTime.now();
+    }
+}
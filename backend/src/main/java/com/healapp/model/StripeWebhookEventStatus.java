@@ -0,0 +1,8 @@
+package com.healapp.model;
+
+public enum StripeWebhookEventStatus {
+    PENDING, // Chờ xử lý (kể cả chờ retry)
+    PROCESSING, // Worker đã nhận và đang áp dụng
+    PROCESSED, // Đã áp dụng (hoặc bỏ qua vì không liên quan)
+    DEAD // Hết số lần retry
+}
@@ -3,28 +3,40 @@ package com.healapp.model;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.healapp.service.UserTokenVersionListener;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "[user]")
+@Table(name = "[user]", indexes = {
+        @Index(name = "idx_user_phone_normalized", columnList = "phone_normalized")
+})
+@EntityListeners(UserTokenVersionListener.class)
 public class UserDtls {
 
     @Id
@@ -41,9 +53,19 @@ public class UserDtls {
     @Column(name = "gender", length = 10)
     private Gender gender;
 
+    // Giá trị cũ có suffix trạng thái: _V đã xác thực, _D{digits} tài khoản đã xoá
     @Column(length = 15)
     private String phone;
 
+    // Số điện thoại bỏ suffix, null nếu tài khoản đã xoá; dùng cho kiểm tra trùng qua index
+    @JsonIgnore
+    @Column(name = "phone_normalized", length = 15)
+    private String phoneNormalized;
+
+    @JsonIgnore
+    @Column(name = "phone_verified", nullable = false, columnDefinition = "BIT DEFAULT 0")
+    private Boolean phoneVerified = false;
+
     @Column(unique = true, nullable = false)
     private String email;
 
@@ -86,6 +108,47 @@ public class UserDtls {
     @Column(name = "deleted_at")
     private LocalDateTime deletedAt;
 
+    // Tăng mỗi khi mật khẩu, role, trạng thái active/deleted thay đổi (UserTokenVersionListener);
+    // JWT mang version lúc phát hành nên token cũ bị từ chối
+    @JsonIgnore
+    @Column(name = "token_version", nullable = false, columnDefinition = "INT DEFAULT 0")
+    private Integer tokenVersion = 0;
+
+    // Dấu các trường bảo mật lúc load, chỉ dùng để phát hiện thay đổi
+    @Transient
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private String securityStamp;
+
+    @PrePersist
+    @PreUpdate
+    protected void syncPhoneState() {
+        this.phoneNormalized = Boolean.TRUE.equals(this.isDeleted) ? null : normalizePhone(this.phone);
+        this.phoneVerified = isVerifiedPhone(this.phone);
+    }
+
+    /**
+     * Bỏ suffix _V (đã xác thực) hoặc _D{digits} (đã xoá) khỏi số điện thoại.
+     */
+    public static String normalizePhone(String phone) {
+        if (phone == null || phone.trim().isEmpty()) {
+            return phone;
+        }
+        if (phone.endsWith("_V")) {
+            return phone.substring(0, phone.length() - 2);
+        }
+        int deleteSuffixIndex = phone.indexOf("_D");
+        if (deleteSuffixIndex >= 0) {
+            return phone.substring(0, deleteSuffixIndex);
+        }
+        return phone;
+    }
+
+    public static boolean isVerifiedPhone(String phone) {
+        return phone != null && phone.endsWith("_V");
+    }
+
     public String getRoleName() {
         return role != null ? role.getRoleName() : null;
     }
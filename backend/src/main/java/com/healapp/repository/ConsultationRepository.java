@@ -38,6 +38,10 @@ public interface ConsultationRepository extends JpaRepository<Consultation, Long
                         LocalDateTime startDate,
                         LocalDateTime endDate);
 
+        // Đếm consultation bắt đầu trong khoảng [from, to)
+        @Query("SELECT COUNT(c) FROM Consultation c WHERE c.startTime >= :from AND c.startTime < :to")
+        long countByStartTimeRange(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
         @Query("SELECT c FROM Consultation c WHERE c.customer.id = :userId OR c.consultant.id = :userId")
         List<Consultation> findByUserInvolved(Long userId);
 
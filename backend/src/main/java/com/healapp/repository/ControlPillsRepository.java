@@ -1,9 +1,12 @@
 package com.healapp.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.healapp.model.ControlPills;
@@ -14,4 +17,7 @@ public interface ControlPillsRepository extends JpaRepository<ControlPills, Long
     Optional<List<ControlPills>> findByUserIdAndIsActive(UserDtls user, Boolean isActive);
     List<ControlPills> findByIsActive(Boolean isActive);
     List<ControlPills> findByUserId_Id(Long userId);
+
+    @Query("SELECT c FROM ControlPills c WHERE c.userId.id IN :userIds AND c.isActive = true")
+    List<ControlPills> findActiveByUserIds(@Param("userIds") Collection<Long> userIds);
 }
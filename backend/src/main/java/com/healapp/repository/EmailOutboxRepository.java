@@ -0,0 +1,69 @@
+package com.healapp.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.healapp.model.EmailOutbox;
+import com.healapp.model.EmailOutboxStatus;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+    @Query("SELECT e.id FROM EmailOutbox e WHERE e.status = :status AND e.nextAttemptAt <= :now ORDER BY e.nextAttemptAt ASC")
+    List<Long> findDueIds(@Param("status") EmailOutboxStatus status, @Param("now") LocalDateTime now, Pageable pageable);
+
+    // Nhận các bản ghi còn PENDING bằng claim token để nhiều node không gửi trùng
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox e SET e.status = com.healapp.model.EmailOutboxStatus.SENDING, e.claimToken = :token, "
+            + "e.claimedAt = :now WHERE e.id IN :ids AND e.status = com.healapp.model.EmailOutboxStatus.PENDING")
+    int claim(@Param("ids") Collection<Long> ids, @Param("token") String token, @Param("now") LocalDateTime now);
+
+    List<EmailOutbox> findByClaimToken(String claimToken);
+
+    // Trả lại các bản ghi bị kẹt ở SENDING (worker chết giữa chừng)
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox e SET e.status = com.healapp.model.EmailOutboxStatus.PENDING, e.claimToken = NULL "
+            + "WHERE e.status = com.healapp.model.EmailOutboxStatus.SENDING AND e.claimedAt < :before")
+    int releaseStaleClaims(@Param("before") LocalDateTime before);
+
+    // Ghi kết quả chỉ khi lô vẫn giữ claim: bản ghi đã bị trả lại và nhận bởi worker khác thì không ghi đè
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox e SET e.status = com.healapp.model.EmailOutboxStatus.SENT, e.sentAt = :now, "
+            + "e.attempts = e.attempts + 1, e.lastError = NULL, e.mimeContent = :emptyContent, e.claimToken = NULL, "
+            + "e.updatedAt = :now WHERE e.id = :id AND e.claimToken = :token")
+    int markSent(@Param("id") Long id, @Param("token") String token, @Param("emptyContent") byte[] emptyContent,
+            @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox e SET e.status = :status, e.attempts = :attempts, e.lastError = :lastError, "
+            + "e.nextAttemptAt = :nextAttemptAt, e.claimToken = NULL, e.updatedAt = :now "
+            + "WHERE e.id = :id AND e.claimToken = :token")
+    int completeClaim(@Param("id") Long id, @Param("token") String token, @Param("status") EmailOutboxStatus status,
+            @Param("attempts") int attempts, @Param("lastError") String lastError,
+            @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM EmailOutbox e WHERE e.status = com.healapp.model.EmailOutboxStatus.SENT AND e.sentAt < :before")
+    int deleteSentBefore(@Param("before") LocalDateTime before);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM EmailOutbox e WHERE e.status = com.healapp.model.EmailOutboxStatus.DEAD AND e.updatedAt < :before")
+    int deleteDeadBefore(@Param("before") LocalDateTime before);
+
+    long countByStatus(EmailOutboxStatus status);
+}
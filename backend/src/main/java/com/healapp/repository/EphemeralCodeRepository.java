@@ -0,0 +1,30 @@
+package com.healapp.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.healapp.model.EphemeralCode;
+
+@Repository
+public interface EphemeralCodeRepository extends JpaRepository<EphemeralCode, String> {
+
+    // Mã hết hạn sớm nhất, để evict khi vượt ephemeral-code.max-entries
+    List<EphemeralCode> findTop100ByOrderByExpiresAtAsc();
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM EphemeralCode c WHERE c.codeKey = :codeKey")
+    int deleteByCodeKey(@Param("codeKey") String codeKey);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM EphemeralCode c WHERE c.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,38 @@
+package com.healapp.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.healapp.model.IdempotencyKey;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, Long> {
+
+    Optional<IdempotencyKey> findByScopeAndUserIdAndIdempotencyKey(String scope, Long userId, String idempotencyKey);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE IdempotencyKey k SET k.responseStatus = :status, k.responseBody = :body, k.lockedUntil = NULL "
+            + "WHERE k.id = :id")
+    int complete(@Param("id") Long id, @Param("status") Integer status, @Param("body") String body);
+
+    // Tiếp quản key bị bỏ dở: chỉ một request thắng nhờ điều kiện trên lockedUntil
+    @Modifying
+    @Transactional
+    @Query("UPDATE IdempotencyKey k SET k.lockedUntil = :lockedUntil WHERE k.id = :id AND k.responseStatus IS NULL "
+            + "AND (k.lockedUntil IS NULL OR k.lockedUntil < :now)")
+    int takeOver(@Param("id") Long id, @Param("now") LocalDateTime now,
+            @Param("lockedUntil") LocalDateTime lockedUntil);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM IdempotencyKey k WHERE k.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -1,6 +1,7 @@
 package com.healapp.repository;
 
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,4 +27,9 @@ public interface MenstrualCycleRepository extends JpaRepository<MenstrualCycle,
     }
 
     Optional<MenstrualCycle> findTopByUserIdOrderByStartDateDesc(Long userId);
+
+    // Chu kỳ gần nhất của nhiều user trong một truy vấn (dùng cho batch nhắc nhở)
+    @Query("SELECT mc FROM MenstrualCycle mc WHERE mc.user.id IN :userIds AND mc.startDate = "
+            + "(SELECT MAX(m2.startDate) FROM MenstrualCycle m2 WHERE m2.user.id = mc.user.id)")
+    List<MenstrualCycle> findLatestCyclesByUserIds(@Param("userIds") Collection<Long> userIds);
 }
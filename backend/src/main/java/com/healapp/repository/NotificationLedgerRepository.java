@@ -0,0 +1,44 @@
+package com.healapp.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.healapp.model.NotificationLedger;
+import com.healapp.model.NotificationType;
+
+@Repository
+public interface NotificationLedgerRepository extends JpaRepository<NotificationLedger, Long> {
+
+    // Chỉ đọc một bucket giờ - đi theo unique index (type, slot_hour, user_id)
+    @Query("SELECT l.userId FROM NotificationLedger l WHERE l.type = :type AND l.slotHour = :slotHour")
+    List<Long> findUserIdsByTypeAndSlotHour(@Param("type") NotificationType type, @Param("slotHour") LocalDateTime slotHour);
+
+    // Ghi nếu chưa có, không vi phạm unique constraint khi node khác đã ghi cùng khóa. UPDLOCK + HOLDLOCK giữ
+    // khoảng khóa của index đến hết transaction: node thứ hai chờ node đầu commit rồi thấy bản ghi, trả về 0
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO notification_ledger (user_id, type, slot_hour, created_at) "
+            + "SELECT :userId, :type, :slotHour, :createdAt WHERE NOT EXISTS ("
+            + "SELECT 1 FROM notification_ledger WITH (UPDLOCK, HOLDLOCK) "
+            + "WHERE type = :type AND slot_hour = :slotHour AND user_id = :userId)", nativeQuery = true)
+    int insertIfAbsent(@Param("userId") Long userId, @Param("type") String type,
+            @Param("slotHour") LocalDateTime slotHour, @Param("createdAt") LocalDateTime createdAt);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM NotificationLedger l WHERE l.userId = :userId AND l.type = :type AND l.slotHour = :slotHour")
+    int deleteEntry(@Param("userId") Long userId, @Param("type") NotificationType type,
+            @Param("slotHour") LocalDateTime slotHour);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM NotificationLedger l WHERE l.slotHour < :before")
+    int deleteBySlotHourBefore(@Param("before") LocalDateTime before);
+}
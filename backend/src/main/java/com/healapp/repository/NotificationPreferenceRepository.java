@@ -1,6 +1,7 @@
 package com.healapp.repository;
 
 import java.time.LocalTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -28,6 +29,16 @@ public interface NotificationPreferenceRepository extends JpaRepository<Notifica
 
     @Modifying
     @Transactional
-    @Query("UPDATE NotificationPreference np SET np.remindTime = :time WHERE np.user.id = :userId AND np.type = :type")
-    int updateNotificationPreference(@Param("userId") Long userId, @Param("type") NotificationType notificationType, @Param("time") LocalTime time);
+    @Query("UPDATE NotificationPreference np SET np.remindTime = :time, np.remindMinute = :minute WHERE np.user.id = :userId AND np.type = :type")
+    int updateNotificationPreference(@Param("userId") Long userId, @Param("type") NotificationType notificationType, @Param("time") LocalTime time, @Param("minute") Integer remindMinute);
+
+    // Lấy user ID đến hạn nhắc theo bucket (type, phút trong ngày) - dùng index idx_noti_pref_dispatch
+    @Query("SELECT np.user.id FROM NotificationPreference np WHERE np.type = :type AND np.enabled = true AND np.remindMinute IN :minutes")
+    List<Long> findDueUserIds(@Param("type") NotificationType type, @Param("minutes") Collection<Integer> minutes);
+
+    // Điền remind_minute cho các bản ghi cũ được tạo trước khi có cột này
+    @Modifying
+    @Transactional
+    @Query("UPDATE NotificationPreference np SET np.remindMinute = EXTRACT(HOUR FROM np.remindTime) * 60 + EXTRACT(MINUTE FROM np.remindTime) WHERE np.remindMinute IS NULL AND np.remindTime IS NOT NULL")
+    int backfillRemindMinute();
 }
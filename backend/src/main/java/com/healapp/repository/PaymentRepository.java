@@ -4,11 +4,15 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.healapp.dto.PaymentTransactionResponse;
 import com.healapp.model.Payment;
 import com.healapp.model.PaymentMethod;
 import com.healapp.model.PaymentStatus;
@@ -17,13 +21,8 @@ import com.healapp.model.PaymentStatus;
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
 
         // Find by service
-        Optional<Payment> findByServiceTypeAndServiceId(String serviceType, Long serviceId);
-
         List<Payment> findByServiceTypeAndServiceIdOrderByCreatedAtDesc(String serviceType, Long serviceId);
 
-        // Find by user
-        List<Payment> findByUser_IdOrderByCreatedAtDesc(Long userId);
-
         List<Payment> findByUser_IdAndPaymentStatusOrderByCreatedAtDesc(Long userId, PaymentStatus status);
 
         // Find by payment method
@@ -32,7 +31,41 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
         // Find by status
         List<Payment> findByPaymentStatus(PaymentStatus status);
 
-        List<Payment> findByPaymentStatusAndExpiresAtBefore(PaymentStatus status, LocalDateTime expireTime);
+        // Chuyển PENDING quá hạn sang EXPIRED theo lô (UPDATE TOP), mỗi lô một transaction ngắn
+        @Modifying
+        @Transactional
+        @Query(value = "UPDATE TOP (:batchSize) payments SET payment_status = 'EXPIRED', updated_at = :now " +
+                        "WHERE payment_method = :method AND payment_status = 'PENDING' AND expires_at < :now",
+                        nativeQuery = true)
+        int expirePendingBatch(@Param("method") String method, @Param("now") LocalDateTime now,
+                        @Param("batchSize") int batchSize);
+
+        // Gắn PaymentIntent vào payment VISA sau khi gọi Stripe (ngoài transaction đặt lịch)
+        @Modifying
+        @Transactional
+        @Query("UPDATE Payment p SET p.stripePaymentIntentId = :intentId, p.transactionId = :intentId, " +
+                        "p.updatedAt = :now WHERE p.paymentId = :paymentId AND p.stripePaymentIntentId IS NULL")
+        int attachStripePaymentIntent(@Param("paymentId") Long paymentId, @Param("intentId") String intentId,
+                        @Param("now") LocalDateTime now);
+
+        // Chỉ chuyển FAILED khi còn PROCESSING, không ghi đè kết quả webhook đã áp dụng
+        @Modifying
+        @Transactional
+        @Query("UPDATE Payment p SET p.paymentStatus = com.healapp.model.PaymentStatus.FAILED, p.notes = :notes, " +
+                        "p.updatedAt = :now WHERE p.paymentId = :paymentId " +
+                        "AND p.paymentStatus = com.healapp.model.PaymentStatus.PROCESSING")
+        int markStripePaymentFailed(@Param("paymentId") Long paymentId, @Param("notes") String notes,
+                        @Param("now") LocalDateTime now);
+
+        // Payment VISA kẹt PROCESSING mà chưa có PaymentIntent (tiến trình chết giữa commit và lời gọi Stripe)
+        @Modifying
+        @Transactional
+        @Query("UPDATE Payment p SET p.paymentStatus = com.healapp.model.PaymentStatus.FAILED, p.notes = :notes, " +
+                        "p.updatedAt = :now WHERE p.paymentMethod = com.healapp.model.PaymentMethod.VISA " +
+                        "AND p.paymentStatus = com.healapp.model.PaymentStatus.PROCESSING " +
+                        "AND p.stripePaymentIntentId IS NULL AND p.updatedAt < :before")
+        int failStuckStripePayments(@Param("before") LocalDateTime before, @Param("notes") String notes,
+                        @Param("now") LocalDateTime now);
 
         // Find by external IDs
         Optional<Payment> findByStripePaymentIntentId(String stripePaymentIntentId);
@@ -44,21 +77,88 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
         List<Payment> findByPaymentMethodAndPaymentStatusAndExpiresAtAfter(
                         PaymentMethod paymentMethod, PaymentStatus paymentStatus, LocalDateTime dateTime);
 
-        // Statistics queries
-        @Query("SELECT COUNT(p) FROM Payment p WHERE p.paymentStatus = :status AND p.createdAt >= :fromDate")
-        Long countByStatusAndCreatedAtAfter(@Param("status") PaymentStatus status,
-                        @Param("fromDate") LocalDateTime fromDate);
-
-        @Query("SELECT SUM(p.amount) FROM Payment p WHERE p.paymentStatus = :status AND p.createdAt >= :fromDate")
-        java.math.BigDecimal sumAmountByStatusAndCreatedAtAfter(@Param("status") PaymentStatus status,
-                        @Param("fromDate") LocalDateTime fromDate);
-
         // Find pending payments for specific user and service
         @Query("SELECT p FROM Payment p WHERE p.user.id = :userId AND p.serviceType = :serviceType AND p.serviceId = :serviceId AND p.paymentStatus = 'PENDING'")
         List<Payment> findPendingPaymentsByUserAndService(@Param("userId") Long userId,
                         @Param("serviceType") String serviceType,
                         @Param("serviceId") Long serviceId);
 
-        List<Payment> findByPaymentStatusAndCreatedAtBetween(PaymentStatus status, LocalDateTime from,
-                        LocalDateTime to);
-}
\ No newline at end of file
+        // Nguồn dựng lại revenue_daily_rollups: [serviceType, paymentMethod, paymentStatus, COUNT, SUM(amount),
+        // SUM(refundAmount hoặc amount)] cho payment COMPLETED/REFUNDED tạo trong [from, to)
+        @Query("SELECT p.serviceType, p.paymentMethod, p.paymentStatus, COUNT(p), SUM(p.amount), " +
+                        "SUM(COALESCE(p.refundAmount, p.amount)) FROM Payment p " +
+                        "WHERE p.paymentStatus IN (com.healapp.model.PaymentStatus.COMPLETED, " +
+                        "com.healapp.model.PaymentStatus.REFUNDED) " +
+                        "AND p.createdAt >= :from AND p.createdAt < :to " +
+                        "GROUP BY p.serviceType, p.paymentMethod, p.paymentStatus")
+        List<Object[]> summarizeRevenueBuckets(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+        // [serviceType, paymentMethod, userId] phân biệt của payment COMPLETED tạo trong [from, to)
+        @Query("SELECT DISTINCT p.serviceType, p.paymentMethod, p.user.id FROM Payment p " +
+                        "WHERE p.paymentStatus = com.healapp.model.PaymentStatus.COMPLETED " +
+                        "AND p.createdAt >= :from AND p.createdAt < :to")
+        List<Object[]> findRevenueCustomers(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+        // Phần đầu/cuối không trọn ngày của khoảng báo cáo: [paymentStatus, COUNT, SUM(amount),
+        // SUM(refundAmount hoặc amount)] cho payment COMPLETED/REFUNDED tạo trong [from, to]
+        @Query("SELECT p.paymentStatus, COUNT(p), SUM(p.amount), SUM(COALESCE(p.refundAmount, p.amount)) " +
+                        "FROM Payment p " +
+                        "WHERE p.paymentStatus IN (com.healapp.model.PaymentStatus.COMPLETED, " +
+                        "com.healapp.model.PaymentStatus.REFUNDED) " +
+                        "AND p.createdAt BETWEEN :from AND :to " +
+                        "GROUP BY p.paymentStatus")
+        List<Object[]> summarizeRevenueBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+        // Khách phân biệt của payment COMPLETED tạo trong [from, to], gộp vào ước lượng số khách
+        @Query("SELECT DISTINCT p.user.id FROM Payment p " +
+                        "WHERE p.paymentStatus = com.healapp.model.PaymentStatus.COMPLETED " +
+                        "AND p.createdAt BETWEEN :from AND :to")
+        List<Long> findRevenueCustomerIdsBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+        // Keyset page theo (createdAt DESC, paymentId DESC), bắt đầu sau cursor
+        @Query("SELECT new com.healapp.dto.PaymentTransactionResponse(p.paymentId, u.id, u.fullName, " +
+                        "p.serviceType, p.serviceId, p.paymentMethod, p.paymentStatus, p.amount, p.currency, " +
+                        "p.stripePaymentIntentId, p.qrPaymentReference, p.qrCodeUrl, p.transactionId, " +
+                        "p.createdAt, p.paidAt, p.expiresAt, p.updatedAt, p.refundId, p.refundedAt, " +
+                        "p.refundAmount, p.description, p.notes) " +
+                        "FROM Payment p JOIN p.user u " +
+                        "WHERE p.paymentStatus = :status AND p.createdAt >= :from " +
+                        "AND (p.createdAt < :cursorCreatedAt " +
+                        "OR (p.createdAt = :cursorCreatedAt AND p.paymentId < :cursorId)) " +
+                        "ORDER BY p.createdAt DESC, p.paymentId DESC")
+        List<PaymentTransactionResponse> findTransactionPage(@Param("status") PaymentStatus status,
+                        @Param("from") LocalDateTime from,
+                        @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                        @Param("cursorId") Long cursorId,
+                        Pageable pageable);
+
+        // Lịch sử payment của một user, keyset theo (createdAt DESC, paymentId DESC)
+        @Query("SELECT new com.healapp.dto.PaymentTransactionResponse(p.paymentId, u.id, u.fullName, " +
+                        "p.serviceType, p.serviceId, p.paymentMethod, p.paymentStatus, p.amount, p.currency, " +
+                        "p.stripePaymentIntentId, p.qrPaymentReference, p.qrCodeUrl, p.transactionId, " +
+                        "p.createdAt, p.paidAt, p.expiresAt, p.updatedAt, p.refundId, p.refundedAt, " +
+                        "p.refundAmount, p.description, p.notes) " +
+                        "FROM Payment p JOIN p.user u " +
+                        "WHERE u.id = :userId " +
+                        "AND (p.createdAt < :cursorCreatedAt " +
+                        "OR (p.createdAt = :cursorCreatedAt AND p.paymentId < :cursorId)) " +
+                        "ORDER BY p.createdAt DESC, p.paymentId DESC")
+        List<PaymentTransactionResponse> findUserPaymentPage(@Param("userId") Long userId,
+                        @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                        @Param("cursorId") Long cursorId,
+                        Pageable pageable);
+
+        // Danh sách payment cho admin, mọi trạng thái
+        @Query("SELECT new com.healapp.dto.PaymentTransactionResponse(p.paymentId, u.id, u.fullName, " +
+                        "p.serviceType, p.serviceId, p.paymentMethod, p.paymentStatus, p.amount, p.currency, " +
+                        "p.stripePaymentIntentId, p.qrPaymentReference, p.qrCodeUrl, p.transactionId, " +
+                        "p.createdAt, p.paidAt, p.expiresAt, p.updatedAt, p.refundId, p.refundedAt, " +
+                        "p.refundAmount, p.description, p.notes) " +
+                        "FROM Payment p JOIN p.user u " +
+                        "WHERE p.createdAt < :cursorCreatedAt " +
+                        "OR (p.createdAt = :cursorCreatedAt AND p.paymentId < :cursorId) " +
+                        "ORDER BY p.createdAt DESC, p.paymentId DESC")
+        List<PaymentTransactionResponse> findPaymentPage(@Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                        @Param("cursorId") Long cursorId,
+                        Pageable pageable);
+}
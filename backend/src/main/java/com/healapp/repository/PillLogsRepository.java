@@ -1,6 +1,7 @@
 package com.healapp.repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -31,6 +32,8 @@ public interface PillLogsRepository extends JpaRepository<PillLogs, Long>{
 
     Optional<PillLogs> findTopByControlPillsOrderByLogDateDesc(ControlPills controlPills);
 
+    List<PillLogs> findByControlPillsInAndLogDate(Collection<ControlPills> controlPills, LocalDate logDate);
+
     @Modifying
     @Transactional
     void deleteByControlPills(ControlPills controlPills);
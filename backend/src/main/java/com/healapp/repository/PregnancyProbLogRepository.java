@@ -1,6 +1,7 @@
 package com.healapp.repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -32,4 +33,7 @@ public interface PregnancyProbLogRepository extends JpaRepository<PregnancyProbL
         @Param("endDate") LocalDate endDate
     );
 
+    @Query("SELECT p FROM PregnancyProbLog p WHERE p.menstrualCycle.id IN :menstrualCycleIds")
+    List<PregnancyProbLog> findAllByMenstrualCycleIds(@Param("menstrualCycleIds") Collection<Long> menstrualCycleIds);
+
 }
@@ -66,6 +66,16 @@ public interface RatingRepository extends JpaRepository<Rating, Long> {
         List<Object[]> countRatingsByScore(@Param("targetType") Rating.RatingTargetType targetType,
                         @Param("targetId") Long targetId);
 
+        // Phân bố sao của mọi target, dùng cho job đối soát rating summary
+        @Query("SELECT r.targetType, r.targetId, r.rating, COUNT(r) FROM Rating r WHERE r.isActive = true " +
+                        "GROUP BY r.targetType, r.targetId, r.rating")
+        List<Object[]> countActiveRatingsByTargetAndScore();
+
+        // Phân bố sao theo loại target (tối đa 15 dòng), dùng cho dashboard tổng hợp
+        @Query("SELECT r.targetType, r.rating, COUNT(r) FROM Rating r WHERE r.isActive = true " +
+                        "GROUP BY r.targetType, r.rating")
+        List<Object[]> countActiveRatingsByTargetTypeAndScore();
+
         // Kiểm tra user đã đánh giá consultation cụ thể chưa (chỉ active ratings)
         boolean existsByUserIdAndConsultationIdAndIsActiveTrue(Long userId, Long consultationId);
 
@@ -84,8 +94,6 @@ public interface RatingRepository extends JpaRepository<Rating, Long> {
         // Lấy tất cả ratings (cho staff)
         Page<Rating> findByIsActiveTrueOrderByCreatedAtDesc(Pageable pageable);
 
-        List<Rating> findByIsActiveTrueOrderByCreatedAtDesc();
-
         // Lấy ratings theo target type - với Pageable sort
         Page<Rating> findByTargetTypeAndIsActiveTrue(Rating.RatingTargetType targetType, Pageable pageable);
 
@@ -93,8 +101,6 @@ public interface RatingRepository extends JpaRepository<Rating, Long> {
         Page<Rating> findByTargetTypeAndIsActiveTrueOrderByCreatedAtDesc(Rating.RatingTargetType targetType,
                         Pageable pageable);
 
-        List<Rating> findByTargetTypeAndIsActiveTrueOrderByCreatedAtDesc(Rating.RatingTargetType targetType);
-
         // Lấy ratings theo rating score - với Pageable sort
         Page<Rating> findByRatingAndIsActiveTrue(Integer rating, Pageable pageable);
 
@@ -1,8 +1,12 @@
 package com.healapp.repository;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.healapp.model.Rating;
@@ -16,4 +20,29 @@ public interface RatingSummaryRepository extends JpaRepository<RatingSummary, Lo
 
     // Kiểm tra summary tồn tại
     boolean existsByTargetTypeAndTargetId(Rating.RatingTargetType targetType, Long targetId);
+
+    // Cộng dồn thay đổi số sao vào summary ngay trong SQL, không cần đọc lại toàn bộ ratings
+    @Modifying
+    @Query("UPDATE RatingSummary s SET s.totalRatings = s.totalRatings + :total, " +
+            "s.fiveStarCount = s.fiveStarCount + :five, s.fourStarCount = s.fourStarCount + :four, " +
+            "s.threeStarCount = s.threeStarCount + :three, s.twoStarCount = s.twoStarCount + :two, " +
+            "s.oneStarCount = s.oneStarCount + :one, s.lastUpdated = :now, s.version = s.version + 1 " +
+            "WHERE s.targetType = :targetType AND s.targetId = :targetId")
+    int applyDelta(@Param("targetType") Rating.RatingTargetType targetType,
+            @Param("targetId") Long targetId,
+            @Param("total") int total,
+            @Param("five") int five,
+            @Param("four") int four,
+            @Param("three") int three,
+            @Param("two") int two,
+            @Param("one") int one,
+            @Param("now") LocalDateTime now);
+
+    // Tính lại điểm trung bình từ các cột số sao (sau applyDelta, cùng transaction)
+    @Modifying
+    @Query(value = "UPDATE rating_summary SET average_rating = CASE WHEN total_ratings > 0 " +
+            "THEN ROUND(CAST(5 * five_star_count + 4 * four_star_count + 3 * three_star_count " +
+            "+ 2 * two_star_count + one_star_count AS DECIMAL(12, 4)) / total_ratings, 1) ELSE 0 END " +
+            "WHERE target_type = :targetType AND target_id = :targetId", nativeQuery = true)
+    int refreshAverage(@Param("targetType") String targetType, @Param("targetId") Long targetId);
 }
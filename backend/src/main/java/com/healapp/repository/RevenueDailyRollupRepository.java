@@ -0,0 +1,35 @@
+package com.healapp.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.healapp.model.PaymentMethod;
+import com.healapp.model.RevenueDailyRollup;
+
+import jakarta.persistence.LockModeType;
+
+@Repository
+public interface RevenueDailyRollupRepository extends JpaRepository<RevenueDailyRollup, Long> {
+
+    // Khóa dòng tổng hợp để cộng dồn sketch khách hàng (read-modify-write)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM RevenueDailyRollup r WHERE r.rollupDate = :date AND r.serviceType = :serviceType "
+            + "AND r.paymentMethod = :paymentMethod")
+    Optional<RevenueDailyRollup> findForUpdate(@Param("date") LocalDate date,
+            @Param("serviceType") String serviceType,
+            @Param("paymentMethod") PaymentMethod paymentMethod);
+
+    List<RevenueDailyRollup> findByRollupDateBetween(LocalDate from, LocalDate to);
+
+    @Modifying
+    @Query("DELETE FROM RevenueDailyRollup r WHERE r.rollupDate = :date")
+    int deleteByRollupDate(@Param("date") LocalDate date);
+}
@@ -0,0 +1,51 @@
+package com.healapp.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.healapp.model.StripeWebhookEvent;
+import com.healapp.model.StripeWebhookEventStatus;
+
+@Repository
+public interface StripeWebhookEventRepository extends JpaRepository<StripeWebhookEvent, Long> {
+
+    @Query("SELECT e.id FROM StripeWebhookEvent e WHERE e.status = :status AND e.nextAttemptAt <= :now "
+            + "ORDER BY e.nextAttemptAt ASC")
+    List<Long> findDueIds(@Param("status") StripeWebhookEventStatus status, @Param("now") LocalDateTime now,
+            Pageable pageable);
+
+    // Nhận một sự kiện còn PENDING; trả về 0 nếu worker khác đã nhận trước
+    @Modifying
+    @Transactional
+    @Query("UPDATE StripeWebhookEvent e SET e.status = com.healapp.model.StripeWebhookEventStatus.PROCESSING, "
+            + "e.claimedAt = :now WHERE e.id = :id AND e.status = com.healapp.model.StripeWebhookEventStatus.PENDING")
+    int claim(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    // Trả lại các sự kiện bị kẹt ở PROCESSING (worker chết giữa chừng)
+    @Modifying
+    @Transactional
+    @Query("UPDATE StripeWebhookEvent e SET e.status = com.healapp.model.StripeWebhookEventStatus.PENDING "
+            + "WHERE e.status = com.healapp.model.StripeWebhookEventStatus.PROCESSING AND e.claimedAt < :before")
+    int releaseStaleClaims(@Param("before") LocalDateTime before);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM StripeWebhookEvent e WHERE e.status = com.healapp.model.StripeWebhookEventStatus.PROCESSED "
+            + "AND e.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") LocalDateTime before);
+
+    // Sự kiện DEAD giữ lâu hơn để đối soát tay, sau đó xoá theo thời điểm nhận
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM StripeWebhookEvent e WHERE e.status = com.healapp.model.StripeWebhookEventStatus.DEAD "
+            + "AND e.receivedAt < :before")
+    int deleteDeadBefore(@Param("before") LocalDateTime before);
+}
@@ -5,9 +5,11 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.healapp.model.AuthProvider;
 import com.healapp.model.Role;
@@ -34,6 +36,9 @@ public interface UserRepository extends JpaRepository<UserDtls, Long> {
     @Query("SELECT u FROM UserDtls u WHERE u.role.roleName = :roleName AND u.isActive = :isActive")
     List<UserDtls> findByRoleNameAndIsActive(@Param("roleName") String roleName, @Param("isActive") boolean isActive);
 
+    @Query("SELECT COUNT(u) FROM UserDtls u WHERE u.role.roleName = :roleName AND u.isActive = :isActive")
+    long countByRoleNameAndIsActive(@Param("roleName") String roleName, @Param("isActive") boolean isActive);
+
     @Query("SELECT u FROM UserDtls u WHERE u.role.roleName = :roleName AND (u.fullName LIKE CONCAT('%', :query, '%') OR u.email LIKE CONCAT('%', :query, '%'))")
     List<UserDtls> findByRoleNameAndFullNameContainingOrEmailContaining(@Param("roleName") String roleName,
             @Param("query") String query);
@@ -63,10 +68,29 @@ public interface UserRepository extends JpaRepository<UserDtls, Long> {
     // Tìm user active (không bị disable và không bị delete)
     Optional<UserDtls> findByEmailAndIsActiveTrueAndIsDeletedFalse(String email);
     Optional<UserDtls> findByUsernameAndIsActiveTrueAndIsDeletedFalse(String username);
+
+    // Login: một truy vấn dùng cả hai unique index username / email thay cho tối đa bốn lần tìm tuần tự
+    @Query("SELECT u FROM UserDtls u WHERE (u.username = :identifier OR u.email = :identifier) "
+            + "AND u.isActive = true AND u.isDeleted = false")
+    List<UserDtls> findActiveByUsernameOrEmail(@Param("identifier") String identifier);
     
     // Kiểm tra email/username/phone có tồn tại và đang hoạt động không
     boolean existsByEmailAndIsActiveTrueAndIsDeletedFalse(String email);
     boolean existsByUsernameAndIsActiveTrueAndIsDeletedFalse(String username);
+    boolean existsByPhoneNormalizedAndIsActiveTrueAndIsDeletedFalse(String phoneNormalized);
+
+    // Điền phone_normalized / phone_verified cho các bản ghi tạo trước khi có hai cột này.
+    // Cùng quy tắc với UserDtls.normalizePhone: bỏ suffix _V, không có thì cắt từ _D{digits} đầu tiên
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserDtls u SET "
+            + "u.phoneNormalized = CASE WHEN u.phone LIKE '%!_V' ESCAPE '!' "
+            + "THEN SUBSTRING(u.phone, 1, LENGTH(u.phone) - 2) "
+            + "WHEN LOCATE('_D', u.phone) > 0 THEN SUBSTRING(u.phone, 1, LOCATE('_D', u.phone) - 1) "
+            + "ELSE u.phone END, "
+            + "u.phoneVerified = CASE WHEN u.phone LIKE '%!_V' ESCAPE '!' THEN true ELSE false END "
+            + "WHERE u.phone IS NOT NULL AND u.phoneNormalized IS NULL AND u.isDeleted = false")
+    int backfillPhoneState();
     
     // Tìm tất cả user không bị xóa (cho admin quản lý)
     @Query("SELECT u FROM UserDtls u WHERE u.isDeleted = false ORDER BY u.createdDate DESC")
@@ -76,7 +100,19 @@ public interface UserRepository extends JpaRepository<UserDtls, Long> {
     @Query("SELECT u FROM UserDtls u WHERE u.isActive = false AND u.isDeleted = false")
     List<UserDtls> findDisabledByAdmin();
     
+    // Rehash mật khẩu sau login; chỉ ghi khi hash chưa bị đổi ở request khác. Bulk update không qua entity listener
+    // nên token version giữ nguyên: cùng một mật khẩu, phiên hiện có vẫn hợp lệ
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserDtls u SET u.password = :newHash WHERE u.id = :userId AND u.password = :oldHash")
+    int upgradePasswordHash(@Param("userId") Long userId, @Param("oldHash") String oldHash,
+            @Param("newHash") String newHash);
+
     // Tìm user đã bị xóa bởi user (không thể khôi phục)
     @Query("SELECT u FROM UserDtls u WHERE u.isDeleted = true")
     List<UserDtls> findDeletedByUser();
+
+    // Version token và trạng thái tài khoản cho JwtAuthenticationFilter, không load role
+    @Query("SELECT u.tokenVersion, u.isActive, u.isDeleted FROM UserDtls u WHERE u.id = :userId")
+    List<Object[]> findTokenState(@Param("userId") Long userId);
 }
\ No newline at end of file
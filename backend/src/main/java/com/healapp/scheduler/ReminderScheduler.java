@@ -5,6 +5,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import com.healapp.service.ControlPillsService;
+import com.healapp.service.NotificationLedgerService;
 import com.healapp.service.NotificationService;
 
 @Component
@@ -16,6 +17,9 @@ public class ReminderScheduler {
     @Autowired
     private ControlPillsService controlPillsService;
 
+    @Autowired
+    private NotificationLedgerService notificationLedgerService;
+
     // Lịch trình gửi thông báo nhắc nhở ngày rụng trứng
     // @Scheduled(cron = "0 0 7 * * ?") // Chạy lúc 7:00 AM mỗi ngày
     @Scheduled(cron = "0 */1 * * * *") // For testing: every 1 minute
@@ -40,4 +44,10 @@ public class ReminderScheduler {
     public void generateDailyPillLogs() {
         controlPillsService.generateLogsForActivePills();
     }
+
+    // Dọn sổ chống gửi trùng thông báo đã quá hạn lưu giữ
+    @Scheduled(cron = "0 30 0 * * ?") // Chạy lúc 0:30 AM mỗi ngày
+    public void purgeNotificationLedger() {
+        notificationLedgerService.purgeExpiredEntries();
+    }
 }
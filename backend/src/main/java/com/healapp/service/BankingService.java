@@ -6,6 +6,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -14,6 +15,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import com.healapp.config.OutboundCallExecutor;
 import com.healapp.dto.ApiResponse;
 import com.healapp.dto.BankTransactionResponse;
 
@@ -42,7 +44,13 @@ public class BankingService {
     @Value("${banking.simulation.enabled:false}")
     private boolean simulationEnabled;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private static final String BANK_CLIENT = "mbbank";
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private OutboundCallExecutor outboundCallExecutor;
 
     /**
      * Check if QR payment has been received in MB Bank account
@@ -75,8 +83,9 @@ public class BankingService {
             String endpoint = mbBankApiUrl + "/api/transaction-history/check";
 
             try {
-                ResponseEntity<BankTransactionResponse> response = restTemplate.exchange(
-                        endpoint, HttpMethod.POST, request, BankTransactionResponse.class);
+                ResponseEntity<BankTransactionResponse> response = outboundCallExecutor.execute(
+                        BANK_CLIENT, "transaction-history.check", true, () -> restTemplate.exchange(
+                                endpoint, HttpMethod.POST, request, BankTransactionResponse.class));
 
                 BankTransactionResponse bankResponse = response.getBody();
 
@@ -115,10 +124,14 @@ public class BankingService {
         }
     }
 
+    public boolean isSimulationEnabled() {
+        return simulationEnabled;
+    }
+
     /**
      * Simulate transaction check for development/testing
      */
-    private ApiResponse<BankTransactionResponse> simulateTransactionCheck(String qrReference,
+    public ApiResponse<BankTransactionResponse> simulateTransactionCheck(String qrReference,
             BigDecimal expectedAmount) {
         log.info("🔄 Simulating MB Bank transaction check for QR: {}", qrReference);
 
@@ -150,6 +163,20 @@ public class BankingService {
      * Get recent transactions from MB Bank account
      */
     public ApiResponse<BankTransactionResponse[]> getRecentTransactions() {
+        return getTransactionHistory(LocalDateTime.now().minusDays(1), LocalDateTime.now(), 50);
+    }
+
+    public ApiResponse<BankTransactionResponse[]> getTransactionHistory(LocalDateTime fromDate, LocalDateTime toDate,
+            int limit) {
+        return getTransactionHistory(fromDate, toDate, limit, 0);
+    }
+
+    /**
+     * Lấy lịch sử giao dịch đến (CREDIT) trong khoảng [fromDate, toDate], tối đa limit dòng bắt đầu từ offset.
+     * Dùng cho đối soát QR hàng loạt: một lần gọi API cho mọi payment đang chờ, trang tiếp theo khi trang đầy.
+     */
+    public ApiResponse<BankTransactionResponse[]> getTransactionHistory(LocalDateTime fromDate, LocalDateTime toDate,
+            int limit, int offset) {
         try {
             HttpHeaders headers = new HttpHeaders();
             headers.set("Authorization", "Bearer " + mbApiKey);
@@ -158,20 +185,25 @@ public class BankingService {
 
             Map<String, Object> requestBody = new HashMap<>();
             requestBody.put("accountNumber", mbAccountNumber);
-            requestBody.put("fromDate", LocalDateTime.now().minusDays(1).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-            requestBody.put("toDate", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-            requestBody.put("limit", 50);
+            requestBody.put("fromDate", fromDate.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            requestBody.put("toDate", toDate.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            requestBody.put("transactionType", "CREDIT");
+            requestBody.put("limit", limit);
+            requestBody.put("offset", offset);
 
             HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
 
             String endpoint = mbBankApiUrl + "/api/transaction-history";
-            ResponseEntity<BankTransactionResponse[]> response = restTemplate.exchange(
-                    endpoint, HttpMethod.POST, request, BankTransactionResponse[].class);
+            ResponseEntity<BankTransactionResponse[]> response = outboundCallExecutor.execute(
+                    BANK_CLIENT, "transaction-history", true, () -> restTemplate.exchange(
+                            endpoint, HttpMethod.POST, request, BankTransactionResponse[].class));
 
-            return ApiResponse.success("Recent transactions retrieved", response.getBody());
+            BankTransactionResponse[] transactions = response.getBody();
+            return ApiResponse.success("Recent transactions retrieved",
+                    transactions != null ? transactions : new BankTransactionResponse[0]);
 
         } catch (Exception e) {
-            log.error("Error getting recent MB Bank transactions: {}", e.getMessage(), e);
+            log.error("Error getting MB Bank transaction history: {}", e.getMessage(), e);
             return ApiResponse.error("Failed to get transactions: " + e.getMessage());
         }
     }
@@ -219,8 +251,9 @@ public class BankingService {
             HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
 
             String endpoint = mbBankApiUrl + "/api/account/validate";
-            ResponseEntity<Map> response = restTemplate.exchange(
-                    endpoint, HttpMethod.POST, request, Map.class);
+            ResponseEntity<Map> response = outboundCallExecutor.execute(
+                    BANK_CLIENT, "account.validate", true, () -> restTemplate.exchange(
+                            endpoint, HttpMethod.POST, request, Map.class));
 
             Map<String, Object> result = response.getBody();
             if (result != null && "SUCCESS".equals(result.get("status"))) {
@@ -485,8 +485,9 @@ public class ConsultationService {
     public Map<String, Long> getAdminDashboardConsultationStats() {
         Map<String, Long> stats = new HashMap<>();
         stats.put("totalConsultations", consultationRepository.count());
-        stats.put("todayConsultations", consultationRepository.findAll().stream()
-                .filter(c -> c.getStartTime().toLocalDate().equals(java.time.LocalDate.now())).count());
+        java.time.LocalDate today = java.time.LocalDate.now();
+        stats.put("todayConsultations", consultationRepository.countByStartTimeRange(
+                today.atStartOfDay(), today.plusDays(1).atStartOfDay()));
         return stats;
     }
 
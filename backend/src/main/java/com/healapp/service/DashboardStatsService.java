@@ -0,0 +1,137 @@
+package com.healapp.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Thống kê tổng quan cho admin dashboard. Các nhóm COUNT được chạy song song trên
+ * dashboardExecutor và gộp thành một snapshot, làm mới nền mỗi refresh-interval-ms;
+ * endpoint chỉ đọc snapshot nên không chạm DB.
+ */
+@Service
+public class DashboardStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DashboardStatsService.class);
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ConsultationService consultationService;
+
+    @Autowired
+    private STIServiceService stiServiceService;
+
+    @Autowired
+    private STIPackageService stiPackageService;
+
+    @Autowired
+    private QuestionService questionService;
+
+    @Autowired
+    private RatingService ratingService;
+
+    @Autowired
+    @Qualifier("dashboardExecutor")
+    private AsyncTaskExecutor dashboardExecutor;
+
+    @Value("${admin.dashboard.query-timeout-ms:10000}")
+    private long queryTimeoutMs = 10000;
+
+    private volatile Snapshot snapshot;
+
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    public record Snapshot(Map<String, Long> stats, LocalDateTime refreshedAt) {
+    }
+
+    /**
+     * Snapshot hiện tại; chỉ tính đồng bộ ở lần gọi đầu tiên trước khi job nền kịp chạy.
+     */
+    public Snapshot getOverview() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            // ReentrantLock thay vì synchronized: refresh chờ DB, không giữ chặt carrier thread khi chạy virtual thread
+            refreshLock.lock();
+            try {
+                current = snapshot;
+                if (current == null) {
+                    current = refresh();
+                }
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+        return current;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        refreshSnapshot();
+    }
+
+    @Scheduled(fixedDelayString = "${admin.dashboard.refresh-interval-ms:30000}")
+    public void refreshSnapshot() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            logger.error("Failed to refresh admin dashboard snapshot: {}", e.getMessage(), e);
+        }
+    }
+
+    private Snapshot refresh() {
+        Map<String, Supplier<Map<String, Long>>> sources = new LinkedHashMap<>();
+        sources.put("users", userService::getAdminDashboardUserStats);
+        sources.put("consultations", consultationService::getAdminDashboardConsultationStats);
+        sources.put("stiServices", stiServiceService::getAdminDashboardServiceStats);
+        sources.put("stiPackages", stiPackageService::getAdminDashboardPackageStats);
+        sources.put("questions", questionService::getAdminDashboardQuestionStats);
+        sources.put("ratings", ratingService::getAdminDashboardRatingStats);
+
+        List<String> names = new ArrayList<>(sources.keySet());
+        List<CompletableFuture<Map<String, Long>>> futures = new ArrayList<>();
+        for (Supplier<Map<String, Long>> source : sources.values()) {
+            futures.add(CompletableFuture.supplyAsync(source, dashboardExecutor));
+        }
+
+        Snapshot previous = snapshot;
+        Map<String, Long> stats = new HashMap<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                stats.putAll(futures.get(i).get(queryTimeoutMs, TimeUnit.MILLISECONDS));
+            } catch (Exception e) {
+                futures.get(i).cancel(true);
+                // Giữ số liệu cũ của nhóm lỗi thay vì trả về thiếu key
+                logger.warn("Dashboard stats source '{}' failed, keeping previous values: {}", names.get(i),
+                        e.getMessage());
+                if (previous != null) {
+                    previous.stats().forEach(stats::putIfAbsent);
+                }
+            }
+        }
+
+        Snapshot refreshed = new Snapshot(Collections.unmodifiableMap(stats), LocalDateTime.now());
+        snapshot = refreshed;
+        return refreshed;
+    }
+}
@@ -0,0 +1,124 @@
+package com.healapp.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.healapp.model.EphemeralCode;
+import com.healapp.repository.EphemeralCodeRepository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Backend database của EphemeralCodeStore, cho triển khai nhiều node: mã gửi ở node này xác thực được ở node khác.
+ * Mã hết hạn bị lọc khi đọc và xoá theo lô bằng job định kỳ (index trên expires_at).
+ * Giới hạn max-entries so với số dòng ước lượng (đếm lại ở mỗi lượt purge, cộng dần khi put) để put không chạy count().
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "ephemeral-code.store", havingValue = "database")
+public class DatabaseEphemeralCodeStore implements EphemeralCodeStore {
+
+    @Autowired
+    private EphemeralCodeRepository ephemeralCodeRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ephemeral-code.max-entries:100000}")
+    private int maxEntries = 100000;
+
+    // Số dòng ước lượng: put cộng thêm (kể cả khi chỉ ghi đè), purge đếm lại chính xác
+    private final AtomicLong approximateCount = new AtomicLong();
+
+    @PostConstruct
+    void registerGauges() {
+        approximateCount.set(ephemeralCodeRepository.count());
+        Gauge.builder("ephemeral.codes.size", approximateCount, AtomicLong::get)
+                .description("Verification codes stored in the database (approximate)")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void put(String namespace, String key, String code, Duration ttl) {
+        if (approximateCount.get() >= maxEntries) {
+            evictEarliest();
+        }
+        EphemeralCode entity = new EphemeralCode(entryKey(namespace, key), code, LocalDateTime.now().plus(ttl));
+        try {
+            ephemeralCodeRepository.save(entity);
+        } catch (DataIntegrityViolationException e) {
+            // Node khác vừa insert cùng key: lần save sau thành update
+            ephemeralCodeRepository.save(entity);
+        }
+        approximateCount.incrementAndGet();
+    }
+
+    @Override
+    public Optional<String> get(String namespace, String key) {
+        return ephemeralCodeRepository.findById(entryKey(namespace, key))
+                .filter(entity -> entity.getExpiresAt().isAfter(LocalDateTime.now()))
+                .map(EphemeralCode::getCode);
+    }
+
+    @Override
+    public void remove(String namespace, String key) {
+        ephemeralCodeRepository.deleteByCodeKey(entryKey(namespace, key));
+    }
+
+    @Override
+    public long size() {
+        return ephemeralCodeRepository.count();
+    }
+
+    @Scheduled(fixedDelayString = "${ephemeral-code.cleanup-interval-ms:60000}")
+    public void evictExpired() {
+        try {
+            purgeExpired();
+            approximateCount.set(ephemeralCodeRepository.count());
+        } catch (Exception e) {
+            log.error("Error purging expired verification codes: {}", e.getMessage(), e);
+        }
+    }
+
+    private int purgeExpired() {
+        int deleted = ephemeralCodeRepository.deleteExpired(LocalDateTime.now());
+        if (deleted > 0) {
+            meterRegistry.counter("ephemeral.codes.expired").increment(deleted);
+            log.debug("Purged {} expired verification codes", deleted);
+        }
+        return deleted;
+    }
+
+    // Chỉ chạy khi chạm ngưỡng: xoá mã hết hạn trước, chỉ bỏ mã còn hiệu lực (hết hạn sớm nhất) nếu vẫn đầy
+    private synchronized void evictEarliest() {
+        if (approximateCount.get() < maxEntries) {
+            return;
+        }
+        purgeExpired();
+        approximateCount.set(ephemeralCodeRepository.count());
+        if (approximateCount.get() < maxEntries) {
+            return;
+        }
+        List<EphemeralCode> earliest = ephemeralCodeRepository.findTop100ByOrderByExpiresAtAsc();
+        ephemeralCodeRepository.deleteAllInBatch(earliest);
+        approximateCount.addAndGet(-earliest.size());
+        meterRegistry.counter("ephemeral.codes.evicted").increment(earliest.size());
+    }
+
+    private String entryKey(String namespace, String key) {
+        return namespace + ":" + key;
+    }
+}
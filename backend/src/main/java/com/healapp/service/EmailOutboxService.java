@@ -0,0 +1,343 @@
+package com.healapp.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.healapp.model.EmailOutbox;
+import com.healapp.model.EmailOutboxStatus;
+import com.healapp.repository.EmailOutboxRepository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * Outbox cho email gửi đi. Email được ghi vào bảng email_outbox trong transaction
+ * của nơi gọi, sau đó worker nhận từng lô, gửi nhiều email trên một kết nối SMTP,
+ * retry với backoff lũy thừa và chuyển lỗi vĩnh viễn sang DEAD.
+ */
+@Service
+public class EmailOutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailOutboxService.class);
+
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @Autowired
+    private JavaMailSender mailSender;
+
+    @Autowired
+    @Qualifier("mailExecutor")
+    private AsyncTaskExecutor mailExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${mail.outbox.batch-size:100}")
+    private int batchSize = 100;
+
+    @Value("${mail.outbox.messages-per-connection:20}")
+    private int messagesPerConnection = 20;
+
+    @Value("${mail.outbox.max-attempts:6}")
+    private int maxAttempts = 6;
+
+    @Value("${mail.outbox.backoff.initial-seconds:30}")
+    private long initialBackoffSeconds = 30;
+
+    @Value("${mail.outbox.backoff.max-seconds:3600}")
+    private long maxBackoffSeconds = 3600;
+
+    @Value("${mail.outbox.retention-days:7}")
+    private int retentionDays = 7;
+
+    @Value("${mail.outbox.dead-retention-days:30}")
+    private int deadRetentionDays = 30;
+
+    // Bản ghi SENDING quá thời gian này coi như worker đã chết, trả lại PENDING.
+    // 0 = tự tính từ timeout SMTP (staleClaimThreshold)
+    @Value("${mail.outbox.stale-claim-minutes:0}")
+    private long staleClaimMinutes = 0;
+
+    // Số lô con đang chờ/gửi tối đa trên node; bằng core pool của mailExecutor nên lô con không phải xếp hàng
+    @Value("${mail.dispatch.core-pool-size:4}")
+    private int maxInFlightBatches = 4;
+
+    @Value("${spring.mail.properties.mail.smtp.connectiontimeout:10000}")
+    private long connectTimeoutMs = 10000;
+
+    @Value("${spring.mail.properties.mail.smtp.timeout:30000}")
+    private long readTimeoutMs = 30000;
+
+    @Value("${spring.mail.properties.mail.smtp.writetimeout:30000}")
+    private long writeTimeoutMs = 30000;
+
+    private final AtomicLong pendingBacklog = new AtomicLong();
+
+    private final AtomicInteger inFlightBatches = new AtomicInteger();
+
+    private Duration staleClaimThreshold;
+
+    @PostConstruct
+    void registerGauges() {
+        Gauge.builder("mail.outbox.backlog", pendingBacklog, AtomicLong::get)
+                .description("Pending emails in the outbox at the last poll")
+                .register(meterRegistry);
+        staleClaimThreshold = staleClaimMinutes > 0 ? Duration.ofMinutes(staleClaimMinutes) : worstCaseBatchDuration();
+        logger.info("Outbox claims older than {} are treated as abandoned", staleClaimThreshold);
+    }
+
+    /**
+     * Thời gian tối đa một lô con giữ claim: kết nối SMTP, rồi mỗi email một lần ghi nội dung và bốn lần chờ
+     * phản hồi (MAIL FROM, RCPT TO, DATA, kết thúc DATA). Lô con không xếp hàng trên mailExecutor
+     * (tối đa maxInFlightBatches), nên đây cũng là thời gian từ lúc claim đến lúc ghi kết quả.
+     * Cộng thêm một lô để có biên cho GC, DB chậm.
+     */
+    Duration worstCaseBatchDuration() {
+        long perMessageMs = writeTimeoutMs + 4 * readTimeoutMs;
+        long batchMs = connectTimeoutMs + messagesPerConnection * perMessageMs;
+        return Duration.ofMillis(2 * batchMs);
+    }
+
+    /**
+     * Ghi email vào outbox. Dùng transaction hiện tại nếu có, nên email chỉ được
+     * gửi khi nghiệp vụ của nơi gọi commit thành công.
+     */
+    public EmailOutbox enqueue(String template, String recipient, MimeMessage message) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeTo(out);
+
+        EmailOutbox outbox = new EmailOutbox();
+        outbox.setTemplate(template);
+        outbox.setRecipient(recipient);
+        outbox.setMimeContent(out.toByteArray());
+        outbox.setStatus(EmailOutboxStatus.PENDING);
+        outbox.setAttempts(0);
+        EmailOutbox saved = emailOutboxRepository.save(outbox);
+        meterRegistry.counter("mail.outbox.enqueued", "template", template).increment();
+        return saved;
+    }
+
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-interval-ms:5000}")
+    public void drainOutbox() {
+        LocalDateTime now = LocalDateTime.now();
+        emailOutboxRepository.releaseStaleClaims(now.minus(staleClaimThreshold));
+
+        // Chỉ nhận thêm khi còn worker rảnh: email đã claim không nằm chờ trong hàng đợi quá ngưỡng stale
+        int freeBatches = maxInFlightBatches - inFlightBatches.get();
+        if (freeBatches <= 0) {
+            return;
+        }
+        int limit = Math.min(batchSize, freeBatches * messagesPerConnection);
+
+        List<Long> dueIds = emailOutboxRepository.findDueIds(EmailOutboxStatus.PENDING, now, PageRequest.of(0, limit));
+        pendingBacklog.set(dueIds.size() < limit ? dueIds.size() : emailOutboxRepository.countByStatus(EmailOutboxStatus.PENDING));
+        if (dueIds.isEmpty()) {
+            return;
+        }
+
+        String token = UUID.randomUUID().toString();
+        int claimed = emailOutboxRepository.claim(dueIds, token, now);
+        if (claimed == 0) {
+            return;
+        }
+        List<EmailOutbox> batch = emailOutboxRepository.findByClaimToken(token);
+        logger.info("Claimed {} outbox emails for delivery", batch.size());
+
+        // Mỗi lô con dùng một kết nối SMTP, các lô con chạy song song trên mailExecutor
+        for (int from = 0; from < batch.size(); from += messagesPerConnection) {
+            List<EmailOutbox> chunk = batch.subList(from, Math.min(from + messagesPerConnection, batch.size()));
+            List<EmailOutbox> connectionBatch = new ArrayList<>(chunk);
+            inFlightBatches.incrementAndGet();
+            try {
+                mailExecutor.execute(() -> {
+                    try {
+                        deliver(connectionBatch);
+                    } finally {
+                        inFlightBatches.decrementAndGet();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Không giao được thì claim hết hạn và được trả lại ở lượt sau
+                inFlightBatches.decrementAndGet();
+                throw e;
+            }
+        }
+    }
+
+    @Scheduled(cron = "0 15 1 * * ?") // Chạy lúc 1:15 AM mỗi ngày
+    public void purgeFinishedEmails() {
+        LocalDateTime now = LocalDateTime.now();
+        int sent = emailOutboxRepository.deleteSentBefore(now.minusDays(retentionDays));
+        // Mail DEAD vẫn còn nội dung (mã xác thực, link reset): chỉ giữ đủ lâu để điều tra
+        int dead = emailOutboxRepository.deleteDeadBefore(now.minusDays(deadRetentionDays));
+        logger.info("Purged {} sent outbox emails older than {} days and {} dead ones older than {} days",
+                sent, retentionDays, dead, deadRetentionDays);
+    }
+
+    void deliver(List<EmailOutbox> batch) {
+        Map<MimeMessage, EmailOutbox> byMessage = new IdentityHashMap<>();
+        List<MimeMessage> messages = new ArrayList<>();
+        for (EmailOutbox outbox : batch) {
+            try {
+                MimeMessage message = mailSender.createMimeMessage(new ByteArrayInputStream(outbox.getMimeContent()));
+                byMessage.put(message, outbox);
+                messages.add(message);
+            } catch (Exception e) {
+                markDead(outbox, "Invalid MIME content: " + e.getMessage());
+            }
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        Map<Object, Exception> failures = Map.of();
+        Exception batchFailure = null;
+        long startedAt = System.nanoTime();
+        try {
+            // JavaMailSenderImpl gửi cả mảng trên một Transport đã kết nối
+            mailSender.send(messages.toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            failures = e.getFailedMessages();
+            batchFailure = e;
+        } catch (Exception e) {
+            batchFailure = e;
+        }
+        Timer.builder("mail.outbox.batch.latency")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(Duration.ofNanos(System.nanoTime() - startedAt));
+
+        LocalDateTime now = LocalDateTime.now();
+        for (MimeMessage message : messages) {
+            EmailOutbox outbox = byMessage.get(message);
+            Exception failure = failures.get(message);
+            if (failure == null && batchFailure != null && failures.isEmpty()) {
+                // Lỗi kết nối/xác thực: cả lô coi như thất bại
+                failure = batchFailure;
+            }
+
+            if (failure == null) {
+                // Không giữ nội dung đã gửi (mã OTP, mã reset mật khẩu); cột NOT NULL nên ghi mảng rỗng
+                int updated = emailOutboxRepository.markSent(outbox.getId(), outbox.getClaimToken(), new byte[0], now);
+                if (updated == 0) {
+                    claimLost(outbox);
+                    continue;
+                }
+                meterRegistry.counter("mail.outbox.sent", "template", outbox.getTemplate()).increment();
+                Timer.builder("mail.outbox.delivery.delay").tag("template", outbox.getTemplate())
+                        .register(meterRegistry).record(Duration.between(outbox.getCreatedAt(), now));
+            } else {
+                scheduleRetryOrDeadLetter(outbox, failure, now);
+            }
+        }
+    }
+
+    private void scheduleRetryOrDeadLetter(EmailOutbox outbox, Exception failure, LocalDateTime now) {
+        int attempts = outbox.getAttempts() + 1;
+
+        if (isPermanentFailure(failure) || attempts >= maxAttempts) {
+            if (!completeClaim(outbox, EmailOutboxStatus.DEAD, attempts, failure.getMessage(),
+                    outbox.getNextAttemptAt(), now)) {
+                return;
+            }
+            meterRegistry.counter("mail.outbox.dead", "template", outbox.getTemplate()).increment();
+            logger.error("Outbox email {} [{}] to {} moved to dead letter after {} attempts: {}",
+                    outbox.getId(), outbox.getTemplate(), outbox.getRecipient(), attempts, failure.getMessage());
+            return;
+        }
+
+        LocalDateTime nextAttemptAt = now.plusSeconds(backoffSeconds(attempts));
+        if (!completeClaim(outbox, EmailOutboxStatus.PENDING, attempts, failure.getMessage(), nextAttemptAt, now)) {
+            return;
+        }
+        meterRegistry.counter("mail.outbox.retried", "template", outbox.getTemplate()).increment();
+        logger.warn("Outbox email {} [{}] to {} failed (attempt {}), retrying at {}: {}",
+                outbox.getId(), outbox.getTemplate(), outbox.getRecipient(), attempts,
+                nextAttemptAt, failure.getMessage());
+    }
+
+    private void markDead(EmailOutbox outbox, String reason) {
+        if (!completeClaim(outbox, EmailOutboxStatus.DEAD, outbox.getAttempts(), reason, outbox.getNextAttemptAt(),
+                LocalDateTime.now())) {
+            return;
+        }
+        meterRegistry.counter("mail.outbox.dead", "template", outbox.getTemplate()).increment();
+        logger.error("Outbox email {} [{}] moved to dead letter: {}", outbox.getId(), outbox.getTemplate(), reason);
+    }
+
+    private boolean completeClaim(EmailOutbox outbox, EmailOutboxStatus status, int attempts, String lastError,
+            LocalDateTime nextAttemptAt, LocalDateTime now) {
+        int updated = emailOutboxRepository.completeClaim(outbox.getId(), outbox.getClaimToken(), status, attempts,
+                lastError, nextAttemptAt, now);
+        if (updated == 0) {
+            claimLost(outbox);
+            return false;
+        }
+        return true;
+    }
+
+    // Claim đã bị trả lại (quá ngưỡng stale) trước khi ghi kết quả: trạng thái hiện tại thuộc về worker khác
+    private void claimLost(EmailOutbox outbox) {
+        meterRegistry.counter("mail.outbox.claim.lost", "template", outbox.getTemplate()).increment();
+        logger.warn("Outbox email {} [{}] lost its claim before the delivery result was recorded",
+                outbox.getId(), outbox.getTemplate());
+    }
+
+    // 30s, 60s, 120s, ... tối đa max-seconds
+    long backoffSeconds(int attempts) {
+        long delay = initialBackoffSeconds << Math.min(attempts - 1, 20);
+        return Math.min(delay, maxBackoffSeconds);
+    }
+
+    // Địa chỉ sai hoặc nội dung hỏng thì retry cũng vô ích
+    private boolean isPermanentFailure(Exception failure) {
+        if (failure instanceof MailParseException || failure instanceof MailPreparationException) {
+            return true;
+        }
+        if (failure instanceof MailAuthenticationException) {
+            return false;
+        }
+        Throwable cause = failure;
+        while (cause != null) {
+            if (cause instanceof AddressException) {
+                return true;
+            }
+            if (cause instanceof SendFailedException sendFailed
+                    && sendFailed.getInvalidAddresses() != null && sendFailed.getInvalidAddresses().length > 0) {
+                return true;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+}
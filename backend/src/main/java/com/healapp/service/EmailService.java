@@ -11,7 +11,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import com.healapp.model.Consultation;
@@ -31,6 +30,12 @@ public class EmailService {
     @Autowired
     private JavaMailSender mailSender;
 
+    @Autowired
+    private MailDispatchService mailDispatchService;
+
+    @Autowired
+    private EmailTemplateService emailTemplateService;
+
     @Value("${spring.mail.from}")
     private String from;
 
@@ -39,15 +44,9 @@ public class EmailService {
         mailSender.send(message);
     }
 
-    @Async("asyncExecutor")
     public void sendPasswordResetCodeAsync(String to, String code) {
-        try {
-            MimeMessage message = createResetPasswordMessage(to, code);
-            mailSender.send(message);
-            logger.info("Password reset email sent successfully to: {}", to);
-        } catch (MessagingException e) {
-            logger.error("Failed to send password reset email to {}: {}", to, e.getMessage());
-        }
+        mailDispatchService.dispatch("password-reset", to,
+                () -> createResetPasswordMessage(to, code));
     }
 
     private MimeMessage createResetPasswordMessage(String to, String code) throws MessagingException {
@@ -57,17 +56,7 @@ public class EmailService {
         helper.setTo(to);
         helper.setSubject("Password Reset Verification Code");
 
-        String htmlContent = "<div style='font-family: Arial, sans-serif; padding: 20px; max-width: 600px; margin: 0 auto;'>"
-                + "<h2 style='color: #4a6ee0;'>Password Reset</h2>"
-                + "<p>You have requested to reset your password. Please use the following verification code:</p>"
-                + "<div style='background-color: #f5f5f5; padding: 15px; border-radius: 5px; margin: 20px 0; "
-                + "text-align: center; font-size: 24px; letter-spacing: 5px; font-weight: bold;'>"
-                + code
-                + "</div>"
-                + "<p>This code will expire in 15 minutes.</p>"
-                + "<p>If you did not request a password reset, please ignore this email.</p>"
-                + "<p>Best regards,<br/>Heal App Team</p>"
-                + "</div>";
+        String htmlContent = emailTemplateService.render("password-reset", "code", code);
 
         helper.setText(htmlContent, true);
 
@@ -75,86 +64,53 @@ public class EmailService {
     }
 
     public void sendConsultationConfirmation(Consultation consultation) throws MessagingException {
-        sendEmailToCustomer(consultation);
+        mailSender.send(createConsultationCustomerMessage(consultation));
 
-        sendEmailToStaff(consultation);
+        mailSender.send(createConsultationStaffMessage(consultation));
     }
 
-    @Async("asyncExecutor")
     public void sendConsultationConfirmationAsync(Consultation consultation) {
-        try {
-            sendConsultationConfirmation(consultation);
-            logger.info("Consultation confirmation emails sent successfully for consultation ID: {}",
-                    consultation.getConsultationId());
-        } catch (MessagingException e) {
-            logger.error("Failed to send consultation confirmation emails for consultation ID {}: {}",
-                    consultation.getConsultationId(), e.getMessage());
-        }
+        mailDispatchService.dispatch("consultation-confirmation-customer", consultation.getCustomer().getEmail(),
+                () -> createConsultationCustomerMessage(consultation));
+        mailDispatchService.dispatch("consultation-confirmation-staff", consultation.getConsultant().getEmail(),
+                () -> createConsultationStaffMessage(consultation));
     }
 
-    private void sendEmailToCustomer(Consultation consultation) throws MessagingException {
+    private MimeMessage createConsultationCustomerMessage(Consultation consultation) throws MessagingException {
         UserDtls customer = consultation.getCustomer();
         UserDtls staff = consultation.getConsultant();
 
         String subject = "Xác nhận cuộc tư vấn #" + consultation.getConsultationId();
 
-        String htmlContent = "<div style='font-family: Arial, sans-serif; padding: 20px; max-width: 600px; margin: 0 auto;'>"
-                + "<h2 style='color: #4a6ee0;'>Xác nhận cuộc tư vấn</h2>"
-                + "<p>Xin chào " + customer.getFullName() + ",</p>"
-                + "<p>Cuộc tư vấn của bạn đã được xác nhận với các thông tin sau:</p>"
-                + "<div style='background-color: #f5f5f5; padding: 15px; border-radius: 5px; margin: 20px 0;'>"
-                + "<p><strong>Mã cuộc tư vấn:</strong> #" + consultation.getConsultationId() + "</p>"
-                + "<p><strong>Nhân viên tư vấn:</strong> " + staff.getFullName() + "</p>"
-                + "<p><strong>Ngày tư vấn:</strong> " + consultation.getStartTime().format(DATE_FORMATTER) + "</p>"
-                + "<p><strong>Thời gian:</strong> " + consultation.getStartTime().format(TIME_FORMATTER)
-                + " - " + consultation.getEndTime().format(TIME_FORMATTER) + "</p>"
-                + "</div>"
-                + "<p>Vui lòng tham gia cuộc tư vấn trực tuyến qua link Jitsi Meet sau:</p>"
-                + "<p><a href=\"" + consultation.getMeetUrl() + "\" style='display: inline-block; "
-                + "background-color: #4a6ee0; color: white; padding: 10px 20px; text-decoration: none; "
-                + "border-radius: 5px; font-weight: bold;'>Tham gia cuộc họp</a></p>"
-                + "<p><small>Hoặc copy link sau: " + consultation.getMeetUrl() + "</small></p>"
-                + "<h3>Hướng dẫn sử dụng Jitsi Meet:</h3>"
-                + "<ol>"
-                + "<li>Nhấn vào đường link trên vào đúng thời gian hẹn</li>"
-                + "<li>Cho phép trình duyệt truy cập camera và microphone</li>"
-                + "<li>Nhập tên của bạn và tham gia cuộc họp</li>"
-                + "</ol>"
-                + "<p>Nếu bạn cần hỗ trợ, vui lòng liên hệ chúng tôi qua email hoặc số điện thoại.</p>"
-                + "<p>Trân trọng,<br/>Gender Heathcare Service Team</p>"
-                + "</div>";
-
-        sendEmail(customer.getEmail(), subject, htmlContent);
-    }
-
-    private void sendEmailToStaff(Consultation consultation) throws MessagingException {
+        String htmlContent = emailTemplateService.render("consultation-confirmation-customer",
+                "customerName", customer.getFullName(),
+                "consultationId", consultation.getConsultationId(),
+                "consultantName", staff.getFullName(),
+                "date", consultation.getStartTime().format(DATE_FORMATTER),
+                "startTime", consultation.getStartTime().format(TIME_FORMATTER),
+                "endTime", consultation.getEndTime().format(TIME_FORMATTER),
+                "meetUrl", consultation.getMeetUrl());
+
+        return createEmailMessage(customer.getEmail(), subject, htmlContent);
+    }
+
+    private MimeMessage createConsultationStaffMessage(Consultation consultation) throws MessagingException {
         UserDtls customer = consultation.getCustomer();
         UserDtls consultant = consultation.getConsultant();
 
         String subject = "Xác nhận cuộc tư vấn với khách hàng #" + consultation.getConsultationId();
 
-        String htmlContent = "<div style='font-family: Arial, sans-serif; padding: 20px; max-width: 600px; margin: 0 auto;'>"
-                + "<h2 style='color: #4a6ee0;'>Thông tin cuộc tư vấn</h2>"
-                + "<p>Xin chào " + consultant.getFullName() + ",</p>"
-                + "<p>Bạn có một cuộc tư vấn đã được xác nhận với khách hàng:</p>"
-                + "<div style='background-color: #f5f5f5; padding: 15px; border-radius: 5px; margin: 20px 0;'>"
-                + "<p><strong>Mã cuộc tư vấn:</strong> #" + consultation.getConsultationId() + "</p>"
-                + "<p><strong>Khách hàng:</strong> " + customer.getFullName() + "</p>"
-                + "<p><strong>Email khách hàng:</strong> " + customer.getEmail() + "</p>"
-                + "<p><strong>Ngày tư vấn:</strong> " + consultation.getStartTime().format(DATE_FORMATTER) + "</p>"
-                + "<p><strong>Thời gian:</strong> " + consultation.getStartTime().format(TIME_FORMATTER)
-                + " - " + consultation.getEndTime().format(TIME_FORMATTER) + "</p>"
-                + "</div>"
-                + "<p>Link Jitsi Meet để tư vấn:</p>"
-                + "<p><a href=\"" + consultation.getMeetUrl() + "\" style='display: inline-block; "
-                + "background-color: #4a6ee0; color: white; padding: 10px 20px; text-decoration: none; "
-                + "border-radius: 5px; font-weight: bold;'>Tham gia cuộc họp</a></p>"
-                + "<p><small>Hoặc copy link sau: " + consultation.getMeetUrl() + "</small></p>"
-                + "<p>Vui lòng chuẩn bị và có mặt đúng giờ để đảm bảo chất lượng dịch vụ.</p>"
-                + "<p>Trân trọng,<br/>Gender Heathcare Service Team</p>"
-                + "</div>";
-
-        sendEmail(consultant.getEmail(), subject, htmlContent);
+        String htmlContent = emailTemplateService.render("consultation-confirmation-staff",
+                "consultantName", consultant.getFullName(),
+                "consultationId", consultation.getConsultationId(),
+                "customerName", customer.getFullName(),
+                "customerEmail", customer.getEmail(),
+                "date", consultation.getStartTime().format(DATE_FORMATTER),
+                "startTime", consultation.getStartTime().format(TIME_FORMATTER),
+                "endTime", consultation.getEndTime().format(TIME_FORMATTER),
+                "meetUrl", consultation.getMeetUrl());
+
+        return createEmailMessage(consultant.getEmail(), subject, htmlContent);
     }
 
     // private String formatDateTime(LocalDateTime dateTime) {
@@ -168,17 +124,7 @@ public class EmailService {
         helper.setTo(to);
         helper.setSubject("Xác thực email - Gender Heathcare Service");
 
-        String htmlContent = "<div style='font-family: Arial, sans-serif; padding: 20px; max-width: 600px; margin: 0 auto;'>"
-                + "<h2 style='color: #4a6ee0;'>Xác thực địa chỉ email</h2>"
-                + "<p>Cảm ơn bạn đã đăng ký tài khoản tại Gender Heathcare Service. Để hoàn tất quá trình đăng ký, vui lòng nhập mã xác thực sau:</p>"
-                + "<div style='background-color: #f5f5f5; padding: 15px; border-radius: 5px; margin: 20px 0; "
-                + "text-align: center; font-size: 24px; letter-spacing: 5px; font-weight: bold;'>"
-                + code
-                + "</div>"
-                + "<p>Mã xác thực có hiệu lực trong vòng 10 phút.</p>"
-                + "<p>Nếu bạn không thực hiện yêu cầu này, vui lòng bỏ qua email này.</p>"
-                + "<p>Trân trọng,<br/>Gender Heathcare Service Team</p>"
-                + "</div>";
+        String htmlContent = emailTemplateService.render("email-verification", "code", code);
 
         helper.setText(htmlContent, true);
 
@@ -190,59 +136,29 @@ public class EmailService {
         mailSender.send(message);
     }
 
-    @Async("asyncExecutor")
     public void sendEmailVerificationCodeAsync(String to, String code) {
-        try {
-            MimeMessage message = createEmailVerificationMessage(to, code);
-            mailSender.send(message);
-            logger.info("Email verification code sent successfully to {}", to);
-        } catch (MessagingException e) {
-            logger.error("Failed to send email verification code to {}: {}", to, e.getMessage());
-        }
+        mailDispatchService.dispatch("email-verification", to,
+                () -> createEmailVerificationMessage(to, code));
     }
 
-    @Async("asyncExecutor")
     public void sendEmailUpdateVerificationAsync(String newEmail, String code, String fullName) {
-        try {
-            MimeMessage message = createEmailUpdateVerificationMessage(newEmail, code, fullName);
-            mailSender.send(message);
-            logger.info("Email update verification code sent successfully to: {}", newEmail);
-        } catch (MessagingException e) {
-            logger.error("Failed to send email update verification code to {}: {}", newEmail, e.getMessage());
-        }
+        mailDispatchService.dispatch("email-update-verification", newEmail,
+                () -> createEmailUpdateVerificationMessage(newEmail, code, fullName));
     }
 
-    @Async("asyncExecutor")
     public void sendEmailChangeNotificationAsync(String oldEmail, String newEmail, String fullName) {
-        try {
-            MimeMessage message = createEmailChangeNotificationMessage(oldEmail, newEmail, fullName);
-            mailSender.send(message);
-            logger.info("Email change notification sent successfully to: {}", oldEmail);
-        } catch (MessagingException e) {
-            logger.error("Failed to send email change notification to {}: {}", oldEmail, e.getMessage());
-        }
+        mailDispatchService.dispatch("email-change-notification", oldEmail,
+                () -> createEmailChangeNotificationMessage(oldEmail, newEmail, fullName));
     }
 
-    @Async("asyncExecutor")
     public void sendEmailChangeConfirmationAsync(String newEmail, String fullName) {
-        try {
-            MimeMessage message = createEmailChangeConfirmationMessage(newEmail, fullName);
-            mailSender.send(message);
-            logger.info("Email change confirmation sent successfully to: {}", newEmail);
-        } catch (MessagingException e) {
-            logger.error("Failed to send email change confirmation to {}: {}", newEmail, e.getMessage());
-        }
+        mailDispatchService.dispatch("email-change-confirmation", newEmail,
+                () -> createEmailChangeConfirmationMessage(newEmail, fullName));
     }
 
-    @Async("asyncExecutor")
     public void sendPasswordChangeNotificationAsync(String email, String fullName) {
-        try {
-            MimeMessage message = createPasswordChangeNotificationMessage(email, fullName);
-            mailSender.send(message);
-            logger.info("Password change notification sent successfully to: {}", email);
-        } catch (MessagingException e) {
-            logger.error("Failed to send password change notification to {}: {}", email, e.getMessage());
-        }
+        mailDispatchService.dispatch("password-change-notification", email,
+                () -> createPasswordChangeNotificationMessage(email, fullName));
     }
 
     private MimeMessage createEmailUpdateVerificationMessage(String to, String code, String fullName)
@@ -253,18 +169,9 @@ public class EmailService {
         helper.setTo(to);
         helper.setSubject("Xác thực email mới - Gender Heathcare Service");
 
-        String htmlContent = "<div style='font-family: Arial, sans-serif; padding: 20px; max-width: 600px; margin: 0 auto;'>"
-                + "<h2 style='color: #4a6ee0;'>Xác thực địa chỉ email mới</h2>"
-                + "<p>Xin chào " + fullName + ",</p>"
-                + "<p>Bạn đã yêu cầu thay đổi địa chỉ email cho tài khoản Gender Heathcare Service của mình. Để xác nhận địa chỉ email mới, vui lòng nhập mã xác thực sau:</p>"
-                + "<div style='background-color: #f5f5f5; padding: 15px; border-radius: 5px; margin: 20px 0; "
-                + "text-align: center; font-size: 24px; letter-spacing: 5px; font-weight: bold;'>"
-                + code
-                + "</div>"
-                + "<p>Mã xác thực có hiệu lực trong vòng 10 phút.</p>"
-                + "<p>Nếu bạn không thực hiện yêu cầu này, vui lòng bỏ qua email này và địa chỉ email của bạn sẽ không thay đổi.</p>"
-                + "<p>Trân trọng,<br/>Gender Heathcare Service Team</p>"
-                + "</div>";
+        String htmlContent = emailTemplateService.render("email-update-verification",
+                "fullName", fullName,
+                "code", code);
 
         helper.setText(htmlContent, true);
         return message;
@@ -278,16 +185,10 @@ public class EmailService {
         helper.setTo(oldEmail);
         helper.setSubject("Thông báo thay đổi email - Gender Heathcare Service");
 
-        String htmlContent = "<div style='font-family: Arial, sans-serif; padding: 20px; max-width: 600px; margin: 0 auto;'>"
-                + "<h2 style='color: #4a6ee0;'>Thông báo thay đổi email</h2>"
-                + "<p>Xin chào " + fullName + ",</p>"
-                + "<p>Địa chỉ email cho tài khoản Gender Heathcare Service của bạn đã được thay đổi thành công.</p>"
-                + "<p><strong>Email cũ:</strong> " + oldEmail + "</p>"
-                + "<p><strong>Email mới:</strong> " + newEmail + "</p>"
-                + "<p>Từ bây giờ, bạn sẽ cần sử dụng email mới để đăng nhập vào tài khoản.</p>"
-                + "<p>Nếu bạn không thực hiện thay đổi này, vui lòng liên hệ với chúng tôi ngay lập tức.</p>"
-                + "<p>Trân trọng,<br/>Gender Heathcare Service Team</p>"
-                + "</div>";
+        String htmlContent = emailTemplateService.render("email-change-notification",
+                "fullName", fullName,
+                "oldEmail", oldEmail,
+                "newEmail", newEmail);
 
         helper.setText(htmlContent, true);
         return message;
@@ -301,20 +202,9 @@ public class EmailService {
         helper.setTo(newEmail);
         helper.setSubject("Chào mừng đến với Gender Heathcare Service - Email đã được cập nhật");
 
-        String htmlContent = "<div style='font-family: Arial, sans-serif; padding: 20px; max-width: 600px; margin: 0 auto;'>"
-                + "<h2 style='color: #4a6ee0;'>Email đã được cập nhật thành công</h2>"
-                + "<p>Xin chào " + fullName + ",</p>"
-                + "<p>Địa chỉ email cho tài khoản Gender Heathcare Service của bạn đã được cập nhật thành công sang: <strong>" + newEmail
-                + "</strong></p>"
-                + "<p>Từ bây giờ, bạn có thể sử dụng địa chỉ email này để:</p>"
-                + "<ul>"
-                + "<li>Đăng nhập vào tài khoản Gender Heathcare Service</li>"
-                + "<li>Nhận các thông báo và cập nhật từ hệ thống</li>"
-                + "<li>Khôi phục mật khẩu nếu cần</li>"
-                + "</ul>"
-                + "<p>Cảm ơn bạn đã sử dụng Gender Heathcare Service!</p>"
-                + "<p>Trân trọng,<br/>Gender Heathcare Service Team</p>"
-                + "</div>";
+        String htmlContent = emailTemplateService.render("email-change-confirmation",
+                "fullName", fullName,
+                "newEmail", newEmail);
 
         helper.setText(htmlContent, true);
         return message;
@@ -328,25 +218,9 @@ public class EmailService {
         helper.setTo(email);
         helper.setSubject("Thông báo thay đổi mật khẩu - Gender Heathcare Service");
 
-        String htmlContent = "<div style='font-family: Arial, sans-serif; padding: 20px; max-width: 600px; margin: 0 auto;'>"
-                + "<h2 style='color: #4a6ee0;'>Mật khẩu đã được thay đổi</h2>"
-                + "<p>Xin chào " + fullName + ",</p>"
-                + "<p>Mật khẩu cho tài khoản Gender Heathcare Service của bạn đã được thay đổi thành công vào lúc: <strong>"
-                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss")) + "</strong></p>"
-                + "<p>Nếu bạn không thực hiện thay đổi này, vui lòng:</p>"
-                + "<ol>"
-                + "<li>Liên hệ với chúng tôi ngay lập tức</li>"
-                + "<li>Đặt lại mật khẩu của bạn</li>"
-                + "<li>Kiểm tra bảo mật tài khoản</li>"
-                + "</ol>"
-                + "<p>Để đảm bảo an toàn, chúng tôi khuyến nghị bạn:</p>"
-                + "<ul>"
-                + "<li>Sử dụng mật khẩu mạnh và duy nhất</li>"
-                + "<li>Không chia sẻ mật khẩu với bất kỳ ai</li>"
-                + "<li>Thay đổi mật khẩu định kỳ</li>"
-                + "</ul>"
-                + "<p>Trân trọng,<br/>Gender Heathcare Service Team</p>"
-                + "</div>";
+        String htmlContent = emailTemplateService.render("password-change-notification",
+                "fullName", fullName,
+                "changedAt", LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss")));
 
         helper.setText(htmlContent, true);
         return message;
@@ -361,35 +235,19 @@ public class EmailService {
         helper.setTo(mail);
         helper.setSubject("Nhắc nhở ngày rụng trứng - Gender Heathcare Service");
 
-        String dateFormatted = ovulationDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-
-        String htmlContent = "<div style='font-family: Arial, sans-serif; padding: 20px; max-width: 600px; margin: 0 auto;'>"
-                + "<h2 style='color: #ff69b4;'>Nhắc nhở ngày rụng trứng</h2>"
-                + "<p>Xin chào " + fullName + ",</p>"
-                + "<p>Chúng tôi gửi email này để nhắc bạn rằng <strong>ngày mai (" + dateFormatted
-                + ")</strong> là ngày rụng trứng theo chu kỳ kinh nguyệt bạn đã theo dõi trên Gender Heathcare Service.</p>"
-                + "<div style='background-color: #fff0f5; padding: 15px; border-radius: 5px; margin: 20px 0;'>"
-                + "<p><strong>Thông tin:</strong></p>"
-                + "<p>Ngày rụng trứng: " + dateFormatted + "</p>"
-                + "<p>Đây là thời điểm quan trọng trong chu kỳ kinh nguyệt của bạn, là lúc cơ hội mang thai cao nhất nếu bạn đang có kế hoạch.</p>"
-                + "</div>"
-                + "<p>Để biết thêm thông tin chi tiết về chu kỳ kinh nguyệt và sức khỏe sinh sản, bạn có thể truy cập Gender Heathcare Service hoặc tham khảo ý kiến từ các chuyên gia y tế của chúng tôi.</p>"
-                + "<p>Trân trọng,<br/>Gender Heathcare Service Team</p>"
-                + "</div>";
+        String dateFormatted = ovulationDate.format(DATE_FORMATTER);
+
+        String htmlContent = emailTemplateService.render("ovulation-reminder",
+                "fullName", fullName,
+                "ovulationDate", dateFormatted);
 
         helper.setText(htmlContent, true);
         return message;
     }
 
-    @Async("asyncExecutor")
     public void sendOvulationReminderAsync(String email, String fullName, LocalDate ovulationDate) {
-        try {
-            MimeMessage message = createOvulationReminderMessage(email, fullName, ovulationDate);
-            mailSender.send(message);
-            logger.info("Email nhắc nhở ngày rụng trứng đã được gửi thành công đến: {}", email);
-        } catch (MessagingException e) {
-            logger.error("Không thể gửi email nhắc nhở ngày rụng trứng đến {}: {}", email, e.getMessage());
-        }
+        mailDispatchService.dispatch("ovulation-reminder", email,
+                () -> createOvulationReminderMessage(email, fullName, ovulationDate));
     }
 
     // Tạo thông báo nhắc nhở ngày rụng trứng với tỉ lệ mang thai
@@ -404,169 +262,33 @@ public class EmailService {
         helper.setTo(email);
         helper.setSubject("Nhắc nhở ngày có tỉ lệ mang thai cao - Gender Heathcare Service");
 
-        String dateFormatted = ovulationDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-
-        String htmlContent = "";
+        String dateFormatted = ovulationDate.format(DATE_FORMATTER);
 
+        // Câu mô tả ngày hiện tại so với ngày rụng trứng là một template con, chèn nguyên văn
+        String dayNote;
         if (daysBeforeOvulation < 0) {
-            htmlContent = String.format(
-                    """
-                                <div style="background: linear-gradient(135deg, #ff69b4 0%%, #ff8da1 100%%); padding: 30px; text-align: center; color: white;">
-                                    <h1 style="margin: 0; font-size: 28px; font-weight: 300;">Gender Heathcare Service</h1>
-                                    <p style="margin: 10px 0 0 0; font-size: 16px; opacity: 0.9;">Theo dõi sức khỏe sinh sản</p>
-                                </div>
-
-                                <!-- Main Content -->
-                                <div style="padding: 40px 30px;">
-                                    <h2 style="color: #333; margin: 0 0 20px 0; font-size: 24px; font-weight: 600;">
-                                        Xin chào %s!
-                                    </h2>
-
-                                    <!-- Day Information -->
-                                    <div style="background: linear-gradient(135deg, #f8f9fa 0%%, #e9ecef 100%%); padding: 25px; border-radius: 15px; margin-bottom: 25px; border-left: 5px solid #ff69b4;">
-                                        <p style="margin: 0; color: #666; font-size: 14px;">
-                                            Ngày rụng trứng dự kiến: <strong>%s</strong>
-                                        </p>
-                                    </div>
-
-                                    <!-- Pregnancy Probability -->
-                                    <div style="text-align: center; margin-bottom: 20px;">
-                                        <span style="font-size: 32px; margin-bottom: 10px; display: block;"></span>
-                                        <div>
-                                            <p>Hôm nay là <strong>%d ngày</strong> trước ngày rụng trứng.</p>
-                                        </div>
-                                        <div>
-                                            <p>Tỉ lệ mang thai hiện tại</p>
-                                            <div style="font-size: 36px; font-weight: bold; color: #dc3545; margin: 10px 0;">
-                                                %.2f%%
-                                            </div>
-                                        </div>
-                                        <div style="background: #e9ecef; height: 8px; border-radius: 4px; margin: 15px 0;">
-                                            <div style="background: #dc3545; height: 100%%; border-radius: 4px; transition: width 0.3s ease;"></div>
-                                        </div>
-                                    </div>
-
-                                    <!-- Important Notes -->
-                                    <h4 style="margin: 0 0 10px 0; color: #e65100; font-size: 16px;">Lưu ý quan trọng</h4>
-                                    <p style="margin: 0; color: #333; font-size: 14px; line-height: 1.5;">
-                                        Thông tin này chỉ mang tính chất tham khảo. Để có kết quả chính xác nhất,
-                                        hãy tham khảo ý kiến từ các chuyên gia y tế hoặc bác sĩ sản phụ khoa.
-                                    </p>
-                                </div>
-                            """,
-                    fullName, dateFormatted, (int) Math.abs(daysBeforeOvulation), pregnancyProb);
+            dayNote = emailTemplateService.render("pregnancy-probability-day-before", "days", Math.abs(daysBeforeOvulation));
         } else if (daysBeforeOvulation == 0) {
-            htmlContent = String.format(
-                    """
-                            <div style="background: linear-gradient(135deg, #ff69b4 0%%, #ff8da1 100%%); padding: 30px; text-align: center; color: white;">
-                                    <h1 style="margin: 0; font-size: 28px; font-weight: 300;">Gender Heathcare Service</h1>
-                                    <p style="margin: 10px 0 0 0; font-size: 16px; opacity: 0.9;">Theo dõi sức khỏe sinh sản</p>
-                                </div>
-
-                                <!-- Main Content -->
-                                <div style="padding: 40px 30px;">
-                                    <h2 style="color: #333; margin: 0 0 20px 0; font-size: 24px; font-weight: 600;">
-                                        Xin chào %s!
-                                    </h2>
-
-                                    <!-- Day Information -->
-                                    <div style="background: linear-gradient(135deg, #f8f9fa 0%%, #e9ecef 100%%); padding: 25px; border-radius: 15px; margin-bottom: 25px; border-left: 5px solid #ff69b4;">
-                                        <p style="margin: 0; color: #666; font-size: 14px;">
-                                            Ngày rụng trứng dự kiến: <strong>%s</strong>
-                                        </p>
-                                    </div>
-
-                                    <!-- Pregnancy Probability -->
-                                    <div style="text-align: center; margin-bottom: 20px;">
-                                        <span style="font-size: 32px; margin-bottom: 10px; display: block;"></span>
-                                        <div>
-                                            <p>Hôm nay là ngày rụng trứng.</p>
-                                        </div>
-                                        <div>
-                                            <p>Tỉ lệ mang thai hiện tại</p>
-                                            <div style="font-size: 36px; font-weight: bold; color: #dc3545; margin: 10px 0;">
-                                                %.2f%%
-                                            </div>
-                                        </div>
-                                        <div style="background: #e9ecef; height: 8px; border-radius: 4px; margin: 15px 0;">
-                                            <div style="background: #dc3545; height: 100%%; border-radius: 4px; transition: width 0.3s ease;"></div>
-                                        </div>
-                                    </div>
-
-                                    <!-- Important Notes -->
-                                    <h4 style="margin: 0 0 10px 0; color: #e65100; font-size: 16px;">Lưu ý quan trọng</h4>
-                                    <p style="margin: 0; color: #333; font-size: 14px; line-height: 1.5;">
-                                        Thông tin này chỉ mang tính chất tham khảo. Để có kết quả chính xác nhất,
-                                        hãy tham khảo ý kiến từ các chuyên gia y tế hoặc bác sĩ sản phụ khoa.
-                                    </p>
-                                </div>
-                            """,
-                    fullName, dateFormatted, pregnancyProb);
+            dayNote = emailTemplateService.render("pregnancy-probability-day-of");
         } else {
-            htmlContent = String.format(
-                    """
-                            <div style="background: linear-gradient(135deg, #ff69b4 0%%, #ff8da1 100%%); padding: 30px; text-align: center; color: white;">
-                                    <h1 style="margin: 0; font-size: 28px; font-weight: 300;">Gender Heathcare Service</h1>
-                                    <p style="margin: 10px 0 0 0; font-size: 16px; opacity: 0.9;">Theo dõi sức khỏe sinh sản</p>
-                                </div>
-
-                                <!-- Main Content -->
-                                <div style="padding: 40px 30px;">
-                                    <h2 style="color: #333; margin: 0 0 20px 0; font-size: 24px; font-weight: 600;">
-                                        Xin chào %s!
-                                    </h2>
-
-                                    <!-- Day Information -->
-                                    <div style="background: linear-gradient(135deg, #f8f9fa 0%%, #e9ecef 100%%); padding: 25px; border-radius: 15px; margin-bottom: 25px; border-left: 5px solid #ff69b4;">
-                                        <p style="margin: 0; color: #666; font-size: 14px;">
-                                            Ngày rụng trứng dự kiến: <strong>%s</strong>
-                                        </p>
-                                    </div>
-
-                                    <!-- Pregnancy Probability -->
-                                    <div style="text-align: center; margin-bottom: 20px;">
-                                        <span style="font-size: 32px; margin-bottom: 10px; display: block;"></span>
-                                        <div>
-                                            <p>Hôm nay là <strong>%d ngày</strong> sau ngày rụng trứng.</p>
-                                        </div>
-                                        <div>
-                                            <p>Tỉ lệ mang thai hiện tại</p>
-                                            <div style="font-size: 36px; font-weight: bold; color: #dc3545; margin: 10px 0;">
-                                                %.2f%%
-                                            </div>
-                                        </div>
-                                        <div style="background: #e9ecef; height: 8px; border-radius: 4px; margin: 15px 0;">
-                                            <div style="background: #dc3545; height: 100%%; border-radius: 4px; transition: width 0.3s ease;"></div>
-                                        </div>
-                                    </div>
-
-                                    <!-- Important Notes -->
-                                    <h4 style="margin: 0 0 10px 0; color: #e65100; font-size: 16px;">Lưu ý quan trọng</h4>
-                                    <p style="margin: 0; color: #333; font-size: 14px; line-height: 1.5;">
-                                        Thông tin này chỉ mang tính chất tham khảo. Để có kết quả chính xác nhất,
-                                        hãy tham khảo ý kiến từ các chuyên gia y tế hoặc bác sĩ sản phụ khoa.
-                                    </p>
-                                </div>
-                            """,
-                    fullName, dateFormatted, (int) Math.abs(daysBeforeOvulation), pregnancyProb);
+            dayNote = emailTemplateService.render("pregnancy-probability-day-after", "days", daysBeforeOvulation);
         }
 
+        String htmlContent = emailTemplateService.render("pregnancy-probability-reminder",
+                "fullName", fullName,
+                "ovulationDate", dateFormatted,
+                "dayNote", dayNote,
+                "pregnancyProb", String.format("%.2f", pregnancyProb));
+
         helper.setText(htmlContent, true);
         return message;
     }
 
-    @Async("asyncExecutor")
     public void sendOvulationWithPregnancyProbReminderAsync(String email, String fullName, int daysBeforeOvulation,
             double pregnancyProb, LocalDate ovulationDate) {
-        try {
-            MimeMessage message = createOvulationWithPregnancyProbReminderMessage(email, fullName, daysBeforeOvulation,
-                    pregnancyProb, ovulationDate);
-            mailSender.send(message);
-            logger.info("Email nhắc nhở ngày rụng trứng với tỉ lệ mang thai đã được gửi thành công đến: {}", email);
-        } catch (MessagingException e) {
-            logger.error("Không thể gửi email nhắc nhở ngày rụng trứng với tỉ lệ mang thai đến {}: {}", email,
-                    e.getMessage());
-        }
+        mailDispatchService.dispatch("pregnancy-probability-reminder", email,
+                () -> createOvulationWithPregnancyProbReminderMessage(email, fullName,
+                        daysBeforeOvulation, pregnancyProb, ovulationDate));
     }
 
     // Tạo cái nội dung cho email gửi thông báo uống thuốc tránh thai
@@ -580,14 +302,9 @@ public class EmailService {
         helper.setFrom(from);
         helper.setSubject("⏰ Nhắc nhở uống thuốc tránh thai - Gender Heathcare Service");
 
-        String content = "<div style='font-family:Arial,sans-serif; font-size:14px;'>"
-                + "<p>Chào <strong>" + fullName + "</strong>,</p>"
-                + "<p>Đây là lời nhắc nhở từ <strong>Gender Heathcare Service</strong> để bạn không quên uống thuốc lúc <strong>"
-                + remindTime.format(DateTimeFormatter.ofPattern("HH:mm")) + "</strong>.</p>"
-                + "<p>🕒 Vui lòng kiểm tra và <strong>check-in</strong> trong ứng dụng.</p>"
-                + "<br>"
-                + "<p>Chúc bạn luôn khỏe mạnh,<br><strong>Đội ngũ Gender Heathcare Service</strong></p>"
-                + "</div>";
+        String content = emailTemplateService.render("pill-reminder",
+                "fullName", fullName,
+                "remindTime", remindTime.format(TIME_FORMATTER));
 
         helper.setText(content, true);
         return message;
@@ -596,86 +313,44 @@ public class EmailService {
     /**
      * Gửi email nhắc nhở uống thuốc (chạy bất đồng bộ).
      */
-    @Async("asyncExecutor") // cần cấu hình asyncExecutor trong AppConfig
     public void sendPillReminderAsync(String mail, String fullName, LocalTime remindTime) {
-        try {
-            MimeMessage message = createPillReminderMessage(mail, fullName, remindTime);
-            mailSender.send(message);
-            logger.info("Đã gửi nhắc nhở uống thuốc đến: {}", mail);
-        } catch (Exception e) {
-            logger.error("Không thể gửi email nhắc nhở đến {}: {}", mail, e.getMessage());
-        }
+        mailDispatchService.dispatch("pill-reminder", mail,
+                () -> createPillReminderMessage(mail, fullName, remindTime));
     }
 
-    @Async
     public void sendConsultantDeactivatedNotificationAsync(String email, String fullName) {
-        try {
-            String subject = "Account Deactivated - Gender Heathcare Service Consultant";
-            String body = String.format("""
-                    Dear %s,
-
-                    Your consultant account has been deactivated by the administrator.
-
-                    Your account is temporarily disabled. Please contact support if you have any questions.
-
-                    Best regards,
-                    Gender Heathcare Service Administration Team
-                    """, fullName);
+        String subject = "Account Deactivated - Gender Heathcare Service Consultant";
+        String body = emailTemplateService.render("consultant-status",
+                "fullName", fullName,
+                "statusMessage", "Your consultant account has been deactivated by the administrator.",
+                "followUp", "Your account is temporarily disabled. Please contact support if you have any questions.");
 
-            sendEmail(email, subject, body);
-        } catch (Exception e) {
-        }
+        mailDispatchService.dispatch("consultant-deactivated", email, () -> createEmailMessage(email, subject, body));
     }
 
-    @Async
     public void sendConsultantActivatedNotificationAsync(String email, String fullName) {
-        try {
-            String subject = "Account Reactivated - Gender Heathcare Service Consultant";
-            String body = String.format("""
-                    Dear %s,
-
-                    Your consultant account has been reactivated by the administrator.
-
-                    You can now log in and resume your consultant activities.
-
-                    Best regards,
-                    Gender Heathcare Service Administration Team
-                    """, fullName);
+        String subject = "Account Reactivated - Gender Heathcare Service Consultant";
+        String body = emailTemplateService.render("consultant-status",
+                "fullName", fullName,
+                "statusMessage", "Your consultant account has been reactivated by the administrator.",
+                "followUp", "You can now log in and resume your consultant activities.");
 
-            sendEmail(email, subject, body);
-        } catch (Exception e) {
-        }
+        mailDispatchService.dispatch("consultant-activated", email, () -> createEmailMessage(email, subject, body));
     }
 
-    @Async
     public void sendConsultantRoleRemovedNotificationAsync(String email, String fullName) {
-        try {
-            String subject = "Consultant Role Removed - Gender Heathcare Service";
-            String body = String.format("""
-                    Dear %s,
-
-                    Your consultant role has been removed by the administrator.
-
-                    Your account has been converted to a regular customer account.
+        String subject = "Consultant Role Removed - Gender Heathcare Service";
+        String body = emailTemplateService.render("consultant-status",
+                "fullName", fullName,
+                "statusMessage", "Your consultant role has been removed by the administrator.",
+                "followUp", "Your account has been converted to a regular customer account.");
 
-                    Best regards,
-                    Gender Heathcare Service Administration Team
-                    """, fullName);
-
-            sendEmail(email, subject, body);
-        } catch (Exception e) {
-        }
+        mailDispatchService.dispatch("consultant-role-removed", email, () -> createEmailMessage(email, subject, body));
     }
 
-    @Async("asyncExecutor")
     public void sendDeleteAccountVerificationCodeAsync(String email, String code) {
-        try {
-            MimeMessage message = createDeleteAccountVerificationMessage(email, code);
-            mailSender.send(message);
-            logger.info("Delete account verification code sent successfully to {}", email);
-        } catch (MessagingException e) {
-            logger.error("Failed to send delete account verification code to {}: {}", email, e.getMessage());
-        }
+        mailDispatchService.dispatch("delete-account-verification", email,
+                () -> createDeleteAccountVerificationMessage(email, code));
     }
 
     private MimeMessage createDeleteAccountVerificationMessage(String email, String code) throws MessagingException {
@@ -685,26 +360,14 @@ public class EmailService {
         helper.setTo(email);
         helper.setSubject("Xác thực xóa tài khoản - Gender Heathcare Service");
 
-        String htmlContent = "<div style='font-family: Arial, sans-serif; padding: 20px; max-width: 600px; margin: 0 auto;'>"
-                + "<h2 style='color: #dc3545;'>⚠️ Xác thực xóa tài khoản</h2>"
-                + "<p>Bạn đã yêu cầu xóa vĩnh viễn tài khoản Gender Heathcare Service của mình.</p>"
-                + "<p><strong>⚠️ Cảnh báo:</strong> Hành động này sẽ xóa vĩnh viễn tất cả dữ liệu của bạn và không thể khôi phục lại.</p>"
-                + "<p>Để xác nhận việc xóa tài khoản, vui lòng nhập mã xác thực sau:</p>"
-                + "<div style='background-color: #fff3cd; border: 1px solid #ffeaa7; padding: 15px; border-radius: 5px; margin: 20px 0; "
-                + "text-align: center; font-size: 24px; letter-spacing: 5px; font-weight: bold; color: #856404;'>"
-                + code
-                + "</div>"
-                + "<p><strong>Mã xác thực có hiệu lực trong vòng 10 phút.</strong></p>"
-                + "<p>Nếu bạn không thực hiện yêu cầu này, vui lòng bỏ qua email này.</p>"
-                + "<p>Trân trọng,<br/>Gender Heathcare Service Team</p>"
-                + "</div>";
+        String htmlContent = emailTemplateService.render("delete-account-verification", "code", code);
 
         helper.setText(htmlContent, true);
 
         return message;
     }
 
-    private void sendEmail(String to, String subject, String htmlContent) throws MessagingException {
+    private MimeMessage createEmailMessage(String to, String subject, String htmlContent) throws MessagingException {
         MimeMessage message = mailSender.createMimeMessage();
         MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
         helper.setFrom(from);
@@ -712,22 +375,17 @@ public class EmailService {
         helper.setSubject(subject);
         helper.setText(htmlContent, true);
 
-        mailSender.send(message);
+        return message;
     }
 
     // Method gửi email thông báo tài khoản OAuth mới được tạo
-    @Async("asyncExecutor")
-    public void sendOAuthAccountCreatedNotificationAsync(String email, String fullName, String defaultPassword) {
-        try {
-            MimeMessage message = createOAuthAccountCreatedMessage(email, fullName, defaultPassword);
-            mailSender.send(message);
-            logger.info("OAuth account created notification sent successfully to {}", email);
-        } catch (MessagingException e) {
-            logger.error("Failed to send OAuth account created notification to {}: {}", email, e.getMessage());
-        }
+    // Không gửi mật khẩu qua email (nội dung mail nằm trong outbox): user tự đặt mật khẩu qua quên mật khẩu
+    public void sendOAuthAccountCreatedNotificationAsync(String email, String fullName) {
+        mailDispatchService.dispatch("oauth-account-created", email,
+                () -> createOAuthAccountCreatedMessage(email, fullName));
     }
 
-    private MimeMessage createOAuthAccountCreatedMessage(String email, String fullName, String defaultPassword) 
+    private MimeMessage createOAuthAccountCreatedMessage(String email, String fullName)
             throws MessagingException {
         MimeMessage message = mailSender.createMimeMessage();
         MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
@@ -735,42 +393,9 @@ public class EmailService {
         helper.setTo(email);
         helper.setSubject("Chào mừng đến với Gender Heathcare Service - Tài khoản đã được tạo");
 
-        String htmlContent = "<div style='font-family: Arial, sans-serif; padding: 20px; max-width: 600px; margin: 0 auto;'>"
-                + "<h2 style='color: #4a6ee0;'>🎉 Chào mừng đến với Gender Heathcare Service!</h2>"
-                + "<p>Xin chào <strong>" + fullName + "</strong>,</p>"
-                + "<p>Tài khoản của bạn đã được tạo thành công thông qua đăng nhập Google!</p>"
-                + "<div style='background-color: #e8f4fd; border-left: 4px solid #4a6ee0; padding: 15px; margin: 20px 0;'>"
-                + "<h3 style='color: #4a6ee0; margin-top: 0;'>📧 Thông tin tài khoản:</h3>"
-                + "<p><strong>Email:</strong> " + email + "</p>"
-                + "<p><strong>Phương thức đăng nhập:</strong> Google OAuth</p>"
-                + "</div>"
-                + "<div style='background-color: #fff3cd; border: 1px solid #ffeaa7; padding: 15px; border-radius: 5px; margin: 20px 0;'>"
-                + "<h3 style='color: #856404; margin-top: 0;'>🔐 Mật khẩu dự phòng:</h3>"
-                + "<p>Chúng tôi đã tạo một mật khẩu dự phòng cho tài khoản của bạn trong trường hợp cần thiết:</p>"
-                + "<div style='background-color: #f8f9fa; padding: 10px; border-radius: 3px; font-family: monospace; font-size: 16px; font-weight: bold; color: #495057; text-align: center; margin: 10px 0;'>"
-                + defaultPassword
-                + "</div>"
-                + "<p><strong>Lưu ý:</strong> Mật khẩu này chỉ sử dụng khi bạn không thể đăng nhập qua Google. Bạn có thể thay đổi mật khẩu này trong phần cài đặt tài khoản.</p>"
-                + "</div>"
-                + "<div style='background-color: #d4edda; border: 1px solid #c3e6cb; padding: 15px; border-radius: 5px; margin: 20px 0;'>"
-                + "<h3 style='color: #155724; margin-top: 0;'>✨ Tính năng nổi bật:</h3>"
-                + "<ul style='margin: 10px 0; padding-left: 20px;'>"
-                + "<li>Tư vấn sức khỏe sinh sản với các chuyên gia</li>"
-                + "<li>Theo dõi chu kỳ kinh nguyệt thông minh</li>"
-                + "<li>Nhắc nhở uống thuốc tránh thai</li>"
-                + "<li>Đặt lịch xét nghiệm STI</li>"
-                + "<li>Thông tin y tế cập nhật và đáng tin cậy</li>"
-                + "</ul>"
-                + "</div>"
-                + "<div style='background-color: #f8f9fa; padding: 15px; border-radius: 5px; margin: 20px 0;'>"
-                + "<h3 style='color: #6c757d; margin-top: 0;'>🔒 Bảo mật và riêng tư:</h3>"
-                + "<p>• Thông tin của bạn được bảo mật tuyệt đối</p>"
-                + "<p>• Dữ liệu sức khỏe được mã hóa</p>"
-                + "<p>• Tuân thủ các tiêu chuẩn bảo mật quốc tế</p>"
-                + "</div>"
-                + "<p style='color: #6c757d; font-size: 14px;'>Nếu bạn có bất kỳ câu hỏi nào, đừng ngần ngại liên hệ với chúng tôi qua email này hoặc trung tâm hỗ trợ.</p>"
-                + "<p>Trân trọng,<br/><strong>Gender Heathcare Service Team</strong></p>"
-                + "</div>";
+        String htmlContent = emailTemplateService.render("oauth-account-created",
+                "fullName", fullName,
+                "email", email);
 
         helper.setText(htmlContent, true);
         return message;
@@ -0,0 +1,70 @@
+package com.healapp.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+
+import com.healapp.utils.HtmlTemplate;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Nạp và biên dịch toàn bộ template email trong classpath:templates/email/ một lần khi khởi động.
+ * Mỗi lần render dùng lại StringBuilder của luồng hiện tại thay vì nối chuỗi mới.
+ */
+@Service
+public class EmailTemplateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailTemplateService.class);
+    private static final String TEMPLATE_LOCATION = "classpath:templates/email/*.html";
+    // Buffer lớn hơn mức này sẽ không giữ lại để tránh giữ bộ nhớ lâu dài
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+
+    private final Map<String, HtmlTemplate> templates = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(8 * 1024));
+
+    @PostConstruct
+    public void loadTemplates() throws IOException {
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources(TEMPLATE_LOCATION);
+        for (Resource resource : resources) {
+            String filename = resource.getFilename();
+            if (filename == null) {
+                continue;
+            }
+            String name = filename.substring(0, filename.length() - ".html".length());
+            String source = resource.getContentAsString(StandardCharsets.UTF_8);
+            templates.put(name, HtmlTemplate.compile(name, source));
+        }
+        logger.info("Compiled {} email templates", templates.size());
+    }
+
+    /**
+     * Render template theo tên với các cặp tên/giá trị placeholder.
+     */
+    public String render(String templateName, Object... keyValues) {
+        HtmlTemplate template = templates.get(templateName);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown email template: " + templateName);
+        }
+
+        StringBuilder buffer = buffers.get();
+        buffer.setLength(0);
+        buffer.ensureCapacity(template.getLiteralLength() + 256);
+        try {
+            template.renderTo(buffer, keyValues);
+            return buffer.toString();
+        } finally {
+            if (buffer.capacity() > MAX_POOLED_CAPACITY) {
+                buffers.remove();
+            }
+        }
+    }
+}
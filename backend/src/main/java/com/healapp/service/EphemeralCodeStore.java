@@ -0,0 +1,33 @@
+package com.healapp.service;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Kho mã dùng một lần có thời hạn (OTP điện thoại, mã xác thực email, mã quên mật khẩu).
+ * Backend chọn bằng ephemeral-code.store: memory (mặc định, một node) hoặc database (nhiều node dùng chung).
+ * Key được phân theo namespace để các luồng không đè mã của nhau.
+ */
+public interface EphemeralCodeStore {
+
+    String PHONE_OTP = "phone-otp";
+    String EMAIL_VERIFICATION = "email-verification";
+    String PASSWORD_RESET = "password-reset";
+
+    /**
+     * Lưu (hoặc thay) mã cho key, hết hạn sau ttl.
+     */
+    void put(String namespace, String key, String code, Duration ttl);
+
+    /**
+     * Mã còn hiệu lực của key; empty nếu không có hoặc đã hết hạn.
+     */
+    Optional<String> get(String namespace, String key);
+
+    void remove(String namespace, String key);
+
+    /**
+     * Số mã đang lưu (gồm cả mã đã hết hạn nhưng chưa được dọn).
+     */
+    long size();
+}
@@ -2,6 +2,7 @@ package com.healapp.service;
 
 import java.util.Collections;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -9,23 +10,37 @@ import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.gson.GsonFactory;
+import com.healapp.config.OutboundCallExecutor;
 import com.healapp.dto.OAuthUserInfo;
 
+import jakarta.annotation.PostConstruct;
+
 @Service
 public class GoogleOAuthService {
 
     @Value("${google.oauth.client-id}")
     private String googleClientId;
 
+    @Autowired
+    private OutboundCallExecutor outboundCallExecutor;
+
+    // Verifier dùng chung: giữ transport keep-alive và cache public key của Google
+    // thay vì tải lại chứng chỉ ở mỗi lần đăng nhập
+    private GoogleIdTokenVerifier verifier;
+
+    @PostConstruct
+    public void init() {
+        verifier = new GoogleIdTokenVerifier.Builder(
+                new NetHttpTransport(),
+                new GsonFactory())
+            .setAudience(Collections.singletonList(googleClientId))
+            .build();
+    }
+
     public OAuthUserInfo verifyGoogleToken(String idToken) {
         try {
-            GoogleIdTokenVerifier verifier = new GoogleIdTokenVerifier.Builder(
-                    new NetHttpTransport(), 
-                    new GsonFactory())
-                .setAudience(Collections.singletonList(googleClientId))
-                .build();
-
-            GoogleIdToken token = verifier.verify(idToken);
+            GoogleIdToken token = outboundCallExecutor.execute("google-oauth", "id-token.verify", true,
+                    () -> verifier.verify(idToken));
             if (token != null) {
                 GoogleIdToken.Payload payload = token.getPayload();
                 
@@ -0,0 +1,257 @@
+package com.healapp.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healapp.dto.ApiResponse;
+import com.healapp.model.IdempotencyKey;
+import com.healapp.repository.IdempotencyKeyRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Chống xử lý trùng khi client gửi lại request tạo thanh toán (header Idempotency-Key).
+ * Trong cùng node, request trùng chờ kết quả của request đầu tiên qua cache ngắn hạn;
+ * giữa các node, unique constraint trên bảng idempotency_keys quyết định ai được chạy.
+ * Request trùng nhận lại đúng response đã lưu, không gọi Stripe hay ghi DB thêm lần nào.
+ * Key đang xử lý có hạn giữ (lease-seconds): node chết giữa chừng thì request sau được tiếp quản.
+ */
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 100;
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${idempotency.key-ttl-hours:24}")
+    private long keyTtlHours = 24;
+
+    @Value("${idempotency.cache-ttl-seconds:300}")
+    private long cacheTtlSeconds = 300;
+
+    @Value("${idempotency.wait-timeout-ms:30000}")
+    private long waitTimeoutMs = 30000;
+
+    @Value("${idempotency.lease-seconds:120}")
+    private long leaseSeconds = 120;
+
+    @Value("${idempotency.complete-attempts:3}")
+    private int completeAttempts = 3;
+
+    private final Map<String, CachedResponse> cache = new ConcurrentHashMap<>();
+
+    public record StoredResponse(int status, String body) {
+    }
+
+    private record CachedResponse(String requestHash, CompletableFuture<StoredResponse> result, long createdAt) {
+    }
+
+    /**
+     * Chạy action đúng một lần cho mỗi (scope, user, key). Không có key thì chạy bình thường.
+     * request là nội dung dùng để so khớp: cùng key nhưng khác nội dung bị từ chối (422).
+     */
+    public ResponseEntity<?> execute(String scope, Long userId, String key, Object request,
+            Supplier<ResponseEntity<?>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("Idempotency-Key is too long"));
+        }
+
+        String requestHash = hash(request);
+        String cacheKey = scope + "|" + userId + "|" + key;
+        CompletableFuture<StoredResponse> mine = new CompletableFuture<>();
+        CachedResponse candidate = new CachedResponse(requestHash, mine, System.nanoTime());
+        CachedResponse current = cache.compute(cacheKey,
+                (k, existing) -> existing == null || isExpired(existing) ? candidate : existing);
+
+        if (current != candidate) {
+            // Request trùng trên cùng node: chờ kết quả của request đầu tiên
+            if (!current.requestHash().equals(requestHash)) {
+                return replay(keyReusedResponse());
+            }
+            return replay(await(current.result()));
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyKey record = new IdempotencyKey();
+        record.setScope(scope);
+        record.setUserId(userId);
+        record.setIdempotencyKey(key);
+        record.setRequestHash(requestHash);
+        record.setExpiresAt(now.plusHours(keyTtlHours));
+        record.setLockedUntil(now.plusSeconds(leaseSeconds));
+        Long recordId;
+        try {
+            recordId = idempotencyKeyRepository.saveAndFlush(record).getId();
+        } catch (DataIntegrityViolationException e) {
+            // Key đã được node khác (hoặc một lần gọi trước khi cache hết hạn) ghi nhận
+            Optional<IdempotencyKey> existingRecord = idempotencyKeyRepository.findByScopeAndUserIdAndIdempotencyKey(
+                    scope, userId, key);
+            recordId = existingRecord.flatMap(existing -> takeOver(existing, requestHash)).orElse(null);
+            if (recordId == null) {
+                StoredResponse existing = fromExistingRecord(existingRecord, requestHash);
+                if (existing.status() >= 400) {
+                    cache.remove(cacheKey, candidate);
+                }
+                mine.complete(existing);
+                return replay(existing);
+            }
+            log.warn("Taking over abandoned idempotency key {} for user {} in {}", key, userId, scope);
+        }
+
+        ResponseEntity<?> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            // Action lỗi trước khi trả về: bỏ key để client có thể thử lại với cùng key
+            cache.remove(cacheKey, candidate);
+            idempotencyKeyRepository.deleteById(recordId);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+
+        // Action đã chạy (có thể đã tạo payment): từ đây không bao giờ bỏ key, lỗi ghi response chỉ retry rồi log
+        StoredResponse stored = new StoredResponse(response.getStatusCode().value(), toJson(response.getBody()));
+        mine.complete(stored);
+        recordCompletion(recordId, stored, scope, key);
+        return response;
+    }
+
+    private void recordCompletion(Long recordId, StoredResponse stored, String scope, String key) {
+        for (int attempt = 1; attempt <= completeAttempts; attempt++) {
+            try {
+                idempotencyKeyRepository.complete(recordId, stored.status(), stored.body());
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Failed to store idempotent response for key {} in {} (attempt {}/{}): {}", key, scope,
+                        attempt, completeAttempts, e.getMessage());
+            }
+        }
+        // Cache của node này vẫn trả response; node khác thấy key đang xử lý (409) đến khi hết lease
+        log.error("Giving up storing idempotent response for key {} in {} (record {}, status {})", key, scope,
+                recordId, stored.status());
+    }
+
+    private Optional<Long> takeOver(IdempotencyKey existing, String requestHash) {
+        LocalDateTime now = LocalDateTime.now();
+        boolean abandoned = existing.getResponseStatus() == null
+                && (existing.getLockedUntil() == null || existing.getLockedUntil().isBefore(now));
+        if (!abandoned || !existing.getRequestHash().equals(requestHash)) {
+            return Optional.empty();
+        }
+        int updated = idempotencyKeyRepository.takeOver(existing.getId(), now, now.plusSeconds(leaseSeconds));
+        return updated == 1 ? Optional.of(existing.getId()) : Optional.empty();
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.cleanup-interval-ms:60000}")
+    public void purgeExpired() {
+        cache.entrySet().removeIf(entry -> isExpired(entry.getValue()) && entry.getValue().result().isDone());
+        try {
+            int deleted = idempotencyKeyRepository.deleteExpired(LocalDateTime.now());
+            if (deleted > 0) {
+                log.debug("Purged {} expired idempotency keys", deleted);
+            }
+        } catch (Exception e) {
+            log.error("Error purging expired idempotency keys: {}", e.getMessage(), e);
+        }
+    }
+
+    private StoredResponse fromExistingRecord(Optional<IdempotencyKey> existing, String requestHash) {
+        if (existing.isEmpty() || existing.get().getResponseStatus() == null) {
+            return stillProcessingResponse();
+        }
+        if (!existing.get().getRequestHash().equals(requestHash)) {
+            return keyReusedResponse();
+        }
+        return new StoredResponse(existing.get().getResponseStatus(), existing.get().getResponseBody());
+    }
+
+    private StoredResponse await(CompletableFuture<StoredResponse> result) {
+        try {
+            return result.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return stillProcessingResponse();
+        } catch (ExecutionException e) {
+            return errorResponse(HttpStatus.CONFLICT, "The original request failed, please retry");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return stillProcessingResponse();
+        }
+    }
+
+    private ResponseEntity<?> replay(StoredResponse stored) {
+        return ResponseEntity.status(stored.status())
+                .header(REPLAYED_HEADER, "true")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(stored.body());
+    }
+
+    private StoredResponse stillProcessingResponse() {
+        return errorResponse(HttpStatus.CONFLICT, "A request with this Idempotency-Key is still being processed");
+    }
+
+    private StoredResponse keyReusedResponse() {
+        return errorResponse(HttpStatus.UNPROCESSABLE_ENTITY,
+                "Idempotency-Key was already used with a different request");
+    }
+
+    private StoredResponse errorResponse(HttpStatus status, String message) {
+        return new StoredResponse(status.value(), toJson(ApiResponse.error(message)));
+    }
+
+    private boolean isExpired(CachedResponse cached) {
+        return System.nanoTime() - cached.createdAt() > TimeUnit.SECONDS.toNanos(cacheTtlSeconds);
+    }
+
+    private String toJson(Object body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            // Action đã chạy xong, không ném lỗi để tránh client tạo lại thanh toán
+            log.error("Failed to serialize idempotent response: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private String hash(Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] content = objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(digest.digest(content));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot fingerprint request", e);
+        }
+    }
+}
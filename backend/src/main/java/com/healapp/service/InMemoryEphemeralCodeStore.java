@@ -0,0 +1,144 @@
+package com.healapp.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.healapp.utils.HierarchicalTimingWheel;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Backend trong bộ nhớ của EphemeralCodeStore (một node). Mã hết hạn được dọn bằng timing wheel nên mỗi lượt quét
+ * chỉ chạm vào các mã thực sự hết hạn; vượt ephemeral-code.max-entries thì mã sắp hết hạn sớm nhất bị evict.
+ * Đọc không cần lock, ghi và quét dùng chung một lock (thao tác trên wheel là O(1)).
+ */
+@Service
+@ConditionalOnProperty(name = "ephemeral-code.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryEphemeralCodeStore implements EphemeralCodeStore {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ephemeral-code.max-entries:100000}")
+    private int maxEntries = 100000;
+
+    @Value("${ephemeral-code.wheel.tick-ms:1000}")
+    private long tickMs = 1000;
+
+    @Value("${ephemeral-code.wheel.size:64}")
+    private int wheelSize = 64;
+
+    private static final class Entry {
+        private final String key;
+        private final String code;
+        private final long expiresAtMillis;
+        private HierarchicalTimingWheel.Timeout<Entry> timeout;
+
+        private Entry(String key, String code, long expiresAtMillis) {
+            this.key = key;
+            this.code = code;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private HierarchicalTimingWheel<Entry> wheel;
+
+    @PostConstruct
+    public void init() {
+        wheel = new HierarchicalTimingWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+        Gauge.builder("ephemeral.codes.size", entries, Map::size)
+                .description("Verification codes held in memory")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void put(String namespace, String key, String code, Duration ttl) {
+        String entryKey = entryKey(namespace, key);
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(entryKey, code, now + ttl.toMillis());
+        lock.lock();
+        try {
+            wheel.advance(now, this::expire);
+            Entry previous = entries.remove(entryKey);
+            if (previous != null) {
+                wheel.cancel(previous.timeout);
+            }
+            while (entries.size() >= maxEntries) {
+                Entry evicted = wheel.pollEarliest();
+                if (evicted == null) {
+                    break;
+                }
+                entries.remove(evicted.key, evicted);
+                meterRegistry.counter("ephemeral.codes.evicted").increment();
+            }
+            entry.timeout = wheel.add(entry, entry.expiresAtMillis);
+            // ttl ngắn hơn một tick coi như đã hết hạn
+            if (entry.timeout != null) {
+                entries.put(entryKey, entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<String> get(String namespace, String key) {
+        Entry entry = entries.get(entryKey(namespace, key));
+        // Mã hết hạn nhưng wheel chưa tới tick: coi như không có, lượt quét sau sẽ xoá
+        if (entry == null || entry.expiresAtMillis <= System.currentTimeMillis()) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.code);
+    }
+
+    @Override
+    public void remove(String namespace, String key) {
+        lock.lock();
+        try {
+            Entry entry = entries.remove(entryKey(namespace, key));
+            if (entry != null) {
+                wheel.cancel(entry.timeout);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        return entries.size();
+    }
+
+    @Scheduled(fixedDelayString = "${ephemeral-code.wheel.tick-ms:1000}")
+    public void evictExpired() {
+        lock.lock();
+        try {
+            wheel.advance(System.currentTimeMillis(), this::expire);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void expire(Entry entry) {
+        if (entries.remove(entry.key, entry)) {
+            meterRegistry.counter("ephemeral.codes.expired").increment();
+        }
+    }
+
+    private String entryKey(String namespace, String key) {
+        return namespace + ":" + key;
+    }
+}
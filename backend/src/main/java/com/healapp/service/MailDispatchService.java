@@ -0,0 +1,122 @@
+package com.healapp.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * Điểm định tuyến duy nhất cho mọi email gửi bất đồng bộ.
+ * Mặc định email được ghi vào outbox (EmailOutboxService) trong transaction của nơi gọi;
+ * khi tắt outbox thì gửi thẳng trên mailExecutor riêng (hàng đợi giới hạn + caller-runs).
+ * Ghi metric độ trễ theo template, thời gian chờ trong hàng đợi và độ sâu hàng đợi.
+ */
+@Service
+public class MailDispatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailDispatchService.class);
+
+    @Autowired
+    @Qualifier("mailExecutor")
+    private AsyncTaskExecutor mailExecutor;
+
+    @Autowired
+    private JavaMailSender mailSender;
+
+    @Autowired
+    private EmailOutboxService emailOutboxService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${mail.outbox.enabled:true}")
+    private boolean outboxEnabled = true;
+
+    @FunctionalInterface
+    public interface MessageBuilder {
+        MimeMessage build() throws Exception;
+    }
+
+    @PostConstruct
+    void registerGauges() {
+        if (mailExecutor instanceof ThreadPoolTaskExecutor pool) {
+            Gauge.builder("mail.dispatch.queue.depth", pool, p -> p.getThreadPoolExecutor().getQueue().size())
+                    .description("Number of mail tasks waiting for a mail thread")
+                    .register(meterRegistry);
+            Gauge.builder("mail.dispatch.active", pool, ThreadPoolTaskExecutor::getActiveCount)
+                    .description("Number of mail tasks currently running")
+                    .register(meterRegistry);
+        }
+    }
+
+    public void dispatch(String template, String recipient, MessageBuilder builder) {
+        if (outboxEnabled) {
+            enqueue(template, recipient, builder);
+        } else {
+            sendDirect(template, recipient, builder);
+        }
+    }
+
+    private void enqueue(String template, String recipient, MessageBuilder builder) {
+        long startedAt = System.nanoTime();
+        try {
+            emailOutboxService.enqueue(template, recipient, builder.build());
+            logger.info("Email [{}] to {} queued in outbox", template, recipient);
+        } catch (Exception e) {
+            meterRegistry.counter("mail.dispatch.enqueue.failed", "template", template).increment();
+            logger.error("Failed to queue email [{}] to {}: {}", template, recipient, e.getMessage());
+        } finally {
+            Timer.builder("mail.dispatch.enqueue.latency").tag("template", template)
+                    .register(meterRegistry).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Gửi thẳng qua mailExecutor. Khi hàng đợi đầy, email được gửi ngay trên luồng gọi
+     * thay vì ném TaskRejectedException, nhờ vậy đợt nhắc nhở lớn tự giảm tốc.
+     */
+    private void sendDirect(String template, String recipient, MessageBuilder builder) {
+        Thread submitter = Thread.currentThread();
+        long enqueuedAt = System.nanoTime();
+
+        mailExecutor.execute(() -> {
+            long startedAt = System.nanoTime();
+            if (Thread.currentThread() == submitter) {
+                Counter.builder("mail.dispatch.caller.runs").tag("template", template)
+                        .register(meterRegistry).increment();
+            }
+            Timer.builder("mail.dispatch.queue.wait").tag("template", template)
+                    .register(meterRegistry).record(startedAt - enqueuedAt, TimeUnit.NANOSECONDS);
+
+            String outcome = "sent";
+            try {
+                mailSender.send(builder.build());
+                logger.info("Email [{}] sent successfully to: {}", template, recipient);
+            } catch (Exception e) {
+                outcome = "failed";
+                logger.error("Failed to send email [{}] to {}: {}", template, recipient, e.getMessage());
+            } finally {
+                Timer.builder("mail.dispatch.latency")
+                        .tag("template", template)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+}
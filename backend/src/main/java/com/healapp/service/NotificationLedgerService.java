@@ -0,0 +1,168 @@
+package com.healapp.service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.healapp.model.NotificationLedger;
+import com.healapp.model.NotificationType;
+import com.healapp.repository.NotificationLedgerRepository;
+
+/**
+ * Sổ chống gửi trùng thông báo theo khóa (userId, type, giờ).
+ * Bảng notification_ledger có unique constraint là nguồn sự thật; mỗi bucket giờ
+ * được nạp một lần vào BitSet trong bộ nhớ nên câu hỏi "đã gửi trong giờ này chưa?"
+ * là O(1) và không bao giờ quét lịch sử thông báo của user. Bucket trong bộ nhớ chỉ là bộ lọc nhanh:
+ * node khác có thể gửi cùng giờ, nên quyền gửi được chốt bằng claim (insert-if-absent) trước khi gửi.
+ */
+@Service
+public class NotificationLedgerService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationLedgerService.class);
+
+    @Autowired
+    private NotificationLedgerRepository notificationLedgerRepository;
+
+    @Value("${notification.ledger.retention-days:7}")
+    private int retentionDays = 7;
+
+    private final Map<SlotKey, SentSlot> slots = new ConcurrentHashMap<>();
+
+    public boolean isSent(Long userId, NotificationType type, LocalDateTime sentAt) {
+        return getSlot(type, toSlotHour(sentAt)).contains(userId);
+    }
+
+    public NotificationLedger newEntry(Long userId, NotificationType type, LocalDateTime sentAt) {
+        return new NotificationLedger(userId, type, toSlotHour(sentAt));
+    }
+
+    /**
+     * Giữ khóa (user, loại, giờ) trong transaction hiện tại trước khi gửi. Trả về false nếu đã gửi
+     * (ở node này hoặc node khác), khi đó không gửi. Không ném lỗi unique nên không làm rollback cả batch.
+     */
+    public boolean claim(NotificationLedger entry) {
+        SentSlot slot = getSlot(entry.getType(), entry.getSlotHour());
+        if (slot.contains(entry.getUserId())) {
+            return false;
+        }
+        int inserted = notificationLedgerRepository.insertIfAbsent(entry.getUserId(), entry.getType().name(),
+                entry.getSlotHour(), LocalDateTime.now());
+        if (inserted == 0) {
+            // Node khác đã ghi và commit (insertIfAbsent chờ khóa của nó): ghi nhận vào bucket ngay
+            slot.add(entry.getUserId());
+            logger.debug("Notification {} for user {} at {} already recorded by another node",
+                    entry.getType(), entry.getUserId(), entry.getSlotHour());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gửi thất bại sau khi đã claim: bỏ bản ghi để tick sau gửi lại.
+     */
+    public void release(NotificationLedger entry) {
+        notificationLedgerRepository.deleteEntry(entry.getUserId(), entry.getType(), entry.getSlotHour());
+    }
+
+    /**
+     * Ghi nhận vào bucket trong bộ nhớ các bản ghi đã claim và gửi thành công. Cache chỉ được cập nhật
+     * sau khi commit để một batch bị rollback không chặn lần gửi lại ở tick sau.
+     */
+    public void recordAll(List<NotificationLedger> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    markSent(entries);
+                }
+            });
+        } else {
+            markSent(entries);
+        }
+    }
+
+    public void purgeExpiredEntries() {
+        LocalDateTime cutoff = toSlotHour(LocalDateTime.now()).minusDays(retentionDays);
+        int deleted = notificationLedgerRepository.deleteBySlotHourBefore(cutoff);
+        logger.info("Purged {} notification ledger entries older than {}", deleted, cutoff);
+    }
+
+    static LocalDateTime toSlotHour(LocalDateTime dateTime) {
+        return dateTime.truncatedTo(ChronoUnit.HOURS);
+    }
+
+    private void markSent(List<NotificationLedger> entries) {
+        for (NotificationLedger entry : entries) {
+            getSlot(entry.getType(), entry.getSlotHour()).add(entry.getUserId());
+        }
+    }
+
+    private SentSlot getSlot(NotificationType type, LocalDateTime slotHour) {
+        SlotKey key = new SlotKey(type, slotHour);
+        SentSlot slot = slots.get(key);
+        if (slot != null) {
+            return slot;
+        }
+
+        // Nạp bucket giờ từ DB một lần (ngoài lock của map), rồi bỏ các bucket đã qua
+        SentSlot loaded = new SentSlot();
+        for (Long userId : notificationLedgerRepository.findUserIdsByTypeAndSlotHour(type, slotHour)) {
+            loaded.add(userId);
+        }
+        SentSlot existing = slots.putIfAbsent(key, loaded);
+        if (existing == null) {
+            LocalDateTime oldest = slotHour.minusHours(1);
+            slots.keySet().removeIf(k -> k.slotHour().isBefore(oldest));
+            return loaded;
+        }
+        return existing;
+    }
+
+    private record SlotKey(NotificationType type, LocalDateTime slotHour) {
+    }
+
+    // Tập user ID đã gửi trong một bucket: BitSet cho ID vừa int, Set dự phòng cho ID lớn hơn
+    private static final class SentSlot {
+        private final BitSet ids = new BitSet();
+        private final Set<Long> overflow = new HashSet<>();
+
+        synchronized boolean contains(Long userId) {
+            if (userId == null) {
+                return false;
+            }
+            return fitsBitSet(userId) ? ids.get(userId.intValue()) : overflow.contains(userId);
+        }
+
+        synchronized void add(Long userId) {
+            if (userId == null) {
+                return;
+            }
+            if (fitsBitSet(userId)) {
+                ids.set(userId.intValue());
+            } else {
+                overflow.add(userId);
+            }
+        }
+
+        private static boolean fitsBitSet(long userId) {
+            return userId >= 0 && userId < Integer.MAX_VALUE;
+        }
+    }
+}
@@ -170,7 +170,8 @@ public class NotificationPreferenceService {
             }
 
             // Cập nhật thời gian gửi thông báo
-            int updatedRows = notificationPreferenceRepo.updateNotificationPreference(userId, notificationType, time);
+            int updatedRows = notificationPreferenceRepo.updateNotificationPreference(userId, notificationType, time,
+                    NotificationPreference.toRemindMinute(time));
             if (updatedRows == 0) {
                 return ApiResponse.error("No rows updated. Preference might not exist.");
             }
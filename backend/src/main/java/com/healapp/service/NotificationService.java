@@ -5,28 +5,36 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.healapp.model.ControlPills;
 import com.healapp.model.MenstrualCycle;
 import com.healapp.model.Notification;
-import com.healapp.model.NotificationPreference;
+import com.healapp.model.NotificationLedger;
 import com.healapp.model.NotificationStatus;
 import com.healapp.model.NotificationType;
 import com.healapp.model.PillLogs;
 import com.healapp.model.PregnancyProbLog;
 import com.healapp.model.UserDtls;
 import com.healapp.repository.ControlPillsRepository;
-import com.healapp.repository.NotificationPreferenceRepository;
+import com.healapp.repository.MenstrualCycleRepository;
 import com.healapp.repository.NotificationRepository;
 import com.healapp.repository.PillLogsRepository;
 import com.healapp.repository.PregnancyProbLogRepository;
@@ -44,14 +52,11 @@ public class NotificationService {
     @Autowired
     private NotificationRepository notificationRepository;
 
-    @Autowired
-    private NotificationPreferenceRepository notificationPreferenceRepository;
-
     @Autowired
     private PregnancyProbLogRepository pregnancyProbLogRepository;
 
     @Autowired
-    private MenstrualCycleService menstrualCycleService;
+    private MenstrualCycleRepository menstrualCycleRepository;
 
     @Autowired
     private UserService userService;
@@ -65,48 +70,31 @@ public class NotificationService {
     @Autowired
     private PillLogsRepository pillLogsRepository;
 
+    @Autowired
+    private ReminderDispatchService reminderDispatchService;
+
+    @Autowired
+    private NotificationLedgerService notificationLedgerService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Số user xử lý trong một batch (một transaction, vài truy vấn IN)
+    @Value("${notification.reminder.batch-size:500}")
+    private int batchSize = 500;
+
     public void sendOvulationNotification() {
         logger.info("Starting scheduled ovulation notification task");
-        
+
         // Log timezone information for debugging
         LocalTime currentTime = LocalTime.now(VIETNAM_ZONE);
         LocalDateTime currentDateTime = LocalDateTime.now(VIETNAM_ZONE);
         logger.info("Current time in Vietnam: {} (DateTime: {})", currentTime, currentDateTime);
-        
-        // For scheduled tasks - send to all users with enabled ovulation notifications
-        List<NotificationPreference> ovulationPreferences = notificationPreferenceRepository.findAll()
-            .stream()
-            .filter(pref -> pref.getType() == NotificationType.OVULATION && pref.getEnabled())
-            .toList();
-        
-        logger.info("Found {} users with enabled ovulation notifications", ovulationPreferences.size());
-        
-        for (NotificationPreference preference : ovulationPreferences) {
-            try {
-                LocalTime remindTime = preference.getRemindTime();
-                
-                logger.info("Checking ovulation notification for user ID {}: current time={}, remind time={}", 
-                           preference.getUser().getId(), currentTime, remindTime);
-                
-                // Kiểm tra thời gian với độ lệch ±1 phút để tránh bỏ lỡ
-                boolean isTimeToSend = remindTime.equals(LocalTime.of(currentTime.getHour(), currentTime.getMinute())) ||
-                                     remindTime.equals(LocalTime.of(currentTime.getHour(), currentTime.getMinute() - 1)) ||
-                                     remindTime.equals(LocalTime.of(currentTime.getHour(), currentTime.getMinute() + 1));
-                
-                if(isTimeToSend) {
-                    sendOvulationNotificationToUser(preference.getUser().getId());
-                    logger.info("Sending ovulation notification to user ID: {}", preference.getUser().getId());
-                } else {
-                    logger.info("Skipping ovulation notification for user ID {}: Not the right time (current={}, remind={})", 
-                               preference.getUser().getId(), currentTime, remindTime);
-                    continue;
-                }
-            } catch (Exception e) {
-                logger.error("Error sending ovulation notification to user ID {}: {}", 
-                           preference.getUser().getId(), e.getMessage(), e);
-            }
-        }
-        
+
+        // Chỉ đọc các user có bucket nhắc nhở trùng với phút hiện tại (±1 phút)
+        List<Long> dueUserIds = reminderDispatchService.findDueUserIds(NotificationType.OVULATION, currentTime);
+        processInBatches(dueUserIds, this::sendOvulationNotificationBatch, NotificationType.OVULATION);
+
         logger.info("Completed scheduled ovulation notification task");
     }
 
@@ -115,128 +103,111 @@ public class NotificationService {
             logger.warn("Cannot send ovulation notification: User ID is null");
             throw new IllegalArgumentException("User ID cannot be null");
         }
+        sendOvulationNotificationBatch(List.of(userId));
+    }
 
-        // Kiểm tra gửi mail chưa
-        List<Notification> existingNotifications = notificationRepository.findByUserIdAndTypeAndStatus(
-            userId, NotificationType.OVULATION, NotificationStatus.SENT);
-
-        for (Notification notification : existingNotifications) {
-            // Kiểm tra xem đã gửi trong hôm nay chưa
-            if (notification.getSentAt() != null && 
-                notification.getSentAt().toLocalDate().isEqual(LocalDate.now(VIETNAM_ZONE)) &&
-                notification.getSentAt().getHour() == LocalTime.now(VIETNAM_ZONE).getHour()) {
-                logger.info("Skipping ovulation notification for user ID {}: Already sent this hour", userId);
-                return;
-            }
+    /**
+     * Batch stage cho nhắc nhở ngày rụng trứng: nạp user và chu kỳ gần nhất bằng
+     * truy vấn IN, tra sổ ledger để bỏ qua user đã gửi trong giờ này, quyết định
+     * trong bộ nhớ rồi lưu toàn bộ Notification bằng một lần saveAll.
+     */
+    public void sendOvulationNotificationBatch(Collection<Long> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            return;
         }
 
-        logger.info("Attempting to send ovulation notification to user ID: {}", userId);
+        transactionTemplate.executeWithoutResult(status -> {
+            LocalDateTime now = LocalDateTime.now(VIETNAM_ZONE);
+            LocalDate today = now.toLocalDate();
 
-        UserDtls user = userRepository.findById(userId).orElse(null);
-        if (user == null) {
-            logger.warn("Cannot send ovulation notification: User not found for ID: {}", userId);
-            return;
-        }
+            Map<Long, UserDtls> users = loadUsers(userIds);
+            Map<Long, MenstrualCycle> latestCycles = loadLatestCycles(userIds);
 
-        // Lấy chu kỳ kinh nguyệt gần nhất của người dùng
-        MenstrualCycle latestCycle = menstrualCycleService.getLatestCycleBeforeToday(userId)
-            .orElse(null);
-        if (latestCycle == null) {
-            // Không có chu kỳ kinh nguyệt nào, bỏ qua thông báo
-            logger.info("Skipping ovulation notification for user ID {}: No menstrual cycle data found", userId);
-            return;
-        }
+            List<Notification> notifications = new ArrayList<>();
+            List<NotificationLedger> ledgerEntries = new ArrayList<>();
+            for (Long userId : userIds) {
+                // Kiểm tra gửi mail chưa - tra sổ ledger theo (user, loại, giờ)
+                if (notificationLedgerService.isSent(userId, NotificationType.OVULATION, now)) {
+                    logger.info("Skipping ovulation notification for user ID {}: Already sent this hour", userId);
+                    continue;
+                }
 
-        // Lấy ngày kinh nguyệt gần nhất
-        LocalDate ovulationDate = latestCycle.getOvulationDate();
-        if (ovulationDate == null) {
-            // Nếu không có ngày rụng trứng, bỏ qua thông báo
-            logger.info("Skipping ovulation notification for user ID {}: No ovulation date found in cycle", userId);
-            return;
-        }
+                UserDtls user = users.get(userId);
+                if (user == null) {
+                    logger.warn("Cannot send ovulation notification: User not found for ID: {}", userId);
+                    continue;
+                }
 
-        if(ovulationDate.minusDays(1).isEqual(LocalDate.now(VIETNAM_ZONE))) {
-            // Nếu ngày rụng trứng là ngày mai, gửi thông báo
-            logger.info("Sending ovulation notification to user ID {}: Ovulation date is tomorrow ({})", 
-                       userId, ovulationDate);
+                // Lấy chu kỳ kinh nguyệt gần nhất của người dùng
+                MenstrualCycle latestCycle = latestCycles.get(userId);
+                if (latestCycle == null) {
+                    // Không có chu kỳ kinh nguyệt nào, bỏ qua thông báo
+                    logger.info("Skipping ovulation notification for user ID {}: No menstrual cycle data found", userId);
+                    continue;
+                }
 
-            logger.info("Preparing to send ovulation notification to user {} ({}) for ovulation date: {}", 
-                   user.getFullName(), user.getEmail(), ovulationDate);
+                LocalDate ovulationDate = latestCycle.getOvulationDate();
+                if (ovulationDate == null) {
+                    // Nếu không có ngày rụng trứng, bỏ qua thông báo
+                    logger.info("Skipping ovulation notification for user ID {}: No ovulation date found in cycle", userId);
+                    continue;
+                }
 
-            Notification notification = new Notification();
-            notification.setUser(user);
-            notification.setTitle("Nhắc nhở ngày rụng trứng sắp tới");
-            notification.setContent("Đây là thời điểm có khả năng thụ thai cao nhất.");
-            notification.setType(NotificationType.OVULATION);
-            notification.setScheduledAt(LocalDateTime.now(VIETNAM_ZONE));
+                if (!ovulationDate.minusDays(1).isEqual(today)) {
+                    // Nếu không phải ngày rụng trứng, bỏ qua thông báo
+                    logger.info("Skipping ovulation notification for user ID {}: Ovulation date is not tomorrow ({})",
+                               userId, ovulationDate);
+                    continue;
+                }
 
-            try {
-                emailService.sendOvulationReminderAsync(user.getEmail(), user.getFullName(), ovulationDate);
-                notification.setStatus(NotificationStatus.SENT);
-                notification.setSentAt(LocalDateTime.now(VIETNAM_ZONE));
-                logger.info("Successfully sent ovulation notification email to user {} ({})", 
-                        user.getFullName(), user.getEmail());
-            } catch (Exception ex) {
-                notification.setStatus(NotificationStatus.FAILED);
-                notification.setErrorMessage(ex.getMessage());
-                logger.error("Failed to send ovulation notification email to user {} ({}). Reason: {}", 
-                            user.getFullName(), user.getEmail(), ex.getMessage(), ex);
+                // Nếu ngày rụng trứng là ngày mai, gửi thông báo
+                logger.info("Preparing to send ovulation notification to user {} ({}) for ovulation date: {}",
+                       user.getFullName(), user.getEmail(), ovulationDate);
+
+                // Chốt quyền gửi trước khi gửi: node khác có thể đang xử lý cùng user trong giờ này
+                NotificationLedger ledgerEntry = notificationLedgerService.newEntry(userId, NotificationType.OVULATION, now);
+                if (!notificationLedgerService.claim(ledgerEntry)) {
+                    logger.info("Skipping ovulation notification for user ID {}: Already sent this hour", userId);
+                    continue;
+                }
+
+                Notification notification = newNotification(user, NotificationType.OVULATION,
+                        "Nhắc nhở ngày rụng trứng sắp tới", "Đây là thời điểm có khả năng thụ thai cao nhất.");
+
+                try {
+                    emailService.sendOvulationReminderAsync(user.getEmail(), user.getFullName(), ovulationDate);
+                    markSent(notification);
+                    ledgerEntries.add(ledgerEntry);
+                    logger.info("Successfully sent ovulation notification email to user {} ({})",
+                            user.getFullName(), user.getEmail());
+                } catch (Exception ex) {
+                    notificationLedgerService.release(ledgerEntry);
+                    markFailed(notification, ex.getMessage());
+                    logger.error("Failed to send ovulation notification email to user {} ({}). Reason: {}",
+                                user.getFullName(), user.getEmail(), ex.getMessage(), ex);
+                }
+                notifications.add(notification);
             }
 
-            notificationRepository.save(notification);
-            logger.info("Ovulation notification record saved for user ID: {} with status: {}", 
-                    userId, notification.getStatus());
-        } else {
-            // Nếu không phải ngày rụng trứng, bỏ qua thông báo
-            logger.info("Skipping ovulation notification for user ID {}: Ovulation date is not tomorrow ({})", 
-                       userId, ovulationDate);
-            return;
-        }
-        
+            notificationRepository.saveAll(notifications);
+            notificationLedgerService.recordAll(ledgerEntries);
+            logger.info("Saved {} ovulation notification records for batch of {} users",
+                    notifications.size(), userIds.size());
+        });
     }
 
     public void sendPregnancyProbNotification() {
         logger.info("Starting scheduled pregnancy probability notification task");
-        
+
         // Log timezone information for debugging
         LocalTime currentTime = LocalTime.now(VIETNAM_ZONE);
         LocalDateTime currentDateTime = LocalDateTime.now(VIETNAM_ZONE);
         logger.info("Current time in Vietnam: {} (DateTime: {})", currentTime, currentDateTime);
-        
-        // For scheduled tasks - send to all users with enabled pregnancy probability notifications
-        List<NotificationPreference> pregnancyPreferences = notificationPreferenceRepository.findAll()
-            .stream()
-            .filter(pref -> pref.getType() == NotificationType.PREGNANCY_PROBABILITY && pref.getEnabled())
-            .toList();
-        
-        logger.info("Found {} users with enabled pregnancy probability notifications", pregnancyPreferences.size());
-        
-        for (NotificationPreference preference : pregnancyPreferences) {
-            try {
-                LocalTime remindTime = preference.getRemindTime();
-                
-                logger.info("Checking pregnancy probability notification for user ID {}: current time={}, remind time={}", 
-                           preference.getUser().getId(), currentTime, remindTime);
-                
-                // Kiểm tra thời gian với độ lệch ±1 phút để tránh bỏ lỡ
-                boolean isTimeToSend = remindTime.equals(LocalTime.of(currentTime.getHour(), currentTime.getMinute())) ||
-                                     remindTime.equals(LocalTime.of(currentTime.getHour(), currentTime.getMinute() - 1)) ||
-                                     remindTime.equals(LocalTime.of(currentTime.getHour(), currentTime.getMinute() + 1));
-                
-                if(isTimeToSend) {
-                    logger.info("Sending pregnancy probability notification to user ID: {}", preference.getUser().getId());
-                    sendPregnancyProbNotificationToUser(preference.getUser().getId());
-                } else {
-                    logger.info("Skipping pregnancy probability notification for user ID {}: Not the right time (current={}, remind={})", 
-                               preference.getUser().getId(), currentTime, remindTime);
-                    continue;
-                }
-            } catch (Exception e) {
-                logger.error("Error sending pregnancy probability notification to user ID {}: {}", 
-                           preference.getUser().getId(), e.getMessage(), e);
-            }
-        }
-        
+
+        // Chỉ đọc các user có bucket nhắc nhở trùng với phút hiện tại (±1 phút)
+        List<Long> dueUserIds = reminderDispatchService.findDueUserIds(NotificationType.PREGNANCY_PROBABILITY, currentTime);
+        processInBatches(dueUserIds, this::sendPregnancyProbNotificationBatch, NotificationType.PREGNANCY_PROBABILITY);
+
         logger.info("Completed scheduled pregnancy probability notification task");
     }
 
@@ -245,153 +216,139 @@ public class NotificationService {
             logger.warn("Cannot send pregnancy probability notification: User ID is null");
             throw new IllegalArgumentException("User ID cannot be null");
         }
-        
-        // Kiểm tra gửi mail chưa
-        List<Notification> existingNotifications = notificationRepository.findByUserIdAndTypeAndStatus(
-            userId, NotificationType.PREGNANCY_PROBABILITY, NotificationStatus.SENT);
-
-        for (Notification notification : existingNotifications) {
-            // Kiểm tra xem đã gửi trong hôm nay chưa
-            // một giờ chỉ gửi một lần
-            if (notification.getSentAt() != null && 
-                notification.getSentAt().toLocalDate().isEqual(LocalDate.now(VIETNAM_ZONE)) &&
-                notification.getSentAt().getHour() == LocalTime.now(VIETNAM_ZONE).getHour()) {
-                logger.info("Skipping pregnancy probability notification for user ID {}: Already sent this time", userId);
-                return;
-            }
-        }
+        sendPregnancyProbNotificationBatch(List.of(userId));
+    }
 
-        logger.info("Attempting to send pregnancy probability notification to user ID: {}", userId);
-        
-        UserDtls user = userRepository.findById(userId).orElse(null);
-        if (user == null) {
-            logger.warn("Cannot send pregnancy probability notification: User not found for ID: {}", userId);
+    /**
+     * Batch stage cho thông báo xác suất mang thai: nạp user, chu kỳ gần nhất và
+     * nhật ký xác suất của các chu kỳ đó bằng truy vấn IN, tra sổ ledger để bỏ qua
+     * user đã gửi trong giờ này, sau đó lưu tất cả Notification trong một transaction.
+     */
+    public void sendPregnancyProbNotificationBatch(Collection<Long> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
             return;
         }
 
-        logger.info("Preparing to send pregnancy probability notification to user {} ({})", 
-                   user.getFullName(), user.getEmail());
-
-        Notification noti = new Notification();
-        noti.setUser(user);
-        noti.setTitle("Xác suất mang thai");
-        noti.setContent("Thông báo xác suất mang thai");
-        noti.setType(NotificationType.PREGNANCY_PROBABILITY);
-        noti.setScheduledAt(LocalDateTime.now(VIETNAM_ZONE));
-
-        // Lấy chu kỳ kinh nguyệt gần nhất của người dùng
-        MenstrualCycle latestCycle = menstrualCycleService.getLatestCycleBeforeToday(userId)
-            .orElse(null);
-        if (latestCycle == null) {
-            // Không có chu kỳ kinh nguyệt nào, bỏ qua thông báo
-            noti.setStatus(NotificationStatus.SKIPPED);
-            noti.setErrorMessage("No menstrual cycle data found");
-            notificationRepository.save(noti);
-            logger.info("Skipping pregnancy probability notification for user ID {}: No menstrual cycle data found", userId);
-            return;
-        }
+        transactionTemplate.executeWithoutResult(status -> {
+            LocalDateTime now = LocalDateTime.now(VIETNAM_ZONE);
+            LocalDate today = now.toLocalDate();
 
-        try {
-            List<PregnancyProbLog> logs = pregnancyProbLogRepository.findAllByMenstrualCycleId(latestCycle.getId())
-                    .orElse(Collections.emptyList());
+            Map<Long, UserDtls> users = loadUsers(userIds);
+            Map<Long, MenstrualCycle> latestCycles = loadLatestCycles(userIds);
+            Map<Long, List<PregnancyProbLog>> logsByCycle = loadProbLogsByCycle(latestCycles.values());
 
-            if (logs.isEmpty()) {
-                noti.setStatus(NotificationStatus.SKIPPED);
-                noti.setErrorMessage("No pregnancy probability logs found");
-                notificationRepository.save(noti);
-                logger.info("Skipping pregnancy probability notification for user ID {}: No pregnancy probability logs found", userId);
-                return;
-            }
+            List<Notification> notifications = new ArrayList<>();
+            List<NotificationLedger> ledgerEntries = new ArrayList<>();
+            for (Long userId : userIds) {
+                // Kiểm tra gửi mail chưa - một giờ chỉ gửi một lần
+                if (notificationLedgerService.isSent(userId, NotificationType.PREGNANCY_PROBABILITY, now)) {
+                    logger.info("Skipping pregnancy probability notification for user ID {}: Already sent this time", userId);
+                    continue;
+                }
 
-            // Tính toán
-            LocalDate today = LocalDate.now(VIETNAM_ZONE);
-            if (today == null) {
-                throw new IllegalStateException("Current date is not available");
-            }
-            double probToday = 1;
-            LocalDate ovulationDate = latestCycle.getOvulationDate();
-            LocalDate start = today, end = today;
-
-            for (PregnancyProbLog log : logs) {
-                if (log.getDate().isBefore(start)) start = log.getDate();
-                if (log.getDate().isAfter(end)) end = log.getDate();
-                if (log.getDate().isEqual(today)) probToday = log.getProbability().doubleValue();
-            }
+                UserDtls user = users.get(userId);
+                if (user == null) {
+                    logger.warn("Cannot send pregnancy probability notification: User not found for ID: {}", userId);
+                    continue;
+                }
+
+                Notification noti = newNotification(user, NotificationType.PREGNANCY_PROBABILITY,
+                        "Xác suất mang thai", "Thông báo xác suất mang thai");
+                notifications.add(noti);
 
-            if (!today.isBefore(start) && !today.isAfter(end)) {
-                int daysBeforeOvulation = (int) ChronoUnit.DAYS.between(ovulationDate, today);
-
-                logger.info("Sending pregnancy probability email to user {} ({}): probability={}%, daysBeforeOvulation={}, ovulationDate={}", 
-                           user.getFullName(), user.getEmail(), probToday, daysBeforeOvulation, ovulationDate);
-
-                // Gửi email
-                emailService.sendOvulationWithPregnancyProbReminderAsync(
-                    user.getEmail(),
-                    user.getFullName(),
-                    daysBeforeOvulation,
-                    probToday,
-                    ovulationDate
-                );
-
-                noti.setStatus(NotificationStatus.SENT);
-                noti.setSentAt(LocalDateTime.now(VIETNAM_ZONE));
-                logger.info("Successfully sent pregnancy probability notification email to user {} ({})", 
-                           user.getFullName(), user.getEmail());
-            } else {
-                noti.setStatus(NotificationStatus.SKIPPED);
-                noti.setErrorMessage("Today is not within the pregnancy probability range");
-                logger.info("Skipping pregnancy probability notification for user ID {}: Today ({}) is not within probability range ({} to {})", 
-                           userId, today, start, end);
+                // Lấy chu kỳ kinh nguyệt gần nhất của người dùng
+                MenstrualCycle latestCycle = latestCycles.get(userId);
+                if (latestCycle == null) {
+                    // Không có chu kỳ kinh nguyệt nào, bỏ qua thông báo
+                    markSkipped(noti, "No menstrual cycle data found");
+                    logger.info("Skipping pregnancy probability notification for user ID {}: No menstrual cycle data found", userId);
+                    continue;
+                }
+
+                NotificationLedger claimedEntry = null;
+                try {
+                    List<PregnancyProbLog> logs = logsByCycle.getOrDefault(latestCycle.getId(), List.of());
+                    if (logs.isEmpty()) {
+                        markSkipped(noti, "No pregnancy probability logs found");
+                        logger.info("Skipping pregnancy probability notification for user ID {}: No pregnancy probability logs found", userId);
+                        continue;
+                    }
+
+                    // Tính toán
+                    double probToday = 1;
+                    LocalDate ovulationDate = latestCycle.getOvulationDate();
+                    LocalDate start = today, end = today;
+
+                    for (PregnancyProbLog log : logs) {
+                        if (log.getDate().isBefore(start)) start = log.getDate();
+                        if (log.getDate().isAfter(end)) end = log.getDate();
+                        if (log.getDate().isEqual(today)) probToday = log.getProbability().doubleValue();
+                    }
+
+                    if (!today.isBefore(start) && !today.isAfter(end)) {
+                        // Chốt quyền gửi trước khi gửi: node khác có thể đang xử lý cùng user trong giờ này
+                        NotificationLedger ledgerEntry = notificationLedgerService.newEntry(userId,
+                                NotificationType.PREGNANCY_PROBABILITY, now);
+                        if (!notificationLedgerService.claim(ledgerEntry)) {
+                            notifications.remove(noti);
+                            logger.info("Skipping pregnancy probability notification for user ID {}: Already sent this time", userId);
+                            continue;
+                        }
+                        claimedEntry = ledgerEntry;
+
+                        int daysBeforeOvulation = (int) ChronoUnit.DAYS.between(ovulationDate, today);
+
+                        logger.info("Sending pregnancy probability email to user {} ({}): probability={}%, daysBeforeOvulation={}, ovulationDate={}",
+                                   user.getFullName(), user.getEmail(), probToday, daysBeforeOvulation, ovulationDate);
+
+                        // Gửi email
+                        emailService.sendOvulationWithPregnancyProbReminderAsync(
+                            user.getEmail(),
+                            user.getFullName(),
+                            daysBeforeOvulation,
+                            probToday,
+                            ovulationDate
+                        );
+
+                        markSent(noti);
+                        ledgerEntries.add(ledgerEntry);
+                        logger.info("Successfully sent pregnancy probability notification email to user {} ({})",
+                                   user.getFullName(), user.getEmail());
+                    } else {
+                        markSkipped(noti, "Today is not within the pregnancy probability range");
+                        logger.info("Skipping pregnancy probability notification for user ID {}: Today ({}) is not within probability range ({} to {})",
+                                   userId, today, start, end);
+                    }
+                } catch (Exception e) {
+                    if (claimedEntry != null) {
+                        notificationLedgerService.release(claimedEntry);
+                    }
+                    markFailed(noti, e.getMessage());
+                    logger.error("Failed to send pregnancy probability notification email to user {} ({}). Reason: {}",
+                                user.getFullName(), user.getEmail(), e.getMessage(), e);
+                }
             }
 
-        } catch (Exception e) {
-            noti.setStatus(NotificationStatus.FAILED);
-            noti.setErrorMessage(e.getMessage());
-            logger.error("Failed to send pregnancy probability notification email to user {} ({}). Reason: {}", 
-                        user.getFullName(), user.getEmail(), e.getMessage(), e);
-        }
-        notificationRepository.save(noti);
-        logger.info("Pregnancy probability notification record saved for user ID: {} with status: {}", 
-                   userId, noti.getStatus());
+            notificationRepository.saveAll(notifications);
+            notificationLedgerService.recordAll(ledgerEntries);
+            logger.info("Saved {} pregnancy probability notification records for batch of {} users",
+                       notifications.size(), userIds.size());
+        });
     }
+
     //Gửi mail cho cái nhắc uống thuốc
     public void sendPillReminder() {
         logger.info("Starting scheduled pill reminder task");
-        
+
         // Log timezone information for debugging
         LocalTime currentTime = LocalTime.now(VIETNAM_ZONE);
         LocalDateTime currentDateTime = LocalDateTime.now(VIETNAM_ZONE);
         logger.info("Current time in Vietnam: {} (DateTime: {})", currentTime, currentDateTime);
-        List<NotificationPreference> pillReminderPreferences = notificationPreferenceRepository.findAll()
-            .stream()
-            .filter(pref -> pref.getType() == NotificationType.PILL_REMINDER && pref.getEnabled())
-            .toList();
-        logger.info("Found {} users with enabled pill reminder notifications", pillReminderPreferences.size());
-        for (NotificationPreference preference : pillReminderPreferences) {
-            try {
-                LocalTime remindTime = preference.getRemindTime();
-                
-                logger.info("Checking pill reminder for user ID {}: current time={}, remind time={}", 
-                           preference.getUser().getId(), currentTime, remindTime);
-                
-                // Kiểm tra thời gian với độ lệch ±1 phút để tránh bỏ lỡ
-                boolean isTimeToSend = remindTime.equals(LocalTime.of(currentTime.getHour(), currentTime.getMinute())) ||
-                                     remindTime.equals(LocalTime.of(currentTime.getHour(), currentTime.getMinute() - 1)) ||
-                                     remindTime.equals(LocalTime.of(currentTime.getHour(), currentTime.getMinute() + 1));
-                
-                if(isTimeToSend) {
-                    logger.info("Sending pill reminder to user ID: {}", preference.getUser().getId());
-                    sendPillReminderToUser(preference.getUser().getId());
-                } else {
-                    logger.info("Skipping pill reminder for user ID {}: Not the right time (current={}, remind={})", 
-                               preference.getUser().getId(), currentTime, remindTime);
-                    continue;
-                }
-            } catch (Exception e) {
-                logger.error("Error sending pill reminder notification to user ID {}: {}", 
-                           preference.getUser().getId(), e.getMessage(), e);
-            }
-        }
+
+        // Chỉ đọc các user có bucket nhắc nhở trùng với phút hiện tại (±1 phút)
+        List<Long> dueUserIds = reminderDispatchService.findDueUserIds(NotificationType.PILL_REMINDER, currentTime);
+        processInBatches(dueUserIds, this::sendPillReminderBatch, NotificationType.PILL_REMINDER);
+
         logger.info("Completed scheduled pill reminder task");
     }
 
@@ -401,111 +358,184 @@ public class NotificationService {
             logger.warn("Cannot send pill reminder notification: User ID is null");
             throw new IllegalArgumentException("User ID cannot be null");
          }
+         sendPillReminderBatch(List.of(userId));
+    }
 
-        logger.info("Attempting to send pill reminder notification to user ID: {}", userId);
-
-        UserDtls user = userRepository.findById(userId).orElse(null);
-        if (user == null) {
-            logger.warn("Cannot send pill reminder notification: User not found for ID: {}", userId);
+    /**
+     * Batch stage cho nhắc nhở uống thuốc: nạp user, lịch uống thuốc đang hoạt động
+     * và nhật ký hôm nay của các lịch đó bằng truy vấn IN, rồi lưu log mới và
+     * Notification trong một transaction. Danh sách user đến từ chỉ mục điều phối
+     * nên đã bảo đảm preference PILL_REMINDER đang bật.
+     */
+    public void sendPillReminderBatch(Collection<Long> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
             return;
         }
 
-        // Kiểm tra người dùng có cài đặt nhận thông báo này không
-        Optional<NotificationPreference> preference = notificationPreferenceRepository.findByUserIdAndType(userId, NotificationType.PILL_REMINDER);
-        if (preference.isEmpty() || !preference.get().getEnabled()) {
-            logger.info("Skipping pill reminder notification for user ID {}: No preference found or notification disabled", userId);
-            return; 
-        }
+        transactionTemplate.executeWithoutResult(status -> {
+            LocalDateTime now = LocalDateTime.now(VIETNAM_ZONE);
+            LocalDate today = now.toLocalDate();
+            LocalTime currentTime = now.toLocalTime();
+
+            Map<Long, UserDtls> users = loadUsers(userIds);
+
+            // Lấy lịch uống thuốc đang hoạt động của các người dùng
+            Map<Long, List<ControlPills>> schedulesByUser = new HashMap<>();
+            List<ControlPills> dueSchedules = new ArrayList<>();
+            for (ControlPills schedule : controlPillsRepository.findActiveByUserIds(userIds)) {
+                schedulesByUser.computeIfAbsent(schedule.getUserId().getId(), k -> new ArrayList<>()).add(schedule);
+                //1. Chỉ gửi đúng vào thời điểm giờ và phút trùng với remindTime
+                if (currentTime.getHour() == schedule.getRemindTime().getHour()
+                    && currentTime.getMinute() == schedule.getRemindTime().getMinute()) {
+                    dueSchedules.add(schedule);
+                }
+            }
 
-        // Lấy lịch uống thuốc đang hoạt động của người dùng
-        List<ControlPills> activePillSchedules = controlPillsRepository.findByUserIdAndIsActive(user, true)
-            .orElse(Collections.emptyList());
+            // Nhật ký hôm nay của các lịch trình đến giờ, key theo pillsId
+            Map<Long, PillLogs> todayLogs = new HashMap<>();
+            if (!dueSchedules.isEmpty()) {
+                for (PillLogs log : pillLogsRepository.findByControlPillsInAndLogDate(dueSchedules, today)) {
+                    todayLogs.put(log.getControlPills().getPillsId(), log);
+                }
+            }
+            Set<Long> dueScheduleIds = new HashSet<>();
+            for (ControlPills schedule : dueSchedules) {
+                dueScheduleIds.add(schedule.getPillsId());
+            }
 
-        if (activePillSchedules.isEmpty()) {
-            logger.info("Skipping pill reminder notification for user ID {}: No active pill schedules found", userId);
-            return;
-        }
+            List<PillLogs> newPillLogs = new ArrayList<>();
+            List<Notification> notifications = new ArrayList<>();
+            for (Long userId : userIds) {
+                UserDtls user = users.get(userId);
+                if (user == null) {
+                    logger.warn("Cannot send pill reminder notification: User not found for ID: {}", userId);
+                    continue;
+                }
 
-        LocalDate today = LocalDate.now(VIETNAM_ZONE);
-        LocalTime currentTime = LocalTime.now(VIETNAM_ZONE);
+                List<ControlPills> activePillSchedules = schedulesByUser.getOrDefault(userId, List.of());
+                if (activePillSchedules.isEmpty()) {
+                    logger.info("Skipping pill reminder notification for user ID {}: No active pill schedules found", userId);
+                    continue;
+                }
 
-        for (ControlPills schedule : activePillSchedules) {
-            //1. Chỉ gửi đúng vào thời điểm giờ và phút trùng với remindTime
-            if (currentTime.getHour() == schedule.getRemindTime().getHour()
-                && currentTime.getMinute() == schedule.getRemindTime().getMinute()) {
-                // 2. Kiểm tra tất cả các nhật ký uống thuốc đã tồn tại cho hôm nay đối với lịch trình cụ thể này
-                Optional<PillLogs> todayPillLogOptional = pillLogsRepository.findByControlPillsAndLogDate(schedule, today);
-
-                boolean alreadyCheckedIn = todayPillLogOptional.isPresent() && todayPillLogOptional.get().getStatus();
-                boolean logExistsForToday = todayPillLogOptional.isPresent();
-
-                if (alreadyCheckedIn) {
-                    // Nếu đã có log đã check-in cho hôm nay, bỏ qua việc gửi nhắc nhở
-                    logger.info("Bỏ qua lời nhắc nhở uống thuốc cho lịch trình ID {} (người dùng ID {}): Đã check-in cho hôm nay.",
-                               schedule.getPillsId(), userId);
-                } else if (!logExistsForToday) {
-                    // Nếu chưa có log nào cho hôm nay, tạo log mới (ban đầu là bỏ lỡ) và gửi nhắc nhở
-                    PillLogs newPillLog = new PillLogs();
-                    newPillLog.setControlPills(schedule);
-                    newPillLog.setLogDate(today);
-                    newPillLog.setStatus(false); // Mặc định là bỏ lỡ, người dùng có thể check-in sau
-                    newPillLog.setCreatedAt(LocalDateTime.now(VIETNAM_ZONE)); // Đặt thời gian tạo
-                    newPillLog.setUpdatedAt(LocalDateTime.now(VIETNAM_ZONE)); // Đặt thời gian cập nhật
-                    pillLogsRepository.save(newPillLog); // Lưu nhật ký trước
-
-                    // Bây giờ, gửi thông báo
-                    Notification notification = new Notification();
-                    notification.setUser(user);
-                    notification.setTitle("Nhắc nhở uống thuốc");
-                    notification.setContent("Đã đến giờ uống thuốc của bạn.");
-                    notification.setType(NotificationType.PILL_REMINDER);
-                    notification.setScheduledAt(LocalDateTime.now(VIETNAM_ZONE));
+                for (ControlPills schedule : activePillSchedules) {
+                    if (!dueScheduleIds.contains(schedule.getPillsId())) {
+                        logger.info("Bỏ qua lời nhắc nhở uống thuốc cho lịch trình ID {} (người dùng ID {}): Thời gian nhắc nhở chưa đến.",
+                                   schedule.getPillsId(), userId);
+                        continue;
+                    }
 
-                    try {
-                        emailService.sendPillReminderAsync(user.getEmail(), user.getFullName(), schedule.getRemindTime());
-                        notification.setStatus(NotificationStatus.SENT);
-                        notification.setSentAt(LocalDateTime.now(VIETNAM_ZONE));
-                        logger.info("Đã gửi email nhắc nhở uống thuốc thành công cho người dùng {} ({}) cho lịch trình ID {}", 
-                                   user.getFullName(), user.getEmail(), schedule.getPillsId());
-                    } catch (Exception ex) {
-                        notification.setStatus(NotificationStatus.FAILED);
-                        notification.setErrorMessage(ex.getMessage());
-                        logger.error("Không thể gửi email nhắc nhở uống thuốc cho người dùng {} ({}) cho lịch trình ID {}. Lý do: {}", 
-                                    user.getFullName(), user.getEmail(), schedule.getPillsId(), ex.getMessage(), ex);
+                    // 2. Kiểm tra nhật ký uống thuốc đã tồn tại cho hôm nay đối với lịch trình cụ thể này
+                    PillLogs todayPillLog = todayLogs.get(schedule.getPillsId());
+                    if (todayPillLog != null && Boolean.TRUE.equals(todayPillLog.getStatus())) {
+                        // Nếu đã có log đã check-in cho hôm nay, bỏ qua việc gửi nhắc nhở
+                        logger.info("Bỏ qua lời nhắc nhở uống thuốc cho lịch trình ID {} (người dùng ID {}): Đã check-in cho hôm nay.",
+                                   schedule.getPillsId(), userId);
+                        continue;
+                    }
+
+                    if (todayPillLog == null) {
+                        // Nếu chưa có log nào cho hôm nay, tạo log mới (ban đầu là bỏ lỡ) và gửi nhắc nhở
+                        PillLogs newPillLog = new PillLogs();
+                        newPillLog.setControlPills(schedule);
+                        newPillLog.setLogDate(today);
+                        newPillLog.setStatus(false); // Mặc định là bỏ lỡ, người dùng có thể check-in sau
+                        newPillLog.setCreatedAt(now); // Đặt thời gian tạo
+                        newPillLog.setUpdatedAt(now); // Đặt thời gian cập nhật
+                        newPillLogs.add(newPillLog);
                     }
-                    notificationRepository.save(notification);
-                    logger.info("Đã lưu bản ghi thông báo nhắc nhở uống thuốc cho người dùng ID: {} với trạng thái: {}", 
-                               userId, notification.getStatus());
-                } else {
-                    // Log tồn tại nhưng chưa check-in, vẫn gửi lại nhắc nhở
-                    Notification notification = new Notification();
-                    notification.setUser(user);
-                    notification.setTitle("Nhắc nhở uống thuốc");
-                    notification.setContent("Đã đến giờ uống thuốc của bạn.");
-                    notification.setType(NotificationType.PILL_REMINDER);
-                    notification.setScheduledAt(LocalDateTime.now(VIETNAM_ZONE));
+                    // Log tồn tại nhưng chưa check-in thì vẫn gửi lại nhắc nhở
 
+                    Notification notification = newNotification(user, NotificationType.PILL_REMINDER,
+                            "Nhắc nhở uống thuốc", "Đã đến giờ uống thuốc của bạn.");
                     try {
                         emailService.sendPillReminderAsync(user.getEmail(), user.getFullName(), schedule.getRemindTime());
-                        notification.setStatus(NotificationStatus.SENT);
-                        notification.setSentAt(LocalDateTime.now(VIETNAM_ZONE));
-                        logger.info("Đã gửi lại email nhắc nhở uống thuốc cho người dùng {} ({}) cho lịch trình ID {} (log tồn tại nhưng chưa check-in)", 
+                        markSent(notification);
+                        logger.info("Đã gửi email nhắc nhở uống thuốc thành công cho người dùng {} ({}) cho lịch trình ID {}",
                                    user.getFullName(), user.getEmail(), schedule.getPillsId());
                     } catch (Exception ex) {
-                        notification.setStatus(NotificationStatus.FAILED);
-                        notification.setErrorMessage(ex.getMessage());
-                        logger.error("Không thể gửi lại email nhắc nhở uống thuốc cho người dùng {} ({}) cho lịch trình ID {}. Lý do: {}", 
+                        markFailed(notification, ex.getMessage());
+                        logger.error("Không thể gửi email nhắc nhở uống thuốc cho người dùng {} ({}) cho lịch trình ID {}. Lý do: {}",
                                     user.getFullName(), user.getEmail(), schedule.getPillsId(), ex.getMessage(), ex);
                     }
-                    notificationRepository.save(notification);
-                    logger.info("Đã lưu bản ghi thông báo nhắc nhở uống thuốc (gửi lại) cho người dùng ID: {} với trạng thái: {}", 
-                               userId, notification.getStatus());
+                    notifications.add(notification);
                 }
-            } else {
-                logger.info("Bỏ qua lời nhắc nhở uống thuốc cho lịch trình ID {} (người dùng ID {}): Thời gian nhắc nhở chưa đến.", 
-                           schedule.getPillsId(), userId);
             }
+
+            pillLogsRepository.saveAll(newPillLogs);
+            notificationRepository.saveAll(notifications);
+            logger.info("Đã lưu {} nhật ký uống thuốc và {} bản ghi thông báo nhắc nhở cho batch {} người dùng",
+                       newPillLogs.size(), notifications.size(), userIds.size());
+        });
+    }
+
+    // Chia danh sách user đến hạn thành các batch, lỗi của một batch không chặn các batch sau
+    private void processInBatches(List<Long> userIds, Consumer<Collection<Long>> batchStage, NotificationType type) {
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(userIds));
+        for (int from = 0; from < distinctIds.size(); from += batchSize) {
+            List<Long> batch = distinctIds.subList(from, Math.min(from + batchSize, distinctIds.size()));
+            try {
+                batchStage.accept(batch);
+            } catch (Exception e) {
+                logger.error("Error sending {} notifications to batch of {} users starting at user ID {}: {}",
+                           type, batch.size(), batch.get(0), e.getMessage(), e);
+            }
+        }
+    }
+
+    private Map<Long, UserDtls> loadUsers(Collection<Long> userIds) {
+        Map<Long, UserDtls> users = new HashMap<>();
+        for (UserDtls user : userRepository.findAllById(userIds)) {
+            users.put(user.getId(), user);
         }
+        return users;
+    }
+
+    private Map<Long, MenstrualCycle> loadLatestCycles(Collection<Long> userIds) {
+        Map<Long, MenstrualCycle> latestCycles = new HashMap<>();
+        for (MenstrualCycle cycle : menstrualCycleRepository.findLatestCyclesByUserIds(userIds)) {
+            // Nếu có hai chu kỳ cùng ngày bắt đầu, giữ chu kỳ được tạo sau
+            latestCycles.merge(cycle.getUser().getId(), cycle,
+                    (current, candidate) -> candidate.getId() > current.getId() ? candidate : current);
+        }
+        return latestCycles;
+    }
+
+    private Map<Long, List<PregnancyProbLog>> loadProbLogsByCycle(Collection<MenstrualCycle> cycles) {
+        Map<Long, List<PregnancyProbLog>> logsByCycle = new HashMap<>();
+        if (cycles.isEmpty()) {
+            return logsByCycle;
+        }
+        List<Long> cycleIds = cycles.stream().map(MenstrualCycle::getId).toList();
+        for (PregnancyProbLog log : pregnancyProbLogRepository.findAllByMenstrualCycleIds(cycleIds)) {
+            logsByCycle.computeIfAbsent(log.getMenstrualCycle().getId(), k -> new ArrayList<>()).add(log);
+        }
+        return logsByCycle;
+    }
+
+    private Notification newNotification(UserDtls user, NotificationType type, String title, String content) {
+        Notification notification = new Notification();
+        notification.setUser(user);
+        notification.setTitle(title);
+        notification.setContent(content);
+        notification.setType(type);
+        notification.setScheduledAt(LocalDateTime.now(VIETNAM_ZONE));
+        return notification;
+    }
+
+    private void markSent(Notification notification) {
+        notification.setStatus(NotificationStatus.SENT);
+        notification.setSentAt(LocalDateTime.now(VIETNAM_ZONE));
+    }
+
+    private void markSkipped(Notification notification, String reason) {
+        notification.setStatus(NotificationStatus.SKIPPED);
+        notification.setErrorMessage(reason);
+    }
+
+    private void markFailed(Notification notification, String reason) {
+        notification.setStatus(NotificationStatus.FAILED);
+        notification.setErrorMessage(reason);
     }
 
     // Phương thức bỏ qua thông báo
@@ -524,4 +554,3 @@ public class NotificationService {
         return userService.getUserIdFromUsername(username);
     }
 }
-
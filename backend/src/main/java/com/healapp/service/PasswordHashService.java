@@ -0,0 +1,106 @@
+package com.healapp.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Kiểm tra mật khẩu khi login trên passwordHashExecutor (pool CPU cỡ số core) thay vì trên luồng request.
+ * Hash lưu với cost BCrypt thấp hơn security.password-hash.bcrypt-strength được tính lại ngay trong cùng task,
+ * caller lưu hash mới sau khi login thành công.
+ */
+@Slf4j
+@Service
+public class PasswordHashService {
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    @Qualifier("passwordHashExecutor")
+    private Executor passwordHashExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Thời gian chờ tối đa gồm cả lúc nằm trong hàng đợi của pool
+    @Value("${security.password-hash.timeout-ms:5000}")
+    private long timeoutMs = 5000;
+
+    /**
+     * Kết quả kiểm tra; upgradedHash khác null khi mật khẩu đúng và hash cũ cần rehash
+     */
+    public record Verification(boolean matches, String upgradedHash) {
+    }
+
+    public Verification verify(String rawPassword, String encodedPassword) throws HashPoolBusyException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        CompletableFuture<Verification> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> check(rawPassword, encodedPassword), passwordHashExecutor);
+        } catch (RejectedExecutionException e) {
+            meterRegistry.counter("auth.password.hash.rejected").increment();
+            throw new HashPoolBusyException("Login service is busy, please retry shortly");
+        }
+
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            meterRegistry.counter("auth.password.hash.timeout").increment();
+            throw new HashPoolBusyException("Login service is busy, please retry shortly");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HashPoolBusyException("Login was interrupted, please retry");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password verification failed", e.getCause());
+        } finally {
+            sample.stop(meterRegistry.timer("auth.password.hash"));
+        }
+    }
+
+    /**
+     * Hash cần tính lại theo cost hiện tại (hash không phải BCrypt thì bỏ qua)
+     */
+    public boolean needsRehash(String encodedPassword) {
+        try {
+            return passwordEncoder.upgradeEncoding(encodedPassword);
+        } catch (IllegalArgumentException e) {
+            log.warn("Stored password hash is not in a recognised format: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private Verification check(String rawPassword, String encodedPassword) {
+        if (!passwordEncoder.matches(rawPassword, encodedPassword)) {
+            return new Verification(false, null);
+        }
+        if (!needsRehash(encodedPassword)) {
+            return new Verification(true, null);
+        }
+        meterRegistry.counter("auth.password.rehash").increment();
+        return new Verification(true, passwordEncoder.encode(rawPassword));
+    }
+
+    /**
+     * Pool hash đầy hoặc chờ quá timeout-ms
+     */
+    public static class HashPoolBusyException extends Exception {
+        public HashPoolBusyException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.healapp.service;
+
+import java.math.BigDecimal;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.healapp.model.Payment;
+import com.healapp.model.PaymentStatus;
+
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Theo dõi mọi lần Payment được lưu và báo cho RevenueRollupService khi trạng thái đi vào hoặc ra khỏi
+ * COMPLETED/REFUNDED, bất kể luồng nào thay đổi (đối soát QR, webhook Stripe, xác nhận COD, hoàn tiền...).
+ * Các UPDATE hàng loạt bằng JPQL không đi qua listener, nhưng không có cái nào đặt COMPLETED/REFUNDED.
+ */
+@Component
+public class PaymentRollupListener {
+
+    // Lazy: listener được Hibernate tạo trong lúc dựng EntityManagerFactory
+    @Autowired
+    private ObjectProvider<RevenueRollupService> revenueRollupService;
+
+    @PostLoad
+    public void onLoad(Payment payment) {
+        payment.setPersistedStatus(payment.getPaymentStatus());
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Payment payment) {
+        PaymentStatus before = payment.getPersistedStatus();
+        PaymentStatus after = payment.getPaymentStatus();
+        payment.setPersistedStatus(after);
+        if (before == after || payment.getCreatedAt() == null) {
+            return;
+        }
+
+        long completedCount = 0;
+        BigDecimal completedAmount = BigDecimal.ZERO;
+        long refundCount = 0;
+        BigDecimal refundAmount = BigDecimal.ZERO;
+        BigDecimal refunded = payment.getRefundAmount() != null ? payment.getRefundAmount() : payment.getAmount();
+
+        if (before == PaymentStatus.COMPLETED) {
+            completedCount--;
+            completedAmount = completedAmount.subtract(payment.getAmount());
+        }
+        if (after == PaymentStatus.COMPLETED) {
+            completedCount++;
+            completedAmount = completedAmount.add(payment.getAmount());
+        }
+        if (before == PaymentStatus.REFUNDED) {
+            refundCount--;
+            refundAmount = refundAmount.subtract(refunded);
+        }
+        if (after == PaymentStatus.REFUNDED) {
+            refundCount++;
+            refundAmount = refundAmount.add(refunded);
+        }
+        if (completedCount == 0 && refundCount == 0) {
+            return;
+        }
+
+        Long customerId = after == PaymentStatus.COMPLETED && payment.getUser() != null
+                ? payment.getUser().getId()
+                : null;
+        revenueRollupService.getObject().record(new RevenueRollupService.RevenueDelta(
+                payment.getCreatedAt().toLocalDate(), payment.getServiceType(), payment.getPaymentMethod(),
+                completedCount, completedAmount, refundCount, refundAmount, customerId));
+    }
+}
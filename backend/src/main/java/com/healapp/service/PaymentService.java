@@ -5,25 +5,34 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.healapp.dto.ApiResponse;
 import com.healapp.dto.BankTransactionResponse;
+import com.healapp.dto.PaymentPageResponse;
+import com.healapp.dto.PaymentTransactionResponse;
+import com.healapp.dto.QRPaymentStatusResponse;
 import com.healapp.model.Payment;
 import com.healapp.model.PaymentMethod;
 import com.healapp.model.PaymentStatus;
 import com.healapp.model.STITest;
 import com.healapp.model.UserDtls;
 import com.healapp.repository.PaymentRepository;
+import com.healapp.utils.PaymentCursor;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
 @Service
@@ -51,6 +60,24 @@ public class PaymentService {
     @Autowired
     private BankingService bankingService;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private QRPaymentStatusHub qrStatusHub;
+
+    @Value("${payment.qr.expiry.batch-size:1000}")
+    private int expiryBatchSize = 1000;
+
+    @Value("${payment.page.default-size:20}")
+    private int defaultPageSize = 20;
+
+    @Value("${payment.page.max-size:100}")
+    private int maxPageSize = 100;
+
+    @Value("${stripe.payment.stuck-minutes:5}")
+    private long stripeStuckMinutes = 5;
+
     public Payment createPayment(Long userId, String serviceType, Long serviceId,
             PaymentMethod paymentMethod, BigDecimal amount, String description) {
 
@@ -91,7 +118,21 @@ public class PaymentService {
         }
     }
 
-    public ApiResponse<Payment> processStripePayment(Long userId, String serviceType, Long serviceId,
+    /**
+     * Payment VISA đã lưu PROCESSING cùng dữ liệu thẻ, chờ gửi lên Stripe sau khi transaction đặt lịch commit.
+     * Không lưu thẻ vào DB, toString không in dữ liệu thẻ.
+     */
+    public record StripeCharge(Payment payment, STITest stiTest, String cardNumber, String expMonth,
+            String expYear, String cvc, String cardHolderName) {
+
+        @Override
+        public String toString() {
+            return "StripeCharge[paymentId=" + (payment != null ? payment.getPaymentId() : null) + "]";
+        }
+    }
+
+    // Phần ghi DB, chạy trong transaction đặt lịch: chưa gọi Stripe
+    public ApiResponse<StripeCharge> prepareStripePayment(Long userId, String serviceType, Long serviceId,
             BigDecimal amount, String description,
             String cardNumber, String expMonth, String expYear,
             String cvc, String cardHolderName) {
@@ -104,43 +145,101 @@ public class PaymentService {
             // Create temporary STITest object for Stripe processing
             STITest tempSTITest = createTempSTITestForPayment(processingPayment, serviceType, serviceId);
 
-            // Process with Stripe
-            ApiResponse<Map<String, String>> stripeResponse = stripeService.processPaymentForSTITest(
-                    tempSTITest, cardNumber, expMonth, expYear, cvc, cardHolderName);
-
-            if (stripeResponse.isSuccess()) {
-                // Payment successful
-                processingPayment.setPaymentStatus(PaymentStatus.COMPLETED);
-                Map<String, String> stripeData = stripeResponse.getData();
-                if (stripeData != null) {
-                    processingPayment.setStripePaymentIntentId(stripeData.get("paymentIntentId"));
-                    processingPayment.setTransactionId(stripeData.get("paymentIntentId"));
-                    processingPayment.setStripeReceiptUrl(stripeData.get("receiptUrl"));
-                }
-                processingPayment.setPaidAt(LocalDateTime.now());
+            log.info("Stripe payment prepared - Payment ID: {}", processingPayment.getPaymentId());
+            return ApiResponse.success("Payment prepared",
+                    new StripeCharge(processingPayment, tempSTITest, cardNumber, expMonth, expYear, cvc,
+                            cardHolderName));
 
-                Payment completedPayment = paymentRepository.save(processingPayment);
-                log.info("Stripe payment completed - Payment ID: {}, Stripe ID: {}",
-                        completedPayment.getPaymentId(), stripeResponse.getData());
+        } catch (Exception e) {
+            log.error("Error processing Stripe payment: {}", e.getMessage(), e);
+            return ApiResponse.error("Failed to process payment: " + e.getMessage());
+        }
+    }
 
-                return ApiResponse.success("Payment processed successfully", completedPayment);
+    /**
+     * Tạo PaymentIntent cho payment đã commit. Gọi ngoài transaction đặt lịch để không giữ kết nối DB trong lúc
+     * chờ Stripe; chỉ bước xác nhận cuối (COMPLETED/FAILED, receipt) đến sau qua webhook.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ApiResponse<Payment> submitStripePayment(StripeCharge charge) {
+        Payment payment = charge.payment();
+        Long paymentId = payment.getPaymentId();
 
-            } else {
-                // Payment failed
-                processingPayment.setPaymentStatus(PaymentStatus.FAILED);
-                processingPayment.setNotes("Stripe error: " + stripeResponse.getMessage());
-                Payment failedPayment = paymentRepository.save(processingPayment);
+        ApiResponse<Map<String, String>> stripeResponse;
+        try {
+            stripeResponse = stripeService.processPaymentForSTITest(charge.stiTest(), paymentId,
+                    charge.cardNumber(), charge.expMonth(), charge.expYear(), charge.cvc(), charge.cardHolderName());
+        } catch (Exception e) {
+            log.error("Stripe call failed for payment {}: {}", paymentId, e.getMessage(), e);
+            stripeResponse = ApiResponse.error("Payment processing error: " + e.getMessage());
+        }
 
-                log.warn("Stripe payment failed - Payment ID: {}, Error: {}",
-                        failedPayment.getPaymentId(), stripeResponse.getMessage());
+        LocalDateTime now = LocalDateTime.now();
+        if (stripeResponse.isSuccess() && stripeResponse.getData() != null) {
+            String intentId = stripeResponse.getData().get("paymentIntentId");
+            try {
+                paymentRepository.attachStripePaymentIntent(paymentId, intentId, now);
+            } catch (Exception e) {
+                // Intent đã tạo: webhook vẫn tìm được payment qua metadata paymentId
+                log.error("Failed to attach PaymentIntent {} to payment {}: {}", intentId, paymentId,
+                        e.getMessage(), e);
+            }
+            payment.setStripePaymentIntentId(intentId);
+            payment.setTransactionId(intentId);
+
+            log.info("Stripe payment submitted - Payment ID: {}, PaymentIntent: {}, awaiting confirmation",
+                    paymentId, intentId);
+            return ApiResponse.success("Payment is being processed", payment);
+        }
 
-                // Trả về payment record thay vì chỉ error message để tránh tạo duplicate
-                return new ApiResponse<>(false, "Payment failed: " + stripeResponse.getMessage(), failedPayment);
-            }
+        // Lỗi trước khi Stripe tạo được intent (thẻ bị từ chối, lỗi mạng...) thì không có webhook nào gửi về
+        log.warn("Stripe payment failed - Payment ID: {}, Error: {}", paymentId, stripeResponse.getMessage());
+        String notes = "Stripe error: " + stripeResponse.getMessage();
+        try {
+            paymentRepository.markStripePaymentFailed(paymentId, notes, now);
+        } catch (Exception e) {
+            log.error("Failed to record Stripe failure for payment {}: {}", paymentId, e.getMessage(), e);
+        }
+        payment.setPaymentStatus(PaymentStatus.FAILED);
+        payment.setNotes(notes);
+        return new ApiResponse<>(false, stripeResponse.getMessage(), payment);
+    }
 
+    // Payment VISA còn PROCESSING mà chưa có intent sau stuck-minutes: request đã chết giữa commit và lời gọi Stripe
+    public boolean isStuckStripePayment(Payment payment) {
+        return payment.getPaymentMethod() == PaymentMethod.VISA
+                && payment.getPaymentStatus() == PaymentStatus.PROCESSING
+                && payment.getStripePaymentIntentId() == null
+                && payment.getUpdatedAt() != null
+                && payment.getUpdatedAt().isBefore(LocalDateTime.now().minusMinutes(stripeStuckMinutes));
+    }
+
+    @Scheduled(fixedDelayString = "${stripe.payment.stuck-sweep-interval-ms:60000}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void failStuckStripePayments() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            int failed = paymentRepository.failStuckStripePayments(now.minusMinutes(stripeStuckMinutes),
+                    "Payment was not submitted to Stripe, please retry", now);
+            if (failed > 0) {
+                log.warn("Marked {} stuck Stripe payments as failed", failed);
+                meterRegistry.counter("stripe.payment.stuck").increment(failed);
+            }
         } catch (Exception e) {
-            log.error("Error processing Stripe payment: {}", e.getMessage(), e);
-            return ApiResponse.error("Failed to process payment: " + e.getMessage());
+            log.error("Error failing stuck Stripe payments: {}", e.getMessage(), e);
+        }
+    }
+
+    private void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
         }
     }
 
@@ -191,6 +290,7 @@ public class PaymentService {
             payment.setQrCodeUrl(qrCodeUrl);
 
             Payment savedPayment = paymentRepository.save(payment);
+            runAfterCommit(() -> qrStatusHub.update(savedPayment));
             log.info(" QR payment generated - Payment ID: {}, QR Reference: {}, Test ID: {}, QR URL: {}",
                     savedPayment.getPaymentId(), qrReference, serviceId, qrCodeUrl);
 
@@ -238,6 +338,7 @@ public class PaymentService {
                     }
                 }
             } // Generate new QR reference với timestamp mới
+            String oldQrReference = payment.getQrPaymentReference();
             String newQrReference = generateQRReference(
                     payment.getServiceType(),
                     payment.getServiceId(),
@@ -256,6 +357,12 @@ public class PaymentService {
             payment.setQrCodeUrl(newQrCodeUrl);
 
             Payment savedPayment = paymentRepository.save(payment);
+            runAfterCommit(() -> {
+                if (oldQrReference != null) {
+                    qrStatusHub.forget(oldQrReference);
+                }
+                qrStatusHub.update(savedPayment);
+            });
 
             log.info("QR Code regenerated for payment ID: {}, new reference: {}",
                     paymentId, newQrReference);
@@ -294,7 +401,8 @@ public class PaymentService {
             // Check if expired
             if (payment.isExpired()) {
                 payment.setPaymentStatus(PaymentStatus.EXPIRED);
-                paymentRepository.save(payment);
+                Payment expiredPayment = paymentRepository.save(payment);
+                runAfterCommit(() -> qrStatusHub.update(expiredPayment));
                 return ApiResponse.error("QR payment has expired");
             }
 
@@ -318,6 +426,7 @@ public class PaymentService {
                             " - Time: " + transaction.getTransactionDate());
 
                     Payment confirmedPayment = paymentRepository.save(payment);
+                    runAfterCommit(() -> qrStatusHub.update(confirmedPayment));
 
                     log.info(" QR payment auto-confirmed - Payment ID: {}, MB Bank TX: {}, Amount: {}",
                             confirmedPayment.getPaymentId(), transaction.getTransactionId(), transaction.getAmount());
@@ -339,39 +448,6 @@ public class PaymentService {
         }
     }
 
-    @Scheduled(fixedRate = 120000) // Every 2 minutes
-    public void autoCheckPendingQRPayments() {
-        try {
-            // Get all PENDING QR payments that are not expired
-            List<Payment> pendingQRPayments = paymentRepository
-                    .findByPaymentMethodAndPaymentStatusAndExpiresAtAfter(
-                            PaymentMethod.QR_CODE, PaymentStatus.PENDING, LocalDateTime.now());
-
-            log.debug("🔄 Checking {} pending QR payments via MB Bank API", pendingQRPayments.size());
-
-            int confirmedCount = 0;
-            for (Payment payment : pendingQRPayments) {
-                try {
-                    ApiResponse<Payment> result = autoCheckQRPayment(payment.getQrPaymentReference());
-                    if (result.isSuccess() && result.getData().getPaymentStatus() == PaymentStatus.COMPLETED) {
-                        confirmedCount++;
-                        log.info(" Payment auto-confirmed for user {} - Amount: {}",
-                                payment.getUser().getId(), payment.getAmount()); // Sửa: lấy id từ đối tượng user
-                    }
-                } catch (Exception e) {
-                    log.error("Error checking individual payment {}: {}", payment.getPaymentId(), e.getMessage());
-                }
-            }
-
-            if (confirmedCount > 0) {
-                log.info("🎉 Auto-confirmed {} QR payments via MB Bank", confirmedCount);
-            }
-
-        } catch (Exception e) {
-            log.error("Error in scheduled QR payment check: {}", e.getMessage(), e);
-        }
-    }
-
     public ApiResponse<Payment> manualConfirmQRPayment(String qrReference, String transactionId, String notes) {
         try {
             Optional<Payment> paymentOpt = paymentRepository.findByQrPaymentReference(qrReference);
@@ -398,6 +474,7 @@ public class PaymentService {
                     "Manual confirmation - TX: " + transactionId + " - Notes: " + notes);
 
             Payment confirmedPayment = paymentRepository.save(payment);
+            runAfterCommit(() -> qrStatusHub.update(confirmedPayment));
 
             log.info(" QR payment manually confirmed - Payment ID: {}, TX: {}",
                     confirmedPayment.getPaymentId(), transactionId);
@@ -528,39 +605,48 @@ public class PaymentService {
                 serviceId, userId, timestamp, randomSuffix);
     }
 
+    // Không bọc trong transaction của class: mỗi lô UPDATE tự commit để khóa được nhả sớm
     @Scheduled(fixedRate = 300000) // Every 5 minutes
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void cleanupExpiredPayments() {
+        long startedAt = System.nanoTime();
+        int expired = 0;
         try {
             LocalDateTime now = LocalDateTime.now();
-            List<Payment> expiredPayments = paymentRepository
-                    .findByPaymentStatusAndExpiresAtBefore(PaymentStatus.PENDING, now);
-
-            for (Payment payment : expiredPayments) {
-                if (payment.getPaymentMethod() == PaymentMethod.QR_CODE) {
-                    payment.setPaymentStatus(PaymentStatus.EXPIRED);
-                    paymentRepository.save(payment);
-                }
-            }
+            int batch;
+            do {
+                batch = paymentRepository.expirePendingBatch(PaymentMethod.QR_CODE.name(), now, expiryBatchSize);
+                expired += batch;
+            } while (batch >= expiryBatchSize);
 
-            if (!expiredPayments.isEmpty()) {
-                log.info("Marked {} QR payments as expired", expiredPayments.size());
+            if (expired > 0) {
+                log.info("Marked {} QR payments as expired", expired);
             }
 
         } catch (Exception e) {
             log.error("Error cleaning up expired payments: {}", e.getMessage(), e);
+        } finally {
+            meterRegistry.counter("payment.qr.expired").increment(expired);
+            Timer.builder("payment.qr.expiry.duration").register(meterRegistry)
+                    .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
         }
     }
 
-    public ApiResponse<List<Payment>> getPaymentsByUser(String username) {
+    public ApiResponse<PaymentPageResponse> getPaymentsByUser(Long userId, String cursor, Integer limit) {
         try {
-            Long userId = userService.getUserIdFromUsername(username);
-            List<Payment> payments = paymentRepository.findByUser_IdOrderByCreatedAtDesc(userId);
+            PaymentCursor position = cursor != null ? PaymentCursor.decode(cursor)
+                    : PaymentCursor.startingAt(LocalDateTime.now());
+            int size = pageSize(limit);
+            List<PaymentTransactionResponse> rows = paymentRepository.findUserPaymentPage(userId,
+                    position.createdAt(), position.paymentId(), PageRequest.of(0, size + 1));
 
-            log.info("Retrieved {} payments for user: {}", payments.size(), username);
-            return ApiResponse.success("User payments retrieved", payments);
+            log.info("Retrieved {} payments for user: {}", Math.min(rows.size(), size), userId);
+            return ApiResponse.success("User payments retrieved", toPage(rows, size));
 
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error("Invalid cursor");
         } catch (Exception e) {
-            log.error("Error getting payments for user {}: {}", username, e.getMessage());
+            log.error("Error getting payments for user {}: {}", userId, e.getMessage());
             return ApiResponse.error("Failed to get payments: " + e.getMessage());
         }
     }
@@ -622,22 +708,43 @@ public class PaymentService {
         }
     }
 
-    public ApiResponse<List<Payment>> getAllPayments(int page, int size) {
+    public ApiResponse<PaymentPageResponse> getAllPayments(String cursor, Integer limit) {
         try {
-            Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
-            Page<Payment> paymentPage = paymentRepository.findAll(pageable);
-
-            log.info("Admin retrieved {} payments (page {}/{})",
-                    paymentPage.getContent().size(), page + 1, paymentPage.getTotalPages());
+            PaymentCursor position = cursor != null ? PaymentCursor.decode(cursor)
+                    : PaymentCursor.startingAt(LocalDateTime.now());
+            int size = pageSize(limit);
+            List<PaymentTransactionResponse> rows = paymentRepository.findPaymentPage(
+                    position.createdAt(), position.paymentId(), PageRequest.of(0, size + 1));
 
-            return ApiResponse.success("All payments retrieved", paymentPage.getContent());
+            log.info("Admin retrieved {} payments", Math.min(rows.size(), size));
+            return ApiResponse.success("All payments retrieved", toPage(rows, size));
 
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error("Invalid cursor");
         } catch (Exception e) {
             log.error("Error getting all payments: {}", e.getMessage());
             return ApiResponse.error("Failed to get payments: " + e.getMessage());
         }
     }
 
+    private int pageSize(Integer limit) {
+        if (limit == null) {
+            return defaultPageSize;
+        }
+        return Math.max(1, Math.min(limit, maxPageSize));
+    }
+
+    // Lấy dư một dòng để biết còn trang sau mà không cần COUNT
+    private PaymentPageResponse toPage(List<PaymentTransactionResponse> rows, int size) {
+        if (rows.size() <= size) {
+            return new PaymentPageResponse(rows, null);
+        }
+        List<PaymentTransactionResponse> items = rows.subList(0, size);
+        PaymentTransactionResponse last = items.get(size - 1);
+        return new PaymentPageResponse(items,
+                new PaymentCursor(last.getCreatedAt(), last.getPaymentId()).encode());
+    }
+
     public ApiResponse<Payment> getPaymentByIdAdmin(Long paymentId) {
         try {
             Optional<Payment> paymentOpt = paymentRepository.findById(paymentId);
@@ -696,7 +803,8 @@ public class PaymentService {
                 payment.setNotes(currentNotes + " | " + notes);
             }
 
-            paymentRepository.save(payment);
+            Payment confirmedPayment = paymentRepository.save(payment);
+            runAfterCommit(() -> qrStatusHub.update(confirmedPayment));
 
             log.info(" QR payment simulation successful - Payment ID: {}, Transaction ID: {}",
                     payment.getPaymentId(), transactionId);
@@ -710,39 +818,32 @@ public class PaymentService {
         }
     }
 
-    public ApiResponse<String> getQRPaymentStatus(String qrReference) {
+    /**
+     * Trạng thái QR payment cho client đang chờ. Đọc từ QRPaymentStatusHub; chỉ truy vấn DB
+     * khi reference chưa được node này theo dõi hoặc trạng thái PENDING đã cũ (có thể đã xác nhận ở node khác). Việc đối chiếu với MB Bank do QRPaymentReconciliationService đảm nhiệm.
+     */
+    public ApiResponse<QRPaymentStatusResponse> getQRPaymentStatus(String qrReference, String username) {
         try {
-            Optional<Payment> paymentOpt = paymentRepository.findByQrPaymentReference(qrReference);
-            if (paymentOpt.isEmpty()) {
-                return ApiResponse.error("QR payment not found: " + qrReference);
-            }
-
-            Payment payment = paymentOpt.get();
-
-            // Auto-check trước khi return status
-            if (payment.getPaymentStatus() == PaymentStatus.PENDING && !payment.isExpired()) {
-                autoCheckQRPayment(qrReference);
-                // Refresh payment data
-                payment = paymentRepository.findByQrPaymentReference(qrReference).orElse(payment);
+            Optional<QRPaymentStatusResponse> cached = qrStatusHub.getStatus(qrReference, username);
+            if (cached.isPresent()) {
+                return ApiResponse.success("Payment status retrieved", cached.get());
             }
-
-            String statusInfo = String.format(
-                    "Payment ID: %d, Status: %s, Amount: %.0f VND, Created: %s",
-                    payment.getPaymentId(),
-                    payment.getPaymentStatus(),
-                    payment.getAmount(),
-                    payment.getCreatedAt());
-
-            if (payment.getPaymentStatus() == PaymentStatus.COMPLETED) {
-                statusInfo += String.format(", Paid At: %s, Transaction: %s",
-                        payment.getPaidAt(), payment.getTransactionId());
+            if (qrStatusHub.isTracked(qrReference)) {
+                return ApiResponse.error("QR payment not found: " + qrReference);
             }
 
-            if (payment.isExpired()) {
-                statusInfo += ", Status: EXPIRED";
+            Optional<Payment> paymentOpt = paymentRepository.findByQrPaymentReference(qrReference);
+            if (paymentOpt.isEmpty() || !isOwnedBy(paymentOpt.get(), username)) {
+                return ApiResponse.error("QR payment not found: " + qrReference);
             }
 
-            return ApiResponse.success("Payment status retrieved", statusInfo);
+            Payment payment = paymentOpt.get();
+            qrStatusHub.update(payment);
+            return ApiResponse.success("Payment status retrieved", qrStatusHub.getStatus(qrReference, username)
+                    .orElseGet(() -> new QRPaymentStatusResponse(qrReference, payment.getPaymentId(),
+                            payment.isExpired() ? PaymentStatus.EXPIRED : payment.getPaymentStatus(),
+                            payment.getAmount(), payment.getExpiresAt(), payment.getPaidAt(),
+                            payment.getTransactionId())));
 
         } catch (Exception e) {
             log.error(" Failed to get QR payment status: {}", e.getMessage(), e);
@@ -750,9 +851,31 @@ public class PaymentService {
         }
     }
 
-    public List<Payment> getPaymentsByStatusAndDate(PaymentStatus status, LocalDateTime fromDate,
-            LocalDateTime toDate) {
-        return paymentRepository.findByPaymentStatusAndCreatedAtBetween(status, fromDate, toDate);
+    /**
+     * Mở kết nối SSE nhận trạng thái QR payment; empty nếu không tìm thấy hoặc không thuộc user.
+     */
+    public Optional<SseEmitter> subscribeQRPaymentStatus(String qrReference, String username) {
+        if (!qrStatusHub.isTracked(qrReference)) {
+            paymentRepository.findByQrPaymentReference(qrReference)
+                    .filter(payment -> isOwnedBy(payment, username))
+                    .ifPresent(qrStatusHub::update);
+        }
+        return qrStatusHub.subscribe(qrReference, username);
+    }
+
+    private boolean isOwnedBy(Payment payment, String username) {
+        return payment.getUser() != null && payment.getUser().getUsername() != null
+                && payment.getUser().getUsername().equals(username);
+    }
+
+    /**
+     * Một trang giao dịch theo keyset (createdAt, paymentId) giảm dần, sau cursor cho trước
+     */
+    @Transactional(readOnly = true)
+    public List<PaymentTransactionResponse> getTransactionPage(PaymentStatus status, LocalDateTime fromDate,
+            PaymentCursor cursor, int size) {
+        return paymentRepository.findTransactionPage(status, fromDate, cursor.createdAt(), cursor.paymentId(),
+                PageRequest.of(0, size));
     }
 
     public UserDtls getUserById(Long userId) {
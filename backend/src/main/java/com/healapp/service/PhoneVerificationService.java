@@ -1,9 +1,8 @@
 package com.healapp.service;
 
-import java.time.LocalDateTime;
-import java.util.Map;
+import java.time.Duration;
+import java.util.Optional;
 import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,19 +14,18 @@ public class PhoneVerificationService {
     @Autowired
     private SmsService smsService;
 
+    @Autowired
+    private RateLimiterService rateLimiterService;
+
+    @Autowired
+    private EphemeralCodeStore ephemeralCodeStore;
+
     @Value("${sms.otp.length:6}")
     private int otpLength;
 
     @Value("${sms.otp.expiry.minutes:5}")
     private int otpExpiryMinutes;
 
-    @Value("${sms.otp.rate.limit.minutes:1}")
-    private int rateLimitMinutes;
-
-    // In-memory storage cho OTP (production nên dùng Redis)
-    private final Map<String, OtpData> otpStorage = new ConcurrentHashMap<>();
-    private final Map<String, LocalDateTime> rateLimitStorage = new ConcurrentHashMap<>();
-
     /**
      * Tạo và gửi mã OTP tới số điện thoại
      */
@@ -41,9 +39,11 @@ public class PhoneVerificationService {
                 throw new IllegalArgumentException("Invalid phone number format");
             }
 
-            // Kiểm tra rate limit
-            if (isRateLimited(formattedPhone)) {
-                throw new RateLimitException("Please wait " + rateLimitMinutes + " minute(s) before requesting new code");
+            // Kiểm tra rate limit (rate-limit.policies.otp-phone), tính cả khi gửi SMS thất bại
+            Optional<Duration> wait = rateLimiterService.tryAcquire(RateLimiterService.OTP_PHONE, formattedPhone);
+            if (wait.isPresent()) {
+                throw new RateLimitException("Please wait " + RateLimiterService.retryAfterSeconds(wait.get())
+                        + " seconds before requesting new code");
             }
 
             // Tạo mã OTP
@@ -55,9 +55,8 @@ public class PhoneVerificationService {
             boolean smsSent = smsService.sendOtpSms(formattedPhone, otpCode);
             
             if (smsSent) {
-                // Lưu OTP và cập nhật rate limit
+                // Lưu OTP
                 storeOtp(formattedPhone, otpCode);
-                updateRateLimit(formattedPhone);
                 System.out.println("SMS verification code sent successfully to: " + formattedPhone);
                 return true;
             } else {
@@ -77,19 +76,12 @@ public class PhoneVerificationService {
     public boolean verifyPhoneCode(String phoneNumber, String otpCode) {
         String formattedPhone = smsService.formatVietnamesePhoneNumber(phoneNumber);
         
-        OtpData otpData = otpStorage.get(formattedPhone);
-        
-        if (otpData == null) {
-            return false; // Không tìm thấy OTP
-        }
-
-        if (isExpired(otpData.getCreatedAt())) {
-            otpStorage.remove(formattedPhone); // Xóa OTP hết hạn
-            return false;
-        }
+        // Empty nếu không có OTP hoặc OTP đã hết hạn
+        Optional<String> storedCode = ephemeralCodeStore.get(EphemeralCodeStore.PHONE_OTP, formattedPhone);
 
-        if (otpData.getCode().equals(otpCode)) {
-            otpStorage.remove(formattedPhone); // Xóa OTP sau khi xác thực thành công
+        if (storedCode.isPresent() && storedCode.get().equals(otpCode)) {
+            // Xóa OTP sau khi xác thực thành công
+            ephemeralCodeStore.remove(EphemeralCodeStore.PHONE_OTP, formattedPhone);
             return true;
         }
 
@@ -111,38 +103,11 @@ public class PhoneVerificationService {
     }
 
     /**
-     * Lưu OTP vào memory
+     * Lưu OTP, tự hết hạn sau otpExpiryMinutes
      */
     private void storeOtp(String phoneNumber, String otpCode) {
-        OtpData otpData = new OtpData(otpCode, LocalDateTime.now());
-        otpStorage.put(phoneNumber, otpData);
-    }
-
-    /**
-     * Kiểm tra rate limit
-     */
-    private boolean isRateLimited(String phoneNumber) {
-        LocalDateTime lastRequest = rateLimitStorage.get(phoneNumber);
-        
-        if (lastRequest == null) {
-            return false;
-        }
-
-        return LocalDateTime.now().isBefore(lastRequest.plusMinutes(rateLimitMinutes));
-    }
-
-    /**
-     * Cập nhật rate limit
-     */
-    private void updateRateLimit(String phoneNumber) {
-        rateLimitStorage.put(phoneNumber, LocalDateTime.now());
-    }
-
-    /**
-     * Kiểm tra OTP đã hết hạn chưa
-     */
-    private boolean isExpired(LocalDateTime createdAt) {
-        return LocalDateTime.now().isAfter(createdAt.plusMinutes(otpExpiryMinutes));
+        ephemeralCodeStore.put(EphemeralCodeStore.PHONE_OTP, phoneNumber, otpCode,
+                Duration.ofMinutes(otpExpiryMinutes));
     }
 
     /**
@@ -150,29 +115,8 @@ public class PhoneVerificationService {
      */
     public void clearPhoneVerification(String phoneNumber) {
         String formattedPhone = smsService.formatVietnamesePhoneNumber(phoneNumber);
-        otpStorage.remove(formattedPhone);
-        rateLimitStorage.remove(formattedPhone);
-    }
-
-    /**
-     * Inner class để lưu trữ OTP data
-     */
-    private static class OtpData {
-        private final String code;
-        private final LocalDateTime createdAt;
-
-        public OtpData(String code, LocalDateTime createdAt) {
-            this.code = code;
-            this.createdAt = createdAt;
-        }
-
-        public String getCode() {
-            return code;
-        }
-
-        public LocalDateTime getCreatedAt() {
-            return createdAt;
-        }
+        ephemeralCodeStore.remove(EphemeralCodeStore.PHONE_OTP, formattedPhone);
+        rateLimiterService.reset(RateLimiterService.OTP_PHONE, formattedPhone);
     }
 
     /**
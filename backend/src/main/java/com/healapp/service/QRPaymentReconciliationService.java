@@ -0,0 +1,216 @@
+package com.healapp.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.healapp.dto.ApiResponse;
+import com.healapp.dto.BankTransactionResponse;
+import com.healapp.model.Payment;
+import com.healapp.model.PaymentMethod;
+import com.healapp.model.PaymentStatus;
+import com.healapp.repository.PaymentRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Đối soát hàng loạt các QR payment đang chờ: mỗi lượt lấy lịch sử giao dịch MB Bank kể từ
+ * watermark (theo trang, thường chỉ một lần gọi), đánh chỉ mục theo mã tham chiếu rồi xác nhận
+ * mọi payment khớp trong một transaction.
+ */
+@Slf4j
+@Service
+public class QRPaymentReconciliationService {
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private BankingService bankingService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private QRPaymentStatusHub qrStatusHub;
+
+    @Value("${qr.payment.auto.check.enabled:true}")
+    private boolean autoCheckEnabled = true;
+
+    // Lùi watermark một khoảng để không bỏ sót giao dịch ngân hàng ghi sổ trễ
+    @Value("${qr.payment.reconcile.overlap-minutes:10}")
+    private long overlapMinutes = 10;
+
+    @Value("${qr.payment.reconcile.history-limit:500}")
+    private int historyLimit = 500;
+
+    // Chặn số trang mỗi lượt; hết trang mà vẫn đầy thì giữ watermark, lượt sau đọc lại cùng khoảng
+    @Value("${qr.payment.reconcile.max-pages:20}")
+    private int maxPages = 20;
+
+    private volatile LocalDateTime watermark;
+
+    @Scheduled(fixedDelayString = "#{${qr.payment.check.interval.minutes:2} * 60000}")
+    public void reconcilePendingQRPayments() {
+        if (!autoCheckEnabled) {
+            return;
+        }
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.error("Error in scheduled QR payment reconciliation: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Một lượt đối soát; trả về số payment được xác nhận.
+     */
+    public int reconcile() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Payment> pending = paymentRepository.findByPaymentMethodAndPaymentStatusAndExpiresAtAfter(
+                PaymentMethod.QR_CODE, PaymentStatus.PENDING, now);
+        if (pending.isEmpty()) {
+            // Không có gì cần đối soát, không gọi ngân hàng
+            return 0;
+        }
+
+        LocalDateTime fromDate = pending.stream()
+                .map(Payment::getCreatedAt)
+                .filter(createdAt -> createdAt != null)
+                .min(LocalDateTime::compareTo)
+                .orElse(now.minusDays(1));
+        LocalDateTime current = watermark;
+        if (current != null && current.minusMinutes(overlapMinutes).isAfter(fromDate)) {
+            fromDate = current.minusMinutes(overlapMinutes);
+        }
+
+        List<BankTransactionResponse> transactions = new ArrayList<>();
+        boolean complete = false;
+        for (int page = 0; page < maxPages; page++) {
+            ApiResponse<BankTransactionResponse[]> history = bankingService.getTransactionHistory(fromDate, now,
+                    historyLimit, page * historyLimit);
+            if (!history.isSuccess()) {
+                if (page > 0) {
+                    // Vẫn đối soát phần đã nhận, nhưng không tiến watermark
+                    log.warn("QR reconciliation stopped at page {}, bank history unavailable: {}", page,
+                            history.getMessage());
+                    break;
+                }
+                if (!bankingService.isSimulationEnabled()) {
+                    // Giữ nguyên watermark, lượt sau kéo lại cùng khoảng
+                    log.warn("Skipping QR reconciliation, bank history unavailable: {}", history.getMessage());
+                    return 0;
+                }
+                // banking.simulation.enabled: giả lập từng mã như checkTransaction khi API lỗi (chỉ dev/test)
+                log.info("🎭 Simulation ENABLED - Simulating {} pending QR payments", pending.size());
+                for (Payment payment : pending) {
+                    if (payment.getQrPaymentReference() == null) {
+                        continue;
+                    }
+                    ApiResponse<BankTransactionResponse> simulated = bankingService.simulateTransactionCheck(
+                            payment.getQrPaymentReference(), payment.getAmount());
+                    if (simulated.isSuccess() && simulated.getData() != null) {
+                        transactions.add(simulated.getData());
+                    }
+                }
+                break;
+            }
+            BankTransactionResponse[] rows = history.getData();
+            transactions.addAll(Arrays.asList(rows));
+            if (rows.length < historyLimit) {
+                complete = true;
+                break;
+            }
+        }
+
+        // Ngân hàng không đảm bảo thứ tự: sắp theo thời gian giao dịch để mỗi mã lấy giao dịch sớm nhất
+        List<BankTransactionResponse> ordered = transactions.stream()
+                .sorted(Comparator.comparing(BankTransactionResponse::getTransactionDate,
+                        Comparator.nullsFirst(Comparator.naturalOrder())))
+                .toList();
+        Map<String, BankTransactionResponse> byReference = new HashMap<>(transactions.size() * 2);
+        for (BankTransactionResponse transaction : ordered) {
+            // Dòng lịch sử không có cờ transactionFound, chỉ lọc theo trạng thái SUCCESS và số tiền dương
+            if (!transaction.isSuccessfulCredit() || transaction.getReference() == null) {
+                continue;
+            }
+            byReference.putIfAbsent(normalizeReference(transaction.getReference()), transaction);
+        }
+
+        Map<Long, BankTransactionResponse> matched = new HashMap<>();
+        for (Payment payment : pending) {
+            if (payment.getQrPaymentReference() == null) {
+                continue;
+            }
+            BankTransactionResponse transaction = byReference.get(normalizeReference(payment.getQrPaymentReference()));
+            if (transaction == null) {
+                continue;
+            }
+            if (transaction.amountMatches(payment.getAmount())) {
+                matched.put(payment.getPaymentId(), transaction);
+            } else {
+                log.warn(" Transaction found but details don't match - QR: {}, Expected: {}, Found: {}",
+                        payment.getQrPaymentReference(), payment.getAmount(), transaction.getAmount());
+            }
+        }
+
+        List<Payment> confirmedPayments = matched.isEmpty() ? List.of() : confirmMatched(matched);
+        int confirmed = confirmedPayments.size();
+        // Transaction đã commit: báo cho client đang chờ
+        confirmedPayments.forEach(qrStatusHub::update);
+
+        // Chỉ tiến watermark khi đã đọc hết khoảng (trang cuối ngắn hơn limit). Kết quả bị cắt không cho biết
+        // dòng nào còn thiếu (ngân hàng không đảm bảo thứ tự) nên giữ watermark cũ, lượt sau đọc lại cùng khoảng
+        if (complete) {
+            watermark = now;
+        }
+
+        log.debug("🔄 QR reconciliation: {} pending, {} bank transactions, {} confirmed",
+                pending.size(), transactions.size(), confirmed);
+        if (confirmed > 0) {
+            log.info("🎉 Auto-confirmed {} QR payments via MB Bank", confirmed);
+        }
+        return confirmed;
+    }
+
+    // Đọc lại trong transaction để bỏ qua payment đã được xử lý bởi luồng khác (xác nhận tay, hết hạn)
+    private List<Payment> confirmMatched(Map<Long, BankTransactionResponse> matched) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<Payment> confirmed = transactionTemplate.execute(status -> {
+            LocalDateTime paidAt = LocalDateTime.now();
+            List<Payment> toConfirm = new ArrayList<>();
+            for (Payment payment : paymentRepository.findAllById(matched.keySet())) {
+                if (payment.getPaymentStatus() != PaymentStatus.PENDING) {
+                    continue;
+                }
+                BankTransactionResponse transaction = matched.get(payment.getPaymentId());
+                payment.setPaymentStatus(PaymentStatus.COMPLETED);
+                payment.setPaidAt(paidAt);
+                payment.setTransactionId(transaction.getTransactionId());
+                payment.setNotes((payment.getNotes() != null ? payment.getNotes() + "; " : "") +
+                        "Auto-confirmed via MB Bank API - TX: " + transaction.getTransactionId() +
+                        " - Time: " + transaction.getTransactionDate());
+                toConfirm.add(payment);
+            }
+            paymentRepository.saveAll(toConfirm);
+            return toConfirm;
+        });
+        return confirmed != null ? confirmed : List.of();
+    }
+
+    private String normalizeReference(String reference) {
+        return reference.trim().toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,264 @@
+package com.healapp.service;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.healapp.dto.QRPaymentStatusResponse;
+import com.healapp.model.Payment;
+import com.healapp.model.PaymentMethod;
+import com.healapp.model.PaymentStatus;
+import com.healapp.repository.PaymentRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bảng trạng thái QR payment đang mở, giữ trong bộ nhớ của node.
+ * Được cập nhật sau commit bởi các luồng xác nhận (đối soát MB Bank, xác nhận tay, giả lập)
+ * và tự đánh dấu hết hạn theo expiresAt; client chờ thanh toán đọc từ đây hoặc nhận push qua SSE
+ * thay vì truy vấn DB mỗi lần poll. Mỗi node có bảng riêng: node không có reference thì đọc DB một lần.
+ * Payment có thể được xác nhận ở node khác, nên trạng thái PENDING chỉ tin trong pending-refresh-seconds,
+ * và luôn đọc lại DB trước khi đánh dấu EXPIRED.
+ */
+@Slf4j
+@Service
+public class QRPaymentStatusHub {
+
+    public static final String STATUS_EVENT = "status";
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Value("${qr.payment.status-hub.max-entries:10000}")
+    private int maxEntries = 10000;
+
+    @Value("${qr.payment.status-hub.max-subscribers-per-reference:5}")
+    private int maxSubscribersPerReference = 5;
+
+    @Value("${qr.payment.status-hub.sse-timeout-ms:600000}")
+    private long sseTimeoutMs = 600000;
+
+    // Giữ trạng thái cuối thêm một lúc cho client poll trễ
+    @Value("${qr.payment.status-hub.final-retention-minutes:10}")
+    private long finalRetentionMinutes = 10;
+
+    @Value("${qr.payment.status-hub.pending-refresh-seconds:30}")
+    private long pendingRefreshSeconds = 30;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    // refreshAfter: PENDING quá thời điểm này thì đọc lại DB (null với trạng thái cuối)
+    private record Entry(String username, QRPaymentStatusResponse status, LocalDateTime retainUntil,
+            LocalDateTime refreshAfter) {
+
+        private boolean isStale(LocalDateTime now) {
+            return refreshAfter != null && !refreshAfter.isAfter(now);
+        }
+    }
+
+    /**
+     * Ghi nhận trạng thái mới nhất của payment; đẩy tới client đang chờ khi trạng thái đã chốt.
+     * Chỉ gọi sau khi transaction ghi payment đã commit.
+     */
+    public void update(Payment payment) {
+        if (payment.getPaymentMethod() != PaymentMethod.QR_CODE || payment.getQrPaymentReference() == null) {
+            return;
+        }
+        String reference = payment.getQrPaymentReference();
+        if (!entries.containsKey(reference) && entries.size() >= maxEntries) {
+            // Bảng đầy: reference này đọc thẳng từ DB
+            log.debug("QR status hub full ({} entries), not tracking {}", entries.size(), reference);
+            return;
+        }
+        String username = payment.getUser() != null ? payment.getUser().getUsername() : null;
+        publish(reference, username, toStatus(payment));
+    }
+
+    /**
+     * Reference cũ không còn dùng (đã tạo lại QR): đóng kết nối đang chờ để client chuyển sang mã mới.
+     */
+    public void forget(String reference) {
+        entries.remove(reference);
+        List<SseEmitter> emitters = subscribers.remove(reference);
+        if (emitters != null) {
+            emitters.forEach(SseEmitter::complete);
+        }
+    }
+
+    /**
+     * Trạng thái đang giữ; empty nếu không theo dõi, không thuộc user hoặc PENDING đã cũ (caller đọc DB).
+     */
+    public Optional<QRPaymentStatusResponse> getStatus(String reference, String username) {
+        Entry entry = entries.get(reference);
+        if (entry == null || !isOwner(entry, username) || entry.isStale(LocalDateTime.now())) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.status());
+    }
+
+    /**
+     * Reference đang được theo dõi với trạng thái còn tin được; false thì caller đọc DB rồi update.
+     */
+    public boolean isTracked(String reference) {
+        Entry entry = entries.get(reference);
+        return entry != null && !entry.isStale(LocalDateTime.now());
+    }
+
+    /**
+     * Mở kết nối SSE: gửi ngay trạng thái hiện tại, sau đó push khi payment hoàn tất hoặc hết hạn.
+     * Trả về empty nếu reference chưa được theo dõi hoặc không thuộc user, hoặc đã đủ số kết nối.
+     */
+    public Optional<SseEmitter> subscribe(String reference, String username) {
+        Entry entry = entries.get(reference);
+        if (entry == null || !isOwner(entry, username)) {
+            return Optional.empty();
+        }
+
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        if (isFinal(entry.status().getPaymentStatus())) {
+            if (send(emitter, entry.status())) {
+                emitter.complete();
+            }
+            return Optional.of(emitter);
+        }
+
+        List<SseEmitter> emitters = subscribers.computeIfAbsent(reference, k -> new CopyOnWriteArrayList<>());
+        if (emitters.size() >= maxSubscribersPerReference) {
+            return Optional.empty();
+        }
+        emitters.add(emitter);
+        emitter.onCompletion(() -> removeSubscriber(reference, emitter));
+        emitter.onTimeout(() -> {
+            removeSubscriber(reference, emitter);
+            emitter.complete();
+        });
+        emitter.onError(error -> removeSubscriber(reference, emitter));
+
+        // Đọc lại sau khi đăng ký để không lỡ thay đổi xảy ra giữa hai bước
+        Entry latest = entries.getOrDefault(reference, entry);
+        if (send(emitter, latest.status()) && isFinal(latest.status().getPaymentStatus())) {
+            removeSubscriber(reference, emitter);
+            emitter.complete();
+        }
+        return Optional.of(emitter);
+    }
+
+    /**
+     * Đọc lại DB cho các reference PENDING đã quá hạn (EXPIRED chỉ khi DB vẫn PENDING, khớp Payment.isExpired)
+     * hoặc đã cũ mà còn client SSE chờ, bỏ trạng thái cuối đã hết thời gian giữ
+     * và gửi heartbeat để phát hiện kết nối SSE đã đóng.
+     */
+    @Scheduled(fixedDelayString = "${qr.payment.status-hub.sweep-interval-ms:15000}")
+    public void sweep() {
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            Entry entry = item.getValue();
+            QRPaymentStatusResponse status = entry.status();
+            boolean overdue = status.getExpiresAt() != null && status.getExpiresAt().isBefore(now);
+            if (status.getPaymentStatus() == PaymentStatus.PENDING
+                    && (overdue || (entry.isStale(now) && subscribers.containsKey(item.getKey())))) {
+                refresh(item.getKey());
+            } else if (entry.retainUntil() != null && entry.retainUntil().isBefore(now)) {
+                entries.remove(item.getKey(), entry);
+            }
+        }
+
+        subscribers.forEach((reference, emitters) -> {
+            for (SseEmitter emitter : emitters) {
+                try {
+                    emitter.send(SseEmitter.event().comment("keepalive"));
+                } catch (IOException | IllegalStateException e) {
+                    removeSubscriber(reference, emitter);
+                }
+            }
+        });
+    }
+
+    // Payment có thể đã được xác nhận ở node khác; lỗi DB thì giữ nguyên, lượt sweep sau thử lại
+    private void refresh(String reference) {
+        try {
+            Optional<Payment> payment = paymentRepository.findByQrPaymentReference(reference);
+            if (payment.isPresent()) {
+                update(payment.get());
+            } else {
+                forget(reference);
+            }
+        } catch (Exception e) {
+            log.warn("Could not refresh QR status for {}: {}", reference, e.getMessage());
+        }
+    }
+
+    private void publish(String reference, String username, QRPaymentStatusResponse status) {
+        boolean isFinal = isFinal(status.getPaymentStatus());
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime retainUntil = isFinal ? now.plusMinutes(finalRetentionMinutes) : null;
+        LocalDateTime refreshAfter = null;
+        if (!isFinal) {
+            // PENDING tin tối đa pending-refresh-seconds và không quá expiresAt
+            refreshAfter = now.plusSeconds(pendingRefreshSeconds);
+            if (status.getExpiresAt() != null && status.getExpiresAt().isBefore(refreshAfter)) {
+                refreshAfter = status.getExpiresAt();
+            }
+        }
+        entries.put(reference, new Entry(username, status, retainUntil, refreshAfter));
+
+        if (!isFinal) {
+            return;
+        }
+        List<SseEmitter> emitters = subscribers.remove(reference);
+        if (emitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : emitters) {
+            if (send(emitter, status)) {
+                emitter.complete();
+            }
+        }
+        log.debug("Pushed QR status {} for {} to {} subscribers", status.getPaymentStatus(), reference,
+                emitters.size());
+    }
+
+    private boolean send(SseEmitter emitter, QRPaymentStatusResponse status) {
+        try {
+            emitter.send(SseEmitter.event().name(STATUS_EVENT).data(status, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // Client đã ngắt kết nối
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private void removeSubscriber(String reference, SseEmitter emitter) {
+        subscribers.computeIfPresent(reference, (k, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+
+    private boolean isOwner(Entry entry, String username) {
+        return entry.username() != null && entry.username().equals(username);
+    }
+
+    private boolean isFinal(PaymentStatus status) {
+        return status != PaymentStatus.PENDING && status != PaymentStatus.PROCESSING;
+    }
+
+    private QRPaymentStatusResponse toStatus(Payment payment) {
+        PaymentStatus status = payment.isExpired() ? PaymentStatus.EXPIRED : payment.getPaymentStatus();
+        return new QRPaymentStatusResponse(payment.getQrPaymentReference(), payment.getPaymentId(), status,
+                payment.getAmount(), payment.getExpiresAt(), payment.getPaidAt(), payment.getTransactionId());
+    }
+}
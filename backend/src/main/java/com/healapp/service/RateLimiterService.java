@@ -0,0 +1,266 @@
+package com.healapp.service;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rate limiter token bucket dùng chung cho OTP, đăng nhập và thanh toán (theo IP, user, email, số điện thoại).
+ * Mỗi bucket chỉ là một AtomicLong lưu "theoretical arrival time" (GCRA): tương đương token bucket dung lượng
+ * capacity, nạp lại capacity token mỗi period, cập nhật bằng CAS không cần lock.
+ * Bucket đã nạp đầy tương đương chưa từng tồn tại nên được xoá khi quét, bộ nhớ chỉ giữ các key đang bị giới hạn.
+ * Mỗi chính sách có vùng bucket và giới hạn số bucket riêng: quét nhiều key ở một chính sách không đẩy bucket
+ * của chính sách khác ra, và không bao giờ tắt giới hạn.
+ */
+@Slf4j
+@Service
+public class RateLimiterService {
+
+    public static final String LOGIN_IP = "login-ip";
+    public static final String LOGIN_ACCOUNT = "login-account";
+    public static final String OTP_IP = "otp-ip";
+    public static final String OTP_USER = "otp-user";
+    public static final String OTP_EMAIL = "otp-email";
+    public static final String OTP_PHONE = "otp-phone";
+    public static final String PAYMENT_IP = "payment-ip";
+    public static final String PAYMENT_USER = "payment-user";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled = true;
+
+    // Chặn tăng bộ nhớ khi bị quét nhiều key, tính riêng cho từng chính sách. Khi đầy: bỏ bucket đã nạp đầy,
+    // sau đó bỏ các bucket cũ nhất (tat nhỏ nhất, ít bị giới hạn nhất) xuống còn 90% ngưỡng
+    @Value("${rate-limit.max-buckets-per-policy:20000}")
+    private int maxBucketsPerPolicy = 20000;
+
+    // Chính sách nhạy cảm không bỏ bucket đang giới hạn khi đầy mà từ chối key mới cho tới khi có chỗ
+    @Value("${rate-limit.fail-closed-policies:login-account,otp-user,otp-email,otp-phone}")
+    private List<String> failClosedPolicies = List.of(LOGIN_ACCOUNT, OTP_USER, OTP_EMAIL, OTP_PHONE);
+
+    // Chính sách dạng "<capacity>/<period>", ví dụ 20/1m: tối đa 20 request dồn dập, nạp lại 20 mỗi phút
+    @Value("${rate-limit.policies.login-ip:20/1m}")
+    private String loginIpPolicy = "20/1m";
+
+    @Value("${rate-limit.policies.login-account:10/15m}")
+    private String loginAccountPolicy = "10/15m";
+
+    @Value("${rate-limit.policies.otp-ip:10/10m}")
+    private String otpIpPolicy = "10/10m";
+
+    @Value("${rate-limit.policies.otp-user:5/10m}")
+    private String otpUserPolicy = "5/10m";
+
+    @Value("${rate-limit.policies.otp-email:1/60s}")
+    private String otpEmailPolicy = "1/60s";
+
+    // Mặc định theo cấu hình cũ sms.otp.rate.limit.minutes: mỗi số một mã trong khoảng đó
+    @Value("${rate-limit.policies.otp-phone:1/${sms.otp.rate.limit.minutes:1}m}")
+    private String otpPhonePolicy = "1/1m";
+
+    @Value("${rate-limit.policies.payment-ip:60/1m}")
+    private String paymentIpPolicy = "60/1m";
+
+    @Value("${rate-limit.policies.payment-user:10/1m}")
+    private String paymentUserPolicy = "10/1m";
+
+    private final Map<String, PolicyBuckets> policies = new HashMap<>();
+
+    /**
+     * capacity request liên tiếp, sau đó mỗi period / capacity được thêm một request.
+     */
+    public record RateLimitPolicy(String name, int capacity, Duration period) {
+
+        public RateLimitPolicy {
+            if (capacity <= 0 || period.isZero() || period.isNegative()) {
+                throw new IllegalArgumentException("Invalid rate limit policy " + name);
+            }
+        }
+
+        public static RateLimitPolicy parse(String name, String spec) {
+            int slash = spec.indexOf('/');
+            if (slash <= 0) {
+                throw new IllegalArgumentException("Invalid rate limit policy " + name + ": " + spec);
+            }
+            return new RateLimitPolicy(name, Integer.parseInt(spec.substring(0, slash).trim()),
+                    DurationStyle.detectAndParse(spec.substring(slash + 1).trim()));
+        }
+
+        long emissionIntervalNanos() {
+            return period.toNanos() / capacity;
+        }
+
+        long toleranceNanos() {
+            return emissionIntervalNanos() * (capacity - 1);
+        }
+    }
+
+    private record PolicyBuckets(RateLimitPolicy policy, Map<String, AtomicLong> buckets, boolean failClosed) {
+    }
+
+    @PostConstruct
+    public void init() {
+        register(RateLimitPolicy.parse(LOGIN_IP, loginIpPolicy));
+        register(RateLimitPolicy.parse(LOGIN_ACCOUNT, loginAccountPolicy));
+        register(RateLimitPolicy.parse(OTP_IP, otpIpPolicy));
+        register(RateLimitPolicy.parse(OTP_USER, otpUserPolicy));
+        register(RateLimitPolicy.parse(OTP_EMAIL, otpEmailPolicy));
+        register(RateLimitPolicy.parse(OTP_PHONE, otpPhonePolicy));
+        register(RateLimitPolicy.parse(PAYMENT_IP, paymentIpPolicy));
+        register(RateLimitPolicy.parse(PAYMENT_USER, paymentUserPolicy));
+    }
+
+    private void register(RateLimitPolicy policy) {
+        policies.put(policy.name(), new PolicyBuckets(policy, new ConcurrentHashMap<>(),
+                failClosedPolicies.contains(policy.name())));
+    }
+
+    public RateLimitPolicy getPolicy(String policyName) {
+        return policyBuckets(policyName).policy();
+    }
+
+    private PolicyBuckets policyBuckets(String policyName) {
+        PolicyBuckets state = policies.get(policyName);
+        if (state == null) {
+            throw new IllegalArgumentException("Unknown rate limit policy: " + policyName);
+        }
+        return state;
+    }
+
+    /**
+     * Lấy một lượt cho key theo chính sách đã cấu hình.
+     * Trả về empty nếu được phép, ngược lại là thời gian phải chờ trước khi thử lại.
+     */
+    public Optional<Duration> tryAcquire(String policyName, String key) {
+        PolicyBuckets state = policyBuckets(policyName);
+        if (!enabled || key == null) {
+            return Optional.empty();
+        }
+        RateLimitPolicy policy = state.policy();
+        long now = System.nanoTime();
+        AtomicLong bucket = state.buckets().get(key);
+        if (bucket == null) {
+            if (state.buckets().size() >= maxBucketsPerPolicy) {
+                Optional<Duration> wait = makeRoom(state, now);
+                if (wait.isPresent()) {
+                    return wait;
+                }
+            }
+            bucket = state.buckets().computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+
+        long interval = policy.emissionIntervalNanos();
+        long tolerance = policy.toleranceNanos();
+        while (true) {
+            long tat = bucket.get();
+            long start = Math.max(tat, now);
+            long waitNanos = start - now - tolerance;
+            if (waitNanos > 0) {
+                meterRegistry.counter("rate.limit.rejected", "policy", policy.name()).increment();
+                return Optional.of(Duration.ofNanos(waitNanos));
+            }
+            if (bucket.compareAndSet(tat, start + interval)) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * Kiểm tra key có đang bị giới hạn không mà không tiêu lượt nào (ví dụ khoá tài khoản theo số lần login sai).
+     * Trả về empty nếu lượt tiếp theo được phép, ngược lại là thời gian phải chờ.
+     */
+    public Optional<Duration> check(String policyName, String key) {
+        PolicyBuckets state = policyBuckets(policyName);
+        if (!enabled || key == null) {
+            return Optional.empty();
+        }
+        AtomicLong bucket = state.buckets().get(key);
+        if (bucket == null) {
+            return Optional.empty();
+        }
+        long now = System.nanoTime();
+        long waitNanos = Math.max(bucket.get(), now) - now - state.policy().toleranceNanos();
+        return waitNanos > 0 ? Optional.of(Duration.ofNanos(waitNanos)) : Optional.empty();
+    }
+
+    /**
+     * Xoá giới hạn của key (ví dụ sau khi đăng nhập thành công hoặc admin mở khoá).
+     */
+    public void reset(String policyName, String key) {
+        policyBuckets(policyName).buckets().remove(key);
+    }
+
+    // Chính sách đã đầy bucket: bỏ bucket đã nạp đầy trước. Còn đầy thì chính sách nhạy cảm từ chối key mới
+    // (chờ tới khi bucket sớm nhất nạp đầy), chính sách khác bỏ các bucket cũ nhất để còn chỗ cho lượt quét sau
+    private Optional<Duration> makeRoom(PolicyBuckets state, long now) {
+        synchronized (state) {
+            Map<String, AtomicLong> buckets = state.buckets();
+            if (buckets.size() < maxBucketsPerPolicy) {
+                return Optional.empty();
+            }
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+            if (buckets.size() < maxBucketsPerPolicy) {
+                return Optional.empty();
+            }
+
+            String policyName = state.policy().name();
+            if (state.failClosed()) {
+                meterRegistry.counter("rate.limit.overflow", "policy", policyName, "action", "rejected").increment();
+                long earliest = buckets.values().stream().mapToLong(AtomicLong::get).min().orElse(now);
+                return Optional.of(Duration.ofNanos(Math.max(earliest - now, state.policy().emissionIntervalNanos())));
+            }
+
+            int excess = buckets.size() - maxBucketsPerPolicy * 9 / 10;
+            List<String> oldest = buckets.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().get()))
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .toList();
+            oldest.forEach(buckets::remove);
+            meterRegistry.counter("rate.limit.overflow", "policy", policyName, "action", "evicted")
+                    .increment(oldest.size());
+            log.warn("Rate limit policy {} reached {} buckets, evicted {} oldest", policyName, maxBucketsPerPolicy,
+                    oldest.size());
+            return Optional.empty();
+        }
+    }
+
+    // Bucket đã nạp đầy (tat <= now) không còn thông tin gì, bỏ đi.
+    // Request đang dùng đúng bucket bị xoá chỉ mất một lượt ghi, tương đương bucket đầy
+    @Scheduled(fixedDelayString = "${rate-limit.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        long now = System.nanoTime();
+        int before = getBucketCount();
+        policies.values().forEach(state -> state.buckets().values().removeIf(bucket -> bucket.get() - now <= 0));
+        int remaining = getBucketCount();
+        if (before > remaining) {
+            log.debug("Evicted {} idle rate limit buckets, {} remaining", before - remaining, remaining);
+        }
+    }
+
+    public int getBucketCount() {
+        return policies.values().stream().mapToInt(state -> state.buckets().size()).sum();
+    }
+
+    public static long retryAfterSeconds(Duration wait) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait.toNanos() + 999_999_999L));
+    }
+}
@@ -14,7 +14,6 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -52,6 +51,9 @@ public class RatingService {
     @Autowired
     private RatingSummaryRepository ratingSummaryRepository;
 
+    @Autowired
+    private RatingSummaryService ratingSummaryService;
+
     @Autowired
     private UserRepository userRepository;
 
@@ -124,8 +126,8 @@ public class RatingService {
                     request.getConsultationId(), request.getStiTestId());
             Rating savedRating = ratingRepository.save(rating);
 
-            // Cập nhật rating summary (async)
-            updateRatingSummaryAsync(targetType, targetId);
+            // Cập nhật rating summary theo delta
+            ratingSummaryService.applyRatingChange(targetType, targetId, null, savedRating.getRating());
 
             RatingResponse response = mapRatingToResponse(savedRating);
             return ApiResponse.success("Rating created successfully", response);
@@ -154,6 +156,9 @@ public class RatingService {
                 return ApiResponse.error("You can only update your own ratings");
             }
 
+            Integer previousStar = rating.getRating();
+            boolean wasActive = Boolean.TRUE.equals(rating.getIsActive());
+
             // Cập nhật rating
             rating.setRating(request.getRating());
             rating.setComment(request.getComment());
@@ -161,8 +166,11 @@ public class RatingService {
 
             Rating savedRating = ratingRepository.save(rating);
 
-            // Cập nhật summary
-            updateRatingSummaryAsync(rating.getTargetType(), rating.getTargetId());
+            // Cập nhật summary (rating đã xóa không còn được tính)
+            if (wasActive) {
+                ratingSummaryService.applyRatingChange(rating.getTargetType(), rating.getTargetId(),
+                        previousStar, savedRating.getRating());
+            }
 
             RatingResponse response = mapRatingToResponse(savedRating);
             return ApiResponse.success("Rating updated successfully", response);
@@ -205,13 +213,18 @@ public class RatingService {
 
             // Staff và Admin có thể xóa bất kỳ lúc nào
 
+            boolean wasActive = Boolean.TRUE.equals(rating.getIsActive());
+
             // Soft delete
             rating.setIsActive(false);
             rating.setUpdatedAt(LocalDateTime.now());
             ratingRepository.save(rating);
 
-            // Cập nhật summary
-            updateRatingSummaryAsync(rating.getTargetType(), rating.getTargetId());
+            // Cập nhật summary, tránh trừ hai lần khi xóa lại rating đã xóa
+            if (wasActive) {
+                ratingSummaryService.applyRatingChange(rating.getTargetType(), rating.getTargetId(),
+                        rating.getRating(), null);
+            }
 
             return ApiResponse.success("Rating deleted successfully", null);
 
@@ -663,49 +676,14 @@ public class RatingService {
      */
     public ApiResponse<Map<String, Object>> getAllRatingSummary() {
         try {
-            // Lấy tất cả ratings active
-            List<Rating> allRatings = ratingRepository.findByIsActiveTrueOrderByCreatedAtDesc();
-
-            Map<String, Object> summary = new HashMap<>();
-
-            if (allRatings.isEmpty()) {
-                summary.put("totalRatings", 0);
-                summary.put("averageRating", BigDecimal.ZERO);
-                summary.put("fiveStarCount", 0);
-                summary.put("fourStarCount", 0);
-                summary.put("threeStarCount", 0);
-                summary.put("twoStarCount", 0);
-                summary.put("oneStarCount", 0);
-            } else {
-                // Tính điểm trung bình
-                double average = allRatings.stream()
-                        .mapToInt(Rating::getRating)
-                        .average()
-                        .orElse(0.0);
-
-                // Đếm phân bố sao
-                Map<Integer, Long> distribution = allRatings.stream()
-                        .collect(Collectors.groupingBy(Rating::getRating, Collectors.counting()));
-
-                summary.put("totalRatings", allRatings.size());
-                summary.put("averageRating", BigDecimal.valueOf(average).setScale(1, RoundingMode.HALF_UP));
-                summary.put("fiveStarCount", distribution.getOrDefault(5, 0L).intValue());
-                summary.put("fourStarCount", distribution.getOrDefault(4, 0L).intValue());
-                summary.put("threeStarCount", distribution.getOrDefault(3, 0L).intValue());
-                summary.put("twoStarCount", distribution.getOrDefault(2, 0L).intValue());
-                summary.put("oneStarCount", distribution.getOrDefault(1, 0L).intValue());
-            }
+            // Phân bố sao lấy từ GROUP BY (có cache ngắn hạn), không tải entity Rating
+            Map<String, Object> summary = buildDistributionSummary(ratingSummaryService.getStarCounts(null));
 
             // Thêm thống kê theo loại
-            long consultationCount = allRatings.stream()
-                    .filter(r -> r.getTargetType() == Rating.RatingTargetType.CONSULTANT)
-                    .count();
-            long stiServiceCount = allRatings.stream()
-                    .filter(r -> r.getTargetType() == Rating.RatingTargetType.STI_SERVICE)
-                    .count();
-
-            summary.put("consultationRatingCount", consultationCount);
-            summary.put("stiServiceRatingCount", stiServiceCount);
+            summary.put("consultationRatingCount",
+                    totalOf(ratingSummaryService.getStarCounts(Rating.RatingTargetType.CONSULTANT)));
+            summary.put("stiServiceRatingCount",
+                    totalOf(ratingSummaryService.getStarCounts(Rating.RatingTargetType.STI_SERVICE)));
 
             return ApiResponse.success("All ratings summary retrieved successfully", summary);
 
@@ -720,40 +698,8 @@ public class RatingService {
      */
     public ApiResponse<Map<String, Object>> getConsultationRatingSummary() {
         try {
-            // Lấy tất cả consultation ratings active
-            List<Rating> consultationRatings = ratingRepository.findByTargetTypeAndIsActiveTrueOrderByCreatedAtDesc(
-                    Rating.RatingTargetType.CONSULTANT);
-
-            Map<String, Object> summary = new HashMap<>();
-
-            if (consultationRatings.isEmpty()) {
-                summary.put("totalRatings", 0);
-                summary.put("averageRating", BigDecimal.ZERO);
-                summary.put("fiveStarCount", 0);
-                summary.put("fourStarCount", 0);
-                summary.put("threeStarCount", 0);
-                summary.put("twoStarCount", 0);
-                summary.put("oneStarCount", 0);
-            } else {
-                // Tính điểm trung bình
-                double average = consultationRatings.stream()
-                        .mapToInt(Rating::getRating)
-                        .average()
-                        .orElse(0.0);
-
-                // Đếm phân bố sao
-                Map<Integer, Long> distribution = consultationRatings.stream()
-                        .collect(Collectors.groupingBy(Rating::getRating, Collectors.counting()));
-
-                summary.put("totalRatings", consultationRatings.size());
-                summary.put("averageRating", BigDecimal.valueOf(average).setScale(1, RoundingMode.HALF_UP));
-                summary.put("fiveStarCount", distribution.getOrDefault(5, 0L).intValue());
-                summary.put("fourStarCount", distribution.getOrDefault(4, 0L).intValue());
-                summary.put("threeStarCount", distribution.getOrDefault(3, 0L).intValue());
-                summary.put("twoStarCount", distribution.getOrDefault(2, 0L).intValue());
-                summary.put("oneStarCount", distribution.getOrDefault(1, 0L).intValue());
-            }
-
+            Map<String, Object> summary = buildDistributionSummary(
+                    ratingSummaryService.getStarCounts(Rating.RatingTargetType.CONSULTANT));
             summary.put("targetType", "CONSULTANT");
 
             return ApiResponse.success("Consultation ratings summary retrieved successfully", summary);
@@ -769,40 +715,8 @@ public class RatingService {
      */
     public ApiResponse<Map<String, Object>> getSTIServiceRatingSummary() {
         try {
-            // Lấy tất cả STI service ratings active
-            List<Rating> stiServiceRatings = ratingRepository.findByTargetTypeAndIsActiveTrueOrderByCreatedAtDesc(
-                    Rating.RatingTargetType.STI_SERVICE);
-
-            Map<String, Object> summary = new HashMap<>();
-
-            if (stiServiceRatings.isEmpty()) {
-                summary.put("totalRatings", 0);
-                summary.put("averageRating", BigDecimal.ZERO);
-                summary.put("fiveStarCount", 0);
-                summary.put("fourStarCount", 0);
-                summary.put("threeStarCount", 0);
-                summary.put("twoStarCount", 0);
-                summary.put("oneStarCount", 0);
-            } else {
-                // Tính điểm trung bình
-                double average = stiServiceRatings.stream()
-                        .mapToInt(Rating::getRating)
-                        .average()
-                        .orElse(0.0);
-
-                // Đếm phân bố sao
-                Map<Integer, Long> distribution = stiServiceRatings.stream()
-                        .collect(Collectors.groupingBy(Rating::getRating, Collectors.counting()));
-
-                summary.put("totalRatings", stiServiceRatings.size());
-                summary.put("averageRating", BigDecimal.valueOf(average).setScale(1, RoundingMode.HALF_UP));
-                summary.put("fiveStarCount", distribution.getOrDefault(5, 0L).intValue());
-                summary.put("fourStarCount", distribution.getOrDefault(4, 0L).intValue());
-                summary.put("threeStarCount", distribution.getOrDefault(3, 0L).intValue());
-                summary.put("twoStarCount", distribution.getOrDefault(2, 0L).intValue());
-                summary.put("oneStarCount", distribution.getOrDefault(1, 0L).intValue());
-            }
-
+            Map<String, Object> summary = buildDistributionSummary(
+                    ratingSummaryService.getStarCounts(Rating.RatingTargetType.STI_SERVICE));
             summary.put("targetType", "STI_SERVICE");
 
             return ApiResponse.success("STI service ratings summary retrieved successfully", summary);
@@ -818,40 +732,8 @@ public class RatingService {
      */
     public ApiResponse<Map<String, Object>> getSTIPackageRatingSummary() {
         try {
-            // Lấy tất cả STI package ratings active
-            List<Rating> stiPackageRatings = ratingRepository.findByTargetTypeAndIsActiveTrueOrderByCreatedAtDesc(
-                    Rating.RatingTargetType.STI_PACKAGE);
-
-            Map<String, Object> summary = new HashMap<>();
-
-            if (stiPackageRatings.isEmpty()) {
-                summary.put("totalRatings", 0);
-                summary.put("averageRating", 0);
-                summary.put("fiveStarCount", 0);
-                summary.put("fourStarCount", 0);
-                summary.put("threeStarCount", 0);
-                summary.put("twoStarCount", 0);
-                summary.put("oneStarCount", 0);
-            } else {
-                // Tính điểm trung bình
-                double average = stiPackageRatings.stream()
-                        .mapToInt(Rating::getRating)
-                        .average()
-                        .orElse(0.0);
-
-                // Đếm phân bố sao
-                Map<Integer, Long> distribution = stiPackageRatings.stream()
-                        .collect(Collectors.groupingBy(Rating::getRating, Collectors.counting()));
-
-                summary.put("totalRatings", stiPackageRatings.size());
-                summary.put("averageRating", BigDecimal.valueOf(average).setScale(1, RoundingMode.HALF_UP));
-                summary.put("fiveStarCount", distribution.getOrDefault(5, 0L).intValue());
-                summary.put("fourStarCount", distribution.getOrDefault(4, 0L).intValue());
-                summary.put("threeStarCount", distribution.getOrDefault(3, 0L).intValue());
-                summary.put("twoStarCount", distribution.getOrDefault(2, 0L).intValue());
-                summary.put("oneStarCount", distribution.getOrDefault(1, 0L).intValue());
-            }
-
+            Map<String, Object> summary = buildDistributionSummary(
+                    ratingSummaryService.getStarCounts(Rating.RatingTargetType.STI_PACKAGE));
             summary.put("targetType", "STI_PACKAGE");
 
             return ApiResponse.success("STI package ratings summary retrieved successfully", summary);
@@ -864,8 +746,8 @@ public class RatingService {
 
     public Map<String, Long> getAdminDashboardRatingStats() {
         Map<String, Long> stats = new java.util.HashMap<>();
-        long positiveRatings = ratingRepository.findByIsActiveTrueOrderByCreatedAtDesc().stream()
-                .filter(r -> r.getRating() != null && r.getRating() >= 4).count();
+        int[] counts = ratingSummaryService.getStarCounts(null);
+        long positiveRatings = (long) counts[4] + counts[5];
         stats.put("positiveRatings", positiveRatings);
         return stats;
     }
@@ -925,62 +807,6 @@ public class RatingService {
         return !stiTests.isEmpty();
     }
 
-    @Async
-    public void updateRatingSummaryAsync(Rating.RatingTargetType targetType, Long targetId) {
-        updateRatingSummary(targetType, targetId);
-    }
-
-    @Transactional
-    public void updateRatingSummary(Rating.RatingTargetType targetType, Long targetId) {
-        try {
-            List<Rating> ratings = ratingRepository.findByTargetTypeAndTargetIdAndIsActiveTrueOrderByCreatedAtDesc(
-                    targetType, targetId);
-
-            int totalRatings = ratings.size();
-
-            RatingSummary summary = ratingSummaryRepository.findByTargetTypeAndTargetId(targetType, targetId)
-                    .orElse(new RatingSummary(targetType, targetId));
-
-            if (totalRatings == 0) {
-                // Reset summary
-                summary.setTotalRatings(0);
-                summary.setAverageRating(BigDecimal.ZERO);
-                summary.setFiveStarCount(0);
-                summary.setFourStarCount(0);
-                summary.setThreeStarCount(0);
-                summary.setTwoStarCount(0);
-                summary.setOneStarCount(0);
-            } else {
-                // Tính điểm trung bình
-                double average = ratings.stream()
-                        .mapToInt(Rating::getRating)
-                        .average()
-                        .orElse(0.0);
-
-                // Đếm phân bố sao
-                Map<Integer, Long> distribution = ratings.stream()
-                        .collect(Collectors.groupingBy(Rating::getRating, Collectors.counting()));
-
-                summary.setTotalRatings(totalRatings);
-                summary.setAverageRating(BigDecimal.valueOf(average).setScale(1, RoundingMode.HALF_UP));
-                summary.setFiveStarCount(distribution.getOrDefault(5, 0L).intValue());
-                summary.setFourStarCount(distribution.getOrDefault(4, 0L).intValue());
-                summary.setThreeStarCount(distribution.getOrDefault(3, 0L).intValue());
-                summary.setTwoStarCount(distribution.getOrDefault(2, 0L).intValue());
-                summary.setOneStarCount(distribution.getOrDefault(1, 0L).intValue());
-            }
-
-            summary.setLastUpdated(LocalDateTime.now());
-            ratingSummaryRepository.save(summary);
-
-            log.info("Updated rating summary for {} {}: {} ratings, avg {}",
-                    targetType, targetId, totalRatings, summary.getAverageRating());
-
-        } catch (Exception e) {
-            log.error("Error updating rating summary for {} {}: {}", targetType, targetId, e.getMessage(), e);
-        }
-    }
-
     // Lấy testimonials cho homepage
     public ApiResponse<List<RatingResponse>> getTestimonials(int limit) {
         try {
@@ -999,6 +825,27 @@ public class RatingService {
         }
     }
 
+    // Dựng map tổng hợp (tổng, trung bình, phân bố sao) từ mảng đếm theo số sao 1..5
+    private Map<String, Object> buildDistributionSummary(int[] counts) {
+        long total = totalOf(counts);
+        long weighted = counts[1] + 2L * counts[2] + 3L * counts[3] + 4L * counts[4] + 5L * counts[5];
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("totalRatings", (int) total);
+        summary.put("averageRating", total == 0 ? BigDecimal.ZERO
+                : BigDecimal.valueOf(weighted).divide(BigDecimal.valueOf(total), 1, RoundingMode.HALF_UP));
+        summary.put("fiveStarCount", counts[5]);
+        summary.put("fourStarCount", counts[4]);
+        summary.put("threeStarCount", counts[3]);
+        summary.put("twoStarCount", counts[2]);
+        summary.put("oneStarCount", counts[1]);
+        return summary;
+    }
+
+    private long totalOf(int[] counts) {
+        return (long) counts[1] + counts[2] + counts[3] + counts[4] + counts[5];
+    }
+
     private Sort createSort(String sort) {
         if (sort == null)
             sort = "newest";
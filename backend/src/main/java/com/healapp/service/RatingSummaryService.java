@@ -0,0 +1,248 @@
+package com.healapp.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.healapp.model.Rating;
+import com.healapp.model.RatingSummary;
+import com.healapp.repository.RatingRepository;
+import com.healapp.repository.RatingSummaryRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Duy trì rating_summary theo delta: mỗi lần tạo/sửa/xóa rating chỉ cộng trừ
+ * số sao và tổng bằng một câu UPDATE, chi phí O(1) bất kể target có bao nhiêu rating.
+ * Job đối soát định kỳ so sánh với GROUP BY trên bảng ratings để sửa sai lệch.
+ * Phân bố sao theo loại target cho dashboard được cache ngắn hạn.
+ */
+@Slf4j
+@Service
+public class RatingSummaryService {
+
+    @Autowired
+    private RatingRepository ratingRepository;
+
+    @Autowired
+    private RatingSummaryRepository ratingSummaryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${rating.dashboard.cache-ttl-seconds:30}")
+    private long dashboardCacheTtlSeconds = 30;
+
+    private volatile StarDistributionSnapshot distributionSnapshot;
+
+    /**
+     * Áp dụng thay đổi của một rating vào summary, chạy trong transaction của nơi gọi.
+     * Tạo mới: (null, sao mới); xóa: (sao cũ, null); sửa: (sao cũ, sao mới).
+     */
+    @Transactional
+    public void applyRatingChange(Rating.RatingTargetType targetType, Long targetId,
+            Integer removedStar, Integer addedStar) {
+        if (Objects.equals(removedStar, addedStar)) {
+            return;
+        }
+
+        int[] starDeltas = new int[6];
+        int totalDelta = 0;
+        if (isValidStar(removedStar)) {
+            starDeltas[removedStar]--;
+            totalDelta--;
+        }
+        if (isValidStar(addedStar)) {
+            starDeltas[addedStar]++;
+            totalDelta++;
+        }
+
+        int updated = ratingSummaryRepository.applyDelta(targetType, targetId, totalDelta,
+                starDeltas[5], starDeltas[4], starDeltas[3], starDeltas[2], starDeltas[1], LocalDateTime.now());
+
+        if (updated == 0) {
+            // Target chưa có summary: tạo dòng rỗng rồi tính đầy đủ một lần duy nhất
+            createEmptySummary(targetType, targetId);
+            recomputeSummary(targetType, targetId);
+        } else {
+            ratingSummaryRepository.refreshAverage(targetType.name(), targetId);
+        }
+        invalidateDistributionCache();
+    }
+
+    /**
+     * Phân bố sao (chỉ số 1..5) của một loại target; null nghĩa là tất cả loại.
+     * Đọc từ snapshot GROUP BY được cache trong rating.dashboard.cache-ttl-seconds.
+     */
+    public int[] getStarCounts(Rating.RatingTargetType targetType) {
+        Map<Rating.RatingTargetType, int[]> byType = currentDistribution();
+        int[] result = new int[6];
+        for (Map.Entry<Rating.RatingTargetType, int[]> entry : byType.entrySet()) {
+            if (targetType == null || entry.getKey() == targetType) {
+                for (int star = 1; star <= 5; star++) {
+                    result[star] += entry.getValue()[star];
+                }
+            }
+        }
+        return result;
+    }
+
+    private Map<Rating.RatingTargetType, int[]> currentDistribution() {
+        StarDistributionSnapshot snapshot = distributionSnapshot;
+        long now = System.nanoTime();
+        if (snapshot == null || now - snapshot.loadedAt() > TimeUnit.SECONDS.toNanos(dashboardCacheTtlSeconds)) {
+            Map<Rating.RatingTargetType, int[]> counts = new EnumMap<>(Rating.RatingTargetType.class);
+            for (Object[] row : ratingRepository.countActiveRatingsByTargetTypeAndScore()) {
+                Integer star = (Integer) row[1];
+                if (isValidStar(star)) {
+                    counts.computeIfAbsent((Rating.RatingTargetType) row[0], k -> new int[6])[star] =
+                            ((Long) row[2]).intValue();
+                }
+            }
+            snapshot = new StarDistributionSnapshot(counts, now);
+            distributionSnapshot = snapshot;
+        }
+        return snapshot.counts();
+    }
+
+    // Xóa cache sau khi transaction ghi rating commit, để lần đọc sau thấy dữ liệu mới
+    private void invalidateDistributionCache() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    distributionSnapshot = null;
+                }
+            });
+        } else {
+            distributionSnapshot = null;
+        }
+    }
+
+    /**
+     * Tính lại summary của một target từ GROUP BY theo số sao (không tải entity Rating).
+     */
+    @Transactional
+    public RatingSummary recomputeSummary(Rating.RatingTargetType targetType, Long targetId) {
+        int[] counts = new int[6];
+        for (Object[] row : ratingRepository.countRatingsByScore(targetType, targetId)) {
+            Integer star = (Integer) row[0];
+            if (isValidStar(star)) {
+                counts[star] = ((Long) row[1]).intValue();
+            }
+        }
+
+        RatingSummary summary = ratingSummaryRepository.findByTargetTypeAndTargetId(targetType, targetId)
+                .orElse(new RatingSummary(targetType, targetId));
+        applyCounts(summary, counts);
+        return ratingSummaryRepository.save(summary);
+    }
+
+    /**
+     * Đối soát toàn bộ summary với bảng ratings. Mỗi target lệch được sửa trong transaction
+     * riêng; nếu có delta ghi đồng thời (version đổi) thì bỏ qua, lần chạy sau sẽ kiểm tra lại.
+     */
+    @Scheduled(cron = "${rating.summary.reconcile-cron:0 0 3 * * ?}")
+    public void reconcileSummaries() {
+        Map<TargetKey, int[]> actual = new HashMap<>();
+        for (Object[] row : ratingRepository.countActiveRatingsByTargetAndScore()) {
+            Integer star = (Integer) row[2];
+            if (!isValidStar(star)) {
+                continue;
+            }
+            TargetKey key = new TargetKey((Rating.RatingTargetType) row[0], (Long) row[1]);
+            actual.computeIfAbsent(key, k -> new int[6])[star] = ((Long) row[3]).intValue();
+        }
+
+        List<TargetKey> drifted = new ArrayList<>();
+        for (RatingSummary summary : ratingSummaryRepository.findAll()) {
+            TargetKey key = new TargetKey(summary.getTargetType(), summary.getTargetId());
+            int[] counts = actual.remove(key);
+            if (!matches(summary, counts == null ? new int[6] : counts)) {
+                drifted.add(key);
+            }
+        }
+        // Target có rating nhưng chưa có summary
+        drifted.addAll(actual.keySet());
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        int repaired = 0;
+        for (TargetKey key : drifted) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> recomputeSummary(key.targetType(), key.targetId()));
+                repaired++;
+            } catch (ObjectOptimisticLockingFailureException | DataIntegrityViolationException e) {
+                log.info("Skipped reconciling rating summary for {} {}: concurrent update",
+                        key.targetType(), key.targetId());
+            }
+        }
+        log.info("Rating summary reconciliation finished: {} drifted, {} repaired", drifted.size(), repaired);
+    }
+
+    // Insert trong transaction riêng để lỗi trùng khóa (hai request tạo cùng lúc) không làm hỏng transaction chính
+    private void createEmptySummary(Rating.RatingTargetType targetType, Long targetId) {
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            requiresNew.executeWithoutResult(status -> ratingSummaryRepository.saveAndFlush(
+                    new RatingSummary(targetType, targetId)));
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Rating summary for {} {} already created concurrently", targetType, targetId);
+        }
+    }
+
+    private void applyCounts(RatingSummary summary, int[] counts) {
+        int total = counts[1] + counts[2] + counts[3] + counts[4] + counts[5];
+        int weighted = counts[1] + 2 * counts[2] + 3 * counts[3] + 4 * counts[4] + 5 * counts[5];
+
+        summary.setTotalRatings(total);
+        summary.setAverageRating(total == 0 ? BigDecimal.ZERO
+                : BigDecimal.valueOf(weighted).divide(BigDecimal.valueOf(total), 1, RoundingMode.HALF_UP));
+        summary.setFiveStarCount(counts[5]);
+        summary.setFourStarCount(counts[4]);
+        summary.setThreeStarCount(counts[3]);
+        summary.setTwoStarCount(counts[2]);
+        summary.setOneStarCount(counts[1]);
+        summary.setLastUpdated(LocalDateTime.now());
+    }
+
+    private boolean matches(RatingSummary summary, int[] counts) {
+        int total = counts[1] + counts[2] + counts[3] + counts[4] + counts[5];
+        return summary.getTotalRatings() == total
+                && summary.getFiveStarCount() == counts[5]
+                && summary.getFourStarCount() == counts[4]
+                && summary.getThreeStarCount() == counts[3]
+                && summary.getTwoStarCount() == counts[2]
+                && summary.getOneStarCount() == counts[1];
+    }
+
+    private boolean isValidStar(Integer star) {
+        return star != null && star >= 1 && star <= 5;
+    }
+
+    private record StarDistributionSnapshot(Map<Rating.RatingTargetType, int[]> counts, long loadedAt) {
+    }
+
+    private record TargetKey(Rating.RatingTargetType targetType, Long targetId) {
+    }
+}
@@ -0,0 +1,64 @@
+package com.healapp.service;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.healapp.model.NotificationPreference;
+import com.healapp.model.NotificationType;
+import com.healapp.repository.NotificationPreferenceRepository;
+
+/**
+ * Chỉ mục điều phối nhắc nhở theo bucket (type, phút trong ngày).
+ * Mỗi tick của scheduler chỉ đọc những user có remindTime nằm trong cửa sổ ±1 phút,
+ * thay vì quét toàn bộ bảng notification_preference.
+ */
+@Service
+public class ReminderDispatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReminderDispatchService.class);
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    // Độ lệch cho phép ±1 phút để tránh bỏ lỡ
+    private static final int WINDOW_MINUTES = 1;
+
+    @Autowired
+    private NotificationPreferenceRepository notificationPreferenceRepository;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillDispatchIndex() {
+        try {
+            int updated = notificationPreferenceRepository.backfillRemindMinute();
+            if (updated > 0) {
+                logger.info("Backfilled remind_minute for {} notification preferences", updated);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to backfill reminder dispatch index: {}", e.getMessage(), e);
+        }
+    }
+
+    public List<Long> findDueUserIds(NotificationType type, LocalTime currentTime) {
+        List<Integer> buckets = getDueBuckets(currentTime);
+        List<Long> userIds = notificationPreferenceRepository.findDueUserIds(type, buckets);
+        logger.info("Found {} users due for {} notifications in buckets {}", userIds.size(), type, buckets);
+        return userIds;
+    }
+
+    // Các bucket phút cần đọc, có xử lý vòng qua nửa đêm (00:00 -> 23:59)
+    List<Integer> getDueBuckets(LocalTime currentTime) {
+        int currentMinute = NotificationPreference.toRemindMinute(currentTime);
+        List<Integer> buckets = new ArrayList<>(2 * WINDOW_MINUTES + 1);
+        for (int offset = -WINDOW_MINUTES; offset <= WINDOW_MINUTES; offset++) {
+            buckets.add(Math.floorMod(currentMinute + offset, MINUTES_PER_DAY));
+        }
+        return buckets;
+    }
+}
@@ -0,0 +1,291 @@
+package com.healapp.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.healapp.model.PaymentMethod;
+import com.healapp.model.PaymentStatus;
+import com.healapp.model.RevenueDailyRollup;
+import com.healapp.repository.PaymentRepository;
+import com.healapp.repository.RevenueDailyRollupRepository;
+import com.healapp.utils.HyperLogLog;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bảng tổng hợp doanh thu theo ngày (revenue_daily_rollups) cho báo cáo admin.
+ * Cộng dồn sau commit mỗi khi payment chuyển vào/ra COMPLETED hoặc REFUNDED (PaymentRollupListener),
+ * và được dựng lại từ bảng payments bởi job hằng đêm hoặc theo yêu cầu để sửa mọi sai lệch.
+ * Báo cáo cho một khoảng bất kỳ chỉ đọc các dòng tổng hợp của những ngày trọn vẹn,
+ * phần lẻ đầu/cuối khoảng được tổng hợp bằng SQL trên payments (chỉ đọc tổng và id khách).
+ */
+@Slf4j
+@Service
+public class RevenueRollupService {
+
+    @Autowired
+    private RevenueDailyRollupRepository rollupRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Số ngày gần nhất (trước hôm nay) được dựng lại mỗi đêm
+    @Value("${revenue.rollup.rebuild-days:3}")
+    private int rebuildDays = 3;
+
+    @Value("${revenue.rollup.max-rebuild-days:3660}")
+    private int maxRebuildDays = 3660;
+
+    /**
+     * Thay đổi của một payment lên dòng tổng hợp (ngày tạo, service_type, payment_method).
+     * customerId khác null khi payment vừa chuyển sang COMPLETED.
+     */
+    public record RevenueDelta(LocalDate day, String serviceType, PaymentMethod paymentMethod,
+            long completedCount, BigDecimal completedAmount, long refundCount, BigDecimal refundAmount,
+            Long customerId) {
+    }
+
+    /**
+     * Ghi nhận delta sau khi transaction hiện tại commit; rollback thì bỏ qua.
+     */
+    public void record(RevenueDelta delta) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applySafely(delta);
+                }
+            });
+        } else {
+            applySafely(delta);
+        }
+    }
+
+    private void applySafely(RevenueDelta delta) {
+        try {
+            try {
+                apply(delta);
+            } catch (DataIntegrityViolationException e) {
+                // Node khác vừa tạo cùng dòng tổng hợp: thử lại, lần này sẽ cập nhật dòng đó
+                apply(delta);
+            }
+            meterRegistry.counter("revenue.rollup.applied").increment();
+        } catch (Exception e) {
+            // Không làm hỏng luồng thanh toán; job dựng lại hằng đêm sẽ sửa dòng này
+            meterRegistry.counter("revenue.rollup.apply.failed").increment();
+            log.error("Failed to apply revenue rollup delta {}: {}", delta, e.getMessage(), e);
+        }
+    }
+
+    // afterCommit vẫn gắn với transaction cũ nên phải ghi trong transaction mới
+    private void apply(RevenueDelta delta) {
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        requiresNew.executeWithoutResult(status -> {
+            RevenueDailyRollup rollup = rollupRepository
+                    .findForUpdate(delta.day(), delta.serviceType(), delta.paymentMethod())
+                    .orElseGet(() -> new RevenueDailyRollup(delta.day(), delta.serviceType(),
+                            delta.paymentMethod()));
+            rollup.setCompletedCount(rollup.getCompletedCount() + delta.completedCount());
+            rollup.setCompletedAmount(rollup.getCompletedAmount().add(delta.completedAmount()));
+            rollup.setRefundCount(rollup.getRefundCount() + delta.refundCount());
+            rollup.setRefundAmount(rollup.getRefundAmount().add(delta.refundAmount()));
+            if (delta.customerId() != null) {
+                HyperLogLog sketch = HyperLogLog.fromBytes(rollup.getCustomerSketch());
+                sketch.add(delta.customerId());
+                rollup.setCustomerSketch(sketch.toBytes());
+            }
+            rollupRepository.saveAndFlush(rollup);
+        });
+    }
+
+    @Scheduled(cron = "${revenue.rollup.rebuild-cron:0 30 2 * * ?}") // Mặc định 2:30 AM mỗi ngày
+    public void rebuildRecentDays() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        try {
+            int days = rebuild(yesterday.minusDays(rebuildDays - 1L), yesterday);
+            log.info("Rebuilt revenue rollups for the last {} days", days);
+        } catch (Exception e) {
+            log.error("Error rebuilding revenue rollups: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Dựng lại các ngày trong [from, to] từ bảng payments, mỗi ngày một transaction.
+     * Dùng để backfill lần đầu hoặc sửa sai lệch. Trả về số ngày đã dựng.
+     */
+    public int rebuild(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("toDate must not be before fromDate");
+        }
+        if (from.plusDays(maxRebuildDays).isBefore(to)) {
+            throw new IllegalArgumentException("Rebuild range exceeds " + maxRebuildDays + " days");
+        }
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        int days = 0;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            LocalDate current = day;
+            transactionTemplate.executeWithoutResult(status -> rebuildDay(current));
+            days++;
+        }
+        return days;
+    }
+
+    private void rebuildDay(LocalDate day) {
+        LocalDateTime start = day.atStartOfDay();
+        LocalDateTime end = day.plusDays(1).atStartOfDay();
+        rollupRepository.deleteByRollupDate(day);
+
+        Map<String, RevenueDailyRollup> buckets = new HashMap<>();
+        for (Object[] row : paymentRepository.summarizeRevenueBuckets(start, end)) {
+            RevenueDailyRollup rollup = buckets.computeIfAbsent(bucketKey(row[0], row[1]),
+                    k -> new RevenueDailyRollup(day, (String) row[0], (PaymentMethod) row[1]));
+            long count = ((Number) row[3]).longValue();
+            if (row[2] == PaymentStatus.COMPLETED) {
+                rollup.setCompletedCount(count);
+                rollup.setCompletedAmount(toBigDecimal(row[4]));
+            } else {
+                rollup.setRefundCount(count);
+                rollup.setRefundAmount(toBigDecimal(row[5]));
+            }
+        }
+
+        Map<String, HyperLogLog> sketches = new HashMap<>();
+        for (Object[] row : paymentRepository.findRevenueCustomers(start, end)) {
+            sketches.computeIfAbsent(bucketKey(row[0], row[1]), k -> new HyperLogLog())
+                    .add(((Number) row[2]).longValue());
+        }
+        sketches.forEach((key, sketch) -> {
+            RevenueDailyRollup rollup = buckets.get(key);
+            if (rollup != null) {
+                rollup.setCustomerSketch(sketch.toBytes());
+            }
+        });
+
+        rollupRepository.saveAll(buckets.values());
+    }
+
+    /**
+     * Tổng doanh thu, số giao dịch, trung bình, số khách hàng (ước lượng HyperLogLog) và hoàn tiền
+     * cho payment tạo trong [fromDate, toDate].
+     */
+    public Map<String, Object> getRevenueSummary(LocalDateTime fromDate, LocalDateTime toDate) {
+        Totals totals = new Totals();
+        if (!toDate.isBefore(fromDate)) {
+            // Ngày trọn vẹn đầu tiên và ngày (loại trừ) kết thúc phần trọn vẹn
+            LocalDate firstFullDay = fromDate.equals(fromDate.toLocalDate().atStartOfDay())
+                    ? fromDate.toLocalDate()
+                    : fromDate.toLocalDate().plusDays(1);
+            LocalDate fullDaysEnd = toDate.toLocalDate();
+
+            if (firstFullDay.isBefore(fullDaysEnd)) {
+                for (RevenueDailyRollup rollup : rollupRepository.findByRollupDateBetween(firstFullDay,
+                        fullDaysEnd.minusDays(1))) {
+                    totals.add(rollup);
+                }
+                LocalDateTime fullStart = firstFullDay.atStartOfDay();
+                if (fromDate.isBefore(fullStart)) {
+                    addPartial(totals, fromDate, fullStart.minusNanos(1));
+                }
+                addPartial(totals, fullDaysEnd.atStartOfDay(), toDate);
+            } else {
+                // Khoảng ngắn hơn một ngày trọn: tổng hợp thẳng trên payments
+                addPartial(totals, fromDate, toDate);
+            }
+        }
+
+        BigDecimal avgRevenue = totals.completedCount > 0
+                ? totals.completedAmount.divide(BigDecimal.valueOf(totals.completedCount), 0, RoundingMode.HALF_UP)
+                : BigDecimal.ZERO;
+        long totalCustomers = totals.customers.isEmpty() ? totals.exactCustomers.size()
+                : totals.customersEstimate();
+
+        return Map.of(
+                "totalRevenue", totals.completedAmount,
+                "totalTransactions", totals.completedCount,
+                "averageRevenue", avgRevenue,
+                "totalCustomers", totalCustomers,
+                "refundCount", totals.refundCount,
+                "refundAmount", totals.refundAmount);
+    }
+
+    private void addPartial(Totals totals, LocalDateTime from, LocalDateTime to) {
+        totals.addSummary(paymentRepository.summarizeRevenueBetween(from, to));
+        totals.exactCustomers.addAll(paymentRepository.findRevenueCustomerIdsBetween(from, to));
+    }
+
+    private static class Totals {
+        private long completedCount;
+        private BigDecimal completedAmount = BigDecimal.ZERO;
+        private long refundCount;
+        private BigDecimal refundAmount = BigDecimal.ZERO;
+        private final HyperLogLog customers = new HyperLogLog();
+        // Khách của phần lẻ; chỉ dùng làm kết quả chính xác khi không có dòng tổng hợp nào
+        private final Set<Long> exactCustomers = new HashSet<>();
+
+        void add(RevenueDailyRollup rollup) {
+            completedCount += rollup.getCompletedCount();
+            completedAmount = completedAmount.add(rollup.getCompletedAmount());
+            refundCount += rollup.getRefundCount();
+            refundAmount = refundAmount.add(rollup.getRefundAmount());
+            if (rollup.getCustomerSketch() != null) {
+                customers.merge(HyperLogLog.fromBytes(rollup.getCustomerSketch()));
+            }
+        }
+
+        // Dòng [paymentStatus, COUNT, SUM(amount), SUM(refundAmount hoặc amount)] từ summarizeRevenueBetween
+        void addSummary(List<Object[]> rows) {
+            for (Object[] row : rows) {
+                long count = ((Number) row[1]).longValue();
+                if (row[0] == PaymentStatus.COMPLETED) {
+                    completedCount += count;
+                    completedAmount = completedAmount.add(toBigDecimal(row[2]));
+                } else {
+                    refundCount += count;
+                    refundAmount = refundAmount.add(toBigDecimal(row[3]));
+                }
+            }
+        }
+
+        long customersEstimate() {
+            exactCustomers.forEach(customers::add);
+            return customers.estimate();
+        }
+    }
+
+    private static String bucketKey(Object serviceType, Object paymentMethod) {
+        return serviceType + "|" + paymentMethod;
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value == null) {
+            return BigDecimal.ZERO;
+        }
+        return value instanceof BigDecimal decimal ? decimal : new BigDecimal(value.toString());
+    }
+}
@@ -8,11 +8,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.healapp.dto.ApiResponse;
 import com.healapp.dto.PaymentInfoResponse;
@@ -86,8 +89,19 @@ public class STITestService {
     @Autowired
     private TestServiceConsultantNoteRepository testServiceConsultantNoteRepository;
 
-    @Transactional
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Lưu lịch và payment trong một transaction; thanh toán VISA gọi Stripe sau khi commit, trước khi trả response
     public ApiResponse<STITestResponse> bookTest(STITestRequest request, Long customerId) {
+        AtomicReference<PaymentService.StripeCharge> pendingCharge = new AtomicReference<>();
+        ApiResponse<STITestResponse> booked = new TransactionTemplate(transactionManager)
+                .execute(status -> bookTestInTransaction(request, customerId, pendingCharge));
+        return submitStripeCharge(booked, pendingCharge.get(), "Đặt lịch thành công nhưng thanh toán thất bại: ");
+    }
+
+    private ApiResponse<STITestResponse> bookTestInTransaction(STITestRequest request, Long customerId,
+            AtomicReference<PaymentService.StripeCharge> pendingCharge) {
         log.info("User {} booking STI test", customerId);
 
         try {
@@ -258,7 +272,8 @@ public class STITestService {
 
             // Xử lý thanh toán - không rollback nếu thất bại
             log.info("Step 8: Processing payment");
-            ApiResponse<Payment> paymentResult = processPaymentForTest(savedTest, paymentMethod, request);
+            ApiResponse<Payment> paymentResult = processPaymentForTest(savedTest, paymentMethod, request,
+                    pendingCharge);
             log.info("Step 8: Payment processing completed - success: {}", paymentResult.isSuccess());
 
             log.info("Step 9: Converting to response");
@@ -294,6 +309,8 @@ public class STITestService {
                 message += " - Payment on delivery (pending confirmation)";
             } else if (payment.getPaymentStatus() == PaymentStatus.COMPLETED) {
                 message += " - Payment processed";
+            } else if (payment.getPaymentStatus() == PaymentStatus.PROCESSING) {
+                message += " - Payment processing, awaiting confirmation";
             } else if (paymentMethod == PaymentMethod.QR_CODE && payment.getPaymentStatus() == PaymentStatus.PENDING) {
                 message += " - QR code generated, awaiting payment";
             }
@@ -307,7 +324,7 @@ public class STITestService {
     }
 
     private ApiResponse<Payment> processPaymentForTest(STITest stiTest, PaymentMethod paymentMethod,
-            STITestRequest request) {
+            STITestRequest request, AtomicReference<PaymentService.StripeCharge> pendingCharge) {
         log.info("Processing payment for test {} with method {}", stiTest.getTestId(), paymentMethod);
 
         String description;
@@ -334,7 +351,7 @@ public class STITestService {
                     break;
 
                 case VISA:
-                    paymentResult = processVisaPaymentWithValidation(stiTest, request);
+                    paymentResult = processVisaPaymentWithValidation(stiTest, request, pendingCharge);
                     break;
 
                 case QR_CODE:
@@ -417,7 +434,8 @@ public class STITestService {
         return savedPayment;
     }
 
-    private ApiResponse<Payment> processVisaPaymentWithValidation(STITest stiTest, STITestRequest request) {
+    private ApiResponse<Payment> processVisaPaymentWithValidation(STITest stiTest, STITestRequest request,
+            AtomicReference<PaymentService.StripeCharge> pendingCharge) {
         String cardNumber, expiryMonth, expiryYear, cvc, cardHolderName;
 
         // Kiểm tra xem có sử dụng thẻ đã lưu không
@@ -492,7 +510,8 @@ public class STITestService {
             description = "STI Test";
         }
 
-        ApiResponse<Payment> stripeResult = paymentService.processStripePayment(
+        // Chỉ lưu payment PROCESSING ở đây; PaymentIntent được tạo sau khi transaction commit (submitStripeCharge)
+        ApiResponse<PaymentService.StripeCharge> prepared = paymentService.prepareStripePayment(
                 stiTest.getCustomer().getId(),
                 "STI",
                 stiTest.getTestId(),
@@ -504,25 +523,61 @@ public class STITestService {
                 cvc,
                 cardHolderName);
 
-        // Cải thiện thông báo lỗi Stripe
-        if (!stripeResult.isSuccess()) {
-            String errorMessage = stripeResult.getMessage();
-            if (errorMessage.contains("Sending credit card numbers directly to the Stripe API")) {
-                errorMessage = "Thông tin thẻ không hợp lệ. Vui lòng kiểm tra lại thông tin thẻ hoặc thử phương thức thanh toán khác.";
-            } else if (errorMessage.contains("card was declined")) {
-                errorMessage = "Thẻ bị từ chối. Vui lòng kiểm tra lại thông tin thẻ hoặc liên hệ ngân hàng.";
-            } else if (errorMessage.contains("insufficient funds")) {
-                errorMessage = "Thẻ không đủ số dư. Vui lòng kiểm tra lại số dư thẻ.";
-            } else if (errorMessage.contains("expired")) {
-                errorMessage = "Thẻ đã hết hạn. Vui lòng sử dụng thẻ khác.";
-            } else if (errorMessage.contains("invalid")) {
-                errorMessage = "Thông tin thẻ không hợp lệ. Vui lòng kiểm tra lại.";
-            }
-
-            return new ApiResponse<>(false, errorMessage, stripeResult.getData());
+        if (!prepared.isSuccess()) {
+            return ApiResponse.error(prepared.getMessage());
+        }
+
+        pendingCharge.set(prepared.getData());
+        return ApiResponse.success("Payment is being processed", prepared.getData().payment());
+    }
+
+    /**
+     * Gọi Stripe cho payment VISA đã commit. Booking lỗi thì không trừ tiền thẻ, payment PROCESSING
+     * chưa có intent sẽ bị PaymentService.failStuckStripePayments chuyển FAILED.
+     */
+    private ApiResponse<STITestResponse> submitStripeCharge(ApiResponse<STITestResponse> booked,
+            PaymentService.StripeCharge charge, String failurePrefix) {
+        if (charge == null || !booked.isSuccess()) {
+            return booked;
+        }
+
+        ApiResponse<Payment> stripeResult = paymentService.submitStripePayment(charge);
+        STITestResponse response = booked.getData();
+        Payment payment = stripeResult.getData();
+
+        if (stripeResult.isSuccess()) {
+            if (response != null) {
+                response.setStripePaymentIntentId(payment.getStripePaymentIntentId());
+                response.setPaymentTransactionId(payment.getTransactionId());
+            }
+            return booked;
         }
 
-        return stripeResult;
+        if (response != null) {
+            response.setPaymentStatus(PaymentStatus.FAILED.name());
+            response.setPaymentFailureReason(payment.getNotes());
+            response.setCanRetryPayment(true);
+        }
+        return new ApiResponse<>(false, failurePrefix + describeStripeError(stripeResult.getMessage()), response);
+    }
+
+    // Cải thiện thông báo lỗi Stripe
+    private String describeStripeError(String errorMessage) {
+        if (errorMessage == null) {
+            return "Thanh toán thất bại. Vui lòng thử lại.";
+        }
+        if (errorMessage.contains("Sending credit card numbers directly to the Stripe API")) {
+            return "Thông tin thẻ không hợp lệ. Vui lòng kiểm tra lại thông tin thẻ hoặc thử phương thức thanh toán khác.";
+        } else if (errorMessage.contains("card was declined")) {
+            return "Thẻ bị từ chối. Vui lòng kiểm tra lại thông tin thẻ hoặc liên hệ ngân hàng.";
+        } else if (errorMessage.contains("insufficient funds")) {
+            return "Thẻ không đủ số dư. Vui lòng kiểm tra lại số dư thẻ.";
+        } else if (errorMessage.contains("expired")) {
+            return "Thẻ đã hết hạn. Vui lòng sử dụng thẻ khác.";
+        } else if (errorMessage.contains("invalid")) {
+            return "Thông tin thẻ không hợp lệ. Vui lòng kiểm tra lại.";
+        }
+        return errorMessage;
     }
 
     private ApiResponse<Payment> processQRPaymentWithValidation(STITest stiTest, STITestRequest request,
@@ -1604,8 +1659,15 @@ public class STITestService {
      * Retry payment for a test with failed payment
      * Allows users to retry payment with different payment method or card details
      */
-    @Transactional
     public ApiResponse<STITestResponse> retryPayment(Long testId, STITestRequest request, Long userId) {
+        AtomicReference<PaymentService.StripeCharge> pendingCharge = new AtomicReference<>();
+        ApiResponse<STITestResponse> retried = new TransactionTemplate(transactionManager)
+                .execute(status -> retryPaymentInTransaction(testId, request, userId, pendingCharge));
+        return submitStripeCharge(retried, pendingCharge.get(), "Payment retry failed: ");
+    }
+
+    private ApiResponse<STITestResponse> retryPaymentInTransaction(Long testId, STITestRequest request, Long userId,
+            AtomicReference<PaymentService.StripeCharge> pendingCharge) {
         try {
             log.info("Retrying payment for test {} by user {}", testId, userId);
 
@@ -1634,9 +1696,10 @@ public class STITestService {
 
             Payment existingPayment = existingPaymentOpt.get();
 
-            // Check if payment is failed or pending (can retry)
+            // Check if payment is failed or pending (can retry), or a VISA payment stuck before reaching Stripe
+            boolean stuckStripePayment = paymentService.isStuckStripePayment(existingPayment);
             if (existingPayment.getPaymentStatus() != PaymentStatus.FAILED &&
-                    existingPayment.getPaymentStatus() != PaymentStatus.PENDING) {
+                    existingPayment.getPaymentStatus() != PaymentStatus.PENDING && !stuckStripePayment) {
                 return ApiResponse
                         .error("Payment cannot be retried - current status: " + existingPayment.getPaymentStatus());
             }
@@ -1649,8 +1712,13 @@ public class STITestService {
                 return ApiResponse.error("Invalid payment method: " + request.getPaymentMethod());
             }
 
+            if (stuckStripePayment) {
+                paymentRepository.markStripePaymentFailed(existingPayment.getPaymentId(),
+                        "Superseded by payment retry", LocalDateTime.now());
+            }
+
             // Process new payment
-            ApiResponse<Payment> paymentResult = processPaymentForTest(test, paymentMethod, request);
+            ApiResponse<Payment> paymentResult = processPaymentForTest(test, paymentMethod, request, pendingCharge);
 
             if (!paymentResult.isSuccess()) {
                 log.warn("Payment retry failed for test {}: {}", testId, paymentResult.getMessage());
@@ -1659,16 +1727,19 @@ public class STITestService {
             }
 
             Payment newPayment = paymentResult.getData();
-            log.info("Payment retry successful - Test ID: {}, New Payment ID: {}, Status: {}",
+            log.info("Payment retry accepted - Test ID: {}, New Payment ID: {}, Status: {}",
                     test.getTestId(), newPayment.getPaymentId(), newPayment.getPaymentStatus());
 
             STITestResponse response = convertToResponse(test);
 
-            String message = "Payment retry successful";
+            String message = newPayment.getPaymentStatus() == PaymentStatus.PROCESSING ? "Payment retry submitted"
+                    : "Payment retry successful";
             if (paymentMethod == PaymentMethod.COD) {
                 message += " - Payment on delivery (pending confirmation)";
             } else if (newPayment.getPaymentStatus() == PaymentStatus.COMPLETED) {
                 message += " - Payment processed";
+            } else if (newPayment.getPaymentStatus() == PaymentStatus.PROCESSING) {
+                message += " - Payment processing, awaiting confirmation";
             } else if (paymentMethod == PaymentMethod.QR_CODE
                     && newPayment.getPaymentStatus() == PaymentStatus.PENDING) {
                 message += " - QR code generated, awaiting payment";
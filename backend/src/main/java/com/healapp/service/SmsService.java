@@ -1,11 +1,19 @@
 package com.healapp.service;
 
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
 
-import com.twilio.Twilio;
-import com.twilio.rest.api.v2010.account.Message;
-import com.twilio.type.PhoneNumber;
+import com.healapp.config.OutboundCallExecutor;
 
 import jakarta.annotation.PostConstruct;
 
@@ -21,6 +29,15 @@ public class SmsService {
     @Value("${twilio.phone.number}")
     private String fromPhoneNumber;
 
+    @Value("${twilio.api.url:https://api.twilio.com}")
+    private String twilioApiUrl;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private OutboundCallExecutor outboundCallExecutor;
+
     @PostConstruct
     public void init() {
         try {
@@ -31,7 +48,6 @@ public class SmsService {
                 System.err.println("Phone Number: " + (fromPhoneNumber != null ? "Set" : "Missing"));
                 return;
             }
-            Twilio.init(accountSid, authToken);
             System.out.println("Twilio SMS service initialized successfully");
         } catch (Exception e) {
             System.err.println("Failed to initialize Twilio SMS service: " + e.getMessage());
@@ -61,13 +77,24 @@ public class SmsService {
             System.out.println("Sending SMS to: " + toPhoneNumber);
             System.out.println("From: " + fromPhoneNumber);
 
-            Message message = Message.creator(
-                new PhoneNumber(toPhoneNumber),
-                new PhoneNumber(fromPhoneNumber),
-                messageBody
-            ).create();
+            // Gọi thẳng Twilio REST API qua HTTP client dùng chung (pool, timeout, circuit breaker)
+            HttpHeaders headers = new HttpHeaders();
+            headers.setBasicAuth(accountSid, authToken);
+            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+            MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+            form.add("To", toPhoneNumber);
+            form.add("From", fromPhoneNumber);
+            form.add("Body", messageBody);
+
+            String endpoint = twilioApiUrl + "/2010-04-01/Accounts/" + accountSid + "/Messages.json";
+            HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(form, headers);
+            // Không retry: gửi lại có thể làm người dùng nhận trùng OTP
+            ResponseEntity<Map> response = outboundCallExecutor.execute("twilio", "messages.create", false,
+                    () -> restTemplate.postForEntity(endpoint, request, Map.class));
 
-            System.out.println("SMS sent successfully. SID: " + message.getSid());
+            Object sid = response.getBody() != null ? response.getBody().get("sid") : null;
+            System.out.println("SMS sent successfully. SID: " + sid);
             return true;
 
         } catch (Exception e) {
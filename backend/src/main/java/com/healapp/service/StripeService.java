@@ -9,10 +9,12 @@ import org.springframework.stereotype.Service;
 import com.healapp.dto.ApiResponse;
 import com.healapp.model.STITest;
 import com.stripe.Stripe;
+import com.stripe.exception.SignatureVerificationException;
 import com.stripe.exception.StripeException;
-import com.stripe.model.Charge;
+import com.stripe.model.Event;
 import com.stripe.model.PaymentIntent;
 import com.stripe.model.Refund;
+import com.stripe.net.Webhook;
 import com.stripe.param.PaymentIntentCreateParams;
 import com.stripe.param.RefundCreateParams;
 
@@ -26,32 +28,38 @@ public class StripeService {
     @Value("${stripe.api.key}")
     private String stripeApiKey;
 
+    @Value("${stripe.webhook.secret}")
+    private String webhookSecret;
+
     @PostConstruct
     public void init() {
+        // Secret rỗng thì ai cũng tính được chữ ký HMAC hợp lệ và giả mạo payment_intent.succeeded
+        if (webhookSecret == null || webhookSecret.isBlank()) {
+            throw new IllegalStateException("stripe.webhook.secret must be set when Stripe is enabled");
+        }
         Stripe.apiKey = stripeApiKey;
         log.info("Stripe initialized with API key");
     }
 
 
-    // HYBRID - Xử lý thanh toán STI Test (Test cards + Real cards)
-    public ApiResponse<Map<String, String>> processPaymentForSTITest(STITest stiTest, String cardNumber,
-            String expMonth, String expYear, String cvc, String cardholderName) {
-
-        // Kiểm tra xem có phải test card không
-        String testPaymentMethodId = getTestPaymentMethodId(cardNumber);
-
-        if (testPaymentMethodId != null) {
-            // Sử dụng test payment method
-            return processPaymentWithTestCard(stiTest, testPaymentMethodId);
-        } else {
-            // Sử dụng real card data
-            return processPaymentWithRealCard(stiTest, cardNumber, expMonth, expYear, cvc, cardholderName);
-        }
-    }
-
-    // Xử lý thanh toán với Test Cards (sử dụng predefined payment methods)
-    private ApiResponse<Map<String, String>> processPaymentWithTestCard(STITest stiTest, String paymentMethodId) {
+    /**
+     * HYBRID - Tạo và xác nhận PaymentIntent cho STI Test (Test cards + Real cards).
+     * Chỉ một round-trip tới Stripe; kết quả cuối cùng (succeeded/failed, receipt) đến qua webhook,
+     * nên ở đây không gọi thêm Charge.retrieve. paymentId được gắn vào metadata để webhook
+     * tìm được Payment kể cả khi đến trước lúc lưu intent id.
+     */
+    public ApiResponse<Map<String, String>> processPaymentForSTITest(STITest stiTest, Long paymentId,
+            String cardNumber, String expMonth, String expYear, String cvc, String cardholderName) {
         try {
+            // Kiểm tra xem có phải test card không
+            String paymentMethodId = getTestPaymentMethodId(cardNumber);
+            String type = "test_sti";
+            if (paymentMethodId == null) {
+                // Chỉ hoạt động khi Stripe account được enable raw card data
+                paymentMethodId = createPaymentMethod(cardNumber, expMonth, expYear, cvc, cardholderName);
+                type = "real_sti";
+            }
+
             PaymentIntentCreateParams params = PaymentIntentCreateParams.builder()
                     .setCurrency("vnd")
                     .setAmount(stiTest.getTotalPrice().longValue())
@@ -62,23 +70,19 @@ public class StripeService {
                     .setReturnUrl("https://healapp.com/payment/return")
                     .putMetadata("testId", stiTest.getTestId().toString())
                     .putMetadata("customerId", stiTest.getCustomer().getId().toString())
-                    .putMetadata("type", "test_sti")
+                    .putMetadata("paymentId", paymentId.toString())
+                    .putMetadata("type", type)
                     .build();
 
             PaymentIntent paymentIntent = PaymentIntent.create(params);
+            log.info("💳 PaymentIntent {} created for payment {} - status: {}",
+                    paymentIntent.getId(), paymentId, paymentIntent.getStatus());
 
-            if ("succeeded".equals(paymentIntent.getStatus())) {
-                log.info("Test payment successful - PaymentIntent: {}", paymentIntent.getId());
+            if ("succeeded".equals(paymentIntent.getStatus()) || "processing".equals(paymentIntent.getStatus())) {
                 Map<String, String> data = new HashMap<>();
                 data.put("paymentIntentId", paymentIntent.getId());
-                String chargeId = paymentIntent.getLatestCharge();
-                String receiptUrl = null;
-                if (chargeId != null) {
-                    Charge charge = Charge.retrieve(chargeId);
-                    receiptUrl = charge.getReceiptUrl();
-                }
-                data.put("receiptUrl", receiptUrl);
-                return ApiResponse.success("Test payment processed successfully", data);
+                data.put("status", paymentIntent.getStatus());
+                return ApiResponse.success("Payment intent created", data);
             } else if ("requires_action".equals(paymentIntent.getStatus())) {
                 return ApiResponse.error("Payment requires additional authentication");
             } else {
@@ -86,61 +90,22 @@ public class StripeService {
             }
 
         } catch (StripeException e) {
-            log.error("Test payment error: {}", e.getMessage(), e);
-            return ApiResponse.error("Test payment processing error: " + e.getUserMessage());
+            log.error("💳 Stripe payment error: {}", e.getMessage(), e);
+            return ApiResponse.error("Payment processing error: " + e.getUserMessage());
         } catch (Exception e) {
-            log.error("Unexpected test payment error: {}", e.getMessage(), e);
-            return ApiResponse.error("Test payment processing failed: " + e.getMessage());
+            log.error("💳 Unexpected payment error: {}", e.getMessage(), e);
+            return ApiResponse.error("Payment processing failed: " + e.getMessage());
         }
     }
 
-    // Xử lý thanh toán với Real Cards (tạo payment method từ card data)
-    private ApiResponse<Map<String, String>> processPaymentWithRealCard(STITest stiTest, String cardNumber,
-            String expMonth, String expYear, String cvc, String cardholderName) {
-        try {
-            // Chỉ hoạt động khi Stripe account được enable raw card data
-            String paymentMethodId = createPaymentMethod(cardNumber, expMonth, expYear, cvc, cardholderName);
-
-            PaymentIntentCreateParams params = PaymentIntentCreateParams.builder()
-                    .setCurrency("vnd")
-                    .setAmount(stiTest.getTotalPrice().longValue())
-                    .setDescription("Gender Health - STI Test #" + stiTest.getTestId())
-                    .setReceiptEmail(stiTest.getCustomer().getEmail())
-                    .setPaymentMethod(paymentMethodId)
-                    .setConfirm(true)
-                    .setReturnUrl("https://healapp.com/payment/return")
-                    .putMetadata("testId", stiTest.getTestId().toString())
-                    .putMetadata("customerId", stiTest.getCustomer().getId().toString())
-                    .putMetadata("type", "real_sti")
-                    .build();
-
-            PaymentIntent paymentIntent = PaymentIntent.create(params);
-
-            if ("succeeded".equals(paymentIntent.getStatus())) {
-                log.info("💳 Real payment successful - PaymentIntent: {}", paymentIntent.getId());
-                Map<String, String> data = new HashMap<>();
-                data.put("paymentIntentId", paymentIntent.getId());
-                String chargeId = paymentIntent.getLatestCharge();
-                String receiptUrl = null;
-                if (chargeId != null) {
-                    Charge charge = Charge.retrieve(chargeId);
-                    receiptUrl = charge.getReceiptUrl();
-                }
-                data.put("receiptUrl", receiptUrl);
-                return ApiResponse.success("Real payment processed successfully", data);
-            } else if ("requires_action".equals(paymentIntent.getStatus())) {
-                return ApiResponse.error("Payment requires additional authentication");
-            } else {
-                return ApiResponse.error("Payment failed with status: " + paymentIntent.getStatus());
-            }
-
-        } catch (StripeException e) {
-            log.error("💳 Real payment error: {}", e.getMessage(), e);
-            return ApiResponse.error("Real payment processing error: " + e.getUserMessage());
-        } catch (Exception e) {
-            log.error("💳 Unexpected real payment error: {}", e.getMessage(), e);
-            return ApiResponse.error("Real payment processing failed: " + e.getMessage());
+    /**
+     * Xác thực chữ ký header Stripe-Signature và parse sự kiện webhook
+     */
+    public Event verifyWebhook(String payload, String signatureHeader) throws SignatureVerificationException {
+        if (webhookSecret == null || webhookSecret.isBlank()) {
+            throw new SignatureVerificationException("Webhook secret is not configured", signatureHeader);
         }
+        return Webhook.constructEvent(payload, signatureHeader, webhookSecret);
     }
 
     // Map test card numbers thành Stripe test payment method IDs
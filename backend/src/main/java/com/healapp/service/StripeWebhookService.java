@@ -0,0 +1,284 @@
+package com.healapp.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healapp.model.Payment;
+import com.healapp.model.PaymentStatus;
+import com.healapp.model.StripeWebhookEvent;
+import com.healapp.model.StripeWebhookEventStatus;
+import com.healapp.repository.PaymentRepository;
+import com.healapp.repository.StripeWebhookEventRepository;
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.model.Event;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Nhận webhook Stripe: xác thực chữ ký, ghi vào inbox stripe_webhook_events rồi trả 200 ngay.
+ * Worker trên stripeWebhookExecutor áp dụng từng sự kiện vào Payment trong transaction ngắn,
+ * không có I/O mạng; sự kiện lặp lại (Stripe gửi lại, hoặc đã áp dụng) không làm thay đổi gì thêm.
+ */
+@Slf4j
+@Service
+public class StripeWebhookService {
+
+    @Autowired
+    private StripeService stripeService;
+
+    @Autowired
+    private StripeWebhookEventRepository webhookEventRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("stripeWebhookExecutor")
+    private AsyncTaskExecutor webhookExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${stripe.webhook.batch-size:100}")
+    private int batchSize = 100;
+
+    @Value("${stripe.webhook.max-attempts:8}")
+    private int maxAttempts = 8;
+
+    @Value("${stripe.webhook.backoff.initial-seconds:30}")
+    private long initialBackoffSeconds = 30;
+
+    @Value("${stripe.webhook.backoff.max-seconds:3600}")
+    private long maxBackoffSeconds = 3600;
+
+    @Value("${stripe.webhook.retention-days:30}")
+    private int retentionDays = 30;
+
+    @Value("${stripe.webhook.dead-retention-days:90}")
+    private int deadRetentionDays = 90;
+
+    /**
+     * Xác thực và ghi sự kiện vào inbox. Trả về false nếu chữ ký không hợp lệ.
+     */
+    public boolean receive(String payload, String signatureHeader) {
+        Event event;
+        try {
+            event = stripeService.verifyWebhook(payload, signatureHeader);
+        } catch (SignatureVerificationException e) {
+            meterRegistry.counter("stripe.webhook.rejected").increment();
+            log.warn("Rejected Stripe webhook with invalid signature: {}", e.getMessage());
+            return false;
+        }
+
+        StripeWebhookEvent inbox = new StripeWebhookEvent();
+        inbox.setEventId(event.getId());
+        inbox.setEventType(event.getType());
+        inbox.setPayload(payload);
+        inbox.setStatus(StripeWebhookEventStatus.PENDING);
+        inbox.setAttempts(0);
+        try {
+            inbox = webhookEventRepository.saveAndFlush(inbox);
+        } catch (DataIntegrityViolationException e) {
+            // Stripe gửi lại sự kiện đã có trong inbox
+            log.debug("Stripe event {} already received", event.getId());
+            return true;
+        }
+        meterRegistry.counter("stripe.webhook.received", "type", event.getType()).increment();
+
+        Long id = inbox.getId();
+        try {
+            webhookExecutor.execute(() -> process(id));
+        } catch (TaskRejectedException e) {
+            // Pool đầy: sự kiện đã nằm trong inbox, lượt quét định kỳ sẽ xử lý
+            log.debug("Stripe webhook pool saturated, event {} left for the sweeper", event.getId());
+        }
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${stripe.webhook.poll-interval-ms:10000}")
+    public void drainInbox() {
+        LocalDateTime now = LocalDateTime.now();
+        webhookEventRepository.releaseStaleClaims(now.minusMinutes(10));
+
+        List<Long> dueIds = webhookEventRepository.findDueIds(StripeWebhookEventStatus.PENDING, now,
+                PageRequest.of(0, batchSize));
+        for (Long id : dueIds) {
+            try {
+                webhookExecutor.execute(() -> process(id));
+            } catch (TaskRejectedException e) {
+                break;
+            }
+        }
+    }
+
+    @Scheduled(cron = "0 45 1 * * ?") // Chạy lúc 1:45 AM mỗi ngày
+    public void purgeProcessedEvents() {
+        int deleted = webhookEventRepository.deleteProcessedBefore(LocalDateTime.now().minusDays(retentionDays));
+        log.info("Purged {} processed Stripe webhook events older than {} days", deleted, retentionDays);
+        int dead = webhookEventRepository.deleteDeadBefore(LocalDateTime.now().minusDays(deadRetentionDays));
+        log.info("Purged {} dead Stripe webhook events older than {} days", dead, deadRetentionDays);
+    }
+
+    void process(Long id) {
+        if (webhookEventRepository.claim(id, LocalDateTime.now()) == 0) {
+            // Worker khác đã nhận
+            return;
+        }
+        StripeWebhookEvent event = webhookEventRepository.findById(id).orElse(null);
+        if (event == null) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        event.setAttempts(event.getAttempts() + 1);
+        try {
+            new TransactionTemplate(transactionManager)
+                    .executeWithoutResult(status -> apply(event.getEventId(), event.getEventType(), event.getPayload()));
+            event.setStatus(StripeWebhookEventStatus.PROCESSED);
+            event.setProcessedAt(now);
+            event.setLastError(null);
+            meterRegistry.counter("stripe.webhook.processed", "type", event.getEventType()).increment();
+            Timer.builder("stripe.webhook.processing.lag")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(Duration.between(event.getReceivedAt(), now));
+        } catch (Exception e) {
+            event.setLastError(e.getMessage());
+            if (event.getAttempts() >= maxAttempts) {
+                event.setStatus(StripeWebhookEventStatus.DEAD);
+                meterRegistry.counter("stripe.webhook.dead", "type", event.getEventType()).increment();
+                log.error("Stripe event {} ({}) moved to dead letter after {} attempts: {}",
+                        event.getEventId(), event.getEventType(), event.getAttempts(), e.getMessage());
+            } else {
+                event.setStatus(StripeWebhookEventStatus.PENDING);
+                event.setNextAttemptAt(now.plusSeconds(backoffSeconds(event.getAttempts())));
+                log.warn("Stripe event {} ({}) failed (attempt {}), retrying at {}: {}",
+                        event.getEventId(), event.getEventType(), event.getAttempts(), event.getNextAttemptAt(),
+                        e.getMessage());
+            }
+        }
+        webhookEventRepository.save(event);
+    }
+
+    // Áp dụng một sự kiện; chạy lại nhiều lần cho cùng sự kiện vẫn cho cùng kết quả
+    void apply(String eventId, String eventType, String payload) {
+        JsonNode object;
+        try {
+            object = objectMapper.readTree(payload).path("data").path("object");
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid Stripe event payload", e);
+        }
+
+        switch (eventType) {
+            case "payment_intent.succeeded" -> applyPaymentIntentSucceeded(eventId, object);
+            case "payment_intent.payment_failed" -> applyPaymentIntentFailed(eventId, object);
+            case "charge.succeeded" -> applyChargeReceipt(object);
+            default -> log.debug("Ignoring Stripe event {} of type {}", eventId, eventType);
+        }
+    }
+
+    private void applyPaymentIntentSucceeded(String eventId, JsonNode intent) {
+        String intentId = intent.path("id").asText();
+        Payment payment = findPayment(intentId, intent.path("metadata")).orElse(null);
+        if (payment == null) {
+            log.info("No payment for Stripe PaymentIntent {}, ignoring event {}", intentId, eventId);
+            return;
+        }
+        if (payment.getPaymentStatus() == PaymentStatus.COMPLETED
+                || payment.getPaymentStatus() == PaymentStatus.REFUNDED) {
+            return;
+        }
+
+        payment.setPaymentStatus(PaymentStatus.COMPLETED);
+        payment.setStripePaymentIntentId(intentId);
+        payment.setTransactionId(intentId);
+        payment.setPaidAt(LocalDateTime.now());
+        payment.setNotes((payment.getNotes() != null ? payment.getNotes() + "; " : "") +
+                "Confirmed via Stripe webhook - Event: " + eventId);
+        paymentRepository.save(payment);
+        log.info("Stripe payment completed - Payment ID: {}, PaymentIntent: {}", payment.getPaymentId(), intentId);
+    }
+
+    private void applyPaymentIntentFailed(String eventId, JsonNode intent) {
+        String intentId = intent.path("id").asText();
+        Payment payment = findPayment(intentId, intent.path("metadata")).orElse(null);
+        if (payment == null) {
+            log.info("No payment for Stripe PaymentIntent {}, ignoring event {}", intentId, eventId);
+            return;
+        }
+        if (payment.getPaymentStatus() != PaymentStatus.PROCESSING
+                && payment.getPaymentStatus() != PaymentStatus.PENDING) {
+            return;
+        }
+
+        String reason = intent.path("last_payment_error").path("message").asText("Payment failed");
+        payment.setPaymentStatus(PaymentStatus.FAILED);
+        payment.setStripePaymentIntentId(intentId);
+        payment.setNotes((payment.getNotes() != null ? payment.getNotes() + "; " : "") + "Stripe error: " + reason);
+        paymentRepository.save(payment);
+        log.warn("Stripe payment failed - Payment ID: {}, Error: {}", payment.getPaymentId(), reason);
+    }
+
+    private void applyChargeReceipt(JsonNode charge) {
+        String intentId = charge.path("payment_intent").asText(null);
+        String receiptUrl = charge.path("receipt_url").asText(null);
+        if (intentId == null || receiptUrl == null) {
+            return;
+        }
+        // charge.succeeded có thể đến trước khi intent id được lưu: ném lỗi để retry sau
+        Payment payment = findPayment(intentId, charge.path("metadata"))
+                .orElseThrow(() -> new IllegalStateException("Payment for PaymentIntent " + intentId + " not found yet"));
+        if (receiptUrl.equals(payment.getStripeReceiptUrl())) {
+            return;
+        }
+        payment.setStripeReceiptUrl(receiptUrl);
+        paymentRepository.save(payment);
+    }
+
+    // Tìm theo intent id; nếu chưa kịp lưu intent id thì theo paymentId trong metadata
+    private Optional<Payment> findPayment(String intentId, JsonNode metadata) {
+        Optional<Payment> payment = paymentRepository.findByStripePaymentIntentId(intentId);
+        if (payment.isPresent()) {
+            return payment;
+        }
+        String paymentId = metadata.path("paymentId").asText(null);
+        if (paymentId == null) {
+            return Optional.empty();
+        }
+        try {
+            return paymentRepository.findById(Long.valueOf(paymentId));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    // 30s, 60s, 120s, ... tối đa max-seconds
+    long backoffSeconds(int attempts) {
+        long delay = initialBackoffSeconds << Math.min(attempts - 1, 20);
+        return Math.min(delay, maxBackoffSeconds);
+    }
+}
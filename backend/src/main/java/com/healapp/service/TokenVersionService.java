@@ -0,0 +1,103 @@
+package com.healapp.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.healapp.repository.UserRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache version token và trạng thái tài khoản theo userId, để JwtAuthenticationFilter kiểm tra token còn hiệu lực
+ * mà không truy vấn DB mỗi request. Trên node thực hiện thay đổi, entry bị xoá ngay sau commit;
+ * các node khác thấy thay đổi chậm nhất sau jwt.version-cache.ttl-ms.
+ */
+@Slf4j
+@Service
+public class TokenVersionService {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${jwt.version-cache.ttl-ms:30000}")
+    private long ttlMs = 30000;
+
+    @Value("${jwt.version-cache.max-entries:50000}")
+    private int maxEntries = 50000;
+
+    private final Map<Long, TokenState> cache = new ConcurrentHashMap<>();
+
+    private record TokenState(int version, boolean enabled, long loadedAtNanos) {
+    }
+
+    /**
+     * Token với version này của user còn dùng được không (user tồn tại, active, chưa xoá, version khớp).
+     */
+    public boolean isCurrent(Long userId, int tokenVersion) {
+        if (userId == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        TokenState state = cache.get(userId);
+        if (state == null || now - state.loadedAtNanos() > TimeUnit.MILLISECONDS.toNanos(ttlMs)) {
+            state = load(userId, now);
+        }
+        return state.enabled() && state.version() == tokenVersion;
+    }
+
+    private TokenState load(Long userId, long now) {
+        meterRegistry.counter("jwt.version-cache.miss").increment();
+        List<Object[]> rows = userRepository.findTokenState(userId);
+        TokenState state;
+        if (rows.isEmpty()) {
+            state = new TokenState(-1, false, now);
+        } else {
+            Object[] row = rows.get(0);
+            int version = row[0] != null ? ((Number) row[0]).intValue() : 0;
+            boolean enabled = Boolean.TRUE.equals(row[1]) && !Boolean.TRUE.equals(row[2]);
+            state = new TokenState(version, enabled, now);
+        }
+        if (cache.size() < maxEntries || cache.containsKey(userId)) {
+            cache.put(userId, state);
+        }
+        return state;
+    }
+
+    /**
+     * Xoá entry của user sau khi transaction hiện tại commit (version đã tăng trong DB).
+     */
+    public void evictAfterCommit(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.remove(userId);
+                }
+            });
+        } else {
+            cache.remove(userId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.version-cache.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        cache.values().removeIf(state -> state.loadedAtNanos() - cutoff < 0);
+    }
+}
@@ -1,5 +1,6 @@
 package com.healapp.service;
 
+import java.time.Duration;
 import java.time.LocalTime;
 import java.util.HashMap;
 import java.util.List;
@@ -9,11 +10,14 @@ import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.healapp.config.UserPrincipal;
 import com.healapp.dto.ApiResponse;
 import com.healapp.dto.ChangePasswordRequest;
 import com.healapp.dto.CreateAccountRequest;
@@ -44,7 +48,9 @@ import com.healapp.utils.TimezoneUtils;
 
 import jakarta.mail.MessagingException;
 import jakarta.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 @Service
 public class UserService {
 
@@ -57,6 +63,9 @@ public class UserService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private PasswordHashService passwordHashService;
+
     @Autowired
     private PasswordResetService passwordResetService;
 
@@ -81,6 +90,9 @@ public class UserService {
     @Autowired
     private PhoneVerificationService phoneVerificationService;
 
+    @Autowired
+    private RateLimiterService rateLimiterService;
+
     @Value("${app.avatar.url.pattern}default.jpg")
     private String defaultAvatarPath;
 
@@ -189,31 +201,28 @@ public class UserService {
         try {
             String usernameOrEmail = loginRequest.getUsername();
 
-            UserDtls user = null;
-
-            // Tìm user theo email hoặc username
-            if (usernameOrEmail.contains("@")) {
-                // Nếu có ký tự @, coi như email
-                user = findActiveUserByEmail(usernameOrEmail);
-            } else {
-                // Nếu không có @, coi như username
-                user = findActiveUserByUsername(usernameOrEmail);
+            // Khoá theo tài khoản chỉ tính các lần sai mật khẩu (chống dò mật khẩu từ nhiều IP); kiểm tra không tiêu
+            // lượt nên request đúng không khoá được tài khoản. Lượng request mỗi IP do login-ip chặn ở filter
+            String accountKey = usernameOrEmail != null ? usernameOrEmail.trim().toLowerCase() : null;
+            Optional<Duration> wait = rateLimiterService.check(RateLimiterService.LOGIN_ACCOUNT, accountKey);
+            if (wait.isPresent()) {
+                return ApiResponse.error("Too many login attempts, please retry after "
+                        + RateLimiterService.retryAfterSeconds(wait.get()) + " seconds");
             }
 
-            // Nếu không tìm thấy, thử tìm theo cả 2 cách (fallback)
-            if (user == null && usernameOrEmail.contains("@")) {
-                // Thử tìm theo username nếu email không tìm thấy
-                user = findActiveUserByUsername(usernameOrEmail);
-            } else if (user == null && !usernameOrEmail.contains("@")) {
-                // Thử tìm theo email nếu username không tìm thấy
-                user = findActiveUserByEmail(usernameOrEmail);
-            }
+            // Một truy vấn OR trên hai unique index username / email
+            UserDtls user = findActiveUserForLogin(usernameOrEmail);
 
             if (user == null) {
                 return ApiResponse.error("Invalid username/email or password");
             }
 
-            if (!passwordEncoder.matches(loginRequest.getPassword(), user.getPassword())) {
+            // BCrypt chạy trên pool CPU riêng, hash cost cũ được tính lại trong cùng task
+            PasswordHashService.Verification verification = passwordHashService.verify(loginRequest.getPassword(),
+                    user.getPassword());
+            if (!verification.matches()) {
+                // Chỉ tài khoản có thật mới có bucket: dò username không tồn tại không làm đầy chính sách này
+                rateLimiterService.tryAcquire(RateLimiterService.LOGIN_ACCOUNT, accountKey);
                 return ApiResponse.error("Invalid username/email or password");
             }
 
@@ -239,13 +248,31 @@ public class UserService {
             // Thêm provider để frontend biết user đăng nhập qua Google hay Local
             loginResponse.setProvider(user.getProvider() != null ? user.getProvider().name() : "LOCAL");
 
+            if (verification.upgradedHash() != null) {
+                upgradePasswordHash(user, verification.upgradedHash());
+            }
+
+            rateLimiterService.reset(RateLimiterService.LOGIN_ACCOUNT, accountKey);
             return ApiResponse.success("Login successful", loginResponse);
 
+        } catch (PasswordHashService.HashPoolBusyException e) {
+            return ApiResponse.error(e.getMessage());
         } catch (Exception e) {
             return ApiResponse.error("Login failed: " + e.getMessage());
         }
     }
 
+    // Lỗi ghi hash mới không làm hỏng login: hash cũ vẫn đúng, lần login sau thử lại
+    private void upgradePasswordHash(UserDtls user, String upgradedHash) {
+        try {
+            if (userRepository.upgradePasswordHash(user.getId(), user.getPassword(), upgradedHash) > 0) {
+                log.debug("Upgraded password hash cost for user {}", user.getId());
+            }
+        } catch (Exception e) {
+            log.warn("Could not upgrade password hash for user {}: {}", user.getId(), e.getMessage());
+        }
+    }
+
     public UserDtls findByEmail(String email) {
         return userRepository.findByEmail(email).orElse(null);
     }
@@ -321,6 +348,11 @@ public class UserService {
     }
 
     public Long getUserIdFromUsername(String username) {
+        // User đang đăng nhập: id đã có trong principal dựng từ JWT, không cần truy vấn
+        Optional<UserPrincipal> principal = UserPrincipal.current();
+        if (principal.isPresent() && principal.get().getUsername().equals(username)) {
+            return principal.get().getId();
+        }
         UserDtls user = userRepository.findByUsername(username).orElse(null);
         return user != null ? user.getId() : null;
     }
@@ -809,9 +841,9 @@ public class UserService {
     public Map<String, Long> getAdminDashboardUserStats() {
         Map<String, Long> stats = new HashMap<>();
         stats.put("totalUsers", userRepository.count());
-        stats.put("activeDoctors", userRepository.findByRoleNameAndIsActive("CONSULTANT", true).stream().count());
-        stats.put("activeStaffs", userRepository.findByRoleNameAndIsActive("STAFF", true).stream().count());
-        stats.put("activePatients", userRepository.findByRoleNameAndIsActive("CUSTOMER", true).stream().count());
+        stats.put("activeDoctors", userRepository.countByRoleNameAndIsActive("CONSULTANT", true));
+        stats.put("activeStaffs", userRepository.countByRoleNameAndIsActive("STAFF", true));
+        stats.put("activePatients", userRepository.countByRoleNameAndIsActive("CUSTOMER", true));
         return stats;
     }
 
@@ -890,53 +922,38 @@ public class UserService {
             return false;
         }
 
-        // Chỉ kiểm tra trong user active và chưa bị xóa
-        return userRepository.findAll().stream()
-                .filter(user -> user.getIsActive() && !user.getIsDeleted()) // Chỉ check user active
-                .anyMatch(user -> {
-                    String userPhone = user.getPhone();
-                    if (userPhone == null) return false;
-
-                    // Loại bỏ suffix _V (verified) và _D (deleted) nếu có
-                    String cleanUserPhone = userPhone;
-                    if (userPhone.endsWith("_V")) {
-                        cleanUserPhone = userPhone.substring(0, userPhone.length() - 2);
-                    } else if (userPhone.contains("_D")) {
-                        // Phone đã bị xóa sẽ có suffix _D{digits}, bỏ qua
-                        return false;
-                    }
-
-                    return cleanUserPhone.equals(phone);
-                });
+        // Chỉ kiểm tra trong user active và chưa bị xóa, tra qua index idx_user_phone_normalized
+        return userRepository.existsByPhoneNormalizedAndIsActiveTrueAndIsDeletedFalse(UserDtls.normalizePhone(phone));
     }
 
     /**
      * Lấy phone number gốc (bỏ suffix _V và _D)
      */
     public String getCleanPhoneNumber(String phone) {
-        if (phone == null || phone.trim().isEmpty()) {
-            return phone;
-        }
-
-        // Loại bỏ suffix _V (verified)
-        if (phone.endsWith("_V")) {
-            return phone.substring(0, phone.length() - 2);
-        }
-        
-        // Loại bỏ suffix _D{digits} (deleted) - pattern: _D + 5 digits
-        if (phone.contains("_D")) {
-            int deleteSuffixIndex = phone.indexOf("_D");
-            return phone.substring(0, deleteSuffixIndex);
-        }
-
-        return phone;
+        // Cùng quy tắc với cột phone_normalized
+        return UserDtls.normalizePhone(phone);
     }
 
     /**
      * Kiểm tra phone number đã được verified chưa
      */
     public boolean isPhoneVerified(String phone) {
-        return phone != null && phone.endsWith("_V");
+        return UserDtls.isVerifiedPhone(phone);
+    }
+
+    /**
+     * Điền phone_normalized / phone_verified cho user tạo trước khi có hai cột này (chạy lại không thay đổi gì)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillPhoneState() {
+        try {
+            int updated = userRepository.backfillPhoneState();
+            if (updated > 0) {
+                log.info("Backfilled normalized phone for {} users", updated);
+            }
+        } catch (Exception e) {
+            log.error("Failed to backfill normalized phone: {}", e.getMessage(), e);
+        }
     }
 
     // OAuth-related methods
@@ -1155,4 +1172,20 @@ public class UserService {
     public UserDtls findActiveUserByUsername(String username) {
         return userRepository.findByUsernameAndIsActiveTrueAndIsDeletedFalse(username).orElse(null);
     }
+
+    /**
+     * Tìm user active để login theo username hoặc email trong một truy vấn. Nếu chuỗi khớp username của user này
+     * và email của user khác thì ưu tiên theo dạng chuỗi: có '@' là email, ngược lại là username
+     */
+    public UserDtls findActiveUserForLogin(String usernameOrEmail) {
+        List<UserDtls> candidates = userRepository.findActiveByUsernameOrEmail(usernameOrEmail);
+        if (candidates.size() <= 1) {
+            return candidates.isEmpty() ? null : candidates.get(0);
+        }
+        boolean isEmail = usernameOrEmail.contains("@");
+        return candidates.stream()
+                .filter(u -> usernameOrEmail.equalsIgnoreCase(isEmail ? u.getEmail() : u.getUsername()))
+                .findFirst()
+                .orElse(candidates.get(0));
+    }
 }
\ No newline at end of file
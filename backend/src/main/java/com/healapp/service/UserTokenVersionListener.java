@@ -0,0 +1,53 @@
+package com.healapp.service;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.healapp.model.UserDtls;
+
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostUpdate;
+import jakarta.persistence.PreUpdate;
+
+/**
+ * Tăng UserDtls.tokenVersion khi mật khẩu, role hoặc trạng thái active/deleted thay đổi, bất kể luồng nào lưu user
+ * (admin disable, user xoá tài khoản, đổi/reset mật khẩu, chuyển role consultant...). JWT phát hành trước đó
+ * mang version cũ nên bị JwtAuthenticationFilter từ chối.
+ */
+@Component
+public class UserTokenVersionListener {
+
+    // Lazy: listener được Hibernate tạo trong lúc dựng EntityManagerFactory
+    @Autowired
+    private ObjectProvider<TokenVersionService> tokenVersionService;
+
+    @PostLoad
+    @PostPersist
+    public void onLoad(UserDtls user) {
+        user.setSecurityStamp(stamp(user));
+    }
+
+    // Hibernate đọc lại state sau @PreUpdate nên version mới nằm trong cùng câu UPDATE
+    @PreUpdate
+    public void onUpdate(UserDtls user) {
+        if (user.getSecurityStamp() != null && !user.getSecurityStamp().equals(stamp(user))) {
+            user.setTokenVersion((user.getTokenVersion() != null ? user.getTokenVersion() : 0) + 1);
+        }
+    }
+
+    @PostUpdate
+    public void onUpdated(UserDtls user) {
+        String current = stamp(user);
+        if (!current.equals(user.getSecurityStamp())) {
+            user.setSecurityStamp(current);
+            tokenVersionService.getObject().evictAfterCommit(user.getId());
+        }
+    }
+
+    private String stamp(UserDtls user) {
+        Long roleId = user.getRole() != null ? user.getRole().getRoleId() : null;
+        return user.getPassword() + "|" + roleId + "|" + user.getIsActive() + "|" + user.getIsDeleted();
+    }
+}
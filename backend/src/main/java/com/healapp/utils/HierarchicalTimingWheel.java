@@ -0,0 +1,202 @@
+package com.healapp.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Timing wheel phân tầng (kiểu Kafka): thêm, huỷ một timeout là O(1); mỗi lần advance chỉ xử lý các bucket
+ * đã tới hạn thay vì quét toàn bộ phần tử. Tầng 0 có wheelSize bucket, mỗi bucket rộng tickMs; timeout xa hơn
+ * tickMs * wheelSize được đặt ở tầng trên (bucket rộng gấp wheelSize lần) và hạ dần xuống khi tới gần hạn.
+ * Phần tử không bao giờ hết hạn sớm, chậm nhiều nhất một tick. Không thread-safe, caller tự đồng bộ.
+ */
+public class HierarchicalTimingWheel<T> {
+
+    /**
+     * Handle của một phần tử trong wheel, dùng để huỷ.
+     */
+    public static final class Timeout<T> {
+        private final T item;
+        private final long expirationMs;
+        private Bucket<T> bucket;
+
+        private Timeout(T item, long expirationMs) {
+            this.item = item;
+            this.expirationMs = expirationMs;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public long getExpirationMs() {
+            return expirationMs;
+        }
+    }
+
+    private static final class Bucket<T> {
+        private final int level;
+        private final Set<Timeout<T>> timeouts = new LinkedHashSet<>();
+        // Thời điểm xử lý bucket, -1 khi bucket rỗng và không nằm trong queue
+        private long expirationMs = -1;
+
+        private Bucket(int level) {
+            this.level = level;
+        }
+    }
+
+    private final class Level {
+        private final int index;
+        private final long tickMs;
+        private final long intervalMs;
+        private final List<Bucket<T>> buckets;
+        private long currentTimeMs;
+        private Level overflow;
+
+        private Level(int index, long tickMs, long startMs) {
+            this.index = index;
+            this.tickMs = tickMs;
+            this.intervalMs = tickMs * wheelSize;
+            this.currentTimeMs = startMs - (startMs % tickMs);
+            this.buckets = new ArrayList<>(wheelSize);
+            for (int i = 0; i < wheelSize; i++) {
+                buckets.add(new Bucket<>(index));
+            }
+        }
+
+        private boolean add(Timeout<T> timeout) {
+            long expiration = timeout.expirationMs;
+            if (expiration < currentTimeMs) {
+                return false;
+            }
+            if (expiration < currentTimeMs + intervalMs) {
+                long virtualId = expiration / tickMs;
+                Bucket<T> bucket = buckets.get((int) (virtualId % wheelSize));
+                bucket.timeouts.add(timeout);
+                timeout.bucket = bucket;
+                // Tầng 0 xử lý ở cuối khoảng của bucket (phần tử đã hết hạn hẳn),
+                // tầng trên ở đầu khoảng để kịp hạ phần tử xuống tầng 0
+                long bucketExpiration = index == 0 ? (virtualId + 1) * tickMs : virtualId * tickMs;
+                if (bucket.expirationMs != bucketExpiration) {
+                    // Khoá sắp xếp của queue: phải lấy bucket ra trước khi đổi
+                    if (bucket.expirationMs != -1) {
+                        queue.remove(bucket);
+                    }
+                    bucket.expirationMs = bucketExpiration;
+                    queue.add(bucket);
+                }
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Level(index + 1, intervalMs, currentTimeMs);
+            }
+            return overflow.add(timeout);
+        }
+
+        private void advanceClock(long timeMs) {
+            if (timeMs >= currentTimeMs + tickMs) {
+                currentTimeMs = timeMs - (timeMs % tickMs);
+                if (overflow != null) {
+                    overflow.advanceClock(currentTimeMs);
+                }
+            }
+        }
+    }
+
+    private final int wheelSize;
+    private final Level root;
+    // Chỉ chứa bucket không rỗng, sắp theo thời điểm hết hạn: số bucket nhỏ (wheelSize * số tầng).
+    // Cùng thời điểm thì tầng thấp trước, để bucket tầng 0 hết hạn trước khi tầng trên hạ phần tử vào cùng slot
+    private final PriorityQueue<Bucket<T>> queue = new PriorityQueue<>(
+            Comparator.<Bucket<T>>comparingLong(b -> b.expirationMs).thenComparingInt(b -> b.level));
+    private int size;
+
+    public HierarchicalTimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize < 2) {
+            throw new IllegalArgumentException("tickMs must be positive and wheelSize at least 2");
+        }
+        this.wheelSize = wheelSize;
+        this.root = new Level(0, tickMs, startMs);
+    }
+
+    /**
+     * Thêm phần tử hết hạn tại expirationMs. Trả về null nếu đã hết hạn (trong tick hiện tại), caller tự xử lý.
+     */
+    public Timeout<T> add(T item, long expirationMs) {
+        Timeout<T> timeout = new Timeout<>(item, expirationMs);
+        if (!root.add(timeout)) {
+            return null;
+        }
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Huỷ timeout chưa hết hạn; bỏ qua nếu đã hết hạn hoặc đã huỷ.
+     */
+    public void cancel(Timeout<T> timeout) {
+        if (timeout == null || timeout.bucket == null) {
+            return;
+        }
+        Bucket<T> bucket = timeout.bucket;
+        timeout.bucket = null;
+        if (bucket.timeouts.remove(timeout)) {
+            size--;
+            if (bucket.timeouts.isEmpty()) {
+                queue.remove(bucket);
+                bucket.expirationMs = -1;
+            }
+        }
+    }
+
+    /**
+     * Tiến đồng hồ tới nowMs, gọi onExpire cho mọi phần tử đã hết hạn.
+     */
+    public void advance(long nowMs, Consumer<T> onExpire) {
+        while (!queue.isEmpty() && queue.peek().expirationMs <= nowMs) {
+            Bucket<T> bucket = queue.poll();
+            root.advanceClock(bucket.expirationMs);
+            List<Timeout<T>> timeouts = new ArrayList<>(bucket.timeouts);
+            bucket.timeouts.clear();
+            bucket.expirationMs = -1;
+            for (Timeout<T> timeout : timeouts) {
+                // Bucket tầng trên: hạ xuống tầng dưới nếu chưa thực sự tới hạn
+                if (!root.add(timeout)) {
+                    timeout.bucket = null;
+                    size--;
+                    onExpire.accept(timeout.item);
+                }
+            }
+        }
+        root.advanceClock(nowMs);
+    }
+
+    /**
+     * Lấy ra một phần tử thuộc bucket hết hạn sớm nhất (gần đúng theo độ rộng bucket), dùng khi cần evict.
+     */
+    public T pollEarliest() {
+        Bucket<T> bucket = queue.peek();
+        if (bucket == null) {
+            return null;
+        }
+        Iterator<Timeout<T>> iterator = bucket.timeouts.iterator();
+        Timeout<T> timeout = iterator.next();
+        iterator.remove();
+        timeout.bucket = null;
+        size--;
+        if (bucket.timeouts.isEmpty()) {
+            queue.poll();
+            bucket.expirationMs = -1;
+        }
+        return timeout.item;
+    }
+
+    public int size() {
+        return size;
+    }
+}
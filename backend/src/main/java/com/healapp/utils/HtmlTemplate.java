@@ -0,0 +1,126 @@
+package com.healapp.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Template HTML đã biên dịch: nội dung được tách một lần thành các đoạn literal và
+ * placeholder. {{name}} được escape HTML, {{{name}}} chèn nguyên văn (chỉ dùng cho
+ * HTML do template khác render ra).
+ */
+public final class HtmlTemplate {
+
+    private final String name;
+    private final String[] literals;   // literals.length == slots.length + 1
+    private final int[] slots;         // vị trí giá trị trong mảng values cho mỗi placeholder
+    private final boolean[] raw;
+    private final Map<String, Integer> slotIndex;
+    private final int literalLength;
+
+    private HtmlTemplate(String name, List<String> literals, List<Integer> slots, List<Boolean> raw,
+            Map<String, Integer> slotIndex) {
+        this.name = name;
+        this.literals = literals.toArray(new String[0]);
+        this.slots = slots.stream().mapToInt(Integer::intValue).toArray();
+        this.raw = new boolean[raw.size()];
+        for (int i = 0; i < this.raw.length; i++) {
+            this.raw[i] = raw.get(i);
+        }
+        this.slotIndex = Map.copyOf(slotIndex);
+        this.literalLength = literals.stream().mapToInt(String::length).sum();
+    }
+
+    public static HtmlTemplate compile(String name, String source) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        List<Boolean> raw = new ArrayList<>();
+        Map<String, Integer> slotIndex = new HashMap<>();
+
+        int cursor = 0;
+        while (true) {
+            int open = source.indexOf("{{", cursor);
+            if (open < 0) {
+                literals.add(source.substring(cursor));
+                break;
+            }
+            boolean rawSlot = source.startsWith("{{{", open);
+            String closeToken = rawSlot ? "}}}" : "}}";
+            int nameStart = open + (rawSlot ? 3 : 2);
+            int close = source.indexOf(closeToken, nameStart);
+            if (close < 0) {
+                throw new IllegalStateException("Unclosed placeholder in email template " + name + " at offset " + open);
+            }
+            String slotName = source.substring(nameStart, close).trim();
+            if (slotName.isEmpty()) {
+                throw new IllegalStateException("Empty placeholder in email template " + name + " at offset " + open);
+            }
+
+            literals.add(source.substring(cursor, open));
+            slots.add(slotIndex.computeIfAbsent(slotName, k -> slotIndex.size()));
+            raw.add(rawSlot);
+            cursor = close + closeToken.length();
+        }
+        return new HtmlTemplate(name, literals, slots, raw, slotIndex);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Kích thước gợi ý cho buffer render
+    public int getLiteralLength() {
+        return literalLength;
+    }
+
+    /**
+     * Render vào buffer cho trước. keyValues là các cặp tên/giá trị xen kẽ;
+     * giá trị null hoặc placeholder không được truyền sẽ render thành chuỗi rỗng.
+     */
+    public void renderTo(StringBuilder out, Object... keyValues) {
+        if (keyValues.length % 2 != 0) {
+            throw new IllegalArgumentException("Template values must be name/value pairs: " + name);
+        }
+        Object[] values = new Object[slotIndex.size()];
+        for (int i = 0; i < keyValues.length; i += 2) {
+            Integer slot = slotIndex.get((String) keyValues[i]);
+            if (slot == null) {
+                throw new IllegalArgumentException("Unknown placeholder '" + keyValues[i] + "' in email template " + name);
+            }
+            values[slot] = keyValues[i + 1];
+        }
+
+        out.append(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            Object value = values[slots[i]];
+            if (value != null) {
+                if (raw[i]) {
+                    out.append(value);
+                } else {
+                    escapeHtml(out, value.toString());
+                }
+            }
+            out.append(literals[i + 1]);
+        }
+    }
+
+    public static void escapeHtml(StringBuilder out, String value) {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String replacement = switch (value.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\'' -> "&#39;";
+                default -> null;
+            };
+            if (replacement != null) {
+                out.append(value, start, i).append(replacement);
+                start = i + 1;
+            }
+        }
+        out.append(value, start, value.length());
+    }
+}
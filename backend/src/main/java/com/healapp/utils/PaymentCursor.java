@@ -0,0 +1,37 @@
+package com.healapp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Cursor keyset cho danh sách payment sắp xếp (created_at DESC, payment_id DESC).
+ * Client chỉ nhận chuỗi base64 mờ, không phụ thuộc vào định dạng bên trong.
+ */
+public record PaymentCursor(LocalDateTime createdAt, Long paymentId) {
+
+    // Cursor bắt đầu: mọi payment có created_at <= upperBound
+    public static PaymentCursor startingAt(LocalDateTime upperBound) {
+        return new PaymentCursor(upperBound, Long.MAX_VALUE);
+    }
+
+    public String encode() {
+        String raw = createdAt + "|" + paymentId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PaymentCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new PaymentCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.healapp.benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Đo thông lượng đặt lịch (STI booking có thanh toán) khi upstream chậm, so sánh chế độ Tomcat mặc định
+ * (pool 200 platform thread) với mỗi request một virtual thread.
+ *
+ * Mỗi request mô phỏng đường đi của STITestService.bookTest: đọc/ghi DB hai lần qua một pool kết nối
+ * giới hạn (như Hikari), gọi upstream thanh toán qua HTTP thật tới một stub cục bộ có độ trễ cấu hình được
+ * (thay cho Stripe / MB Bank). Mail xác nhận gửi bất đồng bộ nên không được mô phỏng.
+ * Không khởi động ứng dụng, chỉ mô hình hoá chế độ thực thi nên chạy được mà không cần SQL Server.
+ *
+ * Chạy: mvn test-compile exec:java -Dexec.classpathScope=test
+ *       -Dexec.mainClass=com.healapp.benchmark.BookingThroughputHarness
+ *       -Dexec.args="--requests=4000 --concurrency=100,400,1000 --upstream-ms=50,300 --db-pool=10"
+ */
+public class BookingThroughputHarness {
+
+    // Mặc định của server.tomcat.threads.max
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private final String upstreamUrl;
+    private final Semaphore connectionPool;
+    private final long dbQueryMs;
+
+    BookingThroughputHarness(String upstreamUrl, int dbPoolSize, long dbQueryMs) {
+        this.upstreamUrl = upstreamUrl;
+        this.connectionPool = new Semaphore(dbPoolSize, true);
+        this.dbQueryMs = dbQueryMs;
+    }
+
+    record Result(String mode, int concurrency, long upstreamMs, int completed, int failed, double throughput,
+            long p50Ms, long p99Ms) {
+
+        @Override
+        public String toString() {
+            return String.format("%-9s conc=%5d upstream=%4dms  ok=%6d fail=%4d  %8.1f req/s  p50=%5dms  p99=%5dms",
+                    mode, concurrency, upstreamMs, completed, failed, throughput, p50Ms, p99Ms);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int requests = intArg(args, "requests", 4000);
+        int[] concurrencies = intListArg(args, "concurrency", new int[] { 100, 400, 1000 });
+        int[] upstreamDelays = intListArg(args, "upstream-ms", new int[] { 50, 300 });
+        int dbPool = intArg(args, "db-pool", 10);
+        int dbQueryMs = intArg(args, "db-ms", 2);
+
+        HttpServer upstream = startUpstreamStub();
+        try {
+            String baseUrl = "http://127.0.0.1:" + upstream.getAddress().getPort() + "/payment?delayMs=";
+            System.out.printf("requests=%d db-pool=%d db-ms=%d%n", requests, dbPool, dbQueryMs);
+            for (int upstreamMs : upstreamDelays) {
+                BookingThroughputHarness harness = new BookingThroughputHarness(baseUrl + upstreamMs, dbPool,
+                        dbQueryMs);
+                for (int concurrency : concurrencies) {
+                    // Warmup ngắn cho JIT và kết nối HTTP
+                    harness.run("warmup", Executors.newVirtualThreadPerTaskExecutor(), Math.min(concurrency, 50),
+                            200, upstreamMs);
+                    System.out.println(harness.run("platform",
+                            Executors.newFixedThreadPool(TOMCAT_MAX_THREADS), concurrency, requests, upstreamMs));
+                    System.out.println(harness.run("virtual",
+                            Executors.newVirtualThreadPerTaskExecutor(), concurrency, requests, upstreamMs));
+                }
+            }
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    /**
+     * concurrency client gửi tổng cộng requests request; server xử lý bằng executor cho trước.
+     * Client chờ phản hồi trước khi gửi request kế tiếp (closed-loop), giống người dùng chờ trang thanh toán.
+     */
+    Result run(String mode, ExecutorService serverExecutor, int concurrency, int requests, long upstreamMs)
+            throws InterruptedException {
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(concurrency);
+
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < concurrency; c++) {
+                clients.submit(() -> {
+                    try {
+                        int index;
+                        while ((index = next.getAndIncrement()) < requests) {
+                            long sent = System.nanoTime();
+                            try {
+                                serverExecutor.submit(this::handleBooking).get();
+                            } catch (Exception e) {
+                                failed.incrementAndGet();
+                            }
+                            latencies[index] = System.nanoTime() - sent;
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        } finally {
+            serverExecutor.shutdown();
+            serverExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Result(mode, concurrency, upstreamMs, requests - failed.get(), failed.get(),
+                requests / (elapsed / 1_000_000_000.0),
+                TimeUnit.NANOSECONDS.toMillis(latencies[(int) (requests * 0.50)]),
+                TimeUnit.NANOSECONDS.toMillis(latencies[Math.min(requests - 1, (int) (requests * 0.99))]));
+    }
+
+    // Đường đi của một request đặt lịch trên thread xử lý request
+    private Void handleBooking() throws Exception {
+        // Kiểm tra slot + lưu STITest ở trạng thái PENDING
+        queryDatabase();
+        // Gọi upstream thanh toán, không giữ kết nối DB trong lúc chờ
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(upstreamUrl))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Upstream returned " + response.statusCode());
+        }
+        // Lưu Payment + cập nhật STITest
+        queryDatabase();
+        return null;
+    }
+
+    private void queryDatabase() throws InterruptedException {
+        connectionPool.acquire();
+        try {
+            Thread.sleep(dbQueryMs);
+        } finally {
+            connectionPool.release();
+        }
+    }
+
+    // Stub upstream: trả 200 sau delayMs, mỗi request một virtual thread để stub không phải nút cổ chai
+    private static HttpServer startUpstreamStub() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/payment", exchange -> {
+            try (exchange) {
+                exchange.getRequestBody().readAllBytes();
+                String query = exchange.getRequestURI().getQuery();
+                long delayMs = query != null && query.startsWith("delayMs=")
+                        ? Long.parseLong(query.substring("delayMs=".length()))
+                        : 0;
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    exchange.sendResponseHeaders(503, -1);
+                    return;
+                }
+                byte[] body = "{\"status\":\"succeeded\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static int intArg(String[] args, String name, int defaultValue) {
+        String value = arg(args, name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private static int[] intListArg(String[] args, String name, int[] defaultValue) {
+        String value = arg(args, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        List<Integer> values = new ArrayList<>();
+        for (String part : value.split(",")) {
+            values.add(Integer.parseInt(part.trim()));
+        }
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static String arg(String[] args, String name) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,98 @@
+package com.healapp.benchmark;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.healapp.service.EmailTemplateService;
+
+/**
+ * So sánh render email nhắc ngày rụng trứng bằng template biên dịch sẵn với cách nối chuỗi cũ
+ * cho một đợt 10k người nhận. Chỉ đo phần dựng HTML, không tạo MimeMessage.
+ *
+ * Chạy: mvn test-compile exec:java -Dexec.classpathScope=test
+ *       -Dexec.mainClass=com.healapp.benchmark.EmailTemplateBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailTemplateBenchmark {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    @Param("10000")
+    private int recipients;
+
+    private EmailTemplateService emailTemplateService;
+    private String[] fullNames;
+    private LocalDate ovulationDate;
+
+    @Setup
+    public void setUp() throws Exception {
+        emailTemplateService = new EmailTemplateService();
+        emailTemplateService.loadTemplates();
+
+        fullNames = new String[recipients];
+        for (int i = 0; i < recipients; i++) {
+            fullNames[i] = "Nguyễn Thị Người Dùng " + i;
+        }
+        ovulationDate = LocalDate.of(2025, 6, 15);
+    }
+
+    @Benchmark
+    public void concatenation(Blackhole blackhole) {
+        for (String fullName : fullNames) {
+            // Cách dựng HTML trước đây trong EmailService.createOvulationReminderMessage
+            String dateFormatted = ovulationDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+            String htmlContent = "<div style='font-family: Arial, sans-serif; padding: 20px; max-width: 600px; margin: 0 auto;'>"
+                    + "<h2 style='color: #ff69b4;'>Nhắc nhở ngày rụng trứng</h2>"
+                    + "<p>Xin chào " + fullName + ",</p>"
+                    + "<p>Chúng tôi gửi email này để nhắc bạn rằng <strong>ngày mai (" + dateFormatted
+                    + ")</strong> là ngày rụng trứng theo chu kỳ kinh nguyệt bạn đã theo dõi trên Gender Heathcare Service.</p>"
+                    + "<div style='background-color: #fff0f5; padding: 15px; border-radius: 5px; margin: 20px 0;'>"
+                    + "<p><strong>Thông tin:</strong></p>"
+                    + "<p>Ngày rụng trứng: " + dateFormatted + "</p>"
+                    + "<p>Đây là thời điểm quan trọng trong chu kỳ kinh nguyệt của bạn, là lúc cơ hội mang thai cao nhất nếu bạn đang có kế hoạch.</p>"
+                    + "</div>"
+                    + "<p>Để biết thêm thông tin chi tiết về chu kỳ kinh nguyệt và sức khỏe sinh sản, bạn có thể truy cập Gender Heathcare Service hoặc tham khảo ý kiến từ các chuyên gia y tế của chúng tôi.</p>"
+                    + "<p>Trân trọng,<br/>Gender Heathcare Service Team</p>"
+                    + "</div>";
+            blackhole.consume(htmlContent);
+        }
+    }
+
+    @Benchmark
+    public void precompiledTemplate(Blackhole blackhole) {
+        for (String fullName : fullNames) {
+            String htmlContent = emailTemplateService.render("ovulation-reminder",
+                    "fullName", fullName,
+                    "ovulationDate", ovulationDate.format(DATE_FORMATTER));
+            blackhole.consume(htmlContent);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EmailTemplateBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,102 @@
+package com.healapp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.healapp.config.AsyncConfig;
+import com.healapp.service.PasswordHashService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Thông lượng kiểm tra mật khẩu khi login theo cost BCrypt, với 32 request đồng thời (nhiều hơn số core):
+ * matches trực tiếp trên luồng request như trước, so với PasswordHashService trên pool cỡ số core.
+ * storedCost thấp hơn cost đo thêm chi phí rehash (hash lưu không đổi nên mọi lần login đều rehash).
+ *
+ * Chạy: mvn test-compile exec:java -Dexec.classpathScope=test
+ *       -Dexec.mainClass=com.healapp.benchmark.LoginHashBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(32)
+@Fork(1)
+public class LoginHashBenchmark {
+
+    private static final String PASSWORD = "Aa@123456";
+
+    @Param({ "8", "10", "12" })
+    private int cost;
+
+    // 0: hash lưu cùng cost (không rehash)
+    @Param({ "0", "8" })
+    private int storedCost;
+
+    private BCryptPasswordEncoder passwordEncoder;
+    private ThreadPoolTaskExecutor executor;
+    private PasswordHashService passwordHashService;
+    private String storedHash;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        passwordEncoder = new BCryptPasswordEncoder(cost);
+        storedHash = new BCryptPasswordEncoder(storedCost > 0 ? storedCost : cost).encode(PASSWORD);
+
+        // Cùng cấu hình bean passwordHashExecutor (workers=0 là số core), hàng đợi đủ chứa mọi request đồng thời
+        executor = (ThreadPoolTaskExecutor) new AsyncConfig().passwordHashExecutor(0, 256);
+
+        passwordHashService = new PasswordHashService();
+        ReflectionTestUtils.setField(passwordHashService, "passwordEncoder", passwordEncoder);
+        ReflectionTestUtils.setField(passwordHashService, "passwordHashExecutor", executor);
+        ReflectionTestUtils.setField(passwordHashService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(passwordHashService, "timeoutMs", 60000L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public boolean requestThread() {
+        // Cách cũ: BCrypt trên luồng request, rehash (nếu có) cũng trên luồng request
+        boolean matches = passwordEncoder.matches(PASSWORD, storedHash);
+        if (matches && passwordEncoder.upgradeEncoding(storedHash)) {
+            return passwordEncoder.encode(PASSWORD) != null;
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public PasswordHashService.Verification hashPool() throws Exception {
+        return passwordHashService.verify(PASSWORD, storedHash);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LoginHashBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
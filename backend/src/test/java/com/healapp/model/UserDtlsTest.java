@@ -0,0 +1,56 @@
+package com.healapp.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("UserDtls Unit Test")
+class UserDtlsTest {
+
+    @Test
+    @DisplayName("Số điện thoại - bỏ suffix _V và đánh dấu đã xác thực")
+    void syncPhoneState_VerifiedPhone_ShouldStripSuffix() {
+        UserDtls user = user("0901234567_V", false);
+
+        user.syncPhoneState();
+
+        assertEquals("0901234567", user.getPhoneNormalized());
+        assertTrue(user.getPhoneVerified());
+    }
+
+    @Test
+    @DisplayName("Số điện thoại - bỏ suffix _D{digits} (khớp nhánh LOCATE của backfillPhoneState)")
+    void syncPhoneState_DeleteSuffix_ShouldStripFromFirstMarker() {
+        UserDtls user = user("0901234567_D1718000000000", false);
+
+        user.syncPhoneState();
+
+        assertEquals("0901234567", user.getPhoneNormalized());
+        assertFalse(user.getPhoneVerified());
+    }
+
+    @Test
+    @DisplayName("Số điện thoại - số thường giữ nguyên, user đã xoá không giữ số chuẩn hoá")
+    void syncPhoneState_PlainOrDeleted_ShouldFollowNormalizeRule() {
+        UserDtls plain = user("0901234567", false);
+        UserDtls deleted = user("0901234567_V", true);
+
+        plain.syncPhoneState();
+        deleted.syncPhoneState();
+
+        assertEquals("0901234567", plain.getPhoneNormalized());
+        assertFalse(plain.getPhoneVerified());
+        assertNull(deleted.getPhoneNormalized());
+        assertTrue(deleted.getPhoneVerified());
+    }
+
+    private UserDtls user(String phone, boolean deleted) {
+        UserDtls user = new UserDtls();
+        user.setPhone(phone);
+        user.setIsDeleted(deleted);
+        return user;
+    }
+}
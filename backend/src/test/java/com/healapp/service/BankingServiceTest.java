@@ -0,0 +1,120 @@
+package com.healapp.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.healapp.config.OutboundCallExecutor;
+import com.healapp.config.OutboundHttpConfig;
+import com.healapp.dto.ApiResponse;
+import com.healapp.dto.BankTransactionResponse;
+import com.healapp.utils.CircuitBreaker;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Chạy BankingService với HTTP client thật trỏ vào stub server cục bộ.
+ */
+@DisplayName("BankingService Outbound HTTP Test")
+class BankingServiceTest {
+
+    // Đúng dạng dòng lịch sử của ngân hàng: không có cờ transactionFound
+    private static final String HISTORY_JSON = "[{\"transactionId\":\"MB001\",\"amount\":500000,"
+            + "\"reference\":\"HEALSTI1\",\"status\":\"SUCCESS\"}]";
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int failuresBeforeSuccess;
+
+    private BankingService bankingService;
+    private OutboundCallExecutor outboundCallExecutor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/transaction-history", exchange -> {
+            int attempt = requests.incrementAndGet();
+            if (attempt <= failuresBeforeSuccess) {
+                respond(exchange, 503, "{}");
+            } else {
+                respond(exchange, 200, HISTORY_JSON);
+            }
+        });
+        server.start();
+
+        outboundCallExecutor = new OutboundCallExecutor();
+        ReflectionTestUtils.setField(outboundCallExecutor, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(outboundCallExecutor, "maxAttempts", 3);
+        ReflectionTestUtils.setField(outboundCallExecutor, "backoffMs", 1L);
+        ReflectionTestUtils.setField(outboundCallExecutor, "failureThreshold", 2);
+
+        bankingService = new BankingService();
+        ReflectionTestUtils.setField(bankingService, "mbBankApiUrl",
+                "http://127.0.0.1:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(bankingService, "restTemplate",
+                new OutboundHttpConfig().outboundRestTemplate(1000, 2));
+        ReflectionTestUtils.setField(bankingService, "outboundCallExecutor", outboundCallExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    @DisplayName("Lịch sử giao dịch - Thử lại khi ngân hàng trả 503 rồi thành công")
+    void getTransactionHistory_TransientFailure_ShouldRetry() {
+        failuresBeforeSuccess = 1;
+
+        ApiResponse<BankTransactionResponse[]> result = bankingService.getTransactionHistory(
+                LocalDateTime.now().minusHours(1), LocalDateTime.now(), 100);
+
+        assertTrue(result.isSuccess());
+        assertEquals(1, result.getData().length);
+        assertEquals("MB001", result.getData()[0].getTransactionId());
+        assertTrue(result.getData()[0].isSuccessfulCredit());
+        assertFalse(result.getData()[0].isTransactionFound());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    @DisplayName("Lịch sử giao dịch - Lỗi liên tiếp thì mở circuit, không gọi ngân hàng nữa")
+    void getTransactionHistory_RepeatedFailures_ShouldOpenCircuit() {
+        failuresBeforeSuccess = Integer.MAX_VALUE;
+
+        ApiResponse<BankTransactionResponse[]> first = bankingService.getTransactionHistory(
+                LocalDateTime.now().minusHours(1), LocalDateTime.now(), 100);
+        int requestsWhenOpened = requests.get();
+        ApiResponse<BankTransactionResponse[]> second = bankingService.getTransactionHistory(
+                LocalDateTime.now().minusHours(1), LocalDateTime.now(), 100);
+
+        assertFalse(first.isSuccess());
+        assertFalse(second.isSuccess());
+        assertEquals(2, requestsWhenOpened);
+        assertEquals(requestsWhenOpened, requests.get());
+        assertEquals(CircuitBreaker.State.OPEN, outboundCallExecutor.getCircuitState("mbbank"));
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.healapp.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.healapp.model.EphemeralCode;
+import com.healapp.repository.EphemeralCodeRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("DatabaseEphemeralCodeStore Unit Test")
+class DatabaseEphemeralCodeStoreTest {
+
+    @Mock
+    private EphemeralCodeRepository ephemeralCodeRepository;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private DatabaseEphemeralCodeStore store;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(store, "maxEntries", 2);
+    }
+
+    @Test
+    @DisplayName("Kho mã DB - put dưới ngưỡng không đếm lại bảng")
+    void put_BelowCap_ShouldNotCountRows() {
+        when(ephemeralCodeRepository.count()).thenReturn(0L);
+        store.registerGauges();
+
+        store.put(EphemeralCodeStore.PHONE_OTP, "+84901234567", "123456", Duration.ofMinutes(5));
+
+        verify(ephemeralCodeRepository, times(1)).count();
+        verify(ephemeralCodeRepository).save(any(EphemeralCode.class));
+        verify(ephemeralCodeRepository, never()).deleteExpired(any());
+    }
+
+    @Test
+    @DisplayName("Kho mã DB - chạm ngưỡng thì xoá mã hết hạn trước, không bỏ mã còn hiệu lực nếu đã đủ chỗ")
+    void put_AtCap_ShouldPurgeExpiredBeforeEvictingValidCodes() {
+        when(ephemeralCodeRepository.count()).thenReturn(2L, 1L);
+        when(ephemeralCodeRepository.deleteExpired(any(LocalDateTime.class))).thenReturn(1);
+        store.registerGauges();
+
+        store.put(EphemeralCodeStore.PHONE_OTP, "+84901234567", "123456", Duration.ofMinutes(5));
+
+        verify(ephemeralCodeRepository).deleteExpired(any(LocalDateTime.class));
+        verify(ephemeralCodeRepository, never()).findTop100ByOrderByExpiresAtAsc();
+        verify(ephemeralCodeRepository).save(any(EphemeralCode.class));
+    }
+}
@@ -0,0 +1,123 @@
+package com.healapp.service;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.healapp.model.EmailOutbox;
+import com.healapp.model.EmailOutboxStatus;
+import com.healapp.repository.EmailOutboxRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("EmailOutboxService Unit Test")
+class EmailOutboxServiceTest {
+
+    @Mock
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @Mock
+    private JavaMailSender mailSender;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private EmailOutboxService emailOutboxService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(emailOutboxService, "mailExecutor", new TaskExecutorAdapter(Runnable::run));
+    }
+
+    @Test
+    @DisplayName("Outbox - Ngưỡng claim quá hạn tự tính từ timeout SMTP, lớn hơn thời gian gửi tối đa của một lô")
+    void registerGauges_ShouldDeriveStaleThresholdFromMailTimeouts() {
+        emailOutboxService.registerGauges();
+
+        // 2 x (10s kết nối + 20 email x (30s ghi + 4 x 30s chờ phản hồi))
+        assertEquals(Duration.ofMillis(2 * (10000 + 20 * (30000 + 4 * 30000))),
+                ReflectionTestUtils.getField(emailOutboxService, "staleClaimThreshold"));
+
+        ReflectionTestUtils.setField(emailOutboxService, "staleClaimMinutes", 15L);
+        emailOutboxService.registerGauges();
+        assertEquals(Duration.ofMinutes(15), ReflectionTestUtils.getField(emailOutboxService, "staleClaimThreshold"));
+    }
+
+    @Test
+    @DisplayName("Outbox - Gửi thành công ghi SENT bằng UPDATE có điều kiện theo claim token")
+    void drainOutbox_Sent_ShouldRecordResultKeyedOnClaimToken() {
+        emailOutboxService.registerGauges();
+        EmailOutbox outbox = claimedEmail(1L);
+        when(emailOutboxRepository.findDueIds(eq(EmailOutboxStatus.PENDING), any(), any())).thenReturn(List.of(1L));
+        when(emailOutboxRepository.claim(eq(List.of(1L)), anyString(), any())).thenReturn(1);
+        when(emailOutboxRepository.findByClaimToken(anyString())).thenAnswer(invocation -> {
+            outbox.setClaimToken(invocation.getArgument(0));
+            return List.of(outbox);
+        });
+        when(mailSender.createMimeMessage(any(InputStream.class))).thenReturn(mock(MimeMessage.class));
+        when(emailOutboxRepository.markSent(eq(1L), anyString(), any(byte[].class), any())).thenReturn(1);
+
+        emailOutboxService.drainOutbox();
+
+        ArgumentCaptor<String> token = ArgumentCaptor.forClass(String.class);
+        verify(emailOutboxRepository).markSent(eq(1L), token.capture(), any(byte[].class), any());
+        assertEquals(outbox.getClaimToken(), token.getValue());
+        assertEquals(1.0, meterRegistry.counter("mail.outbox.sent", "template", "otp").count());
+        assertEquals(0, ((AtomicInteger) ReflectionTestUtils.getField(emailOutboxService, "inFlightBatches")).get());
+    }
+
+    @Test
+    @DisplayName("Outbox - Claim đã bị trả lại thì không ghi đè trạng thái và không đếm là đã gửi")
+    void deliver_ClaimLost_ShouldNotCountAsSent() {
+        EmailOutbox outbox = claimedEmail(2L);
+        outbox.setClaimToken("stale-token");
+        when(mailSender.createMimeMessage(any(InputStream.class))).thenReturn(mock(MimeMessage.class));
+        when(emailOutboxRepository.markSent(eq(2L), eq("stale-token"), any(byte[].class), any(LocalDateTime.class)))
+                .thenReturn(0);
+
+        emailOutboxService.deliver(List.of(outbox));
+
+        assertEquals(0.0, meterRegistry.counter("mail.outbox.sent", "template", "otp").count());
+        assertEquals(1.0, meterRegistry.counter("mail.outbox.claim.lost", "template", "otp").count());
+        assertEquals(EmailOutboxStatus.SENDING, outbox.getStatus());
+        assertEquals(3, outbox.getMimeContent().length);
+    }
+
+    private EmailOutbox claimedEmail(Long id) {
+        EmailOutbox outbox = new EmailOutbox();
+        outbox.setId(id);
+        outbox.setTemplate("otp");
+        outbox.setRecipient("user@example.com");
+        outbox.setMimeContent(new byte[] { 1, 2, 3 });
+        outbox.setStatus(EmailOutboxStatus.SENDING);
+        outbox.setAttempts(0);
+        outbox.setCreatedAt(LocalDateTime.now().minusSeconds(5));
+        return outbox;
+    }
+}
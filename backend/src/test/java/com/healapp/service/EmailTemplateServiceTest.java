@@ -0,0 +1,70 @@
+package com.healapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.healapp.utils.HtmlTemplate;
+
+class EmailTemplateServiceTest {
+
+    private EmailTemplateService emailTemplateService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        emailTemplateService = new EmailTemplateService();
+        emailTemplateService.loadTemplates();
+    }
+
+    @Test
+    @DisplayName("Render template - Escape HTML trong giá trị người dùng")
+    void render_ShouldEscapeUserValues() {
+        String html = emailTemplateService.render("ovulation-reminder",
+                "fullName", "<script>alert('x')</script>",
+                "ovulationDate", "01/02/2025");
+
+        assertFalse(html.contains("<script>"));
+        assertTrue(html.contains("&lt;script&gt;alert(&#39;x&#39;)&lt;/script&gt;"));
+        assertTrue(html.contains("ngày mai (01/02/2025)"));
+    }
+
+    @Test
+    @DisplayName("Render template - Placeholder raw chèn nguyên văn template con")
+    void render_ShouldInsertRawFragment() {
+        String dayNote = emailTemplateService.render("pregnancy-probability-day-before", "days", 3);
+        String html = emailTemplateService.render("pregnancy-probability-reminder",
+                "fullName", "Lan",
+                "ovulationDate", "01/02/2025",
+                "dayNote", dayNote,
+                "pregnancyProb", "12.50");
+
+        assertTrue(html.contains("<strong>3 ngày</strong> trước ngày rụng trứng"));
+        assertTrue(html.contains("12.50%"));
+    }
+
+    @Test
+    @DisplayName("Render template - Giá trị null render thành chuỗi rỗng")
+    void render_NullValue_ShouldRenderEmpty() {
+        String html = emailTemplateService.render("email-verification", "code", null);
+
+        assertTrue(html.contains("font-weight: bold;'></div>"));
+    }
+
+    @Test
+    @DisplayName("Render template - Tên template hoặc placeholder không tồn tại")
+    void render_UnknownTemplateOrPlaceholder_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> emailTemplateService.render("missing-template"));
+        assertThrows(IllegalArgumentException.class,
+                () -> emailTemplateService.render("email-verification", "otp", "123456"));
+    }
+
+    @Test
+    @DisplayName("Biên dịch template - Placeholder chưa đóng")
+    void compile_UnclosedPlaceholder_ShouldThrow() {
+        assertThrows(IllegalStateException.class, () -> HtmlTemplate.compile("broken", "<p>{{name</p>"));
+    }
+}
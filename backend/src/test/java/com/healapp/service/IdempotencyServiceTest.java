@@ -0,0 +1,191 @@
+package com.healapp.service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.ResponseEntity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healapp.dto.ApiResponse;
+import com.healapp.model.IdempotencyKey;
+import com.healapp.repository.IdempotencyKeyRepository;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("IdempotencyService Unit Test")
+class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @InjectMocks
+    private IdempotencyService idempotencyService;
+
+    @Test
+    @DisplayName("Cùng key, cùng request - Chỉ chạy một lần, lần sau trả lại response đã lưu")
+    void execute_SameKey_ShouldRunActionOnce() {
+        when(idempotencyKeyRepository.saveAndFlush(any(IdempotencyKey.class))).thenAnswer(inv -> {
+            IdempotencyKey key = inv.getArgument(0);
+            key.setId(1L);
+            return key;
+        });
+        AtomicInteger calls = new AtomicInteger();
+        Map<String, String> request = Map.of("paymentMethod", "VISA");
+
+        ResponseEntity<?> first = idempotencyService.execute("sti.book-test", 7L, "key-1", request,
+                () -> ResponseEntity.ok(ApiResponse.success("booked " + calls.incrementAndGet(), null)));
+        ResponseEntity<?> second = idempotencyService.execute("sti.book-test", 7L, "key-1", request,
+                () -> ResponseEntity.ok(ApiResponse.success("booked " + calls.incrementAndGet(), null)));
+
+        assertEquals(1, calls.get());
+        assertEquals(200, second.getStatusCode().value());
+        assertEquals("true", second.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals("booked 1", ((ApiResponse<?>) first.getBody()).getMessage());
+        verify(idempotencyKeyRepository, times(1)).saveAndFlush(any(IdempotencyKey.class));
+        verify(idempotencyKeyRepository).complete(eq(1L), eq(200), anyString());
+    }
+
+    @Test
+    @DisplayName("Cùng key, khác request - Trả 422, không chạy action")
+    void execute_SameKeyDifferentRequest_ShouldReject() {
+        when(idempotencyKeyRepository.saveAndFlush(any(IdempotencyKey.class))).thenAnswer(inv -> {
+            IdempotencyKey key = inv.getArgument(0);
+            key.setId(1L);
+            return key;
+        });
+        idempotencyService.execute("sti.book-test", 7L, "key-1", Map.of("paymentMethod", "VISA"),
+                () -> ResponseEntity.ok(ApiResponse.success("booked", null)));
+
+        ResponseEntity<?> response = idempotencyService.execute("sti.book-test", 7L, "key-1",
+                Map.of("paymentMethod", "COD"),
+                () -> {
+                    throw new AssertionError("action must not run");
+                });
+
+        assertEquals(422, response.getStatusCode().value());
+    }
+
+    @Test
+    @DisplayName("Key đã được node khác ghi nhận - Trả lại response đã lưu trong DB")
+    void execute_KeyStoredByAnotherNode_ShouldReplayStoredResponse() {
+        AtomicInteger calls = new AtomicInteger();
+        Map<String, String> request = Map.of("paymentMethod", "QR_CODE");
+        when(idempotencyKeyRepository.saveAndFlush(any(IdempotencyKey.class)))
+                .thenThrow(new DataIntegrityViolationException("duplicate"));
+        IdempotencyKey stored = new IdempotencyKey();
+        stored.setRequestHash(hashOf(request));
+        stored.setResponseStatus(200);
+        stored.setResponseBody("{\"success\":true,\"message\":\"booked\"}");
+        when(idempotencyKeyRepository.findByScopeAndUserIdAndIdempotencyKey("sti.book-test", 7L, "key-2"))
+                .thenReturn(Optional.of(stored));
+
+        ResponseEntity<?> response = idempotencyService.execute("sti.book-test", 7L, "key-2", request,
+                () -> ResponseEntity.ok(ApiResponse.success("booked " + calls.incrementAndGet(), null)));
+
+        assertEquals(0, calls.get());
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals("{\"success\":true,\"message\":\"booked\"}", response.getBody());
+    }
+
+    @Test
+    @DisplayName("Ghi response lỗi sau khi action đã chạy - Không xoá key, vẫn trả response và replay trên node")
+    void execute_CompletionFails_ShouldKeepKeyAndReturnResponse() {
+        when(idempotencyKeyRepository.saveAndFlush(any(IdempotencyKey.class))).thenAnswer(inv -> {
+            IdempotencyKey key = inv.getArgument(0);
+            key.setId(3L);
+            return key;
+        });
+        when(idempotencyKeyRepository.complete(eq(3L), eq(200), anyString()))
+                .thenThrow(new QueryTimeoutException("timeout"));
+        AtomicInteger calls = new AtomicInteger();
+        Map<String, String> request = Map.of("paymentMethod", "VISA");
+
+        ResponseEntity<?> first = idempotencyService.execute("sti.book-test", 7L, "key-3", request,
+                () -> ResponseEntity.ok(ApiResponse.success("booked " + calls.incrementAndGet(), null)));
+        ResponseEntity<?> retry = idempotencyService.execute("sti.book-test", 7L, "key-3", request,
+                () -> ResponseEntity.ok(ApiResponse.success("booked " + calls.incrementAndGet(), null)));
+
+        assertEquals(1, calls.get());
+        assertEquals(200, first.getStatusCode().value());
+        assertEquals(200, retry.getStatusCode().value());
+        verify(idempotencyKeyRepository, times(3)).complete(eq(3L), eq(200), anyString());
+        verify(idempotencyKeyRepository, never()).deleteById(any());
+    }
+
+    @Test
+    @DisplayName("Key đang xử lý nhưng hết lease (node chết giữa chừng) - Request sau tiếp quản và chạy action")
+    void execute_AbandonedKeyWithExpiredLease_ShouldTakeOver() {
+        Map<String, String> request = Map.of("paymentMethod", "QR_CODE");
+        when(idempotencyKeyRepository.saveAndFlush(any(IdempotencyKey.class)))
+                .thenThrow(new DataIntegrityViolationException("duplicate"));
+        IdempotencyKey abandoned = new IdempotencyKey();
+        abandoned.setId(4L);
+        abandoned.setRequestHash(hashOf(request));
+        abandoned.setLockedUntil(LocalDateTime.now().minusMinutes(1));
+        when(idempotencyKeyRepository.findByScopeAndUserIdAndIdempotencyKey("sti.book-test", 7L, "key-4"))
+                .thenReturn(Optional.of(abandoned));
+        when(idempotencyKeyRepository.takeOver(eq(4L), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenReturn(1);
+
+        ResponseEntity<?> response = idempotencyService.execute("sti.book-test", 7L, "key-4", request,
+                () -> ResponseEntity.ok(ApiResponse.success("booked", null)));
+
+        assertEquals(200, response.getStatusCode().value());
+        assertNull(response.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        verify(idempotencyKeyRepository).complete(eq(4L), eq(200), anyString());
+    }
+
+    @Test
+    @DisplayName("Key đang xử lý và còn lease - Trả 409, không tiếp quản")
+    void execute_InProgressKeyWithinLease_ShouldReturnConflict() {
+        Map<String, String> request = Map.of("paymentMethod", "QR_CODE");
+        when(idempotencyKeyRepository.saveAndFlush(any(IdempotencyKey.class)))
+                .thenThrow(new DataIntegrityViolationException("duplicate"));
+        IdempotencyKey inProgress = new IdempotencyKey();
+        inProgress.setId(5L);
+        inProgress.setRequestHash(hashOf(request));
+        inProgress.setLockedUntil(LocalDateTime.now().plusMinutes(1));
+        when(idempotencyKeyRepository.findByScopeAndUserIdAndIdempotencyKey("sti.book-test", 7L, "key-5"))
+                .thenReturn(Optional.of(inProgress));
+
+        ResponseEntity<?> response = idempotencyService.execute("sti.book-test", 7L, "key-5", request,
+                () -> {
+                    throw new AssertionError("action must not run");
+                });
+
+        assertEquals(409, response.getStatusCode().value());
+        verify(idempotencyKeyRepository, never()).takeOver(any(), any(), any());
+    }
+
+    private String hashOf(Object request) {
+        try {
+            byte[] digest = java.security.MessageDigest.getInstance("SHA-256")
+                    .digest(objectMapper.writeValueAsBytes(request));
+            return java.util.HexFormat.of().formatHex(digest);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
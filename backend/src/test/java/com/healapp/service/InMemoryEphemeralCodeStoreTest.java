@@ -0,0 +1,83 @@
+package com.healapp.service;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("InMemoryEphemeralCodeStore Unit Test")
+class InMemoryEphemeralCodeStoreTest {
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private InMemoryEphemeralCodeStore store;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(store, "tickMs", 10L);
+        ReflectionTestUtils.setField(store, "wheelSize", 8);
+        ReflectionTestUtils.setField(store, "maxEntries", 3);
+        store.init();
+    }
+
+    @Test
+    @DisplayName("Kho mã - lưu, đọc, thay mã cũ và xoá theo namespace riêng")
+    void putGetRemove_ShouldBeScopedByNamespace() {
+        store.put(EphemeralCodeStore.EMAIL_VERIFICATION, "a@b.com", "111111", Duration.ofMinutes(10));
+        store.put(EphemeralCodeStore.PASSWORD_RESET, "a@b.com", "222222", Duration.ofMinutes(10));
+        store.put(EphemeralCodeStore.EMAIL_VERIFICATION, "a@b.com", "333333", Duration.ofMinutes(10));
+
+        assertEquals(Optional.of("333333"), store.get(EphemeralCodeStore.EMAIL_VERIFICATION, "a@b.com"));
+        assertEquals(Optional.of("222222"), store.get(EphemeralCodeStore.PASSWORD_RESET, "a@b.com"));
+        assertEquals(2, store.size());
+
+        store.remove(EphemeralCodeStore.EMAIL_VERIFICATION, "a@b.com");
+
+        assertTrue(store.get(EphemeralCodeStore.EMAIL_VERIFICATION, "a@b.com").isEmpty());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    @DisplayName("Kho mã - mã hết hạn không đọc được và bị xoá khỏi bộ nhớ khi quét")
+    void evictExpired_ShouldDropExpiredCodes() throws InterruptedException {
+        store.put(EphemeralCodeStore.PHONE_OTP, "+84901234567", "123456", Duration.ofMillis(30));
+        store.put(EphemeralCodeStore.PHONE_OTP, "+84907654321", "654321", Duration.ofMinutes(5));
+
+        Thread.sleep(60);
+        store.evictExpired();
+
+        assertTrue(store.get(EphemeralCodeStore.PHONE_OTP, "+84901234567").isEmpty());
+        assertEquals(Optional.of("654321"), store.get(EphemeralCodeStore.PHONE_OTP, "+84907654321"));
+        assertEquals(1, store.size());
+        assertEquals(1.0, meterRegistry.counter("ephemeral.codes.expired").count());
+    }
+
+    @Test
+    @DisplayName("Kho mã - vượt max-entries thì evict mã sắp hết hạn sớm nhất")
+    void put_OverCapacity_ShouldEvictEarliestExpiring() {
+        store.put(EphemeralCodeStore.PHONE_OTP, "1", "000001", Duration.ofMinutes(1));
+        store.put(EphemeralCodeStore.PHONE_OTP, "2", "000002", Duration.ofMinutes(10));
+        store.put(EphemeralCodeStore.PHONE_OTP, "3", "000003", Duration.ofMinutes(10));
+        store.put(EphemeralCodeStore.PHONE_OTP, "4", "000004", Duration.ofMinutes(10));
+
+        assertEquals(3, store.size());
+        assertTrue(store.get(EphemeralCodeStore.PHONE_OTP, "1").isEmpty());
+        assertEquals(Optional.of("000004"), store.get(EphemeralCodeStore.PHONE_OTP, "4"));
+        assertEquals(1.0, meterRegistry.counter("ephemeral.codes.evicted").count());
+    }
+}
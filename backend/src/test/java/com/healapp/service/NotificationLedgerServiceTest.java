@@ -0,0 +1,82 @@
+package com.healapp.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.healapp.model.NotificationLedger;
+import com.healapp.model.NotificationType;
+import com.healapp.repository.NotificationLedgerRepository;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("NotificationLedgerService Unit Test")
+class NotificationLedgerServiceTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 6, 14, 7, 30);
+    private static final LocalDateTime SLOT = LocalDateTime.of(2025, 6, 14, 7, 0);
+
+    @Mock
+    private NotificationLedgerRepository notificationLedgerRepository;
+
+    @InjectMocks
+    private NotificationLedgerService notificationLedgerService;
+
+    @Test
+    @DisplayName("Ledger - claim thành công khi chưa ai ghi, lần sau bị chặn ngay từ bucket trong bộ nhớ")
+    void claim_WhenNotRecorded_ShouldInsertOnce() {
+        when(notificationLedgerRepository.findUserIdsByTypeAndSlotHour(NotificationType.OVULATION, SLOT))
+                .thenReturn(List.of());
+        when(notificationLedgerRepository.insertIfAbsent(eq(1L), eq("OVULATION"), eq(SLOT), any(LocalDateTime.class)))
+                .thenReturn(1);
+
+        NotificationLedger entry = notificationLedgerService.newEntry(1L, NotificationType.OVULATION, NOW);
+        assertTrue(notificationLedgerService.claim(entry));
+
+        notificationLedgerService.recordAll(List.of(entry));
+        assertTrue(notificationLedgerService.isSent(1L, NotificationType.OVULATION, NOW));
+        assertFalse(notificationLedgerService.claim(notificationLedgerService.newEntry(1L, NotificationType.OVULATION, NOW)));
+    }
+
+    @Test
+    @DisplayName("Ledger - node khác đã ghi cùng giờ thì claim trả false, không ném lỗi unique")
+    void claim_WhenRecordedByAnotherNode_ShouldSkipWithoutFailing() {
+        // Bucket nạp trước khi node khác gửi nên chưa có user 2
+        when(notificationLedgerRepository.findUserIdsByTypeAndSlotHour(NotificationType.OVULATION, SLOT))
+                .thenReturn(List.of(5L));
+        when(notificationLedgerRepository.insertIfAbsent(eq(2L), eq("OVULATION"), eq(SLOT), any(LocalDateTime.class)))
+                .thenReturn(0);
+
+        assertFalse(notificationLedgerService.isSent(2L, NotificationType.OVULATION, NOW));
+        assertFalse(notificationLedgerService.claim(notificationLedgerService.newEntry(2L, NotificationType.OVULATION, NOW)));
+
+        // Bucket được cập nhật, lần sau không cần hỏi lại DB
+        assertTrue(notificationLedgerService.isSent(2L, NotificationType.OVULATION, NOW));
+        assertFalse(notificationLedgerService.claim(notificationLedgerService.newEntry(5L, NotificationType.OVULATION, NOW)));
+        verify(notificationLedgerRepository, never()).insertIfAbsent(eq(5L), anyString(), any(), any());
+        verify(notificationLedgerRepository, never()).saveAll(any());
+    }
+
+    @Test
+    @DisplayName("Ledger - gửi thất bại sau claim thì release xoá bản ghi")
+    void release_ShouldDeleteClaimedEntry() {
+        notificationLedgerService.release(notificationLedgerService.newEntry(3L, NotificationType.OVULATION, NOW));
+
+        verify(notificationLedgerRepository).deleteEntry(3L, NotificationType.OVULATION, SLOT);
+        verify(notificationLedgerRepository, never()).insertIfAbsent(anyLong(), anyString(), any(), any());
+    }
+}
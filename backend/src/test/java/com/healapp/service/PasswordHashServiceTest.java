@@ -0,0 +1,84 @@
+package com.healapp.service;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PasswordHashService Unit Test")
+class PasswordHashServiceTest {
+
+    @Spy
+    private PasswordEncoder passwordEncoder = new BCryptPasswordEncoder(5);
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private PasswordHashService passwordHashService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(passwordHashService, "passwordHashExecutor", (Executor) Runnable::run);
+    }
+
+    @Test
+    @DisplayName("Kiểm tra mật khẩu - hash cost cũ được tính lại theo cost cấu hình")
+    void verify_WithOutdatedCost_ShouldReturnUpgradedHash() throws Exception {
+        String oldHash = new BCryptPasswordEncoder(4).encode("password123");
+
+        PasswordHashService.Verification verification = passwordHashService.verify("password123", oldHash);
+
+        assertTrue(verification.matches());
+        assertNotNull(verification.upgradedHash());
+        assertTrue(verification.upgradedHash().startsWith("$2a$05$"));
+        assertTrue(passwordEncoder.matches("password123", verification.upgradedHash()));
+        assertEquals(1.0, meterRegistry.counter("auth.password.rehash").count());
+    }
+
+    @Test
+    @DisplayName("Kiểm tra mật khẩu - sai mật khẩu hoặc hash đúng cost thì không rehash")
+    void verify_WithWrongPasswordOrCurrentCost_ShouldNotRehash() throws Exception {
+        String oldHash = new BCryptPasswordEncoder(4).encode("password123");
+        String currentHash = passwordEncoder.encode("password123");
+
+        PasswordHashService.Verification wrong = passwordHashService.verify("wrongpassword", oldHash);
+        PasswordHashService.Verification current = passwordHashService.verify("password123", currentHash);
+
+        assertFalse(wrong.matches());
+        assertNull(wrong.upgradedHash());
+        assertTrue(current.matches());
+        assertNull(current.upgradedHash());
+    }
+
+    @Test
+    @DisplayName("Kiểm tra mật khẩu - pool hash đầy thì báo bận")
+    void verify_WhenPoolRejects_ShouldThrowBusy() {
+        ReflectionTestUtils.setField(passwordHashService, "passwordHashExecutor", (Executor) task -> {
+            throw new RejectedExecutionException("queue full");
+        });
+
+        assertThrows(PasswordHashService.HashPoolBusyException.class,
+                () -> passwordHashService.verify("password123", "$2a$05$invalid"));
+        assertEquals(1.0, meterRegistry.counter("auth.password.hash.rejected").count());
+    }
+}
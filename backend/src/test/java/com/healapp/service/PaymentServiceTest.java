@@ -3,6 +3,7 @@ package com.healapp.service;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -16,15 +17,21 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import com.healapp.dto.ApiResponse;
+import com.healapp.dto.PaymentPageResponse;
+import com.healapp.dto.PaymentTransactionResponse;
 import com.healapp.model.Payment;
 import com.healapp.model.PaymentMethod;
 import com.healapp.model.PaymentStatus;
@@ -35,6 +42,10 @@ import com.healapp.model.UserDtls;
 import com.healapp.repository.PaymentRepository;
 import com.healapp.repository.STITestRepository;
 import com.healapp.repository.UserRepository;
+import com.healapp.utils.PaymentCursor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @ExtendWith(MockitoExtension.class)
 class PaymentServiceTest {
@@ -51,6 +62,12 @@ class PaymentServiceTest {
     @Mock
     private StripeService stripeService;
 
+    @Mock
+    private QRPaymentStatusHub qrStatusHub;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @InjectMocks
     private PaymentService paymentService;
 
@@ -185,103 +202,105 @@ class PaymentServiceTest {
     }
 
     @Test
-    @DisplayName("Stripe payment should be created with PROCESSING status initially")
-    void processStripePayment_ShouldCreateProcessingPayment() {
+    @DisplayName("Stripe payment should be prepared as PROCESSING without calling Stripe")
+    void prepareStripePayment_ShouldCreateProcessingPaymentWithoutCallingStripe() {
         // Arrange
         when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
         when(stiTestRepository.findById(1L)).thenReturn(Optional.of(testSTITest));
-        when(paymentRepository.save(any(Payment.class))).thenReturn(testPayment);
-        
-        Map<String, String> stripeData = new HashMap<>();
-        stripeData.put("paymentIntentId", "pi_test_123");
-        stripeData.put("receiptUrl", "https://receipt.stripe.com/test");
-        
-        ApiResponse<Map<String, String>> stripeResponse = ApiResponse.success("Payment successful", stripeData);
-        when(stripeService.processPaymentForSTITest(any(STITest.class), anyString(), anyString(), 
-                anyString(), anyString(), anyString())).thenReturn(stripeResponse);
+        when(paymentRepository.save(any(Payment.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         // Act
-        ApiResponse<Payment> response = paymentService.processStripePayment(
+        ApiResponse<PaymentService.StripeCharge> response = paymentService.prepareStripePayment(
                 1L, "STI", 1L, new BigDecimal("500000"), "STI Test",
                 "4242424242424242", "12", "2025", "123", "Test User");
 
         // Assert
         assertTrue(response.isSuccess());
-        assertEquals("Payment processed successfully", response.getMessage());
-        
-        Payment savedPayment = response.getData();
-        assertEquals(PaymentStatus.COMPLETED, savedPayment.getPaymentStatus());
-        assertEquals("pi_test_123", savedPayment.getStripePaymentIntentId());
-        assertEquals("https://receipt.stripe.com/test", savedPayment.getStripeReceiptUrl());
-        
-        // Verify save is called multiple times: once in createPayment, once for processing, once for completed
-        verify(paymentRepository, times(3)).save(any(Payment.class));
+        assertEquals(PaymentStatus.PROCESSING, response.getData().payment().getPaymentStatus());
+        assertEquals(PaymentMethod.VISA, response.getData().payment().getPaymentMethod());
+        assertEquals(1L, response.getData().stiTest().getTestId());
+        assertFalse(response.getData().toString().contains("4242424242424242"));
+
+        // Stripe chỉ được gọi sau khi transaction đặt lịch commit (submitStripePayment)
+        verify(stripeService, never()).processPaymentForSTITest(any(STITest.class), any(), anyString(),
+                anyString(), anyString(), anyString(), anyString());
+        // Verify save is called: once in createPayment, once for processing
+        verify(paymentRepository, times(2)).save(any(Payment.class));
     }
 
     @Test
-    @DisplayName("Stripe payment should fail when Stripe service returns error")
-    void processStripePayment_ShouldFailWhenStripeFails() {
+    @DisplayName("Stripe payment should attach the PaymentIntent once Stripe creates it")
+    void submitStripePayment_ShouldAttachPaymentIntent() {
         // Arrange
-        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
-        when(stiTestRepository.findById(1L)).thenReturn(Optional.of(testSTITest));
-        when(paymentRepository.save(any(Payment.class))).thenReturn(testPayment);
-        
-        ApiResponse<Map<String, String>> stripeResponse = ApiResponse.error("Card declined");
-        when(stripeService.processPaymentForSTITest(any(STITest.class), anyString(), anyString(), 
+        Map<String, String> stripeData = new HashMap<>();
+        stripeData.put("paymentIntentId", "pi_test_123");
+        stripeData.put("status", "processing");
+
+        ApiResponse<Map<String, String>> stripeResponse = ApiResponse.success("Payment submitted", stripeData);
+        when(stripeService.processPaymentForSTITest(any(STITest.class), any(), anyString(), anyString(),
                 anyString(), anyString(), anyString())).thenReturn(stripeResponse);
 
         // Act
-        ApiResponse<Payment> response = paymentService.processStripePayment(
-                1L, "STI", 1L, new BigDecimal("500000"), "STI Test",
-                "4000000000000002", "12", "2025", "123", "Test User");
+        ApiResponse<Payment> response = paymentService.submitStripePayment(stripeCharge("4242424242424242"));
 
         // Assert
+        assertTrue(response.isSuccess());
+        assertEquals("Payment is being processed", response.getMessage());
+        assertEquals(PaymentStatus.PROCESSING, response.getData().getPaymentStatus());
+        assertEquals("pi_test_123", response.getData().getStripePaymentIntentId());
+
+        // Trạng thái cuối (COMPLETED, receipt) đến từ webhook, ở đây chỉ gắn intent id
+        verify(paymentRepository).attachStripePaymentIntent(eq(1L), eq("pi_test_123"), any(LocalDateTime.class));
+        verify(paymentRepository, never()).markStripePaymentFailed(any(), anyString(), any(LocalDateTime.class));
+    }
+
+    @Test
+    @DisplayName("Stripe payment should be marked FAILED when Stripe service returns error")
+    void submitStripePayment_ShouldFailWhenStripeFails() {
+        // Arrange
+        ApiResponse<Map<String, String>> stripeResponse = ApiResponse.error("Your card was declined.");
+        when(stripeService.processPaymentForSTITest(any(STITest.class), any(), anyString(), anyString(),
+                anyString(), anyString(), anyString())).thenReturn(stripeResponse);
+
+        // Act
+        ApiResponse<Payment> response = paymentService.submitStripePayment(stripeCharge("4000000000000002"));
+
+        // Assert: lỗi thẻ trả về đồng bộ để lớp gọi ánh xạ thông báo
         assertFalse(response.isSuccess());
-        assertTrue(response.getMessage().contains("Payment failed"));
-        
-        Payment failedPayment = response.getData();
-        assertEquals(PaymentStatus.FAILED, failedPayment.getPaymentStatus());
-        assertTrue(failedPayment.getNotes().contains("Stripe error"));
-        
-        // Verify save is called: once in createPayment, once for processing, once for failed
-        verify(paymentRepository, times(3)).save(any(Payment.class));
+        assertEquals("Your card was declined.", response.getMessage());
+        assertEquals(PaymentStatus.FAILED, response.getData().getPaymentStatus());
+        verify(paymentRepository).markStripePaymentFailed(eq(1L), eq("Stripe error: Your card was declined."),
+                any(LocalDateTime.class));
+        verify(paymentRepository, never()).attachStripePaymentIntent(any(), anyString(), any(LocalDateTime.class));
     }
 
     @Test
-    @DisplayName("Stripe payment should handle Stripe service exception")
-    void processStripePayment_ShouldHandleStripeException() {
+    @DisplayName("Stripe payment should be marked FAILED when Stripe service throws")
+    void submitStripePayment_ShouldHandleStripeException() {
         // Arrange
-        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
-        when(stiTestRepository.findById(1L)).thenReturn(Optional.of(testSTITest));
-        when(paymentRepository.save(any(Payment.class))).thenReturn(testPayment);
-        
-        when(stripeService.processPaymentForSTITest(any(STITest.class), anyString(), anyString(), 
+        when(stripeService.processPaymentForSTITest(any(STITest.class), any(), anyString(), anyString(),
                 anyString(), anyString(), anyString())).thenThrow(new RuntimeException("Stripe service unavailable"));
 
         // Act
-        ApiResponse<Payment> response = paymentService.processStripePayment(
-                1L, "STI", 1L, new BigDecimal("500000"), "STI Test",
-                "4242424242424242", "12", "2025", "123", "Test User");
+        ApiResponse<Payment> response = paymentService.submitStripePayment(stripeCharge("4242424242424242"));
 
         // Assert
         assertFalse(response.isSuccess());
-        assertTrue(response.getMessage().contains("Failed to process payment"));
-        
-        // Verify save is called: once in createPayment, once for processing status
-        // Note: When exception occurs, payment is not saved again for FAILED status
-        verify(paymentRepository, times(2)).save(any(Payment.class));
+        assertTrue(response.getMessage().contains("Stripe service unavailable"));
+        verify(paymentRepository).markStripePaymentFailed(eq(1L),
+                eq("Stripe error: Payment processing error: Stripe service unavailable"), any(LocalDateTime.class));
     }
 
     @Test
     @DisplayName("Stripe payment should fail when STI test not found")
-    void processStripePayment_ShouldFailWhenSTITestNotFound() {
+    void prepareStripePayment_ShouldFailWhenSTITestNotFound() {
         // Arrange
         when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
         when(stiTestRepository.findById(1L)).thenReturn(Optional.empty());
         when(paymentRepository.save(any(Payment.class))).thenReturn(testPayment);
 
         // Act
-        ApiResponse<Payment> response = paymentService.processStripePayment(
+        ApiResponse<PaymentService.StripeCharge> response = paymentService.prepareStripePayment(
                 1L, "STI", 1L, new BigDecimal("500000"), "STI Test",
                 "4242424242424242", "12", "2025", "123", "Test User");
 
@@ -297,12 +316,12 @@ class PaymentServiceTest {
 
     @Test
     @DisplayName("Stripe payment should fail when user not found")
-    void processStripePayment_ShouldFailWhenUserNotFound() {
+    void prepareStripePayment_ShouldFailWhenUserNotFound() {
         // Arrange
         when(userRepository.findById(1L)).thenReturn(Optional.empty());
 
         // Act
-        ApiResponse<Payment> response = paymentService.processStripePayment(
+        ApiResponse<PaymentService.StripeCharge> response = paymentService.prepareStripePayment(
                 1L, "STI", 1L, new BigDecimal("500000"), "STI Test",
                 "4242424242424242", "12", "2025", "123", "Test User");
 
@@ -314,13 +333,13 @@ class PaymentServiceTest {
 
     @Test
     @DisplayName("Stripe payment should handle unsupported service type")
-    void processStripePayment_ShouldFailForUnsupportedServiceType() {
+    void prepareStripePayment_ShouldFailForUnsupportedServiceType() {
         // Arrange
         when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
         when(paymentRepository.save(any(Payment.class))).thenReturn(testPayment);
 
         // Act
-        ApiResponse<Payment> response = paymentService.processStripePayment(
+        ApiResponse<PaymentService.StripeCharge> response = paymentService.prepareStripePayment(
                 1L, "UNSUPPORTED", 1L, new BigDecimal("500000"), "Unsupported Service",
                 "4242424242424242", "12", "2025", "123", "Test User");
 
@@ -334,6 +353,56 @@ class PaymentServiceTest {
         verify(paymentRepository, times(2)).save(any(Payment.class));
     }
 
+    @Test
+    @DisplayName("Stuck VISA payments without a PaymentIntent should be failed after the threshold")
+    void failStuckStripePayments_ShouldFailPaymentsOlderThanThreshold() {
+        // Arrange
+        ReflectionTestUtils.setField(paymentService, "stripeStuckMinutes", 5L);
+        when(paymentRepository.failStuckStripePayments(any(LocalDateTime.class), anyString(),
+                any(LocalDateTime.class))).thenReturn(2);
+
+        // Act
+        LocalDateTime before = LocalDateTime.now().minusMinutes(5);
+        paymentService.failStuckStripePayments();
+
+        // Assert
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(paymentRepository).failStuckStripePayments(cutoff.capture(), anyString(), any(LocalDateTime.class));
+        assertFalse(cutoff.getValue().isBefore(before));
+        assertEquals(2.0, meterRegistry.counter("stripe.payment.stuck").count());
+    }
+
+    @Test
+    @DisplayName("Only VISA PROCESSING payments without an intent past the threshold count as stuck")
+    void isStuckStripePayment_ShouldRequireNoIntentAndOldUpdate() {
+        Payment stuck = stripeCharge("4242424242424242").payment();
+        stuck.setUpdatedAt(LocalDateTime.now().minusMinutes(10));
+        Payment recent = stripeCharge("4242424242424242").payment();
+        recent.setUpdatedAt(LocalDateTime.now());
+        Payment withIntent = stripeCharge("4242424242424242").payment();
+        withIntent.setUpdatedAt(LocalDateTime.now().minusMinutes(10));
+        withIntent.setStripePaymentIntentId("pi_test_789");
+
+        assertTrue(paymentService.isStuckStripePayment(stuck));
+        assertFalse(paymentService.isStuckStripePayment(recent));
+        assertFalse(paymentService.isStuckStripePayment(withIntent));
+    }
+
+    private PaymentService.StripeCharge stripeCharge(String cardNumber) {
+        Payment payment = Payment.builder()
+                .paymentId(1L)
+                .user(testUser)
+                .serviceType("STI")
+                .serviceId(1L)
+                .paymentMethod(PaymentMethod.VISA)
+                .paymentStatus(PaymentStatus.PROCESSING)
+                .amount(new BigDecimal("500000"))
+                .currency("VND")
+                .description("STI Test")
+                .build();
+        return new PaymentService.StripeCharge(payment, testSTITest, cardNumber, "12", "2025", "123", "Test User");
+    }
+
     @Test
     @DisplayName("Get pending COD payments should return list of pending COD payments")
     void getPendingCODPayments_ShouldReturnPendingCODPayments() {
@@ -399,4 +468,73 @@ class PaymentServiceTest {
         assertTrue(response.getMessage().contains("Failed to retrieve pending COD payments"));
         assertTrue(response.getMessage().contains("Database error"));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Cleanup expired QR payments should update in batches until a partial batch")
+    void cleanupExpiredPayments_ShouldRunBulkUpdatesInBatches() {
+        when(paymentRepository.expirePendingBatch(eq("QR_CODE"), any(LocalDateTime.class), eq(1000)))
+                .thenReturn(1000, 250);
+
+        paymentService.cleanupExpiredPayments();
+
+        verify(paymentRepository, times(2)).expirePendingBatch(eq("QR_CODE"), any(LocalDateTime.class), eq(1000));
+        verify(paymentRepository, never()).save(any(Payment.class));
+        assertEquals(1250.0, meterRegistry.counter("payment.qr.expired").count());
+    }
+
+    @Test
+    @DisplayName("Admin payment listing should return a keyset page with next cursor")
+    void getAllPayments_ShouldReturnKeysetPage() {
+        LocalDateTime createdAt = LocalDateTime.of(2025, 6, 1, 10, 0);
+        when(paymentRepository.findPaymentPage(any(LocalDateTime.class), eq(Long.MAX_VALUE), any()))
+                .thenReturn(List.of(row(30L, createdAt), row(20L, createdAt), row(10L, createdAt.minusHours(1))));
+
+        ApiResponse<PaymentPageResponse> response = paymentService.getAllPayments(null, 2);
+
+        assertTrue(response.isSuccess());
+        assertEquals(2, response.getData().getItems().size());
+        PaymentCursor next = PaymentCursor.decode(response.getData().getNextCursor());
+        assertEquals(createdAt, next.createdAt());
+        assertEquals(20L, next.paymentId());
+
+        // Trang tiếp theo tìm đúng vị trí sau cursor
+        when(paymentRepository.findPaymentPage(eq(createdAt), eq(20L), any()))
+                .thenReturn(List.of(row(10L, createdAt.minusHours(1))));
+        ApiResponse<PaymentPageResponse> lastPage = paymentService.getAllPayments(
+                response.getData().getNextCursor(), 2);
+
+        assertEquals(1, lastPage.getData().getItems().size());
+        assertNull(lastPage.getData().getNextCursor());
+    }
+
+    @Test
+    @DisplayName("Admin payment listing should reject a malformed cursor")
+    void getAllPayments_ShouldRejectInvalidCursor() {
+        ApiResponse<PaymentPageResponse> response = paymentService.getAllPayments("not-a-cursor", 20);
+
+        assertFalse(response.isSuccess());
+        assertEquals("Invalid cursor", response.getMessage());
+    }
+
+    @Test
+    @DisplayName("User payment listing should page by the authenticated user id without a username lookup")
+    void getPaymentsByUser_ShouldQueryByUserId() {
+        LocalDateTime createdAt = LocalDateTime.of(2025, 6, 1, 10, 0);
+        when(paymentRepository.findUserPaymentPage(eq(1L), any(LocalDateTime.class), eq(Long.MAX_VALUE), any()))
+                .thenReturn(List.of(row(30L, createdAt)));
+
+        ApiResponse<PaymentPageResponse> response = paymentService.getPaymentsByUser(1L, null, 2);
+
+        assertTrue(response.isSuccess());
+        assertEquals(1, response.getData().getItems().size());
+        assertNull(response.getData().getNextCursor());
+    }
+
+    private PaymentTransactionResponse row(Long paymentId, LocalDateTime createdAt) {
+        PaymentTransactionResponse row = new PaymentTransactionResponse();
+        row.setPaymentId(paymentId);
+        row.setCreatedAt(createdAt);
+        row.setPaymentStatus(PaymentStatus.COMPLETED);
+        return row;
+    }
+}
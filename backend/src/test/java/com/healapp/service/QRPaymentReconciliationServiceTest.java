@@ -0,0 +1,186 @@
+package com.healapp.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.healapp.dto.ApiResponse;
+import com.healapp.dto.BankTransactionResponse;
+import com.healapp.model.Payment;
+import com.healapp.model.PaymentMethod;
+import com.healapp.model.PaymentStatus;
+import com.healapp.repository.PaymentRepository;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("QRPaymentReconciliationService Unit Test")
+class QRPaymentReconciliationServiceTest {
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    @Mock
+    private BankingService bankingService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private QRPaymentStatusHub qrStatusHub;
+
+    @InjectMocks
+    private QRPaymentReconciliationService reconciliationService;
+
+    @Test
+    @DisplayName("Đối soát - Một lần gọi ngân hàng, xác nhận payment khớp mã và số tiền")
+    void reconcile_ShouldConfirmMatchingPaymentsFromSingleHistoryPull() {
+        Payment paid = pendingPayment(1L, "HEALSTI1", "500000");
+        Payment unpaid = pendingPayment(2L, "HEALSTI2", "300000");
+        Payment wrongAmount = pendingPayment(3L, "HEALSTI3", "200000");
+        when(paymentRepository.findByPaymentMethodAndPaymentStatusAndExpiresAtAfter(
+                eq(PaymentMethod.QR_CODE), eq(PaymentStatus.PENDING), any()))
+                .thenReturn(List.of(paid, unpaid, wrongAmount));
+        when(bankingService.getTransactionHistory(any(), any(), anyInt(), anyInt())).thenReturn(ApiResponse.success("ok",
+                new BankTransactionResponse[] {
+                        transaction("MB001", " healsti1 ", "500000"),
+                        transaction("MB003", "HEALSTI3", "100000") }));
+        when(paymentRepository.findAllById(any())).thenReturn(List.of(paid));
+
+        int confirmed = reconciliationService.reconcile();
+
+        assertEquals(1, confirmed);
+        assertEquals(PaymentStatus.COMPLETED, paid.getPaymentStatus());
+        assertEquals("MB001", paid.getTransactionId());
+        assertEquals(PaymentStatus.PENDING, unpaid.getPaymentStatus());
+        assertNull(wrongAmount.getTransactionId());
+        verify(bankingService, times(1)).getTransactionHistory(any(), any(), anyInt(), anyInt());
+        verify(paymentRepository).saveAll(List.of(paid));
+        verify(qrStatusHub).update(paid);
+    }
+
+    @Test
+    @DisplayName("Đối soát - Bỏ giao dịch không thành công, đọc tiếp trang sau khi trang đầy rồi mới tiến watermark")
+    void reconcile_ShouldSkipFailedRowsAndPageUntilShortPage() {
+        ReflectionTestUtils.setField(reconciliationService, "historyLimit", 3);
+        Payment failedTransfer = pendingPayment(4L, "HEALSTI4", "400000");
+        Payment paidLater = pendingPayment(5L, "HEALSTI5", "500000");
+        when(paymentRepository.findByPaymentMethodAndPaymentStatusAndExpiresAtAfter(
+                eq(PaymentMethod.QR_CODE), eq(PaymentStatus.PENDING), any()))
+                .thenReturn(List.of(failedTransfer, paidLater));
+        LocalDateTime latest = LocalDateTime.now().minusSeconds(30);
+        BankTransactionResponse newest = transaction("MB010", "OTHER10", "100000");
+        newest.setTransactionDate(latest);
+        BankTransactionResponse failed = transaction("MB004", "HEALSTI4", "400000");
+        failed.setStatus("FAILED");
+        failed.setTransactionDate(latest.minusMinutes(2));
+        BankTransactionResponse older = transaction("MB009", "OTHER9", "100000");
+        older.setTransactionDate(latest.minusMinutes(1));
+        when(bankingService.getTransactionHistory(any(), any(), eq(3), eq(0))).thenReturn(ApiResponse.success("ok",
+                new BankTransactionResponse[] { newest, failed, older }));
+        when(bankingService.getTransactionHistory(any(), any(), eq(3), eq(3))).thenReturn(ApiResponse.success("ok",
+                new BankTransactionResponse[] { transaction("MB005", "HEALSTI5", "500000") }));
+        when(paymentRepository.findAllById(any())).thenReturn(List.of(paidLater));
+
+        LocalDateTime before = LocalDateTime.now();
+        int confirmed = reconciliationService.reconcile();
+
+        assertEquals(1, confirmed);
+        assertEquals(PaymentStatus.PENDING, failedTransfer.getPaymentStatus());
+        assertEquals(PaymentStatus.COMPLETED, paidLater.getPaymentStatus());
+        // Trang cuối ngắn hơn limit: đã đọc hết khoảng, watermark tiến tới thời điểm bắt đầu lượt
+        LocalDateTime watermark = (LocalDateTime) ReflectionTestUtils.getField(reconciliationService, "watermark");
+        assertFalse(watermark.isBefore(before.minusSeconds(1)));
+    }
+
+    @Test
+    @DisplayName("Đối soát - Vẫn đầy sau số trang tối đa thì giữ watermark cũ")
+    void reconcile_TruncatedAfterMaxPages_ShouldKeepPreviousWatermark() {
+        ReflectionTestUtils.setField(reconciliationService, "historyLimit", 1);
+        ReflectionTestUtils.setField(reconciliationService, "maxPages", 2);
+        LocalDateTime previous = LocalDateTime.now().minusMinutes(3);
+        ReflectionTestUtils.setField(reconciliationService, "watermark", previous);
+        when(paymentRepository.findByPaymentMethodAndPaymentStatusAndExpiresAtAfter(
+                eq(PaymentMethod.QR_CODE), eq(PaymentStatus.PENDING), any()))
+                .thenReturn(List.of(pendingPayment(6L, "HEALSTI6", "600000")));
+        when(bankingService.getTransactionHistory(any(), any(), eq(1), anyInt())).thenReturn(ApiResponse.success("ok",
+                new BankTransactionResponse[] { transaction("MB011", "OTHER11", "100000") }));
+
+        assertEquals(0, reconciliationService.reconcile());
+
+        verify(bankingService, times(2)).getTransactionHistory(any(), any(), eq(1), anyInt());
+        assertEquals(previous, ReflectionTestUtils.getField(reconciliationService, "watermark"));
+    }
+
+    @Test
+    @DisplayName("Đối soát - API lỗi và bật banking.simulation.enabled thì dùng giao dịch giả lập, không tiến watermark")
+    void reconcile_BankUnavailableWithSimulation_ShouldUseSimulatedTransactions() {
+        Payment payment = pendingPayment(7L, "HEALSTI7", "700000");
+        when(paymentRepository.findByPaymentMethodAndPaymentStatusAndExpiresAtAfter(
+                eq(PaymentMethod.QR_CODE), eq(PaymentStatus.PENDING), any()))
+                .thenReturn(List.of(payment));
+        when(bankingService.getTransactionHistory(any(), any(), anyInt(), anyInt()))
+                .thenReturn(ApiResponse.error("Failed to get transactions: timeout"));
+        when(bankingService.isSimulationEnabled()).thenReturn(true);
+        when(bankingService.simulateTransactionCheck("HEALSTI7", payment.getAmount()))
+                .thenReturn(ApiResponse.success("Simulated transaction found",
+                        transaction("MB007", "HEALSTI7", "700000")));
+        when(paymentRepository.findAllById(any())).thenReturn(List.of(payment));
+
+        assertEquals(1, reconciliationService.reconcile());
+
+        assertEquals("MB007", payment.getTransactionId());
+        assertNull(ReflectionTestUtils.getField(reconciliationService, "watermark"));
+    }
+
+    @Test
+    @DisplayName("Đối soát - Không có payment chờ thì không gọi ngân hàng")
+    void reconcile_NoPendingPayments_ShouldSkipBankCall() {
+        when(paymentRepository.findByPaymentMethodAndPaymentStatusAndExpiresAtAfter(
+                eq(PaymentMethod.QR_CODE), eq(PaymentStatus.PENDING), any()))
+                .thenReturn(List.of());
+
+        assertEquals(0, reconciliationService.reconcile());
+        verify(bankingService, never()).getTransactionHistory(any(), any(), anyInt(), anyInt());
+    }
+
+    private Payment pendingPayment(Long id, String reference, String amount) {
+        Payment payment = new Payment();
+        payment.setPaymentId(id);
+        payment.setPaymentMethod(PaymentMethod.QR_CODE);
+        payment.setPaymentStatus(PaymentStatus.PENDING);
+        payment.setQrPaymentReference(reference);
+        payment.setAmount(new BigDecimal(amount));
+        payment.setCreatedAt(LocalDateTime.now().minusMinutes(5));
+        payment.setExpiresAt(LocalDateTime.now().plusMinutes(25));
+        return payment;
+    }
+
+    private BankTransactionResponse transaction(String transactionId, String reference, String amount) {
+        BankTransactionResponse transaction = new BankTransactionResponse();
+        transaction.setTransactionId(transactionId);
+        transaction.setReference(reference);
+        transaction.setAmount(new BigDecimal(amount));
+        // Dòng lịch sử thật không có cờ transactionFound
+        transaction.setStatus("SUCCESS");
+        transaction.setTransactionDate(LocalDateTime.now().minusMinutes(1));
+        return transaction;
+    }
+}
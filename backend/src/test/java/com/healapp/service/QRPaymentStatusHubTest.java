@@ -0,0 +1,102 @@
+package com.healapp.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.healapp.model.Payment;
+import com.healapp.model.PaymentMethod;
+import com.healapp.model.PaymentStatus;
+import com.healapp.model.UserDtls;
+import com.healapp.repository.PaymentRepository;
+
+@DisplayName("QRPaymentStatusHub Unit Test")
+class QRPaymentStatusHubTest {
+
+    private final QRPaymentStatusHub hub = new QRPaymentStatusHub();
+    private final PaymentRepository paymentRepository = mock(PaymentRepository.class);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(hub, "paymentRepository", paymentRepository);
+    }
+
+    @Test
+    @DisplayName("Status hub - Trả trạng thái mới nhất cho đúng chủ payment")
+    void update_ShouldServeLatestStatusToOwnerOnly() {
+        Payment payment = qrPayment("HEALSTI1", LocalDateTime.now().plusHours(1));
+        hub.update(payment);
+
+        assertEquals(PaymentStatus.PENDING, hub.getStatus("HEALSTI1", "alice").orElseThrow().getPaymentStatus());
+        assertTrue(hub.getStatus("HEALSTI1", "mallory").isEmpty());
+        assertTrue(hub.subscribe("HEALSTI1", "mallory").isEmpty());
+
+        payment.setPaymentStatus(PaymentStatus.COMPLETED);
+        payment.setTransactionId("MB001");
+        hub.update(payment);
+
+        assertEquals(PaymentStatus.COMPLETED, hub.getStatus("HEALSTI1", "alice").orElseThrow().getPaymentStatus());
+        assertEquals("MB001", hub.getStatus("HEALSTI1", "alice").orElseThrow().getTransactionId());
+    }
+
+    @Test
+    @DisplayName("Status hub - Sweep đánh dấu EXPIRED khi quá hạn")
+    void sweep_ShouldExpireOverduePendingReferences() throws InterruptedException {
+        Payment payment = qrPayment("HEALSTI2", LocalDateTime.now().plusNanos(200_000_000));
+        hub.update(payment);
+        assertTrue(hub.subscribe("HEALSTI2", "alice").isPresent());
+        when(paymentRepository.findByQrPaymentReference("HEALSTI2")).thenReturn(Optional.of(payment));
+
+        Thread.sleep(300);
+        hub.sweep();
+
+        assertEquals(PaymentStatus.EXPIRED, hub.getStatus("HEALSTI2", "alice").orElseThrow().getPaymentStatus());
+    }
+
+    @Test
+    @DisplayName("Status hub - Payment đã xác nhận ở node khác thì sweep không đánh dấu EXPIRED")
+    void sweep_ShouldReadDatabaseBeforeExpiring() throws InterruptedException {
+        Payment payment = qrPayment("HEALSTI3", LocalDateTime.now().plusNanos(200_000_000));
+        hub.update(payment);
+
+        Payment confirmedElsewhere = qrPayment("HEALSTI3", payment.getExpiresAt());
+        confirmedElsewhere.setPaymentStatus(PaymentStatus.COMPLETED);
+        confirmedElsewhere.setTransactionId("MB002");
+        when(paymentRepository.findByQrPaymentReference("HEALSTI3")).thenReturn(Optional.of(confirmedElsewhere));
+
+        Thread.sleep(300);
+        // PENDING đã quá hạn không được trả từ bộ nhớ
+        assertTrue(hub.getStatus("HEALSTI3", "alice").isEmpty());
+        assertFalse(hub.isTracked("HEALSTI3"));
+
+        hub.sweep();
+
+        assertEquals(PaymentStatus.COMPLETED, hub.getStatus("HEALSTI3", "alice").orElseThrow().getPaymentStatus());
+    }
+
+    private Payment qrPayment(String reference, LocalDateTime expiresAt) {
+        UserDtls user = new UserDtls();
+        user.setId(1L);
+        user.setUsername("alice");
+
+        Payment payment = new Payment();
+        payment.setPaymentId(1L);
+        payment.setUser(user);
+        payment.setPaymentMethod(PaymentMethod.QR_CODE);
+        payment.setPaymentStatus(PaymentStatus.PENDING);
+        payment.setQrPaymentReference(reference);
+        payment.setAmount(new BigDecimal("500000"));
+        payment.setExpiresAt(expiresAt);
+        return payment;
+    }
+}
@@ -0,0 +1,127 @@
+package com.healapp.service;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RateLimiterService Unit Test")
+class RateLimiterServiceTest {
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private RateLimiterService rateLimiterService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(rateLimiterService, "loginIpPolicy", "3/1m");
+        ReflectionTestUtils.setField(rateLimiterService, "otpPhonePolicy", "1/20ms");
+        ReflectionTestUtils.setField(rateLimiterService, "maxBucketsPerPolicy", 10);
+        rateLimiterService.init();
+    }
+
+    @Test
+    @DisplayName("Token bucket - cho phép đủ capacity request dồn dập rồi chặn, mỗi key một bucket riêng")
+    void tryAcquire_ShouldAllowBurstThenReject() {
+        String policy = RateLimiterService.LOGIN_IP;
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(rateLimiterService.tryAcquire(policy, "10.0.0.1").isEmpty());
+        }
+        Optional<Duration> wait = rateLimiterService.tryAcquire(policy, "10.0.0.1");
+
+        assertTrue(wait.isPresent());
+        // Một token được nạp lại sau period / capacity = 20 giây
+        assertTrue(wait.get().compareTo(Duration.ofSeconds(20)) <= 0);
+        assertTrue(wait.get().compareTo(Duration.ofSeconds(19)) > 0);
+        assertTrue(rateLimiterService.tryAcquire(policy, "10.0.0.2").isEmpty());
+        assertEquals(1.0, meterRegistry.counter("rate.limit.rejected", "policy", "login-ip").count());
+    }
+
+    @Test
+    @DisplayName("Token bucket - bucket đã nạp đầy bị xoá khi quét, bucket còn đang giới hạn được giữ lại")
+    void evictExpired_ShouldDropOnlyRefilledBuckets() throws InterruptedException {
+        rateLimiterService.tryAcquire(RateLimiterService.OTP_PHONE, "+84901234567");
+        rateLimiterService.tryAcquire(RateLimiterService.OTP_EMAIL, "user@example.com_verification");
+
+        Thread.sleep(50);
+        rateLimiterService.evictExpired();
+
+        assertEquals(1, rateLimiterService.getBucketCount());
+        assertTrue(rateLimiterService.tryAcquire(RateLimiterService.OTP_EMAIL, "user@example.com_verification")
+                .isPresent());
+    }
+
+    @Test
+    @DisplayName("Token bucket - kiểm tra không tiêu lượt, chỉ báo giới hạn khi đã hết lượt")
+    void check_ShouldNotConsumeTokens() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiterService.check(RateLimiterService.LOGIN_IP, "10.0.0.3").isEmpty());
+        }
+        assertEquals(0, rateLimiterService.getBucketCount());
+
+        for (int i = 0; i < 3; i++) {
+            rateLimiterService.tryAcquire(RateLimiterService.LOGIN_IP, "10.0.0.3");
+        }
+        assertTrue(rateLimiterService.check(RateLimiterService.LOGIN_IP, "10.0.0.3").isPresent());
+    }
+
+    @Test
+    @DisplayName("Token bucket - chính sách đầy bucket thì bỏ bucket cũ nhất, key mới vẫn bị giới hạn")
+    void tryAcquire_WhenPolicyFull_ShouldEvictOldestAndKeepLimiting() {
+        for (int i = 0; i < 10; i++) {
+            rateLimiterService.tryAcquire(RateLimiterService.LOGIN_IP, "10.0.1." + i);
+        }
+        // Key mới nhất dùng hết lượt, không bị bỏ khi đầy
+        for (int i = 0; i < 3; i++) {
+            rateLimiterService.tryAcquire(RateLimiterService.LOGIN_IP, "10.0.1.9");
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(rateLimiterService.tryAcquire(RateLimiterService.LOGIN_IP, "10.0.2.1").isEmpty());
+        }
+
+        assertTrue(rateLimiterService.tryAcquire(RateLimiterService.LOGIN_IP, "10.0.2.1").isPresent());
+        assertTrue(rateLimiterService.tryAcquire(RateLimiterService.LOGIN_IP, "10.0.1.9").isPresent());
+        assertTrue(rateLimiterService.getBucketCount() <= 10);
+        assertEquals(1.0, meterRegistry.counter("rate.limit.overflow", "policy", "login-ip", "action", "evicted")
+                .count());
+    }
+
+    @Test
+    @DisplayName("Token bucket - chính sách nhạy cảm đầy bucket thì từ chối key mới, không ảnh hưởng chính sách khác")
+    void tryAcquire_WhenSensitivePolicyFull_ShouldFailClosed() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(rateLimiterService.tryAcquire(RateLimiterService.OTP_EMAIL, "user" + i + "@example.com")
+                    .isEmpty());
+        }
+
+        assertTrue(rateLimiterService.tryAcquire(RateLimiterService.OTP_EMAIL, "new@example.com").isPresent());
+        assertFalse(rateLimiterService.tryAcquire(RateLimiterService.LOGIN_IP, "10.0.0.4").isPresent());
+        assertEquals(1.0, meterRegistry.counter("rate.limit.overflow", "policy", "otp-email", "action", "rejected")
+                .count());
+    }
+
+    @Test
+    @DisplayName("Token bucket - tên chính sách không tồn tại thì báo lỗi")
+    void tryAcquire_UnknownPolicy_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> rateLimiterService.tryAcquire("unknown", "key"));
+    }
+}
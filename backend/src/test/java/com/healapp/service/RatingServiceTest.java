@@ -53,6 +53,7 @@ import com.healapp.repository.UserRepository;
 public class RatingServiceTest {
     @Mock private RatingRepository ratingRepository;
     @Mock private RatingSummaryRepository ratingSummaryRepository;
+    @Mock private RatingSummaryService ratingSummaryService;
     @Mock private UserRepository userRepository;
     @Mock private ConsultationRepository consultationRepository;
     @Mock private STITestRepository stiTestRepository;
@@ -559,4 +560,17 @@ public class RatingServiceTest {
         assertTrue(res.isSuccess());
         assertEquals(1, res.getData().getTotalElements());
     }
+
+    @Test
+    void getAllRatingSummary_fromAggregates() {
+        when(ratingSummaryService.getStarCounts(null)).thenReturn(new int[] { 0, 1, 0, 0, 1, 2 });
+        when(ratingSummaryService.getStarCounts(Rating.RatingTargetType.CONSULTANT)).thenReturn(new int[] { 0, 1, 0, 0, 0, 2 });
+        when(ratingSummaryService.getStarCounts(Rating.RatingTargetType.STI_SERVICE)).thenReturn(new int[] { 0, 0, 0, 0, 1, 0 });
+        ApiResponse<Map<String, Object>> res = ratingService.getAllRatingSummary();
+        assertTrue(res.isSuccess());
+        assertEquals(4, res.getData().get("totalRatings"));
+        assertEquals(new BigDecimal("3.8"), res.getData().get("averageRating"));
+        assertEquals(3L, res.getData().get("consultationRatingCount"));
+        assertEquals(1L, res.getData().get("stiServiceRatingCount"));
+    }
 }
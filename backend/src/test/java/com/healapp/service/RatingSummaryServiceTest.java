@@ -0,0 +1,87 @@
+package com.healapp.service;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.healapp.model.Rating;
+import com.healapp.model.RatingSummary;
+import com.healapp.repository.RatingRepository;
+import com.healapp.repository.RatingSummaryRepository;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RatingSummaryService Unit Test")
+class RatingSummaryServiceTest {
+
+    @Mock
+    private RatingRepository ratingRepository;
+
+    @Mock
+    private RatingSummaryRepository ratingSummaryRepository;
+
+    @InjectMocks
+    private RatingSummaryService ratingSummaryService;
+
+    @Test
+    @DisplayName("Tạo rating - Cộng 1 vào tổng và cột số sao")
+    void applyRatingChange_NewRating_ShouldIncrementCounts() {
+        when(ratingSummaryRepository.applyDelta(eq(Rating.RatingTargetType.CONSULTANT), eq(5L),
+                eq(1), eq(1), eq(0), eq(0), eq(0), eq(0), any())).thenReturn(1);
+
+        ratingSummaryService.applyRatingChange(Rating.RatingTargetType.CONSULTANT, 5L, null, 5);
+
+        verify(ratingSummaryRepository).refreshAverage("CONSULTANT", 5L);
+    }
+
+    @Test
+    @DisplayName("Sửa rating - Chuyển một lượt từ 5 sao sang 3 sao, tổng không đổi")
+    void applyRatingChange_ChangedStar_ShouldMoveCount() {
+        when(ratingSummaryRepository.applyDelta(eq(Rating.RatingTargetType.STI_SERVICE), eq(7L),
+                eq(0), eq(-1), eq(0), eq(1), eq(0), eq(0), any())).thenReturn(1);
+
+        ratingSummaryService.applyRatingChange(Rating.RatingTargetType.STI_SERVICE, 7L, 5, 3);
+
+        verify(ratingSummaryRepository).refreshAverage("STI_SERVICE", 7L);
+    }
+
+    @Test
+    @DisplayName("Sửa rating - Không đổi số sao thì không ghi summary")
+    void applyRatingChange_SameStar_ShouldSkip() {
+        ratingSummaryService.applyRatingChange(Rating.RatingTargetType.CONSULTANT, 5L, 4, 4);
+
+        verify(ratingSummaryRepository, never()).applyDelta(any(), anyLong(), anyInt(), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), any());
+    }
+
+    @Test
+    @DisplayName("Tính lại summary - Dùng phân bố sao từ GROUP BY")
+    void recomputeSummary_ShouldApplyGroupedCounts() {
+        when(ratingRepository.countRatingsByScore(Rating.RatingTargetType.CONSULTANT, 5L))
+                .thenReturn(List.of(new Object[] { 5, 2L }, new Object[] { 2, 1L }));
+        when(ratingSummaryRepository.findByTargetTypeAndTargetId(Rating.RatingTargetType.CONSULTANT, 5L))
+                .thenReturn(Optional.empty());
+        when(ratingSummaryRepository.save(any(RatingSummary.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        RatingSummary summary = ratingSummaryService.recomputeSummary(Rating.RatingTargetType.CONSULTANT, 5L);
+
+        assertEquals(3, summary.getTotalRatings());
+        assertEquals(2, summary.getFiveStarCount());
+        assertEquals(1, summary.getTwoStarCount());
+        assertEquals(new BigDecimal("4.0"), summary.getAverageRating());
+    }
+}
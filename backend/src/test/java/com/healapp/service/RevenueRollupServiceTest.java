@@ -0,0 +1,121 @@
+package com.healapp.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.healapp.model.PaymentMethod;
+import com.healapp.model.PaymentStatus;
+import com.healapp.model.RevenueDailyRollup;
+import com.healapp.repository.PaymentRepository;
+import com.healapp.repository.RevenueDailyRollupRepository;
+import com.healapp.utils.HyperLogLog;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RevenueRollupService Unit Test")
+class RevenueRollupServiceTest {
+
+    @Mock
+    private RevenueDailyRollupRepository rollupRepository;
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    @InjectMocks
+    private RevenueRollupService revenueRollupService;
+
+    @Test
+    @DisplayName("Báo cáo doanh thu - Ngày trọn đọc từ bảng tổng hợp, phần lẻ cuối đọc từ payments")
+    void getRevenueSummary_ShouldCombineRollupsWithPartialDay() {
+        LocalDateTime from = LocalDateTime.of(2025, 6, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2025, 6, 3, 10, 0);
+        when(rollupRepository.findByRollupDateBetween(LocalDate.of(2025, 6, 1), LocalDate.of(2025, 6, 2)))
+                .thenReturn(List.of(
+                        rollup(LocalDate.of(2025, 6, 1), 2, "1000000", 1L, 2L),
+                        rollup(LocalDate.of(2025, 6, 2), 1, "500000", 2L)));
+        when(paymentRepository.summarizeRevenueBetween(LocalDateTime.of(2025, 6, 3, 0, 0), to))
+                .thenReturn(List.of(
+                        new Object[] { PaymentStatus.COMPLETED, 1L, new BigDecimal("300000"),
+                                new BigDecimal("300000") },
+                        new Object[] { PaymentStatus.REFUNDED, 1L, new BigDecimal("200000"),
+                                new BigDecimal("200000") }));
+        when(paymentRepository.findRevenueCustomerIdsBetween(LocalDateTime.of(2025, 6, 3, 0, 0), to))
+                .thenReturn(List.of(3L));
+
+        Map<String, Object> summary = revenueRollupService.getRevenueSummary(from, to);
+
+        assertEquals(new BigDecimal("1800000"), summary.get("totalRevenue"));
+        assertEquals(4L, summary.get("totalTransactions"));
+        assertEquals(new BigDecimal("450000"), summary.get("averageRevenue"));
+        assertEquals(3L, summary.get("totalCustomers"));
+        assertEquals(1L, summary.get("refundCount"));
+        assertEquals(new BigDecimal("200000"), summary.get("refundAmount"));
+        verify(paymentRepository, never()).summarizeRevenueBuckets(any(), any());
+    }
+
+    @Test
+    @DisplayName("Báo cáo doanh thu - Khoảng ngắn hơn một ngày chỉ đọc tổng theo trạng thái, không đọc bảng tổng hợp")
+    void getRevenueSummary_WithinSingleDay_ShouldUseSqlAggregates() {
+        LocalDateTime from = LocalDateTime.of(2025, 6, 3, 8, 0);
+        LocalDateTime to = LocalDateTime.of(2025, 6, 3, 18, 0);
+        when(paymentRepository.summarizeRevenueBetween(from, to))
+                .thenReturn(List.<Object[]>of(new Object[] { PaymentStatus.COMPLETED, 3L, new BigDecimal("900000"),
+                        new BigDecimal("900000") }));
+        when(paymentRepository.findRevenueCustomerIdsBetween(from, to)).thenReturn(List.of(4L, 5L));
+
+        Map<String, Object> summary = revenueRollupService.getRevenueSummary(from, to);
+
+        assertEquals(new BigDecimal("900000"), summary.get("totalRevenue"));
+        assertEquals(3L, summary.get("totalTransactions"));
+        assertEquals(new BigDecimal("300000"), summary.get("averageRevenue"));
+        assertEquals(2L, summary.get("totalCustomers"));
+        assertEquals(0L, summary.get("refundCount"));
+        verify(rollupRepository, never()).findByRollupDateBetween(any(), any());
+    }
+
+    @Test
+    @DisplayName("HyperLogLog - Ước lượng số khách trong sai số cho phép và gộp được giữa các ngày")
+    void hyperLogLog_ShouldEstimateAndMergeDistinctCustomers() {
+        HyperLogLog day1 = new HyperLogLog();
+        HyperLogLog day2 = new HyperLogLog();
+        for (long userId = 1; userId <= 20000; userId++) {
+            day1.add(userId);
+        }
+        for (long userId = 10001; userId <= 30000; userId++) {
+            day2.add(userId);
+        }
+
+        HyperLogLog merged = HyperLogLog.fromBytes(day1.toBytes());
+        merged.merge(day2);
+
+        assertTrue(Math.abs(day1.estimate() - 20000) < 20000 * 0.05);
+        assertTrue(Math.abs(merged.estimate() - 30000) < 30000 * 0.05);
+    }
+
+    private RevenueDailyRollup rollup(LocalDate day, long completedCount, String completedAmount, Long... customers) {
+        RevenueDailyRollup rollup = new RevenueDailyRollup(day, "STI", PaymentMethod.QR_CODE);
+        rollup.setCompletedCount(completedCount);
+        rollup.setCompletedAmount(new BigDecimal(completedAmount));
+        HyperLogLog sketch = new HyperLogLog();
+        for (Long customer : customers) {
+            sketch.add(customer);
+        }
+        rollup.setCustomerSketch(sketch.toBytes());
+        return rollup;
+    }
+}
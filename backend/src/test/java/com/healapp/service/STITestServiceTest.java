@@ -27,6 +27,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import com.healapp.dto.ApiResponse;
 import com.healapp.dto.STITestRequest;
@@ -88,6 +89,9 @@ class STITestServiceTest {
     @Mock
     private TestServiceConsultantNoteRepository testServiceConsultantNoteRepository;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private STITestService stiTestService;
 
@@ -283,6 +287,49 @@ class STITestServiceTest {
         verify(paymentService).processCODPayment(anyLong(), anyString(), anyLong(), any(BigDecimal.class), anyString());
     }
 
+    @Test
+    @DisplayName("Đặt lịch xét nghiệm STI với VISA - Thẻ bị từ chối trả lỗi ngay sau khi commit")
+    void bookTest_VisaDeclined_ShouldReturnMappedCardError() {
+        stiTestRequest.setPaymentMethod("VISA");
+        stiTestRequest.setCardNumber("4000000000000002");
+        stiTestRequest.setExpiryMonth("12");
+        stiTestRequest.setExpiryYear(String.valueOf(LocalDateTime.now().getYear() + 2));
+        stiTestRequest.setCvc("123");
+        stiTestRequest.setCardHolderName("Customer User");
+
+        Payment visaPayment = new Payment();
+        visaPayment.setPaymentId(2L);
+        visaPayment.setUser(customer);
+        visaPayment.setServiceType("STI");
+        visaPayment.setServiceId(1L);
+        visaPayment.setAmount(new BigDecimal("500000"));
+        visaPayment.setPaymentMethod(PaymentMethod.VISA);
+        visaPayment.setPaymentStatus(PaymentStatus.PROCESSING);
+        PaymentService.StripeCharge charge = new PaymentService.StripeCharge(visaPayment, stiTest,
+                "4000000000000002", "12", "2030", "123", "Customer User");
+
+        when(stiServiceRepository.findById(1L)).thenReturn(Optional.of(stiService));
+        when(stiTestRepository.save(any(STITest.class))).thenReturn(stiTest);
+        when(paymentService.prepareStripePayment(anyLong(), anyString(), anyLong(), any(BigDecimal.class),
+                anyString(), anyString(), anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(ApiResponse.success("Payment prepared", charge));
+        when(paymentService.getPaymentByService("STI", 1L)).thenReturn(Optional.of(visaPayment));
+        when(paymentService.submitStripePayment(charge)).thenAnswer(invocation -> {
+            visaPayment.setPaymentStatus(PaymentStatus.FAILED);
+            visaPayment.setNotes("Stripe error: Your card was declined.");
+            return new ApiResponse<>(false, "Your card was declined.", visaPayment);
+        });
+
+        ApiResponse<STITestResponse> response = stiTestService.bookTest(stiTestRequest, 1L);
+
+        assertFalse(response.isSuccess());
+        assertEquals("Đặt lịch thành công nhưng thanh toán thất bại: "
+                + "Thẻ bị từ chối. Vui lòng kiểm tra lại thông tin thẻ hoặc liên hệ ngân hàng.", response.getMessage());
+        assertEquals("FAILED", response.getData().getPaymentStatus());
+        assertTrue(response.getData().getCanRetryPayment());
+        verify(paymentService).submitStripePayment(charge);
+    }
+
     @Test
     @DisplayName("Đặt lịch xét nghiệm STI với package - Thành công")
     void bookTest_PackageBooking_Success() {
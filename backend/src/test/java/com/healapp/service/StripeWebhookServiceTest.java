@@ -0,0 +1,128 @@
+package com.healapp.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healapp.model.Payment;
+import com.healapp.model.PaymentMethod;
+import com.healapp.model.PaymentStatus;
+import com.healapp.model.StripeWebhookEvent;
+import com.healapp.model.StripeWebhookEventStatus;
+import com.healapp.repository.PaymentRepository;
+import com.healapp.repository.StripeWebhookEventRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("StripeWebhookService Unit Test")
+class StripeWebhookServiceTest {
+
+    @Mock
+    private StripeService stripeService;
+
+    @Mock
+    private StripeWebhookEventRepository webhookEventRepository;
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private AsyncTaskExecutor webhookExecutor;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private StripeWebhookService stripeWebhookService;
+
+    @Test
+    @DisplayName("Webhook - payment_intent.succeeded tìm payment theo metadata và chỉ áp dụng một lần")
+    void apply_PaymentIntentSucceeded_ShouldCompleteOnce() {
+        Payment payment = processingPayment();
+        when(paymentRepository.findByStripePaymentIntentId("pi_123")).thenReturn(Optional.empty());
+        when(paymentRepository.findById(7L)).thenReturn(Optional.of(payment));
+
+        String payload = "{\"data\":{\"object\":{\"id\":\"pi_123\",\"metadata\":{\"paymentId\":\"7\"}}}}";
+        stripeWebhookService.apply("evt_1", "payment_intent.succeeded", payload);
+        stripeWebhookService.apply("evt_1", "payment_intent.succeeded", payload);
+
+        assertEquals(PaymentStatus.COMPLETED, payment.getPaymentStatus());
+        assertEquals("pi_123", payment.getStripePaymentIntentId());
+        assertNotNull(payment.getPaidAt());
+        verify(paymentRepository, times(1)).save(payment);
+    }
+
+    @Test
+    @DisplayName("Webhook - payment_failed không ghi đè payment đã COMPLETED")
+    void apply_PaymentFailedAfterCompleted_ShouldBeIgnored() {
+        Payment payment = processingPayment();
+        payment.setPaymentStatus(PaymentStatus.COMPLETED);
+        when(paymentRepository.findByStripePaymentIntentId("pi_123")).thenReturn(Optional.of(payment));
+
+        stripeWebhookService.apply("evt_2", "payment_intent.payment_failed",
+                "{\"data\":{\"object\":{\"id\":\"pi_123\",\"last_payment_error\":{\"message\":\"declined\"}}}}");
+
+        assertEquals(PaymentStatus.COMPLETED, payment.getPaymentStatus());
+        verify(paymentRepository, never()).save(any(Payment.class));
+    }
+
+    @Test
+    @DisplayName("Webhook - lỗi khi áp dụng thì đưa sự kiện về PENDING với backoff")
+    void process_WhenPaymentNotFound_ShouldScheduleRetry() {
+        StripeWebhookEvent event = new StripeWebhookEvent();
+        event.setId(1L);
+        event.setEventId("evt_3");
+        event.setEventType("charge.succeeded");
+        event.setPayload("{\"data\":{\"object\":{\"payment_intent\":\"pi_404\",\"receipt_url\":\"https://r\"}}}");
+        event.setStatus(StripeWebhookEventStatus.PROCESSING);
+        event.setAttempts(0);
+        event.setReceivedAt(LocalDateTime.now());
+        when(webhookEventRepository.claim(eq(1L), any())).thenReturn(1);
+        when(webhookEventRepository.findById(1L)).thenReturn(Optional.of(event));
+        when(paymentRepository.findByStripePaymentIntentId("pi_404")).thenReturn(Optional.empty());
+
+        stripeWebhookService.process(1L);
+
+        assertEquals(StripeWebhookEventStatus.PENDING, event.getStatus());
+        assertEquals(1, event.getAttempts());
+        assertTrue(event.getNextAttemptAt().isAfter(LocalDateTime.now()));
+        verify(webhookEventRepository).save(event);
+    }
+
+    private Payment processingPayment() {
+        Payment payment = new Payment();
+        payment.setPaymentId(7L);
+        payment.setPaymentMethod(PaymentMethod.VISA);
+        payment.setPaymentStatus(PaymentStatus.PROCESSING);
+        payment.setAmount(new BigDecimal("500000"));
+        return payment;
+    }
+}
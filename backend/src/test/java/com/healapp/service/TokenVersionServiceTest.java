@@ -0,0 +1,76 @@
+package com.healapp.service;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.healapp.repository.UserRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TokenVersionService Unit Test")
+class TokenVersionServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private TokenVersionService tokenVersionService;
+
+    @Test
+    @DisplayName("Version cache - chỉ truy vấn DB lần đầu, token sai version bị từ chối")
+    void isCurrent_ShouldCacheStateAndCompareVersion() {
+        when(userRepository.findTokenState(1L)).thenReturn(rows(2, true, false));
+
+        assertTrue(tokenVersionService.isCurrent(1L, 2));
+        assertTrue(tokenVersionService.isCurrent(1L, 2));
+        assertFalse(tokenVersionService.isCurrent(1L, 1));
+
+        verify(userRepository, times(1)).findTokenState(1L);
+    }
+
+    @Test
+    @DisplayName("Version cache - tài khoản bị khoá, đã xoá hoặc không tồn tại thì token không còn hiệu lực")
+    void isCurrent_DisabledOrMissingUser_ShouldReject() {
+        when(userRepository.findTokenState(1L)).thenReturn(rows(0, false, false));
+        when(userRepository.findTokenState(2L)).thenReturn(rows(0, false, true));
+        when(userRepository.findTokenState(3L)).thenReturn(Collections.emptyList());
+
+        assertFalse(tokenVersionService.isCurrent(1L, 0));
+        assertFalse(tokenVersionService.isCurrent(2L, 0));
+        assertFalse(tokenVersionService.isCurrent(3L, 0));
+    }
+
+    @Test
+    @DisplayName("Version cache - evict thì lần kiểm tra sau đọc lại version mới từ DB")
+    void evictAfterCommit_ShouldReloadState() {
+        when(userRepository.findTokenState(1L)).thenReturn(rows(0, true, false), rows(1, true, false));
+
+        assertTrue(tokenVersionService.isCurrent(1L, 0));
+        tokenVersionService.evictAfterCommit(1L);
+
+        assertFalse(tokenVersionService.isCurrent(1L, 0));
+        assertTrue(tokenVersionService.isCurrent(1L, 1));
+    }
+
+    private List<Object[]> rows(int version, boolean active, boolean deleted) {
+        return Collections.singletonList(new Object[] { version, active, deleted });
+    }
+}
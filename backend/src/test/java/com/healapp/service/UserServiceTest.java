@@ -1,5 +1,6 @@
 package com.healapp.service;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -23,11 +24,15 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import com.healapp.config.UserPrincipal;
 import com.healapp.dto.ApiResponse;
 import com.healapp.dto.DeleteAccountRequest;
 import com.healapp.dto.ForgotPasswordRequest;
@@ -73,6 +78,9 @@ class UserServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private PasswordHashService passwordHashService;
+
     @Mock
     private PasswordResetService passwordResetService;
 
@@ -97,6 +105,9 @@ class UserServiceTest {
     @Mock
     private PhoneVerificationService phoneVerificationService;
 
+    @Mock
+    private RateLimiterService rateLimiterService;
+
     @InjectMocks
     private UserService userService;
 
@@ -314,15 +325,15 @@ class UserServiceTest {
 
         @Test
         @DisplayName("Should login successfully with valid email and password")
-        void testLogin_WithValidEmailAndPassword_ShouldSucceed() {
+        void testLogin_WithValidEmailAndPassword_ShouldSucceed() throws Exception {
             // Given
             LoginRequest loginRequest = new LoginRequest();
             loginRequest.setUsername("test@example.com");
             loginRequest.setPassword("password123");
 
-            when(userRepository.findByEmailAndIsActiveTrueAndIsDeletedFalse(anyString()))
-                    .thenReturn(Optional.of(testUser));
-            when(passwordEncoder.matches(anyString(), anyString())).thenReturn(true);
+            when(userRepository.findActiveByUsernameOrEmail(anyString())).thenReturn(List.of(testUser));
+            when(passwordHashService.verify(anyString(), anyString()))
+                    .thenReturn(new PasswordHashService.Verification(true, null));
 
             // When
             ApiResponse<LoginResponse> result = userService.login(loginRequest);
@@ -337,15 +348,15 @@ class UserServiceTest {
 
         @Test
         @DisplayName("Should login successfully with valid username and password")
-        void testLogin_WithValidUsernameAndPassword_ShouldSucceed() {
+        void testLogin_WithValidUsernameAndPassword_ShouldSucceed() throws Exception {
             // Given
             LoginRequest loginRequest = new LoginRequest();
             loginRequest.setUsername("testuser");
             loginRequest.setPassword("password123");
 
-            when(userRepository.findByUsernameAndIsActiveTrueAndIsDeletedFalse(anyString()))
-                    .thenReturn(Optional.of(testUser));
-            when(passwordEncoder.matches(anyString(), anyString())).thenReturn(true);
+            when(userRepository.findActiveByUsernameOrEmail(anyString())).thenReturn(List.of(testUser));
+            when(passwordHashService.verify(anyString(), anyString()))
+                    .thenReturn(new PasswordHashService.Verification(true, null));
 
             // When
             ApiResponse<LoginResponse> result = userService.login(loginRequest);
@@ -357,15 +368,15 @@ class UserServiceTest {
 
         @Test
         @DisplayName("Should fail login with invalid password")
-        void testLogin_WithInvalidPassword_ShouldFail() {
+        void testLogin_WithInvalidPassword_ShouldFail() throws Exception {
             // Given
             LoginRequest loginRequest = new LoginRequest();
             loginRequest.setUsername("test@example.com");
             loginRequest.setPassword("wrongpassword");
 
-            when(userRepository.findByEmailAndIsActiveTrueAndIsDeletedFalse(anyString()))
-                    .thenReturn(Optional.of(testUser));
-            when(passwordEncoder.matches(anyString(), anyString())).thenReturn(false);
+            when(userRepository.findActiveByUsernameOrEmail(anyString())).thenReturn(List.of(testUser));
+            when(passwordHashService.verify(anyString(), anyString()))
+                    .thenReturn(new PasswordHashService.Verification(false, null));
 
             // When
             ApiResponse<LoginResponse> result = userService.login(loginRequest);
@@ -373,6 +384,50 @@ class UserServiceTest {
             // Then
             assertFalse(result.isSuccess());
             assertEquals("Invalid username/email or password", result.getMessage());
+            verify(rateLimiterService).tryAcquire(RateLimiterService.LOGIN_ACCOUNT, "test@example.com");
+        }
+
+        @Test
+        @DisplayName("Should not spend an account attempt on successful login")
+        void testLogin_WithValidPassword_ShouldNotCountAgainstAccount() throws Exception {
+            // Given
+            LoginRequest loginRequest = new LoginRequest();
+            loginRequest.setUsername("test@example.com");
+            loginRequest.setPassword("password123");
+
+            when(userRepository.findActiveByUsernameOrEmail(anyString())).thenReturn(List.of(testUser));
+            when(passwordHashService.verify(anyString(), anyString()))
+                    .thenReturn(new PasswordHashService.Verification(true, null));
+
+            // When
+            ApiResponse<LoginResponse> result = userService.login(loginRequest);
+
+            // Then
+            assertTrue(result.isSuccess());
+            verify(rateLimiterService).check(RateLimiterService.LOGIN_ACCOUNT, "test@example.com");
+            verify(rateLimiterService, never()).tryAcquire(anyString(), anyString());
+            verify(rateLimiterService).reset(RateLimiterService.LOGIN_ACCOUNT, "test@example.com");
+        }
+
+        @Test
+        @DisplayName("Should reject login without querying users when account is rate limited")
+        void testLogin_WhenAccountRateLimited_ShouldFailBeforePasswordCheck() throws Exception {
+            // Given
+            LoginRequest loginRequest = new LoginRequest();
+            loginRequest.setUsername("Test@Example.com");
+            loginRequest.setPassword("password123");
+
+            when(rateLimiterService.check(RateLimiterService.LOGIN_ACCOUNT, "test@example.com"))
+                    .thenReturn(Optional.of(Duration.ofSeconds(30)));
+
+            // When
+            ApiResponse<LoginResponse> result = userService.login(loginRequest);
+
+            // Then
+            assertFalse(result.isSuccess());
+            assertEquals("Too many login attempts, please retry after 30 seconds", result.getMessage());
+            verify(userRepository, never()).findActiveByUsernameOrEmail(anyString());
+            verify(passwordHashService, never()).verify(anyString(), anyString());
         }
 
         @Test
@@ -383,8 +438,7 @@ class UserServiceTest {
             loginRequest.setUsername("nonexistent@example.com");
             loginRequest.setPassword("password123");
 
-            when(userRepository.findByEmailAndIsActiveTrueAndIsDeletedFalse(anyString()))
-                    .thenReturn(Optional.empty());
+            when(userRepository.findActiveByUsernameOrEmail(anyString())).thenReturn(List.of());
 
             // When
             ApiResponse<LoginResponse> result = userService.login(loginRequest);
@@ -396,7 +450,7 @@ class UserServiceTest {
 
         @Test
         @DisplayName("Should fail login when user is inactive")
-        void testLogin_WithInactiveUser_ShouldFail() {
+        void testLogin_WithInactiveUser_ShouldFail() throws Exception {
             // Given
             LoginRequest loginRequest = new LoginRequest();
             loginRequest.setUsername("test@example.com");
@@ -404,9 +458,9 @@ class UserServiceTest {
 
             testUser.setIsActive(false);
 
-            when(userRepository.findByEmailAndIsActiveTrueAndIsDeletedFalse(anyString()))
-                    .thenReturn(Optional.of(testUser));
-            when(passwordEncoder.matches(anyString(), anyString())).thenReturn(true);
+            when(userRepository.findActiveByUsernameOrEmail(anyString())).thenReturn(List.of(testUser));
+            when(passwordHashService.verify(anyString(), anyString()))
+                    .thenReturn(new PasswordHashService.Verification(true, null));
 
             // When
             ApiResponse<LoginResponse> result = userService.login(loginRequest);
@@ -415,6 +469,47 @@ class UserServiceTest {
             assertFalse(result.isSuccess());
             assertEquals("Account is disabled", result.getMessage());
         }
+
+        @Test
+        @DisplayName("Should store the upgraded hash when the password was hashed with an old cost")
+        void testLogin_WithOutdatedHashCost_ShouldUpgradeHash() throws Exception {
+            // Given
+            LoginRequest loginRequest = new LoginRequest();
+            loginRequest.setUsername("testuser");
+            loginRequest.setPassword("password123");
+
+            when(userRepository.findActiveByUsernameOrEmail(anyString())).thenReturn(List.of(testUser));
+            when(passwordHashService.verify(anyString(), anyString()))
+                    .thenReturn(new PasswordHashService.Verification(true, "upgradedPassword"));
+
+            // When
+            ApiResponse<LoginResponse> result = userService.login(loginRequest);
+
+            // Then
+            assertTrue(result.isSuccess());
+            verify(userRepository).upgradePasswordHash(1L, "encodedPassword", "upgradedPassword");
+        }
+
+        @Test
+        @DisplayName("Should fail login with a busy message when the hash pool rejects the check")
+        void testLogin_WhenHashPoolBusy_ShouldFail() throws Exception {
+            // Given
+            LoginRequest loginRequest = new LoginRequest();
+            loginRequest.setUsername("testuser");
+            loginRequest.setPassword("password123");
+
+            when(userRepository.findActiveByUsernameOrEmail(anyString())).thenReturn(List.of(testUser));
+            when(passwordHashService.verify(anyString(), anyString()))
+                    .thenThrow(new PasswordHashService.HashPoolBusyException(
+                            "Login service is busy, please retry shortly"));
+
+            // When
+            ApiResponse<LoginResponse> result = userService.login(loginRequest);
+
+            // Then
+            assertFalse(result.isSuccess());
+            assertEquals("Login service is busy, please retry shortly", result.getMessage());
+        }
     }
 
     @Nested
@@ -538,27 +633,20 @@ class UserServiceTest {
         }
 
         @Test
-        @DisplayName("Should check phone existence excluding deleted and inactive users")
+        @DisplayName("Should check phone existence via normalized phone index excluding deleted and inactive users")
         void testIsPhoneExists_ShouldExcludeDeletedAndInactive() {
             // Given
             String phone = "1234567890";
-            UserDtls activeUser = new UserDtls();
-            activeUser.setPhone("1234567890_V");
-            activeUser.setIsActive(true);
-            activeUser.setIsDeleted(false);
-
-            UserDtls deletedUser = new UserDtls();
-            deletedUser.setPhone("1234567890_D12345");
-            deletedUser.setIsActive(false);
-            deletedUser.setIsDeleted(true);
-
-            when(userRepository.findAll()).thenReturn(Arrays.asList(activeUser, deletedUser));
+            when(userRepository.existsByPhoneNormalizedAndIsActiveTrueAndIsDeletedFalse(phone)).thenReturn(true);
 
             // When
             boolean result = userService.isPhoneExists(phone);
+            boolean resultWithSuffix = userService.isPhoneExists(phone + "_V");
 
             // Then
             assertTrue(result); // Should find the active user
+            assertTrue(resultWithSuffix);
+            verify(userRepository, never()).findAll();
         }
     }
 
@@ -839,6 +927,26 @@ class UserServiceTest {
             // Then
             assertNull(result);
         }
+
+        @Test
+        @DisplayName("Should resolve current user id from JWT principal without querying")
+        void testGetUserIdFromUsername_WithCurrentPrincipal_ShouldSkipRepository() {
+            // Given
+            UserPrincipal principal = new UserPrincipal(42L, "testuser", "CUSTOMER", 0, null, true);
+            SecurityContextHolder.getContext().setAuthentication(
+                    new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+
+            try {
+                // When
+                Long result = userService.getUserIdFromUsername("testuser");
+
+                // Then
+                assertEquals(42L, result);
+                verify(userRepository, never()).findByUsername(anyString());
+            } finally {
+                SecurityContextHolder.clearContext();
+            }
+        }
     }
 
     @Nested